@@ -1,19 +1,71 @@
     // AggregationEventHandler: for a given AggregationGroup, update a HashMap of aggregation stats
-    // and publish an aggregation update event.
-    public static class AggregationEventHandler implements EventHandler<TradeEvent>, LifeCycleAware {
+    // and publish an aggregation update event (unless no update ring buffer is given, e.g. in backfill).
+    // A group can be split across several handlers (shards), each owning the keys whose hash maps to it.
+    // Under CONFLATE, pending keys are retried with every trade, at the end of every batch and, while the
+    // trade ring is idle, on every wait strategy timeout (see PipelineConfig.newTradeWaitStrategy).
+    // A BulkMerge control event on the trade ring is merged into the map here, on the handler's own thread.
+    public static class AggregationEventHandler implements EventHandler<TradeEvent>, LifeCycleAware, TimeoutHandler {
+        /** How long shutdown waits for the update ring to take the conflated keys. */
+        public static final long SHUTDOWN_FLUSH_MILLIS = 1000;
+
         private final AggregationGroup group;
-        private final Map<AggregationKey, AggregationStats> aggregationMap = new HashMap<>();
+        private final java.util.Map<AggregationKey, AggregationStats> aggregationMap = new java.util.HashMap<>();
         private final RingBuffer<AggregationUpdateEvent> updateRingBuffer;
+        private final UpdateOverloadPolicy overloadPolicy;
+        private final int shardIndex;
+        private final int shardCount;
+        private final UpdateOverloadMetrics overloadMetrics = new UpdateOverloadMetrics();
+        // Keys whose latest stats still need publishing under CONFLATE, oldest first.
+        private final java.util.Set<AggregationKey> pendingKeys = new java.util.LinkedHashSet<>();
+        // Created on the first bulk merge; its scratch arrays are only touched on this thread.
+        private BulkAggregator bulkAggregator;
 
         public AggregationEventHandler(AggregationGroup group, RingBuffer<AggregationUpdateEvent> updateRingBuffer) {
+            this(group, updateRingBuffer, UpdateOverloadPolicy.CONFLATE);
+        }
+
+        /**
+         * @param group            the aggregation group this handler maintains
+         * @param updateRingBuffer where updates are published, or null to publish nothing
+         * @param overloadPolicy   what to do when the update ring buffer is full
+         */
+        public AggregationEventHandler(AggregationGroup group, RingBuffer<AggregationUpdateEvent> updateRingBuffer,
+                                       UpdateOverloadPolicy overloadPolicy) {
+            this(group, updateRingBuffer, overloadPolicy, 0, 1);
+        }
+
+        /**
+         * @param group            the aggregation group this handler maintains
+         * @param updateRingBuffer where updates are published, or null to publish nothing
+         * @param overloadPolicy   what to do when the update ring buffer is full
+         * @param shardIndex       which shard of the group's keys this handler owns
+         * @param shardCount       number of handlers the group is split across
+         */
+        public AggregationEventHandler(AggregationGroup group, RingBuffer<AggregationUpdateEvent> updateRingBuffer,
+                                       UpdateOverloadPolicy overloadPolicy, int shardIndex, int shardCount) {
+            if (shardCount < 1 || shardIndex < 0 || shardIndex >= shardCount) {
+                throw new IllegalArgumentException("Invalid shard " + shardIndex + " of " + shardCount);
+            }
             this.group = group;
             this.updateRingBuffer = updateRingBuffer;
+            this.overloadPolicy = overloadPolicy;
+            this.shardIndex = shardIndex;
+            this.shardCount = shardCount;
         }
 
         @Override
         public void onEvent(TradeEvent event, long sequence, boolean endOfBatch) throws Exception {
+            if (event.getBulkMerge() != null) {
+                merge(event.getBulkMerge());
+                return;
+            }
             Trade trade = event.getTrade();
-            if (trade == null) return;
+            if (trade == null || (shardCount > 1 &&
+                    AggregationKeyGenerator.shardOf(AggregationKeyGenerator.keyHash(trade, group), shardCount) != shardIndex)) {
+                // Not ours: just use the event as a chance to publish conflated keys.
+                flushPendingKeys();
+                return;
+            }
             // Generate the key based on the aggregation group.
             AggregationKey key = AggregationKeyGenerator.generateKey(trade, group);
             AggregationStats stats = aggregationMap.get(key);
@@ -27,24 +79,185 @@
             } else if ("SELL".equalsIgnoreCase(trade.getSide())) {
                 stats.addSellTrade(trade.getQuantity(), trade.getPrice());
             }
-            // Publish the update to the secondary ring buffer.
-            long updateSeq = updateRingBuffer.next();
+            if (updateRingBuffer == null) {
+                return;
+            }
+            // Keys conflated earlier go out first, then this update. The key's own pending entry
+            // is superseded by this update, so it is not published twice.
+            pendingKeys.remove(key);
+            flushPendingKeys();
+            publishUpdate(key, stats);
+            if (endOfBatch) {
+                // Nothing else may arrive for a while; give the keys conflated by this batch a chance.
+                flushPendingKeys();
+            }
+        }
+
+        /**
+         * Merges this handler's share of a bulk merge into the map and publishes an update for
+         * every key it touched. Counts as applied even if it fails, so a waiting caller is never
+         * left hanging.
+         */
+        private void merge(BulkMerge merge) {
+            try {
+                if (bulkAggregator == null) {
+                    bulkAggregator = new BulkAggregator();
+                }
+                for (TradeBatch batch : merge.getBatches()) {
+                    if (batch.getGroup() != group) {
+                        continue;
+                    }
+                    bulkAggregator.aggregate(batch, aggregationMap, shardIndex, shardCount);
+                    if (updateRingBuffer == null) {
+                        continue;
+                    }
+                    for (int id = 0; id < batch.getKeyCount(); id++) {
+                        AggregationKey key = batch.getKey(id);
+                        AggregationStats stats = aggregationMap.get(key);
+                        // Null for keys another shard owns: the map only ever holds this shard's keys.
+                        if (stats != null) {
+                            pendingKeys.remove(key);
+                            flushPendingKeys();
+                            publishUpdate(key, stats);
+                        }
+                    }
+                }
+            } finally {
+                merge.applied();
+            }
+        }
+
+        /**
+         * Called by the trade ring's BatchEventProcessor when no trade has arrived for the wait
+         * strategy's timeout, so keys conflated during a burst get out once the flow stops.
+         */
+        @Override
+        public void onTimeout(long sequence) {
+            flushPendingKeys();
+        }
+
+        /**
+         * Publishes an update to the secondary ring buffer according to the overload policy.
+         * Only BLOCK ever waits; the other policies keep the trade ring moving.
+         */
+        private void publishUpdate(AggregationKey key, AggregationStats stats) {
+            if (overloadPolicy == UpdateOverloadPolicy.BLOCK) {
+                if (!updateRingBuffer.hasAvailableCapacity(1)) {
+                    overloadMetrics.onBlocked();
+                }
+                long updateSeq = updateRingBuffer.next();
+                try {
+                    AggregationUpdateEvent updateEvent = updateRingBuffer.get(updateSeq);
+                    updateEvent.copyFrom(key, stats);
+                } finally {
+                    updateRingBuffer.publish(updateSeq);
+                }
+                overloadMetrics.onPublished();
+                return;
+            }
+            if (tryPublishUpdate(key, stats)) {
+                return;
+            }
+            if (overloadPolicy == UpdateOverloadPolicy.CONFLATE) {
+                pendingKeys.add(key);
+                overloadMetrics.onConflated();
+            } else {
+                overloadMetrics.onDropped();
+            }
+        }
+
+        private boolean tryPublishUpdate(AggregationKey key, AggregationStats stats) {
+            long updateSeq;
+            try {
+                updateSeq = updateRingBuffer.tryNext();
+            } catch (InsufficientCapacityException e) {
+                return false;
+            }
             try {
                 AggregationUpdateEvent updateEvent = updateRingBuffer.get(updateSeq);
-                updateEvent.setKey(key);
-                updateEvent.setStats(stats);
+                updateEvent.copyFrom(key, stats);
             } finally {
                 updateRingBuffer.publish(updateSeq);
             }
+            overloadMetrics.onPublished();
+            return true;
+        }
+
+        /**
+         * Publishes conflated keys, oldest first, until the ring buffer is full again.
+         */
+        private void flushPendingKeys() {
+            if (pendingKeys.isEmpty()) {
+                return;
+            }
+            java.util.Iterator<AggregationKey> it = pendingKeys.iterator();
+            while (it.hasNext()) {
+                AggregationKey key = it.next();
+                if (!tryPublishUpdate(key, aggregationMap.get(key))) {
+                    return;
+                }
+                it.remove();
+                overloadMetrics.onConflationFlushed();
+            }
+        }
+
+        public UpdateOverloadMetrics getOverloadMetrics() {
+            return overloadMetrics;
+        }
+
+        /**
+         * Returns the number of keys waiting to be published under CONFLATE.
+         */
+        public int getPendingKeyCount() {
+            return pendingKeys.size();
+        }
+
+        public AggregationGroup getGroup() {
+            return group;
+        }
+
+        public int getShardIndex() {
+            return shardIndex;
+        }
+
+        public int getShardCount() {
+            return shardCount;
+        }
+
+        /**
+         * Returns the group name, with the shard appended when the group is sharded, e.g. BOOK or BOOK-1of4.
+         */
+        public String getName() {
+            return shardCount > 1 ? group + "-" + shardIndex + "of" + shardCount : group.toString();
+        }
+
+        /**
+         * Returns a read-only view of the aggregation state. Only safe to read from other threads
+         * once the handler has stopped, e.g. after the Disruptor has been shut down.
+         */
+        public java.util.Map<AggregationKey, AggregationStats> getAggregationMap() {
+            return java.util.Collections.unmodifiableMap(aggregationMap);
         }
 
         @Override
         public void onStart() {
-            System.out.println("AggregationEventHandler for " + group + " started.");
+            System.out.println("AggregationEventHandler for " + getName() + " started.");
         }
 
+        /**
+         * Publishes the latest stats of every conflated key before the handler stops, waiting up
+         * to {@link #SHUTDOWN_FLUSH_MILLIS} for the update ring to make room. The update Disruptor
+         * is shut down after the trade Disruptor, so its consumer is still draining at this point.
+         */
         @Override
         public void onShutdown() {
-            System.out.println("AggregationEventHandler for " + group + " shutting down.");
+            long deadline = System.nanoTime() + java.util.concurrent.TimeUnit.MILLISECONDS.toNanos(SHUTDOWN_FLUSH_MILLIS);
+            flushPendingKeys();
+            while (!pendingKeys.isEmpty() && System.nanoTime() < deadline) {
+                java.util.concurrent.locks.LockSupport.parkNanos(java.util.concurrent.TimeUnit.MICROSECONDS.toNanos(100));
+                flushPendingKeys();
+            }
+            System.out.println("AggregationEventHandler for " + getName() + " shutting down. " + overloadMetrics +
+                               ", pendingKeys=" + pendingKeys.size());
         }
     }
\ No newline at end of file
@@ -0,0 +1,187 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.lmax.disruptor.RingBuffer;
+import com.lmax.disruptor.Sequence;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+public class AggregationEventHandlerTest {
+
+    private RingBuffer<AggregationUpdateEvent> updateRing;
+    // Stands in for the publisher: the update ring can only reuse slots it has passed.
+    private Sequence consumed;
+    private long tradeSequence;
+
+    @BeforeEach
+    public void setUp() {
+        updateRing = RingBuffer.createSingleProducer(AggregationUpdateEvent::new, 2);
+        consumed = new Sequence();
+        updateRing.addGatingSequences(consumed);
+        tradeSequence = 0;
+    }
+
+    @Test
+    public void testConflatedKeyTradedAgainIsPublishedOnce() throws Exception {
+        AggregationEventHandler handler = handler(UpdateOverloadPolicy.CONFLATE);
+        trade(handler, "B1", 1, false);
+        trade(handler, "B2", 1, false);
+        trade(handler, "B3", 1, false);
+        trade(handler, "B1", 2, false);
+        assertEquals(2, handler.getPendingKeyCount());
+        assertEquals(2, handler.getOverloadMetrics().getConflated());
+        assertEquals(List.of("B1=1", "B2=1"), drain());
+
+        trade(handler, "B1", 3, false);
+
+        assertEquals(List.of("B3=1", "B1=6"), drain(), "B1's pending entry is superseded by the new update");
+        assertEquals(0, handler.getPendingKeyCount());
+        assertEquals(1, handler.getOverloadMetrics().getConflationFlushed());
+    }
+
+    @Test
+    public void testIdleTimeoutFlushesConflatedKeys() throws Exception {
+        AggregationEventHandler handler = handler(UpdateOverloadPolicy.CONFLATE);
+        trade(handler, "B1", 1, false);
+        trade(handler, "B2", 1, false);
+        trade(handler, "B3", 5, false);
+        trade(handler, "B3", 7, true);
+        assertEquals(1, handler.getPendingKeyCount());
+
+        handler.onTimeout(tradeSequence - 1);
+        assertEquals(1, handler.getPendingKeyCount(), "Still full: nothing to flush into");
+        assertEquals(List.of("B1=1", "B2=1"), drain());
+
+        // No more trades: only the timeout can get B3 out.
+        handler.onTimeout(tradeSequence - 1);
+
+        assertEquals(List.of("B3=12"), drain());
+        assertEquals(0, handler.getPendingKeyCount());
+    }
+
+    @Test
+    public void testTradeForAnotherShardFlushesConflatedKeys() throws Exception {
+        AggregationEventHandler handler = handler(UpdateOverloadPolicy.CONFLATE);
+        trade(handler, "B1", 1, false);
+        trade(handler, "B2", 1, false);
+        trade(handler, "B3", 1, false);
+        consumed.set(updateRing.getCursor());
+
+        // A trade the handler does not own still gives the pending key a slot.
+        TradeEvent event = new TradeEvent();
+        handler.onEvent(event, tradeSequence++, true);
+
+        assertEquals(0, handler.getPendingKeyCount());
+        assertEquals(3, handler.getOverloadMetrics().getPublished());
+    }
+
+    @Test
+    public void testDropToLatestDropsWhenFull() throws Exception {
+        AggregationEventHandler handler = handler(UpdateOverloadPolicy.DROP_TO_LATEST);
+        trade(handler, "B1", 1, false);
+        trade(handler, "B2", 1, false);
+        trade(handler, "B1", 2, true);
+
+        assertEquals(1, handler.getOverloadMetrics().getDropped());
+        assertEquals(0, handler.getPendingKeyCount());
+        assertEquals(List.of("B1=1", "B2=1"), drain());
+
+        handler.onTimeout(tradeSequence - 1);
+        assertEquals(List.of(), drain(), "Dropped updates are not retried");
+
+        trade(handler, "B1", 4, true);
+        assertEquals(List.of("B1=7"), drain(), "The next update carries the latest state");
+    }
+
+    @Test
+    public void testBlockWaitsForASlot() throws Exception {
+        AggregationEventHandler handler = handler(UpdateOverloadPolicy.BLOCK);
+        trade(handler, "B1", 1, false);
+        trade(handler, "B2", 1, false);
+
+        Thread blocked = new Thread(() -> {
+            try {
+                handler.onEvent(event("B3", 1), 2, true);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        blocked.start();
+        blocked.join(200);
+        assertTrue(blocked.isAlive(), "BLOCK must wait while the update ring is full");
+
+        assertEquals(List.of("B1=1", "B2=1"), drain());
+        blocked.join(5_000);
+
+        assertFalse(blocked.isAlive());
+        assertEquals(List.of("B3=1"), drain());
+        assertEquals(3, handler.getOverloadMetrics().getPublished());
+        assertEquals(1, handler.getOverloadMetrics().getBlocked());
+        assertEquals(0, handler.getOverloadMetrics().getDropped());
+    }
+
+    @Test
+    public void testBulkMergeIsAppliedOnTheHandlerAndPublished() throws Exception {
+        AggregationEventHandler handler = handler(UpdateOverloadPolicy.CONFLATE);
+        trade(handler, "B1", 1, true);
+        assertEquals(List.of("B1=1"), drain());
+
+        TradeBatch books = new TradeBatch(AggregationGroup.BOOK, 8);
+        books.add(event("B1", 5).getTrade());
+        books.add(event("B2", 2).getTrade());
+        TradeBatch other = new TradeBatch(AggregationGroup.BOOK_INSTRUMENT, 8);
+        other.add(event("B3", 7).getTrade());
+        BulkMerge merge = new BulkMerge(List.of(books, other), 1);
+        TradeEvent control = new TradeEvent();
+        control.setBulkMerge(merge);
+        handler.onEvent(control, tradeSequence++, true);
+
+        assertEquals(0, merge.getPendingHandlerCount());
+        assertEquals(List.of("B1=6", "B2=2"), drain(), "Every merged key is published, other groups' batches ignored");
+        assertEquals(2, handler.getAggregationMap().size());
+
+        trade(handler, "B2", 1, true);
+        assertEquals(List.of("B2=3"), drain(), "Trades after the merge build on it");
+    }
+
+    private AggregationEventHandler handler(UpdateOverloadPolicy policy) {
+        return new AggregationEventHandler(AggregationGroup.BOOK, updateRing, policy);
+    }
+
+    private void trade(AggregationEventHandler handler, String book, long buyQty, boolean endOfBatch) throws Exception {
+        handler.onEvent(event(book, buyQty), tradeSequence++, endOfBatch);
+    }
+
+    private static TradeEvent event(String book, long buyQty) {
+        TradeEvent event = new TradeEvent();
+        event.setTrade(Trade.newBuilder()
+                .setBook(book)
+                .setInstrument("I1")
+                .setCounterparty("CP1")
+                .setSide("BUY")
+                .setPrice(BigDecimal.TEN)
+                .setQuantity(buyQty)
+                .build());
+        return event;
+    }
+
+    /**
+     * Consumes everything published so far, as book=totalBuyQty.
+     */
+    private List<String> drain() {
+        List<String> updates = new ArrayList<>();
+        long cursor = updateRing.getCursor();
+        for (long sequence = consumed.get() + 1; sequence <= cursor; sequence++) {
+            AggregationUpdateRecord update = updateRing.get(sequence).getUpdate();
+            updates.add(update.getKey().getBook() + "=" + update.getTotalBuyQty());
+        }
+        consumed.set(cursor);
+        return updates;
+    }
+}
@@ -54,6 +54,9 @@ public final class AggregationKey {
      *     book=<book_value>;instrument=<instrument_value>;counterparty=<counterparty_value>
      *
      * If a field is null, it is represented as an empty string.
+     *
+     * This form is intended for logging and debugging. Use {@link AggregationKeyCodec}
+     * when keys are published or re-ingested on the hot path.
      */
     @Override
     public String toString() {
@@ -71,6 +74,8 @@ public final class AggregationKey {
      *
      * For example: "book=BookA;instrument=InstrumentX;counterparty=CounterpartyY"
      * An empty value is interpreted as null.
+     * This is the debug counterpart of {@link #toString()}; see {@link AggregationKeyCodec}
+     * for the binary form.
      *
      * @param s the string representation
      * @return a new AggregationKey instance
@@ -0,0 +1,187 @@
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Compact binary encoding for {@link AggregationKey}.
+ *
+ * Each of the three fields (book, instrument, counterparty) is written in order as a
+ * 2-byte length followed by that many UTF-8 bytes. A length of -1 marks a null field, so
+ * an empty string and null remain distinguishable (unlike the text form). Keys are written
+ * into and read from a caller-supplied ByteBuffer at its current position; the buffer's
+ * byte order is respected, so writer and reader must agree on it.
+ *
+ * The text format produced by {@link AggregationKey#toString()} is kept for debugging only.
+ */
+public final class AggregationKeyCodec {
+
+    /** Length marker for a null field. */
+    private static final short NULL_LENGTH = -1;
+
+    /** Largest UTF-8 byte length a single field may encode to. */
+    public static final int MAX_FIELD_BYTES = Short.MAX_VALUE;
+
+    private AggregationKeyCodec() {
+    }
+
+    /**
+     * Returns the number of bytes {@link #write(AggregationKey, ByteBuffer)} will produce for the key.
+     *
+     * @param key the key to measure
+     * @return encoded length in bytes
+     */
+    public static int encodedLength(AggregationKey key) {
+        return fieldLength(key.getBook()) + fieldLength(key.getInstrument()) + fieldLength(key.getCounterparty());
+    }
+
+    /**
+     * Writes the key into the buffer at its current position and advances the position.
+     *
+     * @param key    the key to encode
+     * @param buffer the destination buffer
+     * @throws BufferOverflowException  if the buffer does not have {@link #encodedLength(AggregationKey)} bytes remaining
+     * @throws IllegalArgumentException if a field encodes to more than {@link #MAX_FIELD_BYTES} bytes
+     */
+    public static void write(AggregationKey key, ByteBuffer buffer) {
+        // Every field is measured and checked before anything is written, so a failed write
+        // leaves the buffer as it was.
+        int bookLength = checkedLength(key.getBook());
+        int instrumentLength = checkedLength(key.getInstrument());
+        int counterpartyLength = checkedLength(key.getCounterparty());
+        int encodedLength = 3 * Short.BYTES + Math.max(bookLength, 0) + Math.max(instrumentLength, 0) +
+                            Math.max(counterpartyLength, 0);
+        if (buffer.remaining() < encodedLength) {
+            throw new BufferOverflowException();
+        }
+        writeField(key.getBook(), bookLength, buffer);
+        writeField(key.getInstrument(), instrumentLength, buffer);
+        writeField(key.getCounterparty(), counterpartyLength, buffer);
+    }
+
+    /**
+     * Reads a key from the buffer at its current position and advances the position.
+     *
+     * @param buffer the source buffer
+     * @return the decoded key
+     * @throws BufferUnderflowException if the buffer holds fewer bytes than the encoding declares
+     * @throws IllegalArgumentException if a field length is invalid
+     */
+    public static AggregationKey read(ByteBuffer buffer) {
+        String book = readField(buffer);
+        String instrument = readField(buffer);
+        String counterparty = readField(buffer);
+        return new AggregationKey(book, instrument, counterparty);
+    }
+
+    /**
+     * Returns the encoded size of a single nullable string field.
+     */
+    static int fieldLength(String value) {
+        return Short.BYTES + (value != null ? utf8Length(value) : 0);
+    }
+
+    /**
+     * Computes the UTF-8 length of the value without encoding it.
+     */
+    static int utf8Length(CharSequence value) {
+        int length = 0;
+        for (int i = 0, n = value.length(); i < n; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(value.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                // BMP character, or an unpaired surrogate which is replaced by '?' below.
+                length += Character.isSurrogate(c) ? 1 : 3;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Returns the length a nullable field is written with: its UTF-8 length, or -1 for null.
+     *
+     * @throws IllegalArgumentException if the field encodes to more than {@link #MAX_FIELD_BYTES} bytes
+     */
+    static int checkedLength(String value) {
+        if (value == null) {
+            return NULL_LENGTH;
+        }
+        int length = utf8Length(value);
+        if (length > MAX_FIELD_BYTES) {
+            throw new IllegalArgumentException("Key field exceeds " + MAX_FIELD_BYTES + " UTF-8 bytes: " + length);
+        }
+        return length;
+    }
+
+    /**
+     * Writes a single nullable string field: 2-byte length (-1 for null) then UTF-8 bytes.
+     */
+    static void writeField(String value, ByteBuffer buffer) {
+        writeField(value, checkedLength(value), buffer);
+    }
+
+    /**
+     * Writes a field whose length {@link #checkedLength(String)} has already returned.
+     */
+    private static void writeField(String value, int length, ByteBuffer buffer) {
+        buffer.putShort((short) length);
+        if (value == null) {
+            return;
+        }
+        // Encode directly into the buffer, avoiding String.getBytes() and its temporary array.
+        for (int i = 0, n = value.length(); i < n; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                buffer.put((byte) c);
+            } else if (c < 0x800) {
+                buffer.put((byte) (0xC0 | (c >> 6)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, value.charAt(++i));
+                buffer.put((byte) (0xF0 | (cp >> 18)));
+                buffer.put((byte) (0x80 | ((cp >> 12) & 0x3F)));
+                buffer.put((byte) (0x80 | ((cp >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (cp & 0x3F)));
+            } else if (Character.isSurrogate(c)) {
+                buffer.put((byte) '?');
+            } else {
+                buffer.put((byte) (0xE0 | (c >> 12)));
+                buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+    }
+
+    /**
+     * Reads a single nullable string field written by {@link #writeField(String, ByteBuffer)}.
+     */
+    static String readField(ByteBuffer buffer) {
+        short length = buffer.getShort();
+        if (length == NULL_LENGTH) {
+            return null;
+        }
+        if (length < 0) {
+            throw new IllegalArgumentException("Invalid key field length: " + length);
+        }
+        if (buffer.remaining() < length) {
+            throw new BufferUnderflowException();
+        }
+        String value;
+        if (buffer.hasArray()) {
+            // Decode straight out of the backing array.
+            value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + length);
+        } else {
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            value = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,107 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+public class AggregationKeyCodecTest {
+
+    private static AggregationKey roundTrip(AggregationKey key, ByteBuffer buffer) {
+        AggregationKeyCodec.write(key, buffer);
+        assertEquals(AggregationKeyCodec.encodedLength(key), buffer.position(), "Encoded length must match bytes written");
+        buffer.flip();
+        AggregationKey decoded = AggregationKeyCodec.read(buffer);
+        assertFalse(buffer.hasRemaining(), "Reader must consume exactly the bytes written");
+        return decoded;
+    }
+
+    @Test
+    public void testRoundTripAllNonNull() {
+        AggregationKey key = new AggregationKey("BookA", "InstrumentX", "CounterpartyY");
+        AggregationKey decoded = roundTrip(key, ByteBuffer.allocate(64));
+        assertEquals(key, decoded, "Decoded key should equal the original");
+    }
+
+    @Test
+    public void testRoundTripWithNulls() {
+        AggregationKey key = new AggregationKey("BookA", null, null);
+        AggregationKey decoded = roundTrip(key, ByteBuffer.allocate(64));
+        assertEquals("BookA", decoded.getBook());
+        assertNull(decoded.getInstrument(), "Null instrument should survive the round trip");
+        assertNull(decoded.getCounterparty(), "Null counterparty should survive the round trip");
+    }
+
+    @Test
+    public void testEmptyStringIsDistinctFromNull() {
+        AggregationKey key = new AggregationKey("", null, "CounterpartyY");
+        AggregationKey decoded = roundTrip(key, ByteBuffer.allocate(64));
+        assertEquals("", decoded.getBook(), "Empty book should stay empty rather than becoming null");
+        assertNull(decoded.getInstrument());
+    }
+
+    @Test
+    public void testRoundTripNonAscii() {
+        AggregationKey key = new AggregationKey("B\u00fcch", "\u65e5\u672c\u682a", "Cpty\ud83d\ude00");
+        AggregationKey decoded = roundTrip(key, ByteBuffer.allocate(64));
+        assertEquals(key, decoded, "Multi-byte characters should survive the round trip");
+    }
+
+    @Test
+    public void testRoundTripDirectBuffer() {
+        AggregationKey key = new AggregationKey("BookA", "InstrumentX", "CounterpartyY");
+        AggregationKey decoded = roundTrip(key, ByteBuffer.allocateDirect(64).order(ByteOrder.LITTLE_ENDIAN));
+        assertEquals(key, decoded, "Direct buffers should decode the same as heap buffers");
+    }
+
+    @Test
+    public void testSequentialKeysInOneBuffer() {
+        AggregationKey first = new AggregationKey("BookA", "InstrumentX", null);
+        AggregationKey second = new AggregationKey("BookB", null, "CounterpartyZ");
+        ByteBuffer buffer = ByteBuffer.allocate(128);
+        buffer.putInt(42);
+        AggregationKeyCodec.write(first, buffer);
+        AggregationKeyCodec.write(second, buffer);
+        buffer.flip();
+        assertEquals(42, buffer.getInt());
+        assertEquals(first, AggregationKeyCodec.read(buffer));
+        assertEquals(second, AggregationKeyCodec.read(buffer));
+    }
+
+    @Test
+    public void testBinaryMatchesTextForm() {
+        AggregationKey key = new AggregationKey("BookA", "InstrumentX", "CounterpartyY");
+        AggregationKey decoded = roundTrip(key, ByteBuffer.allocate(64));
+        assertEquals(key.toString(), decoded.toString(), "Binary round trip should preserve the debug text form");
+        assertEquals(key, AggregationKey.fromString(decoded.toString()));
+    }
+
+    @Test
+    public void testWriteIntoTooSmallBuffer() {
+        AggregationKey key = new AggregationKey("BookA", "InstrumentX", "CounterpartyY");
+        ByteBuffer buffer = ByteBuffer.allocate(8);
+        assertThrows(BufferOverflowException.class, () -> AggregationKeyCodec.write(key, buffer));
+        assertEquals(0, buffer.position(), "A failed write must not leave a partial key in the buffer");
+    }
+
+    @Test
+    public void testOversizedLaterFieldLeavesTheBufferUntouched() {
+        AggregationKey key = new AggregationKey("BookA", "InstrumentX", "C".repeat(AggregationKeyCodec.MAX_FIELD_BYTES + 1));
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        assertThrows(IllegalArgumentException.class, () -> AggregationKeyCodec.write(key, buffer));
+        assertEquals(0, buffer.position(), "Earlier fields must not be written when a later one is too long");
+    }
+
+    @Test
+    public void testReadInvalidLength() {
+        ByteBuffer buffer = ByteBuffer.allocate(8);
+        buffer.putShort((short) -7).flip();
+        Exception exception = assertThrows(IllegalArgumentException.class, () -> AggregationKeyCodec.read(buffer));
+        assertTrue(exception.getMessage().contains("Invalid key field length"),
+                   "Negative lengths other than the null marker should be rejected");
+    }
+}
@@ -26,4 +26,45 @@ public final class AggregationKeyGenerator {
                 throw new IllegalArgumentException("Unsupported aggregation group: " + group);
         }
     }
+
+    /**
+     * Returns the hash code that {@link #generateKey(Trade, AggregationGroup)} would give the
+     * trade's key, without creating the key.
+     *
+     * @param trade the trade
+     * @param group the aggregation group
+     * @return the key's hash code
+     */
+    public static int keyHash(Trade trade, AggregationGroup group) {
+        // Mirrors Objects.hash(book, instrument, counterparty) in AggregationKey.
+        int result = 31 + hash(trade.getBook());
+        switch (group) {
+            case BOOK:
+                return 31 * 31 * result;
+            case BOOK_INSTRUMENT:
+                return 31 * (31 * result + hash(trade.getInstrument()));
+            case BOOK_INSTRUMENT_COUNTERPARTY:
+                return 31 * (31 * result + hash(trade.getInstrument())) + hash(trade.getCounterparty());
+            default:
+                throw new IllegalArgumentException("Unsupported aggregation group: " + group);
+        }
+    }
+
+    /**
+     * Maps a key hash to one of shardCount shards. Every trade with the same key lands on the
+     * same shard.
+     *
+     * @param keyHash    the key's hash code
+     * @param shardCount number of shards, at least 1
+     * @return the shard index in [0, shardCount)
+     */
+    public static int shardOf(int keyHash, int shardCount) {
+        // Spread the high bits down, as HashMap does, before reducing.
+        int spread = keyHash ^ (keyHash >>> 16);
+        return Math.floorMod(spread, shardCount);
+    }
+
+    private static int hash(String value) {
+        return value != null ? value.hashCode() : 0;
+    }
 }
\ No newline at end of file
@@ -1,6 +1,8 @@
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
 
+import java.util.Arrays;
+
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.junit.jupiter.MockitoExtension;
@@ -99,4 +101,49 @@ public class AggregationKeyGeneratorTest {
         assertEquals(key1, key2, "Keys generated from identical inputs should be equal");
         assertEquals(key1.hashCode(), key2.hashCode(), "Hash codes should match for equal keys");
     }
+
+    @Test
+    public void testKeyHashMatchesTheKeysHashCode() {
+        Trade trade = mock(Trade.class);
+        when(trade.getBook()).thenReturn("BookA");
+        when(trade.getInstrument()).thenReturn("InstrumentX");
+        when(trade.getCounterparty()).thenReturn("CounterpartyY");
+
+        for (AggregationGroup group : AggregationGroup.values()) {
+            assertEquals(AggregationKeyGenerator.generateKey(trade, group).hashCode(),
+                         AggregationKeyGenerator.keyHash(trade, group), group.toString());
+        }
+    }
+
+    @Test
+    public void testKeyHashHandlesNullFields() {
+        Trade trade = mock(Trade.class);
+        when(trade.getBook()).thenReturn(null);
+        when(trade.getInstrument()).thenReturn(null);
+        when(trade.getCounterparty()).thenReturn(null);
+
+        for (AggregationGroup group : AggregationGroup.values()) {
+            assertEquals(AggregationKeyGenerator.generateKey(trade, group).hashCode(),
+                         AggregationKeyGenerator.keyHash(trade, group), group.toString());
+        }
+    }
+
+    @Test
+    public void testShardOfIsInRangeAndStable() {
+        int[] counts = new int[4];
+        for (int i = 0; i < 10_000; i++) {
+            int hash = ("Book" + i).hashCode() * 31 * 31;
+            int shard = AggregationKeyGenerator.shardOf(hash, 4);
+            assertTrue(shard >= 0 && shard < 4, "Shard out of range: " + shard);
+            assertEquals(shard, AggregationKeyGenerator.shardOf(hash, 4));
+            counts[shard]++;
+        }
+        // Keys that differ only in high bits must still spread across shards.
+        for (int count : counts) {
+            assertTrue(count > 1_500, "Shards should be roughly balanced: " + Arrays.toString(counts));
+        }
+        assertEquals(0, AggregationKeyGenerator.shardOf(Integer.MIN_VALUE, 1));
+        assertEquals(0, AggregationKeyGenerator.shardOf(-1, 1));
+        assertTrue(AggregationKeyGenerator.shardOf(Integer.MIN_VALUE, 3) >= 0);
+    }
 }
\ No newline at end of file
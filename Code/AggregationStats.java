@@ -30,8 +30,19 @@ public class AggregationStats {
      */
     public void addBuyTrade(long qty, BigDecimal price) {
         // Calculate trade notional: price * quantity
-        BigDecimal tradeNotional = price.multiply(BigDecimal.valueOf(qty));
-        totalBuyNotional = totalBuyNotional.add(tradeNotional);
+        addBuyTrades(qty, price.multiply(BigDecimal.valueOf(qty)));
+    }
+
+    /**
+     * Adds several BUY trades at once from their combined quantity and notional. The result is
+     * identical to adding each trade with {@link #addBuyTrade}, provided the notional is the exact
+     * sum of price * quantity carrying the largest price scale among them.
+     *
+     * @param qty      The total quantity of the buy trades.
+     * @param notional The total notional of the buy trades.
+     */
+    public void addBuyTrades(long qty, BigDecimal notional) {
+        totalBuyNotional = totalBuyNotional.add(notional);
         totalBuyQty += qty;
 
         // Update average buy price if quantity > 0
@@ -53,8 +64,19 @@ public class AggregationStats {
      */
     public void addSellTrade(long qty, BigDecimal price) {
         // Calculate trade notional: price * quantity
-        BigDecimal tradeNotional = price.multiply(BigDecimal.valueOf(qty));
-        totalSellNotional = totalSellNotional.add(tradeNotional);
+        addSellTrades(qty, price.multiply(BigDecimal.valueOf(qty)));
+    }
+
+    /**
+     * Adds several SELL trades at once from their combined quantity and notional. The result is
+     * identical to adding each trade with {@link #addSellTrade}, provided the notional is the exact
+     * sum of price * quantity carrying the largest price scale among them.
+     *
+     * @param qty      The total quantity of the sell trades.
+     * @param notional The total notional of the sell trades.
+     */
+    public void addSellTrades(long qty, BigDecimal notional) {
+        totalSellNotional = totalSellNotional.add(notional);
         totalSellQty += qty;
 
         // Update average sell price if quantity > 0
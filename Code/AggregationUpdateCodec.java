@@ -0,0 +1,172 @@
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+
+/**
+ * Binary framing for aggregation updates published downstream.
+ *
+ * Each update is written as one frame:
+ *
+ *     int    frameLength   (bytes that follow)
+ *     key                  (see {@link AggregationKeyCodec})
+ *     long   totalBuyQty
+ *     dec    totalBuyNotional
+ *     dec    avgBuyPrice
+ *     long   totalSellQty
+ *     dec    totalSellNotional
+ *     dec    avgSellPrice
+ *     long   lastUpdated epoch second
+ *     int    lastUpdated nano adjustment
+ *
+ * A decimal ("dec") is an int scale followed by a one-byte tag. Tag 0 means the unscaled
+ * value fits in a long and the next 8 bytes hold it; otherwise the tag is the length of the
+ * big-endian two's-complement unscaled value that follows.
+ */
+public final class AggregationUpdateCodec {
+
+    /** Size of the length prefix in front of every frame. */
+    public static final int FRAME_HEADER_BYTES = Integer.BYTES;
+
+    private static final byte LONG_DECIMAL = 0;
+
+    private AggregationUpdateCodec() {
+    }
+
+    /**
+     * Encodes one update frame at the buffer's current position.
+     *
+     * On failure the buffer position is restored, so after an overflow the caller can flush and retry.
+     *
+     * @param key    the aggregation key
+     * @param stats  the stats for the key
+     * @param buffer the destination buffer
+     * @return number of bytes written, including the frame header
+     * @throws BufferOverflowException if the frame does not fit in the remaining space
+     */
+    public static int encode(AggregationKey key, AggregationStats stats, ByteBuffer buffer) {
+        return encode(key, stats.getTotalBuyQty(), stats.getTotalBuyNotional(), stats.getAvgBuyPrice(),
+                      stats.getTotalSellQty(), stats.getTotalSellNotional(), stats.getAvgSellPrice(),
+                      stats.getLastUpdated(), buffer);
+    }
+
+    /**
+     * Encodes one update frame from a record, e.g. the copy held by an AggregationUpdateEvent.
+     *
+     * @param update the update, including its key
+     * @param buffer the destination buffer
+     * @return number of bytes written, including the frame header
+     * @throws BufferOverflowException if the frame does not fit in the remaining space
+     * @see #encode(AggregationKey, AggregationStats, ByteBuffer)
+     */
+    public static int encode(AggregationUpdateRecord update, ByteBuffer buffer) {
+        return encode(update.getKey(), update.getTotalBuyQty(), update.getTotalBuyNotional(), update.getAvgBuyPrice(),
+                      update.getTotalSellQty(), update.getTotalSellNotional(), update.getAvgSellPrice(),
+                      update.getLastUpdated(), buffer);
+    }
+
+    private static int encode(AggregationKey key, long totalBuyQty, BigDecimal totalBuyNotional, BigDecimal avgBuyPrice,
+                              long totalSellQty, BigDecimal totalSellNotional, BigDecimal avgSellPrice,
+                              Instant lastUpdated, ByteBuffer buffer) {
+        int start = buffer.position();
+        if (buffer.remaining() < FRAME_HEADER_BYTES) {
+            throw new BufferOverflowException();
+        }
+        try {
+            buffer.position(start + FRAME_HEADER_BYTES);
+            AggregationKeyCodec.write(key, buffer);
+            buffer.putLong(totalBuyQty);
+            writeDecimal(totalBuyNotional, buffer);
+            writeDecimal(avgBuyPrice, buffer);
+            buffer.putLong(totalSellQty);
+            writeDecimal(totalSellNotional, buffer);
+            writeDecimal(avgSellPrice, buffer);
+            buffer.putLong(lastUpdated.getEpochSecond());
+            buffer.putInt(lastUpdated.getNano());
+        } catch (RuntimeException e) {
+            // Never leave a partial frame behind.
+            buffer.position(start);
+            throw e;
+        }
+        int length = buffer.position() - start;
+        buffer.putInt(start, length - FRAME_HEADER_BYTES);
+        return length;
+    }
+
+    /**
+     * Decodes one frame at the buffer's current position into the given record.
+     *
+     * @param buffer the source buffer, positioned at a frame header
+     * @param record the record to populate
+     * @return the same record
+     * @throws BufferUnderflowException if the buffer does not hold a complete frame
+     * @throws IllegalArgumentException if the frame is malformed
+     */
+    public static AggregationUpdateRecord decode(ByteBuffer buffer, AggregationUpdateRecord record) {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        int end = buffer.position() + length;
+        record.setKey(AggregationKeyCodec.read(buffer));
+        record.setTotalBuyQty(buffer.getLong());
+        record.setTotalBuyNotional(readDecimal(buffer));
+        record.setAvgBuyPrice(readDecimal(buffer));
+        record.setTotalSellQty(buffer.getLong());
+        record.setTotalSellNotional(readDecimal(buffer));
+        record.setAvgSellPrice(readDecimal(buffer));
+        long epochSecond = buffer.getLong();
+        int nanos = buffer.getInt();
+        record.setLastUpdated(Instant.ofEpochSecond(epochSecond, nanos));
+        if (buffer.position() != end) {
+            throw new IllegalArgumentException("Frame length " + length + " does not match decoded content");
+        }
+        return record;
+    }
+
+    /**
+     * Returns true if the buffer holds at least one complete frame at its current position.
+     */
+    public static boolean hasCompleteFrame(ByteBuffer buffer) {
+        int remaining = buffer.remaining();
+        return remaining >= FRAME_HEADER_BYTES && remaining - FRAME_HEADER_BYTES >= buffer.getInt(buffer.position());
+    }
+
+    /**
+     * Writes a decimal as an int scale, a one-byte tag and the unscaled value.
+     */
+    static void writeDecimal(BigDecimal value, ByteBuffer buffer) {
+        buffer.putInt(value.scale());
+        BigInteger unscaled = value.unscaledValue();
+        if (unscaled.bitLength() < Long.SIZE) {
+            buffer.put(LONG_DECIMAL);
+            buffer.putLong(unscaled.longValue());
+        } else {
+            byte[] bytes = unscaled.toByteArray();
+            if (bytes.length > Byte.MAX_VALUE) {
+                throw new IllegalArgumentException("Decimal too large to encode: " + value);
+            }
+            buffer.put((byte) bytes.length);
+            buffer.put(bytes);
+        }
+    }
+
+    /**
+     * Reads a decimal written by {@link #writeDecimal(BigDecimal, ByteBuffer)}.
+     */
+    static BigDecimal readDecimal(ByteBuffer buffer) {
+        int scale = buffer.getInt();
+        byte tag = buffer.get();
+        if (tag == LONG_DECIMAL) {
+            return BigDecimal.valueOf(buffer.getLong(), scale);
+        }
+        if (tag < 0) {
+            throw new IllegalArgumentException("Invalid decimal tag: " + tag);
+        }
+        byte[] bytes = new byte[tag];
+        buffer.get(bytes);
+        return new BigDecimal(new BigInteger(bytes), scale);
+    }
+}
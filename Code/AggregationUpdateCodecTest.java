@@ -0,0 +1,71 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.math.BigDecimal;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+public class AggregationUpdateCodecTest {
+
+    @Test
+    public void testRoundTrip() {
+        AggregationKey key = new AggregationKey("BookA", "InstrumentX", null);
+        AggregationStats stats = new AggregationStats();
+        stats.addBuyTrade(100, new BigDecimal("10.25"));
+        stats.addSellTrade(40, new BigDecimal("11.5"));
+
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        int written = AggregationUpdateCodec.encode(key, stats, buffer);
+        assertEquals(buffer.position(), written, "encode should report the bytes it wrote");
+        buffer.flip();
+        assertTrue(AggregationUpdateCodec.hasCompleteFrame(buffer));
+
+        AggregationUpdateRecord record = AggregationUpdateCodec.decode(buffer, new AggregationUpdateRecord());
+        assertFalse(buffer.hasRemaining(), "decode should consume the whole frame");
+        assertEquals(key, record.getKey());
+        assertEquals(stats.getTotalBuyQty(), record.getTotalBuyQty());
+        assertEquals(stats.getTotalBuyNotional(), record.getTotalBuyNotional());
+        assertEquals(stats.getAvgBuyPrice(), record.getAvgBuyPrice());
+        assertEquals(stats.getTotalSellQty(), record.getTotalSellQty());
+        assertEquals(stats.getTotalSellNotional(), record.getTotalSellNotional());
+        assertEquals(stats.getAvgSellPrice(), record.getAvgSellPrice());
+        assertEquals(stats.getLastUpdated(), record.getLastUpdated());
+        assertEquals(stats.getNetQty(), record.getNetQty());
+    }
+
+    @Test
+    public void testRoundTripDecimalBeyondLongRange() {
+        AggregationStats stats = new AggregationStats();
+        stats.addBuyTrade(Long.MAX_VALUE / 2, new BigDecimal("123456.12345678"));
+
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        AggregationUpdateCodec.encode(new AggregationKey("BookA", null, null), stats, buffer);
+        buffer.flip();
+        AggregationUpdateRecord record = AggregationUpdateCodec.decode(buffer, new AggregationUpdateRecord());
+        assertEquals(stats.getTotalBuyNotional(), record.getTotalBuyNotional(),
+                     "Notionals wider than a long must survive the round trip");
+    }
+
+    @Test
+    public void testOverflowRestoresPosition() {
+        AggregationStats stats = new AggregationStats();
+        ByteBuffer buffer = ByteBuffer.allocate(32);
+        buffer.putInt(7);
+        assertThrows(BufferOverflowException.class,
+                     () -> AggregationUpdateCodec.encode(new AggregationKey("BookA", "InstrumentX", "CounterpartyY"), stats, buffer));
+        assertEquals(Integer.BYTES, buffer.position(), "A failed encode must not leave a partial frame");
+    }
+
+    @Test
+    public void testIncompleteFrameDetected() {
+        ByteBuffer buffer = ByteBuffer.allocate(256);
+        AggregationUpdateCodec.encode(new AggregationKey("BookA", null, null), new AggregationStats(), buffer);
+        buffer.flip();
+        buffer.limit(buffer.limit() - 1);
+        assertFalse(AggregationUpdateCodec.hasCompleteFrame(buffer), "A truncated frame must not be reported as complete");
+    }
+}
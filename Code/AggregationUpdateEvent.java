@@ -1,21 +1,30 @@
+    // AggregationUpdateEvent: a copy of one key's stats, taken on the aggregation thread when the
+    // update is published. The map's AggregationStats keep changing after that, so the publisher
+    // only ever encodes this copy.
     public static class AggregationUpdateEvent {
-        private AggregationKey key;
-        private AggregationStats stats;
+        private final AggregationUpdateRecord update = new AggregationUpdateRecord();
 
         public AggregationKey getKey() {
-            return key;
+            return update.getKey();
         }
-        public void setKey(AggregationKey key) {
-            this.key = key;
+        /**
+         * Copies the key and the current values of the stats into this event.
+         */
+        public void copyFrom(AggregationKey key, AggregationStats stats) {
+            update.setKey(key);
+            update.setTotalBuyQty(stats.getTotalBuyQty());
+            update.setTotalBuyNotional(stats.getTotalBuyNotional());
+            update.setAvgBuyPrice(stats.getAvgBuyPrice());
+            update.setTotalSellQty(stats.getTotalSellQty());
+            update.setTotalSellNotional(stats.getTotalSellNotional());
+            update.setAvgSellPrice(stats.getAvgSellPrice());
+            update.setLastUpdated(stats.getLastUpdated());
         }
-        public AggregationStats getStats() {
-            return stats;
-        }
-        public void setStats(AggregationStats stats) {
-            this.stats = stats;
+        public AggregationUpdateRecord getUpdate() {
+            return update;
         }
         public void clear() {
-            key = null;
-            stats = null;
+            update.setKey(null);
+            update.setLastUpdated(null);
         }
     }
\ No newline at end of file
@@ -1,9 +1,68 @@
+    // AggregationUpdatePublishHandler: encodes each update into a reusable batch buffer and hands
+    // the whole batch to the transport on endOfBatch (or when the buffer fills up).
     public static class AggregationUpdatePublishHandler implements EventHandler<AggregationUpdateEvent>, LifeCycleAware {
+        private final UpdateTransport transport;
+        private final java.nio.ByteBuffer batchBuffer;
+        // Read by the metrics registry from other threads.
+        private final java.util.concurrent.atomic.LongAdder batchCount = new java.util.concurrent.atomic.LongAdder();
+        private long publishedCount;
+
+        /**
+         * @param transport        where encoded batches are written; closed when the handler shuts down
+         * @param batchBufferBytes size of the reusable batch buffer, must hold at least one update
+         */
+        public AggregationUpdatePublishHandler(UpdateTransport transport, int batchBufferBytes) {
+            this.transport = transport;
+            this.batchBuffer = java.nio.ByteBuffer.allocateDirect(batchBufferBytes);
+        }
+
         @Override
         public void onEvent(AggregationUpdateEvent event, long sequence, boolean endOfBatch) throws Exception {
-            System.out.println("Publishing aggregation update: Key=" + event.getKey() + ", Stats=" + event.getStats());
+            try {
+                AggregationUpdateCodec.encode(event.getUpdate(), batchBuffer);
+            } catch (java.nio.BufferOverflowException e) {
+                // Buffer full mid-batch: ship what we have and retry into the empty buffer.
+                flush();
+                try {
+                    AggregationUpdateCodec.encode(event.getUpdate(), batchBuffer);
+                } catch (java.nio.BufferOverflowException tooLarge) {
+                    throw new IllegalStateException("Aggregation update for " + event.getKey() +
+                                                    " exceeds batch buffer of " + batchBuffer.capacity() + " bytes", tooLarge);
+                }
+            }
+            publishedCount++;
             event.clear();
+            if (endOfBatch) {
+                flush();
+            }
+        }
+
+        /**
+         * Writes any buffered updates to the transport.
+         *
+         * @throws java.io.IOException if the transport fails
+         */
+        public void flush() throws java.io.IOException {
+            if (batchBuffer.position() == 0) {
+                return;
+            }
+            batchBuffer.flip();
+            try {
+                transport.write(batchBuffer);
+                batchCount.increment();
+            } finally {
+                batchBuffer.clear();
+            }
+        }
+
+        public long getPublishedCount() {
+            return publishedCount;
+        }
+
+        public long getBatchCount() {
+            return batchCount.sum();
         }
+
         @Override
         public void onStart() {
             System.out.println("AggregationUpdatePublishHandler started.");
@@ -11,5 +70,16 @@
         @Override
         public void onShutdown() {
             System.out.println("AggregationUpdatePublishHandler shutting down.");
+            try {
+                flush();
+            } catch (java.io.IOException e) {
+                e.printStackTrace();
+            } finally {
+                try {
+                    transport.close();
+                } catch (java.io.IOException e) {
+                    e.printStackTrace();
+                }
+            }
         }
     }
\ No newline at end of file
@@ -0,0 +1,96 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+public class AggregationUpdatePublishHandlerTest {
+
+    private static AggregationUpdateEvent event(String book, long buyQty) {
+        AggregationStats stats = new AggregationStats();
+        stats.addBuyTrade(buyQty, BigDecimal.TEN);
+        AggregationUpdateEvent event = new AggregationUpdateEvent();
+        event.copyFrom(new AggregationKey(book, null, null), stats);
+        return event;
+    }
+
+    @Test
+    public void testWritesOneBatchPerEndOfBatch() throws Exception {
+        InMemoryUpdateTransport transport = new InMemoryUpdateTransport();
+        AggregationUpdatePublishHandler handler = new AggregationUpdatePublishHandler(transport, 4096);
+
+        handler.onEvent(event("BookA", 1), 0, false);
+        handler.onEvent(event("BookB", 2), 1, false);
+        assertEquals(0, transport.getBatchCount(), "Nothing should be written before endOfBatch");
+        handler.onEvent(event("BookC", 3), 2, true);
+        assertEquals(1, transport.getBatchCount(), "A batch should be written on endOfBatch");
+
+        List<AggregationUpdateRecord> records = transport.decodeAll();
+        assertEquals(3, records.size());
+        assertEquals("BookA", records.get(0).getKey().getBook());
+        assertEquals("BookC", records.get(2).getKey().getBook());
+        assertEquals(3, records.get(2).getTotalBuyQty());
+        assertEquals(3, handler.getPublishedCount());
+    }
+
+    @Test
+    public void testFlushesEarlyWhenBufferFills() throws Exception {
+        InMemoryUpdateTransport transport = new InMemoryUpdateTransport();
+        // Room for roughly two updates per batch.
+        AggregationUpdatePublishHandler handler = new AggregationUpdatePublishHandler(transport, 160);
+
+        for (int i = 0; i < 10; i++) {
+            handler.onEvent(event("Book" + i, i + 1), i, i == 9);
+        }
+        assertTrue(transport.getBatchCount() > 1, "A full buffer should be flushed before endOfBatch");
+        List<AggregationUpdateRecord> records = transport.decodeAll();
+        assertEquals(10, records.size(), "No update may be lost when the buffer fills");
+        for (int i = 0; i < 10; i++) {
+            assertEquals("Book" + i, records.get(i).getKey().getBook(), "Updates must stay in order");
+        }
+    }
+
+    @Test
+    public void testEventClearedAfterEncoding() throws Exception {
+        AggregationUpdatePublishHandler handler = new AggregationUpdatePublishHandler(new InMemoryUpdateTransport(), 4096);
+        AggregationUpdateEvent event = event("BookA", 1);
+        handler.onEvent(event, 0, true);
+        assertNull(event.getKey(), "Event should be cleared for reuse");
+    }
+
+    @Test
+    public void testEncodesTheValuesCopiedAtPublishTime() throws Exception {
+        InMemoryUpdateTransport transport = new InMemoryUpdateTransport();
+        AggregationUpdatePublishHandler handler = new AggregationUpdatePublishHandler(transport, 4096);
+        AggregationStats stats = new AggregationStats();
+        stats.addBuyTrade(100, new BigDecimal("10.00"));
+        AggregationUpdateEvent event = new AggregationUpdateEvent();
+        event.copyFrom(new AggregationKey("BookA", null, null), stats);
+
+        // The aggregation thread keeps trading the key before the publisher gets to the event.
+        stats.addBuyTrade(100, new BigDecimal("20.00"));
+        stats.addSellTrade(50, new BigDecimal("30.00"));
+        handler.onEvent(event, 0, true);
+
+        AggregationUpdateRecord record = transport.decodeAll().get(0);
+        assertEquals(100, record.getTotalBuyQty());
+        assertEquals(new BigDecimal("1000.00"), record.getTotalBuyNotional());
+        assertEquals(new BigDecimal("10.00000000"), record.getAvgBuyPrice());
+        assertEquals(0, record.getTotalSellQty());
+        assertEquals(BigDecimal.ZERO, record.getTotalSellNotional());
+    }
+
+    @Test
+    public void testShutdownFlushesAndClosesTransport() throws Exception {
+        InMemoryUpdateTransport transport = new InMemoryUpdateTransport();
+        AggregationUpdatePublishHandler handler = new AggregationUpdatePublishHandler(transport, 4096);
+        handler.onEvent(event("BookA", 1), 0, false);
+        handler.onShutdown();
+        assertEquals(1, transport.decodeAll().size(), "Pending updates should be flushed on shutdown");
+        assertTrue(transport.isClosed(), "Transport should be closed on shutdown");
+    }
+}
@@ -0,0 +1,111 @@
+import java.math.BigDecimal;
+import java.time.Instant;
+
+/**
+ * Decoded form of a published aggregation update, as seen by downstream consumers.
+ *
+ * Instances are mutable so that a reader can decode a stream of updates into one reused
+ * record; copy out any values that must outlive the next decode.
+ */
+public class AggregationUpdateRecord {
+    private AggregationKey key;
+    private long totalBuyQty;
+    private BigDecimal totalBuyNotional = BigDecimal.ZERO;
+    private BigDecimal avgBuyPrice = BigDecimal.ZERO;
+    private long totalSellQty;
+    private BigDecimal totalSellNotional = BigDecimal.ZERO;
+    private BigDecimal avgSellPrice = BigDecimal.ZERO;
+    private Instant lastUpdated;
+
+    public AggregationKey getKey() {
+        return key;
+    }
+
+    public void setKey(AggregationKey key) {
+        this.key = key;
+    }
+
+    public long getTotalBuyQty() {
+        return totalBuyQty;
+    }
+
+    public void setTotalBuyQty(long totalBuyQty) {
+        this.totalBuyQty = totalBuyQty;
+    }
+
+    public BigDecimal getTotalBuyNotional() {
+        return totalBuyNotional;
+    }
+
+    public void setTotalBuyNotional(BigDecimal totalBuyNotional) {
+        this.totalBuyNotional = totalBuyNotional;
+    }
+
+    public BigDecimal getAvgBuyPrice() {
+        return avgBuyPrice;
+    }
+
+    public void setAvgBuyPrice(BigDecimal avgBuyPrice) {
+        this.avgBuyPrice = avgBuyPrice;
+    }
+
+    public long getTotalSellQty() {
+        return totalSellQty;
+    }
+
+    public void setTotalSellQty(long totalSellQty) {
+        this.totalSellQty = totalSellQty;
+    }
+
+    public BigDecimal getTotalSellNotional() {
+        return totalSellNotional;
+    }
+
+    public void setTotalSellNotional(BigDecimal totalSellNotional) {
+        this.totalSellNotional = totalSellNotional;
+    }
+
+    public BigDecimal getAvgSellPrice() {
+        return avgSellPrice;
+    }
+
+    public void setAvgSellPrice(BigDecimal avgSellPrice) {
+        this.avgSellPrice = avgSellPrice;
+    }
+
+    public Instant getLastUpdated() {
+        return lastUpdated;
+    }
+
+    public void setLastUpdated(Instant lastUpdated) {
+        this.lastUpdated = lastUpdated;
+    }
+
+    /**
+     * Returns the net quantity: (totalBuyQty - totalSellQty).
+     */
+    public long getNetQty() {
+        return totalBuyQty - totalSellQty;
+    }
+
+    /**
+     * Returns the net notional: (totalBuyNotional - totalSellNotional).
+     */
+    public BigDecimal getNetNotional() {
+        return totalBuyNotional.subtract(totalSellNotional);
+    }
+
+    @Override
+    public String toString() {
+        return "AggregationUpdateRecord{" +
+               "key=" + key +
+               ", totalBuyQty=" + totalBuyQty +
+               ", totalBuyNotional=" + totalBuyNotional +
+               ", avgBuyPrice=" + avgBuyPrice +
+               ", totalSellQty=" + totalSellQty +
+               ", totalSellNotional=" + totalSellNotional +
+               ", avgSellPrice=" + avgSellPrice +
+               ", lastUpdated=" + lastUpdated +
+               '}';
+    }
+}
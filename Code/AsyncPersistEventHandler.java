@@ -0,0 +1,212 @@
+import com.lmax.disruptor.BlockingWaitStrategy;
+import com.lmax.disruptor.EventHandler;
+import com.lmax.disruptor.LifeCycleAware;
+import com.lmax.disruptor.RingBuffer;
+import com.lmax.disruptor.TimeoutException;
+import com.lmax.disruptor.dsl.Disruptor;
+import com.lmax.disruptor.dsl.ProducerType;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Asynchronous replacement for {@link PersistEventHandler}.
+ *
+ * On the trade pipeline thread this handler only copies each trade into a preallocated
+ * {@link PersistRow} slot of a hand-off ring buffer. A pool of {@link PersistWriter}s, each
+ * with its own JDBC connection, drains that ring in batches, so QuestDB latency no longer
+ * shows up in the trade ring. Acknowledgement is driven by the {@link PersistedSequenceWatermark}
+ * instead: the listener is told the highest trade sequence that is persisted together with
+ * every trade before it.
+ *
+ * Each writer spills to its own file under the spill directory while QuestDB is unavailable and
+ * drains it on reconnect; see {@link ResilientTradeWriter}.
+ *
+ * Every trade event produces exactly one row, in order, so the hand-off ring applies
+ * back-pressure only if the writers fall a whole ring behind; size it accordingly.
+ */
+public class AsyncPersistEventHandler implements EventHandler<TradeEvent>, LifeCycleAware {
+
+    private final Disruptor<PersistRow> handOffDisruptor;
+    private final RingBuffer<PersistRow> handOffRingBuffer;
+    private final PersistWriter[] writers;
+    private final PersistedSequenceWatermark watermark;
+    private volatile boolean drainDeadlineSet;
+    private volatile long drainDeadline;
+    private volatile long unwrittenRows;
+
+    /**
+     * Creates the writer pool, opening one JDBC connection and one spill file per writer.
+     *
+     * @param jdbcUrl      The JDBC URL for QuestDB (e.g., "jdbc:postgresql://localhost:8812/qdb")
+     * @param user         The username for QuestDB.
+     * @param password     The password for QuestDB.
+     * @param writerCount  number of writer threads and connections
+     * @param handOffSize  hand-off ring size; must be a power of two
+     * @param maxBatchSize maximum rows per JDBC batch
+     * @param spillDirectory holds one spill file per writer
+     * @param spillBytes   maximum size of each writer's spill file
+     * @param executor     runs the writer threads; pass {@link PipelineThreads#threadPerTask} over virtual
+     *                     threads to give each writer and its connection a virtual thread
+     * @param listener     notified as the persisted-sequence watermark advances
+     * @throws IOException if a writer's spill file cannot be opened
+     */
+    public AsyncPersistEventHandler(String jdbcUrl, String user, String password, int writerCount, int handOffSize,
+                                    int maxBatchSize, Path spillDirectory, int spillBytes, Executor executor,
+                                    PersistedSequenceListener listener) throws IOException {
+        this.watermark = new PersistedSequenceWatermark(writerCount, listener);
+        this.writers = new PersistWriter[writerCount];
+        try {
+            for (int i = 0; i < writerCount; i++) {
+                writers[i] = new PersistWriter(i, writerCount, maxBatchSize, watermark, jdbcUrl, user, password,
+                                               spillDirectory.resolve("persist-spill-" + i + ".dat"), spillBytes);
+            }
+        } catch (IOException e) {
+            for (PersistWriter writer : writers) {
+                if (writer != null) {
+                    writer.onShutdown();
+                }
+            }
+            throw e;
+        }
+        this.handOffDisruptor =
+                new Disruptor<>(PersistRow::new, handOffSize, executor, ProducerType.SINGLE, new BlockingWaitStrategy());
+        handOffDisruptor.handleEventsWith(writers);
+        this.handOffRingBuffer = handOffDisruptor.getRingBuffer();
+    }
+
+    /**
+     * Called by the Disruptor for each TradeEvent: copies the trade into the hand-off ring.
+     *
+     * @param event      The trade event.
+     * @param sequence   The sequence number of the event in the ring buffer.
+     * @param endOfBatch Indicates if this is the last event in the batch.
+     */
+    @Override
+    public void onEvent(TradeEvent event, long sequence, boolean endOfBatch) throws Exception {
+        if (event.getBulkMerge() != null) {
+            // A control event for the aggregation handlers, not a trade.
+            return;
+        }
+        long handOffSeq = handOffRingBuffer.next();
+        try {
+            handOffRingBuffer.get(handOffSeq).copyFrom(event, sequence);
+        } finally {
+            handOffRingBuffer.publish(handOffSeq);
+        }
+    }
+
+    /**
+     * Returns the highest trade sequence persisted along with every earlier trade.
+     */
+    public long getPersistedSequence() {
+        return watermark.get();
+    }
+
+    /**
+     * Waits until every writer has flushed and closed its connection and spill file, which
+     * happens after the trade Disruptor has shut this handler down.
+     *
+     * @return true if all writers closed within the timeout
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean awaitWritersClosed(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (PersistWriter writer : writers) {
+            if (!writer.awaitClosed(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the resilient writer of each pool member.
+     */
+    public List<ResilientTradeWriter> getWriters() {
+        List<ResilientTradeWriter> list = new ArrayList<>(writers.length);
+        for (PersistWriter writer : writers) {
+            list.add(writer.getWriter());
+        }
+        return list;
+    }
+
+    /**
+     * Returns the number of rows waiting in the writers' spill files for QuestDB to come back.
+     */
+    public long getSpilledRowCount() {
+        long rows = 0;
+        for (PersistWriter writer : writers) {
+            rows += writer.getWriter().getSpilledRowCount();
+        }
+        return rows;
+    }
+
+    /**
+     * Called when the trade Disruptor starts; starts the writer pool.
+     */
+    @Override
+    public void onStart() {
+        handOffDisruptor.start();
+        System.out.println("AsyncPersistEventHandler started with " + writers.length + " writers.");
+    }
+
+    /**
+     * Bounds how long {@link #onShutdown()} waits for the writers to drain the hand-off ring.
+     * Set by {@link PipelineTopology#shutdown(long, TimeUnit)} before it halts the trade ring;
+     * without it, shutdown waits for as long as the writers take.
+     *
+     * @param deadlineNanos a {@link System#nanoTime()} deadline
+     */
+    public void setDrainDeadline(long deadlineNanos) {
+        this.drainDeadline = deadlineNanos;
+        this.drainDeadlineSet = true;
+    }
+
+    /**
+     * Returns the number of hand-off rows the writers had not finished with when shutdown ran
+     * out of time, including any in a batch stuck in JDBC; 0 after a complete drain.
+     */
+    public long getUnwrittenRowCount() {
+        return unwrittenRows;
+    }
+
+    /**
+     * Called when the trade Disruptor is shutting down: waits for the writers to drain the
+     * hand-off ring, then lets them close their connections. Past the drain deadline the
+     * writers are halted instead, so a writer stuck in JDBC cannot hold up the trade handler
+     * thread; the rows not written are reported by {@link #getUnwrittenRowCount()}.
+     */
+    @Override
+    public void onShutdown() {
+        System.out.println("AsyncPersistEventHandler shutting down.");
+        if (!drainDeadlineSet) {
+            handOffDisruptor.shutdown();
+        } else {
+            try {
+                handOffDisruptor.shutdown(Math.max(0, drainDeadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                unwrittenRows = countUnwrittenRows();
+                handOffDisruptor.halt();
+                System.out.println("AsyncPersistEventHandler timed out with " + unwrittenRows +
+                                   " rows left in the hand-off ring.");
+            }
+        }
+        System.out.println("AsyncPersistEventHandler drained up to trade sequence " + watermark.get() + ".");
+    }
+
+    private long countUnwrittenRows() {
+        long cursor = handOffRingBuffer.getCursor();
+        long rows = 0;
+        for (int i = 0; i < writers.length; i++) {
+            long position = handOffDisruptor.getSequenceValueFor(writers[i]);
+            // Writer i owns the sequences congruent to i modulo the writer count.
+            rows += Math.floorDiv(cursor - i, writers.length) - Math.floorDiv(position - i, writers.length);
+        }
+        return rows;
+    }
+}
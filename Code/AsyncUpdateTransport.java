@@ -0,0 +1,114 @@
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Decorator that moves the blocking write of another {@link UpdateTransport} off the caller's
+ * thread, keeping at most one batch in flight.
+ *
+ * {@link #write(ByteBuffer)} waits for the previous batch to finish, copies the new batch into
+ * a staging buffer and hands it to the executor, then returns. The publishing handler therefore
+ * encodes the next batch while the current one is on the wire. With
+ * {@link PipelineThreads#threadPerTask} over virtual threads, each in-flight batch gets its own
+ * virtual thread. Order is preserved because only one batch is ever outstanding.
+ *
+ * A failed write is reported by the next call to write or by close. Instances are used by a
+ * single publishing thread.
+ */
+public class AsyncUpdateTransport implements UpdateTransport {
+
+    private final UpdateTransport delegate;
+    private final Executor executor;
+    private ByteBuffer staging;
+    private CompletableFuture<Void> inFlight;
+    private long waitNanos;
+    private long batchCount;
+
+    /**
+     * @param delegate     the transport doing the actual I/O; closed with this one
+     * @param executor     runs each write
+     * @param stagingBytes initial staging buffer size; grown if a larger batch arrives
+     */
+    public AsyncUpdateTransport(UpdateTransport delegate, Executor executor, int stagingBytes) {
+        this.delegate = delegate;
+        this.executor = executor;
+        this.staging = ByteBuffer.allocateDirect(stagingBytes);
+    }
+
+    @Override
+    public void write(ByteBuffer batch) throws IOException {
+        awaitInFlight();
+        if (batch.remaining() > staging.capacity()) {
+            staging = ByteBuffer.allocateDirect(batch.remaining());
+        }
+        staging.clear();
+        staging.put(batch);
+        staging.flip();
+        ByteBuffer toWrite = staging;
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        inFlight = future;
+        executor.execute(() -> {
+            try {
+                delegate.write(toWrite);
+                future.complete(null);
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            }
+        });
+        batchCount++;
+    }
+
+    /**
+     * Waits for the in-flight batch, if any, and rethrows its failure.
+     *
+     * @throws IOException if the batch failed or the wait was interrupted
+     */
+    public void awaitInFlight() throws IOException {
+        CompletableFuture<Void> future = inFlight;
+        if (future == null) {
+            return;
+        }
+        inFlight = null;
+        long start = System.nanoTime();
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for update batch");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException("Update batch failed", cause);
+        } finally {
+            waitNanos += System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * Returns the total time the caller spent waiting for a previous batch to complete.
+     */
+    public long getWaitNanos() {
+        return waitNanos;
+    }
+
+    public long getBatchCount() {
+        return batchCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            awaitInFlight();
+        } finally {
+            delegate.close();
+        }
+    }
+}
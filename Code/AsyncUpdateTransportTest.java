@@ -0,0 +1,198 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+public class AsyncUpdateTransportTest {
+
+    @Test
+    public void testBatchesArriveInOrderAndTheCallerBufferIsCopied() throws Exception {
+        InMemoryUpdateTransport sink = new InMemoryUpdateTransport();
+        ManualExecutor executor = new ManualExecutor();
+        // Staging smaller than a batch, so it has to grow.
+        AsyncUpdateTransport transport = new AsyncUpdateTransport(sink, executor, 16);
+        ByteBuffer batch = ByteBuffer.allocate(4096);
+
+        transport.write(batch(batch, "BookA", "BookB"));
+        // The caller reuses its buffer as soon as write returns.
+        batch(batch, "BookX", "BookY");
+        assertEquals(0, sink.getBatchCount(), "The write runs on the executor, not the caller");
+        executor.runAll();
+        transport.write(batch(batch, "BookC"));
+        executor.runAll();
+        transport.close();
+
+        List<AggregationUpdateRecord> records = sink.decodeAll();
+        assertEquals(3, records.size());
+        assertEquals("BookA", records.get(0).getKey().getBook());
+        assertEquals("BookB", records.get(1).getKey().getBook());
+        assertEquals("BookC", records.get(2).getKey().getBook());
+        assertEquals(2, transport.getBatchCount());
+        assertTrue(sink.isClosed());
+    }
+
+    @Test
+    public void testKeepsOneBatchInFlight() throws Exception {
+        InMemoryUpdateTransport sink = new InMemoryUpdateTransport();
+        ManualExecutor executor = new ManualExecutor();
+        AsyncUpdateTransport transport = new AsyncUpdateTransport(sink, executor, 4096);
+        transport.write(batch(ByteBuffer.allocate(4096), "BookA"));
+
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        Thread second = new Thread(() -> {
+            try {
+                transport.write(batch(ByteBuffer.allocate(4096), "BookB"));
+            } catch (Throwable t) {
+                failure.set(t);
+            }
+        });
+        second.start();
+        second.join(200);
+        assertTrue(second.isAlive(), "The second write must wait for the first batch");
+        assertEquals(1, executor.pending(), "Only one batch may be handed to the executor");
+
+        executor.runAll();
+        second.join(5_000);
+        assertFalse(second.isAlive());
+        assertNull(failure.get());
+        executor.runAll();
+        transport.close();
+        assertEquals(2, sink.getBatchCount());
+    }
+
+    @Test
+    public void testFailedWriteIsReportedByTheNextWrite() throws Exception {
+        FailingTransport sink = new FailingTransport(new IOException("Connection reset"));
+        ManualExecutor executor = new ManualExecutor();
+        AsyncUpdateTransport transport = new AsyncUpdateTransport(sink, executor, 4096);
+        ByteBuffer batch = ByteBuffer.allocate(4096);
+
+        transport.write(batch(batch, "BookA"));
+        executor.runAll();
+
+        IOException e = assertThrows(IOException.class, () -> transport.write(batch(batch, "BookB")));
+        assertEquals("Connection reset", e.getMessage());
+        // Reported once; the transport can be used again.
+        sink.failure = null;
+        transport.write(batch(batch, "BookC"));
+        executor.runAll();
+        transport.close();
+        assertEquals(2, sink.writes);
+    }
+
+    @Test
+    public void testFailedWriteIsReportedByCloseWhichStillClosesTheDelegate() throws Exception {
+        FailingTransport sink = new FailingTransport(new IllegalStateException("Ring full"));
+        ManualExecutor executor = new ManualExecutor();
+        AsyncUpdateTransport transport = new AsyncUpdateTransport(sink, executor, 4096);
+
+        transport.write(batch(ByteBuffer.allocate(4096), "BookA"));
+        executor.runAll();
+
+        IllegalStateException e = assertThrows(IllegalStateException.class, transport::close);
+        assertEquals("Ring full", e.getMessage());
+        assertTrue(sink.closed);
+    }
+
+    @Test
+    public void testCheckedNonIoFailureIsWrapped() throws Exception {
+        FailingTransport sink = new FailingTransport(new Exception("Odd failure"));
+        ManualExecutor executor = new ManualExecutor();
+        AsyncUpdateTransport transport = new AsyncUpdateTransport(sink, executor, 4096);
+
+        transport.write(batch(ByteBuffer.allocate(4096), "BookA"));
+        executor.runAll();
+
+        IOException e = assertThrows(IOException.class, transport::awaitInFlight);
+        assertEquals("Odd failure", e.getCause().getMessage());
+        transport.close();
+    }
+
+    private static ByteBuffer batch(ByteBuffer buffer, String... books) {
+        AggregationStats stats = new AggregationStats();
+        stats.addBuyTrade(1, BigDecimal.TEN);
+        buffer.clear();
+        for (String book : books) {
+            AggregationUpdateCodec.encode(new AggregationKey(book, null, null), stats, buffer);
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Runs tasks only when told to.
+     */
+    private static final class ManualExecutor implements Executor {
+        private final Queue<Runnable> tasks = new ArrayDeque<>();
+
+        @Override
+        public synchronized void execute(Runnable task) {
+            tasks.add(task);
+        }
+
+        synchronized int pending() {
+            return tasks.size();
+        }
+
+        void runAll() {
+            Runnable task;
+            while ((task = poll()) != null) {
+                task.run();
+            }
+        }
+
+        private synchronized Runnable poll() {
+            return tasks.poll();
+        }
+    }
+
+    /**
+     * Fails its writes with the given exception while it is set.
+     */
+    private static final class FailingTransport implements UpdateTransport {
+        volatile Exception failure;
+        volatile int writes;
+        volatile boolean closed;
+
+        FailingTransport(Exception failure) {
+            this.failure = failure;
+        }
+
+        @Override
+        public void write(ByteBuffer batch) throws IOException {
+            writes++;
+            batch.position(batch.limit());
+            Exception e = failure;
+            if (e instanceof IOException) {
+                throw (IOException) e;
+            }
+            if (e instanceof RuntimeException) {
+                throw (RuntimeException) e;
+            }
+            if (e != null) {
+                sneakyThrow(e);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <E extends Throwable> void sneakyThrow(Throwable e) throws E {
+            throw (E) e;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
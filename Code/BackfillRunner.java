@@ -0,0 +1,219 @@
+import com.lmax.disruptor.BusySpinWaitStrategy;
+import com.lmax.disruptor.ExceptionHandler;
+import com.lmax.disruptor.TimeoutException;
+import com.lmax.disruptor.dsl.Disruptor;
+import com.lmax.disruptor.dsl.ProducerType;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Rebuilds aggregation state from historical trades as fast as the machine allows.
+ *
+ * Trades from a {@link TradeSource} (the journal or a QuestDB export) go through
+ * DeserializationHandler and one AggregationEventHandler per AggregationGroup. Persistence,
+ * journaling, acks and update publishing are all left out, claims are made in large batches and
+ * every handler busy-spins. At the end the achieved rate is reported and each group's final
+ * map is written to aggregation-&lt;GROUP&gt;.bin in the output directory as
+ * {@link AggregationUpdateCodec} frames.
+ *
+ * A handler that throws, e.g. on a malformed trade, fails the run: publishing stops, the ring
+ * is drained within {@link #SHUTDOWN_TIMEOUT_SECONDS} and the first failure is thrown, with no
+ * state written.
+ *
+ * {@link #runBulk} produces the same state without the ring: trades are collected into one
+ * {@link TradeBatch} per group and folded in with {@link BulkAggregator}.
+ */
+public class BackfillRunner {
+
+    /** How long run waits for the handlers to finish the trades already published. */
+    static final long SHUTDOWN_TIMEOUT_SECONDS = 30;
+
+    private final int ringSize;
+    private final int batchSize;
+    private final Path outputDirectory;
+
+    /**
+     * @param ringSize        trade ring size; must be a power of two
+     * @param batchSize       slots claimed per publish
+     * @param outputDirectory where the final aggregation state is written
+     */
+    public BackfillRunner(int ringSize, int batchSize, Path outputDirectory) {
+        this.ringSize = ringSize;
+        this.batchSize = batchSize;
+        this.outputDirectory = outputDirectory;
+    }
+
+    /**
+     * Streams every trade from the source through the aggregation handlers and writes out the
+     * resulting state.
+     *
+     * @param source the trades to replay; closed when done
+     * @return the number of trades replayed
+     * @throws IOException if the source cannot be read, a handler fails or does not finish in
+     *                     time, or the state cannot be written
+     */
+    public long run(TradeSource source) throws IOException {
+        ExecutorService executor = Executors.newCachedThreadPool();
+        Disruptor<TradeEvent> disruptor =
+                new Disruptor<>(TradeEvent::new, ringSize, executor, ProducerType.SINGLE, new BusySpinWaitStrategy());
+        // The default handler would stop the failing handler's thread, and with it the ring.
+        AtomicReference<IOException> failure = new AtomicReference<>();
+        disruptor.setDefaultExceptionHandler(new ExceptionHandler<TradeEvent>() {
+            @Override
+            public void handleEventException(Throwable ex, long sequence, TradeEvent event) {
+                failure.compareAndSet(null, new IOException("Backfill failed at trade sequence " + sequence, ex));
+            }
+
+            @Override
+            public void handleOnStartException(Throwable ex) {
+                failure.compareAndSet(null, new IOException("Backfill handler failed to start", ex));
+            }
+
+            @Override
+            public void handleOnShutdownException(Throwable ex) {
+                failure.compareAndSet(null, new IOException("Backfill handler failed to shut down", ex));
+            }
+        });
+
+        DeserializationHandler deserializationHandler = new DeserializationHandler();
+        AggregationGroup[] groups = AggregationGroup.values();
+        AggregationEventHandler[] aggregationHandlers = new AggregationEventHandler[groups.length];
+        for (int i = 0; i < groups.length; i++) {
+            // No update ring buffer: nothing is published downstream during a backfill.
+            aggregationHandlers[i] = new AggregationEventHandler(groups[i], null);
+        }
+        disruptor.handleEventsWith(deserializationHandler).then(aggregationHandlers);
+        disruptor.start();
+
+        long published;
+        long startNanos = System.nanoTime();
+        try (TradeSource trades = source) {
+            // Stop publishing at the first failure; the rest would be aggregated for nothing.
+            TradeSource untilFailure = new TradeSource() {
+                @Override
+                public byte[] next() throws IOException {
+                    return failure.get() == null ? trades.next() : null;
+                }
+
+                @Override
+                public void close() {
+                    // trades is closed by the enclosing try.
+                }
+            };
+            published = TradeJournalReplayer.publishAll(untilFailure, disruptor.getRingBuffer(), batchSize);
+        } finally {
+            try {
+                // Returns once every handler has consumed everything published.
+                disruptor.shutdown(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (TimeoutException e) {
+                disruptor.halt();
+                failure.compareAndSet(null, new IOException("Backfill handlers did not finish within " +
+                                                            SHUTDOWN_TIMEOUT_SECONDS + " s; stopped them"));
+            }
+            executor.shutdown();
+        }
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+        long elapsedNanos = System.nanoTime() - startNanos;
+
+        double seconds = elapsedNanos / 1_000_000_000.0;
+        System.out.printf("Backfill replayed %d trades in %.3f s (%.0f trades/sec).%n",
+                          published, seconds, seconds > 0 ? published / seconds : 0.0);
+
+        Files.createDirectories(outputDirectory);
+        for (AggregationEventHandler handler : aggregationHandlers) {
+            Path file = outputDirectory.resolve("aggregation-" + handler.getGroup() + ".bin");
+            writeState(handler.getAggregationMap(), file);
+            System.out.println("Wrote " + handler.getAggregationMap().size() + " " + handler.getGroup() + " aggregates to " + file);
+        }
+        return published;
+    }
+
+    /**
+     * Like {@link #run}, but deserializes on the calling thread and aggregates batchSize trades
+     * at a time per group with {@link BulkAggregator} instead of one trade at a time on the ring.
+     * The state written is the same.
+     *
+     * @param source the trades to replay; closed when done
+     * @return the number of trades replayed
+     * @throws IOException if the source cannot be read, a trade cannot be parsed or the state
+     *                     cannot be written
+     */
+    public long runBulk(TradeSource source) throws IOException {
+        AggregationGroup[] groups = AggregationGroup.values();
+        Map<AggregationGroup, TradeBatch> batches = new EnumMap<>(AggregationGroup.class);
+        Map<AggregationGroup, Map<AggregationKey, AggregationStats>> states = new EnumMap<>(AggregationGroup.class);
+        for (AggregationGroup group : groups) {
+            batches.put(group, new TradeBatch(group, batchSize));
+            states.put(group, new HashMap<>());
+        }
+        BulkAggregator aggregator = new BulkAggregator();
+
+        long replayed = 0;
+        long startNanos = System.nanoTime();
+        try (TradeSource trades = source) {
+            byte[] protoBytes;
+            while ((protoBytes = trades.next()) != null) {
+                Trade trade = Trade.parseFrom(protoBytes);
+                for (AggregationGroup group : groups) {
+                    TradeBatch batch = batches.get(group);
+                    batch.add(trade);
+                    if (batch.isFull()) {
+                        aggregator.aggregate(batch, states.get(group));
+                        batch.clear();
+                    }
+                }
+                replayed++;
+            }
+        }
+        for (AggregationGroup group : groups) {
+            aggregator.aggregate(batches.get(group), states.get(group));
+        }
+        long elapsedNanos = System.nanoTime() - startNanos;
+
+        double seconds = elapsedNanos / 1_000_000_000.0;
+        System.out.printf("Bulk backfill replayed %d trades in %.3f s (%.0f trades/sec).%n",
+                          replayed, seconds, seconds > 0 ? replayed / seconds : 0.0);
+
+        Files.createDirectories(outputDirectory);
+        for (AggregationGroup group : groups) {
+            Path file = outputDirectory.resolve("aggregation-" + group + ".bin");
+            writeState(states.get(group), file);
+            System.out.println("Wrote " + states.get(group).size() + " " + group + " aggregates to " + file);
+        }
+        return replayed;
+    }
+
+    /**
+     * Writes an aggregation map as a sequence of update frames.
+     */
+    static void writeState(Map<AggregationKey, AggregationStats> state, Path file) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(256 * 1024);
+        try (UpdateTransport out = ChannelUpdateTransport.openFile(file)) {
+            for (Map.Entry<AggregationKey, AggregationStats> entry : state.entrySet()) {
+                try {
+                    AggregationUpdateCodec.encode(entry.getKey(), entry.getValue(), buffer);
+                } catch (BufferOverflowException e) {
+                    buffer.flip();
+                    out.write(buffer);
+                    buffer.clear();
+                    AggregationUpdateCodec.encode(entry.getKey(), entry.getValue(), buffer);
+                }
+            }
+            buffer.flip();
+            out.write(buffer);
+        }
+    }
+}
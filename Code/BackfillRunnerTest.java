@@ -0,0 +1,161 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+public class BackfillRunnerTest {
+
+    private static final int TRADES = 1_000;
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testRunWritesTheStateOfEveryGroup() throws Exception {
+        Path output = tempDir.resolve("ring");
+        ListTradeSource source = new ListTradeSource(trades());
+
+        long replayed = new BackfillRunner(64, 16, output).run(source);
+
+        assertEquals(TRADES, replayed);
+        assertTrue(source.closed, "The source is closed when done");
+        Map<AggregationKey, AggregationUpdateRecord> books = readState(output.resolve("aggregation-BOOK.bin"));
+        assertEquals(4, books.size());
+        AggregationUpdateRecord book0 = books.get(new AggregationKey("B0", null, null));
+        // Trades i = 0, 4, 8, ...: even i buy, so every trade in book 0 is a buy.
+        long expectedQty = 0;
+        for (int i = 0; i < TRADES; i += 4) {
+            expectedQty += i + 1;
+        }
+        assertEquals(expectedQty, book0.getTotalBuyQty());
+        assertEquals(0, book0.getTotalSellQty());
+        assertEquals(4 * 3, readState(output.resolve("aggregation-BOOK_INSTRUMENT.bin")).size());
+        assertEquals(4 * 3 * 5, readState(output.resolve("aggregation-BOOK_INSTRUMENT_COUNTERPARTY.bin")).size());
+    }
+
+    @Test
+    public void testRunAndRunBulkProduceTheSameState() throws Exception {
+        Path ring = tempDir.resolve("ring");
+        Path bulk = tempDir.resolve("bulk");
+
+        new BackfillRunner(64, 16, ring).run(new ListTradeSource(trades()));
+        assertEquals(TRADES, new BackfillRunner(64, 16, bulk).runBulk(new ListTradeSource(trades())));
+
+        for (AggregationGroup group : AggregationGroup.values()) {
+            Map<AggregationKey, AggregationUpdateRecord> expected = readState(ring.resolve("aggregation-" + group + ".bin"));
+            Map<AggregationKey, AggregationUpdateRecord> actual = readState(bulk.resolve("aggregation-" + group + ".bin"));
+            assertEquals(expected.keySet(), actual.keySet(), group.toString());
+            for (Map.Entry<AggregationKey, AggregationUpdateRecord> entry : expected.entrySet()) {
+                AggregationUpdateRecord other = actual.get(entry.getKey());
+                assertEquals(entry.getValue().getTotalBuyQty(), other.getTotalBuyQty());
+                assertEquals(entry.getValue().getTotalSellQty(), other.getTotalSellQty());
+                assertEquals(0, entry.getValue().getTotalBuyNotional().compareTo(other.getTotalBuyNotional()));
+                assertEquals(0, entry.getValue().getTotalSellNotional().compareTo(other.getTotalSellNotional()));
+            }
+        }
+    }
+
+    @Test
+    public void testEmptySourceWritesEmptyState() throws Exception {
+        Path output = tempDir.resolve("empty");
+
+        assertEquals(0, new BackfillRunner(64, 16, output).run(new ListTradeSource(new ArrayList<>())));
+
+        assertTrue(readState(output.resolve("aggregation-BOOK.bin")).isEmpty());
+    }
+
+    @Test
+    public void testSourceFailureIsReportedAndTheRingStillStops() throws Exception {
+        ListTradeSource source = new ListTradeSource(trades()) {
+            @Override
+            public byte[] next() throws IOException {
+                if (position == 100) {
+                    throw new IOException("Disk gone");
+                }
+                return super.next();
+            }
+        };
+
+        IOException e = assertThrows(IOException.class, () -> new BackfillRunner(64, 16, tempDir.resolve("failed")).run(source));
+        assertEquals("Disk gone", e.getMessage());
+        assertTrue(source.closed);
+        assertFalse(Files.exists(tempDir.resolve("failed")), "No partial state is written");
+    }
+
+    @Test
+    public void testMalformedTradeFailsTheRunInsteadOfHanging() throws Exception {
+        List<byte[]> trades = trades();
+        // A length-delimited field cut short: no parser accepts it.
+        trades.set(100, new byte[]{0x0A, 0x05, 0x01});
+        ListTradeSource source = new ListTradeSource(trades);
+
+        IOException e = assertThrows(IOException.class, () -> new BackfillRunner(64, 16, tempDir.resolve("malformed")).run(source));
+        assertEquals("Backfill failed at trade sequence 100", e.getMessage());
+        assertNotNull(e.getCause());
+        assertTrue(source.closed);
+        assertTrue(source.position < TRADES, "Publishing stops at the failure");
+        assertFalse(Files.exists(tempDir.resolve("malformed")), "No partial state is written");
+    }
+
+    private static List<byte[]> trades() {
+        List<byte[]> trades = new ArrayList<>();
+        for (int i = 0; i < TRADES; i++) {
+            trades.add(Trade.newBuilder()
+                    .setBook("B" + (i % 4))
+                    .setInstrument("I" + (i % 3))
+                    .setCounterparty("CP" + (i % 5))
+                    .setSide(i % 2 == 0 ? "BUY" : "SELL")
+                    .setPrice(new BigDecimal("100.25").add(BigDecimal.valueOf(i % 7)))
+                    .setQuantity(i + 1)
+                    .build()
+                    .toByteArray());
+        }
+        return trades;
+    }
+
+    private static Map<AggregationKey, AggregationUpdateRecord> readState(Path file) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+        Map<AggregationKey, AggregationUpdateRecord> state = new HashMap<>();
+        while (buffer.hasRemaining()) {
+            AggregationUpdateRecord record = AggregationUpdateCodec.decode(buffer, new AggregationUpdateRecord());
+            assertNull(state.put(record.getKey(), record), "Each key is written once");
+        }
+        return state;
+    }
+
+    /**
+     * Serves trades from a list and records whether it was closed.
+     */
+    private static class ListTradeSource implements TradeSource {
+        private final List<byte[]> trades;
+        int position;
+        boolean closed;
+
+        ListTradeSource(List<byte[]> trades) {
+            this.trades = trades;
+        }
+
+        @Override
+        public byte[] next() throws IOException {
+            return position < trades.size() ? trades.get(position++) : null;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
@@ -0,0 +1,232 @@
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Folds a {@link TradeBatch} into an aggregation map with primitive arithmetic, for rebuilding
+ * state after a restart or a correction without a BigDecimal multiply and divide per trade.
+ *
+ * The batch is counting-sorted by key id so each key's trades are contiguous, then every key's
+ * run is reduced in straight-line loops: quantities as masked long sums, notionals as exact
+ * 128-bit sums of quantity * fixed-point price (Math.multiplyHigh for the high word). Only then
+ * is one BigDecimal notional per key and side built and handed to
+ * {@link AggregationStats#addBuyTrades}/{@link AggregationStats#addSellTrades}, which recompute
+ * the average once per key instead of once per trade.
+ *
+ * The resulting stats are identical to applying the same trades one by one through
+ * addBuyTrade/addSellTrade: the same totals, the same notional scale (the largest price scale
+ * seen) and the same averages. Only lastUpdated differs. A key and side whose notional in one
+ * batch leaves the +/-2^127 units of 10^-8 the 128-bit sum can hold falls back to adding its
+ * trades one by one, so the result stays exact.
+ *
+ * Not thread-safe: the scratch arrays are reused across batches. Merge into a live handler's map
+ * only from that handler's thread, e.g. with a {@link BulkMerge} control event.
+ */
+public class BulkAggregator {
+
+    private static final BigInteger TWO_TO_64 = BigInteger.ONE.shiftLeft(64);
+
+    private int[] runStart = new int[0];
+    private int[] runCursor = new int[0];
+    private long[] sortedQuantity = new long[0];
+    private long[] sortedPrice = new long[0];
+    private byte[] sortedSide = new byte[0];
+    private byte[] sortedScale = new byte[0];
+
+    /**
+     * Adds every trade in the batch to the map, creating stats for keys not yet present.
+     *
+     * @param batch  the trades
+     * @param target the aggregation map for the batch's group
+     * @return the number of distinct keys the batch touched
+     */
+    public int aggregate(TradeBatch batch, Map<AggregationKey, AggregationStats> target) {
+        return aggregate(batch, target, 0, 1);
+    }
+
+    /**
+     * Adds the trades of the keys one shard owns to the map, as a sharded
+     * {@link AggregationEventHandler} would have received them.
+     *
+     * @param batch      the trades
+     * @param target     the aggregation map of the shard
+     * @param shardIndex the shard whose keys are added
+     * @param shardCount number of shards the group is split across
+     * @return the number of distinct keys of the shard the batch touched
+     */
+    public int aggregate(TradeBatch batch, Map<AggregationKey, AggregationStats> target, int shardIndex, int shardCount) {
+        int rows = batch.size();
+        int keyCount = batch.getKeyCount();
+        sortByKey(batch, rows, keyCount);
+
+        int touched = 0;
+        for (int key = 0; key < keyCount; key++) {
+            int from = runStart[key];
+            int to = runStart[key + 1];
+            if (from == to || !ownedBy(batch.getKey(key), shardIndex, shardCount)) {
+                continue;
+            }
+            touched++;
+            AggregationStats stats = statsFor(batch.getKey(key), target);
+            reduce(stats, from, to);
+        }
+        for (TradeBatch.ExactRow row : batch.exactRows) {
+            if (!ownedBy(batch.getKey(row.keyId), shardIndex, shardCount)) {
+                continue;
+            }
+            AggregationStats stats = statsFor(batch.getKey(row.keyId), target);
+            if (row.buy) {
+                stats.addBuyTrade(row.quantity, row.price);
+            } else {
+                stats.addSellTrade(row.quantity, row.price);
+            }
+        }
+        return touched;
+    }
+
+    private static boolean ownedBy(AggregationKey key, int shardIndex, int shardCount) {
+        // AggregationKeyGenerator.keyHash mirrors the key's hash code, so this is the trade's shard.
+        return shardCount == 1 || AggregationKeyGenerator.shardOf(key.hashCode(), shardCount) == shardIndex;
+    }
+
+    private static AggregationStats statsFor(AggregationKey key, Map<AggregationKey, AggregationStats> target) {
+        AggregationStats stats = target.get(key);
+        if (stats == null) {
+            stats = new AggregationStats();
+            target.put(key, stats);
+        }
+        return stats;
+    }
+
+    /**
+     * Counting sort of the batch rows by key id into the sorted scratch columns; afterwards the
+     * rows of key k are at [runStart[k], runStart[k + 1]).
+     */
+    private void sortByKey(TradeBatch batch, int rows, int keyCount) {
+        if (runStart.length < keyCount + 1) {
+            runStart = new int[Math.max(keyCount + 1, runStart.length * 2)];
+            runCursor = new int[runStart.length];
+        }
+        if (sortedQuantity.length < rows) {
+            sortedQuantity = new long[rows];
+            sortedPrice = new long[rows];
+            sortedSide = new byte[rows];
+            sortedScale = new byte[rows];
+        }
+        int[] keyId = batch.keyId;
+        Arrays.fill(runStart, 0, keyCount + 1, 0);
+        for (int i = 0; i < rows; i++) {
+            runStart[keyId[i] + 1]++;
+        }
+        for (int k = 0; k < keyCount; k++) {
+            runStart[k + 1] += runStart[k];
+        }
+        System.arraycopy(runStart, 0, runCursor, 0, keyCount);
+        for (int i = 0; i < rows; i++) {
+            int position = runCursor[keyId[i]]++;
+            sortedQuantity[position] = batch.quantity[i];
+            sortedPrice[position] = batch.price[i];
+            sortedSide[position] = batch.side[i];
+            sortedScale[position] = batch.priceScale[i];
+        }
+    }
+
+    /**
+     * Reduces one key's run and applies it to the stats.
+     */
+    private void reduce(AggregationStats stats, int from, int to) {
+        long[] quantity = sortedQuantity;
+        byte[] side = sortedSide;
+
+        // Quantities: branch-free masked sums the JIT can unroll and vectorize.
+        long buyQty = 0;
+        long sellQty = 0;
+        int buys = 0;
+        int sells = 0;
+        for (int i = from; i < to; i++) {
+            long buyMask = -(long) (side[i] & TradeBatch.SIDE_BUY);
+            long sellMask = -(long) ((side[i] & TradeBatch.SIDE_SELL) >>> 1);
+            buyQty += quantity[i] & buyMask;
+            sellQty += quantity[i] & sellMask;
+            buys -= (int) buyMask;
+            sells -= (int) sellMask;
+        }
+
+        if (buys > 0) {
+            BigDecimal notional = notional(from, to, TradeBatch.SIDE_BUY);
+            if (notional != null) {
+                stats.addBuyTrades(buyQty, notional);
+            } else {
+                addOneByOne(stats, from, to, TradeBatch.SIDE_BUY);
+            }
+        }
+        if (sells > 0) {
+            BigDecimal notional = notional(from, to, TradeBatch.SIDE_SELL);
+            if (notional != null) {
+                stats.addSellTrades(sellQty, notional);
+            } else {
+                addOneByOne(stats, from, to, TradeBatch.SIDE_SELL);
+            }
+        }
+    }
+
+    /**
+     * The exact path for a run whose notional overflows 128 bits: each trade through
+     * addBuyTrade/addSellTrade with its original price.
+     */
+    private void addOneByOne(AggregationStats stats, int from, int to, byte wantedSide) {
+        for (int i = from; i < to; i++) {
+            if (sortedSide[i] != wantedSide) {
+                continue;
+            }
+            BigDecimal price = BigDecimal.valueOf(sortedPrice[i], TradeBatch.PRICE_SCALE).setScale(sortedScale[i]);
+            if (wantedSide == TradeBatch.SIDE_BUY) {
+                stats.addBuyTrade(sortedQuantity[i], price);
+            } else {
+                stats.addSellTrade(sortedQuantity[i], price);
+            }
+        }
+    }
+
+    /**
+     * Returns the exact sum of quantity * price over the run's trades on one side, at the largest
+     * price scale among them, as the per-trade path would have accumulated it, or null if the
+     * sum does not fit in 128 bits.
+     */
+    private BigDecimal notional(int from, int to, byte wantedSide) {
+        long[] quantity = sortedQuantity;
+        long[] price = sortedPrice;
+        byte[] side = sortedSide;
+        byte[] scale = sortedScale;
+        long high = 0;
+        long low = 0;
+        int maxScale = Integer.MIN_VALUE;
+        for (int i = from; i < to; i++) {
+            if (side[i] != wantedSide) {
+                continue;
+            }
+            long productLow = quantity[i] * price[i];
+            long productHigh = Math.multiplyHigh(quantity[i], price[i]);
+            long sumLow = low + productLow;
+            // Carry out of the low word, comparing as unsigned.
+            long sumHigh = high + productHigh + (Long.compareUnsigned(sumLow, low) < 0 ? 1 : 0);
+            if (((high ^ sumHigh) & (productHigh ^ sumHigh)) < 0) {
+                // Both addends had the sign the sum lost: signed overflow of the 128-bit sum.
+                return null;
+            }
+            high = sumHigh;
+            low = sumLow;
+            maxScale = Math.max(maxScale, scale[i]);
+        }
+        BigDecimal sum;
+        if (high == (low >> 63)) {
+            sum = BigDecimal.valueOf(low, TradeBatch.PRICE_SCALE);
+        } else {
+            BigInteger unsignedLow = BigInteger.valueOf(low >>> 1).shiftLeft(1).or(BigInteger.valueOf(low & 1));
+            sum = new BigDecimal(BigInteger.valueOf(high).multiply(TWO_TO_64).add(unsignedLow), TradeBatch.PRICE_SCALE);
+        }
+        // Exact: no price had more decimals than maxScale.
+        return sum.setScale(maxScale);
+    }
+}
@@ -0,0 +1,207 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+public class BulkAggregatorTest {
+
+    @Test
+    public void testMatchesPerTradePathAcrossPriceScales() {
+        List<Trade> trades = new ArrayList<>();
+        trades.add(trade("B1", "I1", "BUY", "101.5", 300));
+        trades.add(trade("B1", "I1", "BUY", "99.125", 200));
+        trades.add(trade("B1", "I1", "SELL", "100", 100));
+        trades.add(trade("B1", "I2", "sell", "7.00000001", 1_000));
+        trades.add(trade("B2", "I1", "BUY", "0.3", 1));
+        trades.add(trade("B2", "I1", "SELL", "12.34", 50));
+        trades.add(trade("B1", "I2", "BUY", "250", 10));
+
+        for (AggregationGroup group : AggregationGroup.values()) {
+            assertSameState(perTrade(trades, group, new HashMap<>()), bulk(trades, group, 64, new HashMap<>()));
+        }
+    }
+
+    @Test
+    public void testPricesBeyondFixedPointFallBackToExactPath() {
+        List<Trade> trades = new ArrayList<>();
+        trades.add(trade("B1", "I1", "BUY", "1.123456789", 3));
+        trades.add(trade("B1", "I1", "BUY", "2.5", 4));
+        trades.add(trade("B1", "I1", "SELL", "12345678901.5", 2));
+        trades.add(trade("B1", "I1", "SELL", "3", 5));
+
+        TradeBatch batch = new TradeBatch(AggregationGroup.BOOK, 16);
+        for (Trade trade : trades) {
+            batch.add(trade);
+        }
+        assertEquals(2, batch.exactRows.size());
+
+        Map<AggregationKey, AggregationStats> bulk = bulk(trades, AggregationGroup.BOOK, 16, new HashMap<>());
+        assertSameState(perTrade(trades, AggregationGroup.BOOK, new HashMap<>()), bulk);
+        assertEquals(9, bulk.values().iterator().next().getTotalBuyNotional().scale());
+    }
+
+    @Test
+    public void testLargeNotionalsUseTheHighWord() {
+        List<Trade> trades = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            // ~9.2e16 * 1e17 fixed-point units: every product overflows 64 bits.
+            trades.add(trade("B1", "I1", i % 2 == 0 ? "BUY" : "SELL", "999999999.99999999", Long.MAX_VALUE / 100));
+        }
+        trades.add(trade("B1", "I1", "SELL", "-5.25", 1_000_000));
+
+        assertSameState(perTrade(trades, AggregationGroup.BOOK, new HashMap<>()),
+                        bulk(trades, AggregationGroup.BOOK, 128, new HashMap<>()));
+    }
+
+    @Test
+    public void testNotionalBeyond128BitsFallsBackToExactPath() {
+        List<Trade> trades = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            // Quantities cancel out, but every product is +9.2e36 fixed-point units: the sum passes 2^127.
+            boolean up = i % 2 == 0;
+            trades.add(trade("B1", "I1", "BUY", up ? "9999999999.99999999" : "-9999999999.99999999",
+                             up ? Long.MAX_VALUE : -Long.MAX_VALUE));
+        }
+
+        Map<AggregationKey, AggregationStats> bulk = bulk(trades, AggregationGroup.BOOK, 64, new HashMap<>());
+        assertSameState(perTrade(trades, AggregationGroup.BOOK, new HashMap<>()), bulk);
+        assertTrue(bulk.values().iterator().next().getTotalBuyNotional().compareTo(new BigDecimal("1.7e30")) > 0,
+                   "Past 2^127 units of 1e-8");
+    }
+
+    @Test
+    public void testShardsSplitTheKeysLikeTheHandlers() {
+        List<Trade> trades = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            trades.add(trade("B" + i, "I1", "BUY", "10", i + 1));
+        }
+        TradeBatch batch = new TradeBatch(AggregationGroup.BOOK, 64);
+        for (Trade trade : trades) {
+            batch.add(trade);
+        }
+        BulkAggregator aggregator = new BulkAggregator();
+        Map<AggregationKey, AggregationStats> all = new HashMap<>();
+        for (int shard = 0; shard < 3; shard++) {
+            Map<AggregationKey, AggregationStats> state = new HashMap<>();
+            int touched = aggregator.aggregate(batch, state, shard, 3);
+            assertEquals(state.size(), touched);
+            for (AggregationKey key : state.keySet()) {
+                assertEquals(shard, AggregationKeyGenerator.shardOf(key.hashCode(), 3));
+            }
+            all.putAll(state);
+        }
+        assertSameState(perTrade(trades, AggregationGroup.BOOK, new HashMap<>()), all);
+    }
+
+    @Test
+    public void testUnknownSideStillCreatesTheKey() {
+        List<Trade> trades = new ArrayList<>();
+        trades.add(trade("B1", "I1", "SHORT", "10", 5));
+        trades.add(trade("B2", "I1", "BUY", "10", 5));
+
+        Map<AggregationKey, AggregationStats> bulk = bulk(trades, AggregationGroup.BOOK, 8, new HashMap<>());
+        assertEquals(2, bulk.size());
+        assertSameState(perTrade(trades, AggregationGroup.BOOK, new HashMap<>()), bulk);
+    }
+
+    @Test
+    public void testMergesIntoExistingStateOverSeveralBatches() {
+        List<Trade> history = new ArrayList<>();
+        List<Trade> replay = new ArrayList<>();
+        SyntheticTradeSource source = new SyntheticTradeSource(3, 10, 5, 1.0, 0.5, 11, 5_000);
+        Trade trade;
+        while ((trade = source.nextTrade()) != null) {
+            (history.size() < 1_000 ? history : replay).add(trade);
+        }
+
+        for (AggregationGroup group : AggregationGroup.values()) {
+            Map<AggregationKey, AggregationStats> expected = perTrade(history, group, new HashMap<>());
+            perTrade(replay, group, expected);
+            // Batches of 97 leave a partial last batch and renumber the keys in every batch.
+            Map<AggregationKey, AggregationStats> actual = perTrade(history, group, new HashMap<>());
+            bulk(replay, group, 97, actual);
+            assertSameState(expected, actual);
+        }
+    }
+
+    @Test
+    public void testFullBatchRejectsMoreTrades() {
+        TradeBatch batch = new TradeBatch(AggregationGroup.BOOK, 1);
+        batch.add(trade("B1", "I1", "BUY", "1", 1));
+
+        assertTrue(batch.isFull());
+        assertThrows(IllegalStateException.class, () -> batch.add(trade("B1", "I1", "BUY", "1", 1)));
+        batch.clear();
+        assertEquals(0, batch.size());
+        assertEquals(0, batch.getKeyCount(), "Key ids are per batch");
+
+        batch.add(trade("B2", "I1", "BUY", "1", 1));
+        assertEquals(1, batch.getKeyCount());
+        assertEquals(new AggregationKey("B2", null, null), batch.getKey(0));
+    }
+
+    private static Map<AggregationKey, AggregationStats> perTrade(List<Trade> trades, AggregationGroup group,
+                                                                  Map<AggregationKey, AggregationStats> state) {
+        for (Trade trade : trades) {
+            AggregationStats stats = state.computeIfAbsent(AggregationKeyGenerator.generateKey(trade, group),
+                                                           key -> new AggregationStats());
+            if ("BUY".equalsIgnoreCase(trade.getSide())) {
+                stats.addBuyTrade(trade.getQuantity(), trade.getPrice());
+            } else if ("SELL".equalsIgnoreCase(trade.getSide())) {
+                stats.addSellTrade(trade.getQuantity(), trade.getPrice());
+            }
+        }
+        return state;
+    }
+
+    private static Map<AggregationKey, AggregationStats> bulk(List<Trade> trades, AggregationGroup group, int batchSize,
+                                                              Map<AggregationKey, AggregationStats> state) {
+        TradeBatch batch = new TradeBatch(group, batchSize);
+        BulkAggregator aggregator = new BulkAggregator();
+        for (Trade trade : trades) {
+            batch.add(trade);
+            if (batch.isFull()) {
+                aggregator.aggregate(batch, state);
+                batch.clear();
+            }
+        }
+        aggregator.aggregate(batch, state);
+        return state;
+    }
+
+    private static void assertSameState(Map<AggregationKey, AggregationStats> expected,
+                                        Map<AggregationKey, AggregationStats> actual) {
+        assertEquals(expected.keySet(), actual.keySet());
+        for (Map.Entry<AggregationKey, AggregationStats> entry : expected.entrySet()) {
+            AggregationStats want = entry.getValue();
+            AggregationStats got = actual.get(entry.getKey());
+            String key = entry.getKey().toString();
+            assertEquals(want.getTotalBuyQty(), got.getTotalBuyQty(), key);
+            assertEquals(want.getTotalSellQty(), got.getTotalSellQty(), key);
+            // equals, not compareTo: the scale has to match too.
+            assertEquals(want.getTotalBuyNotional(), got.getTotalBuyNotional(), key);
+            assertEquals(want.getTotalSellNotional(), got.getTotalSellNotional(), key);
+            assertEquals(want.getAvgBuyPrice(), got.getAvgBuyPrice(), key);
+            assertEquals(want.getAvgSellPrice(), got.getAvgSellPrice(), key);
+        }
+    }
+
+    private static Trade trade(String book, String instrument, String side, String price, long quantity) {
+        return Trade.newBuilder()
+                .setBook(book)
+                .setInstrument(instrument)
+                .setCounterparty("CP1")
+                .setSide(side)
+                .setPrice(new BigDecimal(price))
+                .setQuantity(quantity)
+                .build();
+    }
+}
@@ -0,0 +1,59 @@
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Control event payload that merges bulk-aggregated trades into the live aggregation maps, e.g.
+ * late corrections or trades recovered after a restart.
+ *
+ * It travels on the trade ring like a trade, so every {@link AggregationEventHandler} applies it
+ * on its own thread, between the trades before and after it, with {@link BulkAggregator}. Each
+ * handler takes the batches of its group and, when the group is sharded, only its own keys, then
+ * publishes an update for every key it merged. The journal, deserialize, persist, export and
+ * persisted-position ack stages pass the event over.
+ *
+ * The batches are read by the handler threads until {@link #await} returns true, so the caller
+ * must not reuse them before then.
+ */
+public class BulkMerge {
+
+    private final List<TradeBatch> batches;
+    private final CountDownLatch pending;
+
+    /**
+     * @param batches  the trades to merge, any number of batches per group
+     * @param handlers number of aggregation handlers that will apply the merge
+     */
+    public BulkMerge(List<TradeBatch> batches, int handlers) {
+        this.batches = batches;
+        this.pending = new CountDownLatch(handlers);
+    }
+
+    public List<TradeBatch> getBatches() {
+        return batches;
+    }
+
+    /**
+     * Called by each aggregation handler once it has merged its share.
+     */
+    void applied() {
+        pending.countDown();
+    }
+
+    /**
+     * Waits until every aggregation handler has merged its share.
+     *
+     * @return false if the timeout elapsed first
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+        return pending.await(timeout, unit);
+    }
+
+    /**
+     * Returns the number of aggregation handlers that have not merged their share yet.
+     */
+    public long getPendingHandlerCount() {
+        return pending.getCount();
+    }
+}
@@ -0,0 +1,59 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * UpdateTransport over any blocking WritableByteChannel, typically a TCP socket or a file.
+ */
+public class ChannelUpdateTransport implements UpdateTransport {
+
+    private final WritableByteChannel channel;
+
+    public ChannelUpdateTransport(WritableByteChannel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * Opens (creating or truncating) a file to which update batches are appended.
+     *
+     * @param path the output file
+     * @return a transport writing to the file
+     * @throws IOException if the file cannot be opened
+     */
+    public static ChannelUpdateTransport openFile(Path path) throws IOException {
+        return new ChannelUpdateTransport(FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING));
+    }
+
+    /**
+     * Connects a blocking socket to a downstream consumer.
+     *
+     * @param address the consumer address
+     * @return a transport writing to the socket
+     * @throws IOException if the connection cannot be established
+     */
+    public static ChannelUpdateTransport connect(InetSocketAddress address) throws IOException {
+        SocketChannel socket = SocketChannel.open(address);
+        // Batches are already coalesced on endOfBatch, so Nagle would only add latency.
+        socket.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        return new ChannelUpdateTransport(socket);
+    }
+
+    @Override
+    public void write(ByteBuffer batch) throws IOException {
+        while (batch.hasRemaining()) {
+            channel.write(batch);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,112 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Map;
+import java.util.zip.Deflater;
+
+/**
+ * Writes an aggregation map to a compressed columnar file.
+ *
+ * Columns, in order (see {@link ColumnarFormat} for the encodings):
+ *
+ *      0 book                 dictionary
+ *      1 instrument           dictionary
+ *      2 counterparty         dictionary
+ *      3 total buy quantity   zig-zag
+ *      4 total buy notional   exact decimal
+ *      5 average buy price    exact decimal
+ *      6 total sell quantity  zig-zag
+ *      7 total sell notional  exact decimal
+ *      8 average sell price   exact decimal
+ *      9 last updated         delta of epoch seconds
+ *     10 last updated nanos   varint
+ *
+ * Unlike trade prices, aggregate decimals are stored exactly: notionals can outgrow a
+ * fixed-point long, and a dump must reload to the same state.
+ */
+public final class ColumnarAggregationWriter {
+
+    static final int COLUMN_COUNT = 11;
+
+    private ColumnarAggregationWriter() {
+    }
+
+    /**
+     * Writes the map to a new file, replacing any existing one.
+     *
+     * @param state        the aggregation map
+     * @param file         the destination file
+     * @param rowGroupSize rows per row group
+     * @return the number of rows written
+     * @throws IOException if the file cannot be written
+     */
+    public static long write(Map<AggregationKey, AggregationStats> state, Path file, int rowGroupSize) throws IOException {
+        ColumnarFormat.ColumnBuffer[] columns = new ColumnarFormat.ColumnBuffer[COLUMN_COUNT];
+        for (int i = 0; i < COLUMN_COUNT; i++) {
+            columns[i] = new ColumnarFormat.ColumnBuffer(1024);
+        }
+        ColumnarFormat.Dictionary[] dictionaries = new ColumnarFormat.Dictionary[3];
+        ColumnarFormat.ColumnBuffer[] dictionaryIds = new ColumnarFormat.ColumnBuffer[3];
+        for (int i = 0; i < dictionaries.length; i++) {
+            dictionaries[i] = new ColumnarFormat.Dictionary();
+            dictionaryIds[i] = new ColumnarFormat.ColumnBuffer(1024);
+        }
+        ColumnarFormat.ColumnBuffer scratch = new ColumnarFormat.ColumnBuffer(1024);
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        long rows = 0;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 64 * 1024))) {
+            ColumnarFormat.writeHeader(out, ColumnarFormat.KIND_AGGREGATES);
+            int rowsInGroup = 0;
+            long previousSeconds = 0;
+            for (Map.Entry<AggregationKey, AggregationStats> entry : state.entrySet()) {
+                AggregationKey key = entry.getKey();
+                AggregationStats stats = entry.getValue();
+                dictionaryIds[0].putVarLong(dictionaries[0].idOf(key.getBook()));
+                dictionaryIds[1].putVarLong(dictionaries[1].idOf(key.getInstrument()));
+                dictionaryIds[2].putVarLong(dictionaries[2].idOf(key.getCounterparty()));
+                columns[3].putZigZag(stats.getTotalBuyQty());
+                columns[4].putDecimal(stats.getTotalBuyNotional());
+                columns[5].putDecimal(stats.getAvgBuyPrice());
+                columns[6].putZigZag(stats.getTotalSellQty());
+                columns[7].putDecimal(stats.getTotalSellNotional());
+                columns[8].putDecimal(stats.getAvgSellPrice());
+                Instant lastUpdated = stats.getLastUpdated();
+                long seconds = lastUpdated != null ? lastUpdated.getEpochSecond() : ColumnarFormat.NULL_LONG;
+                columns[9].putZigZag(seconds - previousSeconds);
+                previousSeconds = seconds;
+                columns[10].putVarLong(lastUpdated != null ? lastUpdated.getNano() : 0);
+                rows++;
+                if (++rowsInGroup == rowGroupSize) {
+                    writeRowGroup(out, rowsInGroup, columns, dictionaries, dictionaryIds, scratch, deflater);
+                    rowsInGroup = 0;
+                    previousSeconds = 0;
+                }
+            }
+            if (rowsInGroup > 0) {
+                writeRowGroup(out, rowsInGroup, columns, dictionaries, dictionaryIds, scratch, deflater);
+            }
+        } finally {
+            deflater.end();
+        }
+        return rows;
+    }
+
+    private static void writeRowGroup(DataOutputStream out, int rowCount, ColumnarFormat.ColumnBuffer[] columns,
+                                      ColumnarFormat.Dictionary[] dictionaries, ColumnarFormat.ColumnBuffer[] dictionaryIds,
+                                      ColumnarFormat.ColumnBuffer scratch, Deflater deflater) throws IOException {
+        for (int i = 0; i < dictionaries.length; i++) {
+            columns[i].reset();
+            dictionaries[i].writeTo(columns[i]);
+            columns[i].putBytes(dictionaryIds[i].array(), 0, dictionaryIds[i].length());
+            dictionaries[i].reset();
+            dictionaryIds[i].reset();
+        }
+        ColumnarFormat.writeRowGroup(out, rowCount, columns, scratch, deflater);
+        for (ColumnarFormat.ColumnBuffer column : columns) {
+            column.reset();
+        }
+    }
+}
@@ -0,0 +1,136 @@
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.Inflater;
+
+/**
+ * Reads the files written by {@link ColumnarTradeWriter} and {@link ColumnarAggregationWriter}.
+ */
+public final class ColumnarFileReader {
+
+    private ColumnarFileReader() {
+    }
+
+    /**
+     * Decodes every trade in the file in order. The same row instance is passed for every trade.
+     *
+     * @param file     a trade file
+     * @param consumer receives each row
+     * @return the number of rows read
+     * @throws IOException if the file cannot be read or is not a trade file
+     */
+    public static long readTrades(Path file, Consumer<PersistRow> consumer) throws IOException {
+        PersistRow row = new PersistRow();
+        Inflater inflater = new Inflater();
+        long rows = 0;
+        try (DataInputStream in = open(file, ColumnarFormat.KIND_TRADES)) {
+            ColumnarFormat.RowGroup group;
+            while ((group = ColumnarFormat.readRowGroup(in, inflater)) != null) {
+                ByteBuffer[] columns = group.columns;
+                String[][] dictionaries = new String[5][];
+                for (int i = 0; i < dictionaries.length; i++) {
+                    dictionaries[i] = ColumnarFormat.readDictionary(columns[2 + i]);
+                }
+                long sequence = 0;
+                long micros = 0;
+                long price = 0;
+                for (int r = 0; r < group.rowCount; r++) {
+                    sequence += ColumnarFormat.getZigZag(columns[0]);
+                    micros += ColumnarFormat.getZigZag(columns[1]);
+                    price += ColumnarFormat.getZigZag(columns[7]);
+                    row.set(sequence,
+                            micros != ColumnarFormat.NULL_LONG
+                                    ? Instant.ofEpochSecond(Math.floorDiv(micros, 1_000_000L), Math.floorMod(micros, 1_000_000L) * 1_000L)
+                                    : null,
+                            dictionaries[0][(int) ColumnarFormat.getVarLong(columns[2])],
+                            dictionaries[1][(int) ColumnarFormat.getVarLong(columns[3])],
+                            dictionaries[2][(int) ColumnarFormat.getVarLong(columns[4])],
+                            dictionaries[3][(int) ColumnarFormat.getVarLong(columns[5])],
+                            dictionaries[4][(int) ColumnarFormat.getVarLong(columns[6])],
+                            price(price, columns),
+                            ColumnarFormat.getZigZag(columns[8]));
+                    consumer.accept(row);
+                    rows++;
+                }
+            }
+        } finally {
+            inflater.end();
+        }
+        return rows;
+    }
+
+    /**
+     * Decodes an aggregation dump.
+     *
+     * @param file an aggregation file
+     * @return one record per aggregation key, in file order
+     * @throws IOException if the file cannot be read or is not an aggregation file
+     */
+    public static List<AggregationUpdateRecord> readAggregates(Path file) throws IOException {
+        List<AggregationUpdateRecord> records = new ArrayList<>();
+        Inflater inflater = new Inflater();
+        try (DataInputStream in = open(file, ColumnarFormat.KIND_AGGREGATES)) {
+            ColumnarFormat.RowGroup group;
+            while ((group = ColumnarFormat.readRowGroup(in, inflater)) != null) {
+                ByteBuffer[] columns = group.columns;
+                String[][] dictionaries = new String[3][];
+                for (int i = 0; i < dictionaries.length; i++) {
+                    dictionaries[i] = ColumnarFormat.readDictionary(columns[i]);
+                }
+                long seconds = 0;
+                for (int r = 0; r < group.rowCount; r++) {
+                    AggregationUpdateRecord record = new AggregationUpdateRecord();
+                    record.setKey(new AggregationKey(
+                            dictionaries[0][(int) ColumnarFormat.getVarLong(columns[0])],
+                            dictionaries[1][(int) ColumnarFormat.getVarLong(columns[1])],
+                            dictionaries[2][(int) ColumnarFormat.getVarLong(columns[2])]));
+                    record.setTotalBuyQty(ColumnarFormat.getZigZag(columns[3]));
+                    record.setTotalBuyNotional(ColumnarFormat.getDecimal(columns[4]));
+                    record.setAvgBuyPrice(ColumnarFormat.getDecimal(columns[5]));
+                    record.setTotalSellQty(ColumnarFormat.getZigZag(columns[6]));
+                    record.setTotalSellNotional(ColumnarFormat.getDecimal(columns[7]));
+                    record.setAvgSellPrice(ColumnarFormat.getDecimal(columns[8]));
+                    seconds += ColumnarFormat.getZigZag(columns[9]);
+                    long nanos = ColumnarFormat.getVarLong(columns[10]);
+                    record.setLastUpdated(seconds != ColumnarFormat.NULL_LONG ? Instant.ofEpochSecond(seconds, nanos) : null);
+                    records.add(record);
+                }
+            }
+        } finally {
+            inflater.end();
+        }
+        return records;
+    }
+
+    private static BigDecimal price(long price, ByteBuffer[] columns) {
+        if (price == ColumnarFormat.NULL_LONG) {
+            return null;
+        }
+        if (price == ColumnarTradeWriter.EXACT_PRICE) {
+            return ColumnarFormat.getDecimal(columns[9]);
+        }
+        return BigDecimal.valueOf(price, ColumnarTradeWriter.PRICE_SCALE);
+    }
+
+    private static DataInputStream open(Path file, int expectedKind) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 64 * 1024));
+        try {
+            int kind = ColumnarFormat.readHeader(in);
+            if (kind != expectedKind) {
+                throw new IOException(file + " holds kind " + kind + ", expected " + expectedKind);
+            }
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+        return in;
+    }
+}
@@ -0,0 +1,316 @@
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Shared encoding for the columnar export files written by {@link ColumnarTradeWriter} and
+ * {@link ColumnarAggregationWriter} and read by {@link ColumnarFileReader}.
+ *
+ * A file is a header followed by row groups until end of file:
+ *
+ *     header:    int magic, int version, int kind (trades or aggregates)
+ *     row group: int row count, int column count, int raw length, int compressed length,
+ *                byte deflated[compressed length]
+ *
+ * Inflated, a row group is its columns back to back, each as an int length and that many bytes,
+ * so a reader can skip columns it does not need. Inside a column, integers are unsigned varints,
+ * signed values are zig-zag varints and sequences that change slowly (timestamps, prices) are
+ * stored as the zig-zag varint of the delta from the previous row. String columns are
+ * dictionary-encoded per row group: the dictionary, then one varint id per row (0 is null).
+ */
+final class ColumnarFormat {
+
+    static final int MAGIC = 0x50565343; // "PVSC"
+    // Version 2 added the exact price column to trade files; version 1 files still read.
+    static final int VERSION = 2;
+    static final int KIND_TRADES = 1;
+    static final int KIND_AGGREGATES = 2;
+
+    /** Stand-in for a null value in numeric columns. */
+    static final long NULL_LONG = Long.MIN_VALUE;
+
+    private ColumnarFormat() {
+    }
+
+    static void writeHeader(DataOutputStream out, int kind) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(kind);
+    }
+
+    /**
+     * Reads and checks the file header.
+     *
+     * @return the file kind
+     */
+    static int readHeader(DataInputStream in) throws IOException {
+        int magic = in.readInt();
+        if (magic != MAGIC) {
+            throw new IOException("Not a columnar export file (magic " + Integer.toHexString(magic) + ")");
+        }
+        int version = in.readInt();
+        if (version < 1 || version > VERSION) {
+            throw new IOException("Unsupported columnar export version " + version);
+        }
+        return in.readInt();
+    }
+
+    /**
+     * Compresses the columns into one row group and writes it.
+     */
+    static void writeRowGroup(DataOutputStream out, int rowCount, ColumnBuffer[] columns, ColumnBuffer scratch,
+                              Deflater deflater) throws IOException {
+        scratch.reset();
+        for (ColumnBuffer column : columns) {
+            scratch.putInt(column.length());
+            scratch.putBytes(column.array(), 0, column.length());
+        }
+        deflater.reset();
+        deflater.setInput(scratch.array(), 0, scratch.length());
+        deflater.finish();
+        byte[] compressed = new byte[Math.max(64, scratch.length() / 2)];
+        int compressedLength = 0;
+        while (!deflater.finished()) {
+            if (compressedLength == compressed.length) {
+                compressed = Arrays.copyOf(compressed, compressed.length * 2);
+            }
+            compressedLength += deflater.deflate(compressed, compressedLength, compressed.length - compressedLength);
+        }
+        out.writeInt(rowCount);
+        out.writeInt(columns.length);
+        out.writeInt(scratch.length());
+        out.writeInt(compressedLength);
+        out.write(compressed, 0, compressedLength);
+    }
+
+    /**
+     * Reads the next row group.
+     *
+     * @return the row group, or null at end of file
+     */
+    static RowGroup readRowGroup(DataInputStream in, Inflater inflater) throws IOException {
+        int rowCount;
+        try {
+            rowCount = in.readInt();
+        } catch (EOFException e) {
+            return null;
+        }
+        int columnCount = in.readInt();
+        int rawLength = in.readInt();
+        byte[] compressed = new byte[in.readInt()];
+        in.readFully(compressed);
+        byte[] raw = new byte[rawLength];
+        inflater.reset();
+        inflater.setInput(compressed);
+        try {
+            int inflated = 0;
+            while (inflated < rawLength && !inflater.finished()) {
+                int n = inflater.inflate(raw, inflated, rawLength - inflated);
+                if (n == 0 && inflater.needsInput()) {
+                    break;
+                }
+                inflated += n;
+            }
+            if (inflated != rawLength) {
+                throw new IOException("Truncated row group: inflated " + inflated + " of " + rawLength + " bytes");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt row group", e);
+        }
+        ByteBuffer all = ByteBuffer.wrap(raw);
+        ByteBuffer[] columns = new ByteBuffer[columnCount];
+        for (int i = 0; i < columnCount; i++) {
+            int length = all.getInt();
+            ByteBuffer column = all.slice();
+            column.limit(length);
+            columns[i] = column;
+            all.position(all.position() + length);
+        }
+        return new RowGroup(rowCount, columns);
+    }
+
+    static long getVarLong(ByteBuffer buffer) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+    static long getZigZag(ByteBuffer buffer) {
+        long encoded = getVarLong(buffer);
+        return (encoded >>> 1) ^ -(encoded & 1);
+    }
+
+    static String getString(ByteBuffer buffer) {
+        int length = (int) getVarLong(buffer);
+        String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return value;
+    }
+
+    static BigDecimal getDecimal(ByteBuffer buffer) {
+        int scale = (int) getZigZag(buffer);
+        int length = (int) getVarLong(buffer);
+        if (length == 0) {
+            return BigDecimal.valueOf(getZigZag(buffer), scale);
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new BigDecimal(new BigInteger(bytes), scale);
+    }
+
+    /**
+     * Reads a dictionary written by {@link Dictionary#writeTo(ColumnBuffer)}. Index 0 is null.
+     */
+    static String[] readDictionary(ByteBuffer buffer) {
+        String[] values = new String[(int) getVarLong(buffer) + 1];
+        for (int i = 1; i < values.length; i++) {
+            values[i] = getString(buffer);
+        }
+        return values;
+    }
+
+    /**
+     * One decoded row group: a row count and one buffer per column.
+     */
+    static final class RowGroup {
+        final int rowCount;
+        final ByteBuffer[] columns;
+
+        RowGroup(int rowCount, ByteBuffer[] columns) {
+            this.rowCount = rowCount;
+            this.columns = columns;
+        }
+    }
+
+    /**
+     * Growable byte array with the varint encodings used by the columns.
+     */
+    static final class ColumnBuffer {
+        private byte[] bytes;
+        private int length;
+
+        ColumnBuffer(int initialCapacity) {
+            this.bytes = new byte[initialCapacity];
+        }
+
+        void putVarLong(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                bytes[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[length++] = (byte) value;
+        }
+
+        void putZigZag(long value) {
+            putVarLong((value << 1) ^ (value >> 63));
+        }
+
+        void putInt(int value) {
+            ensure(4);
+            bytes[length++] = (byte) (value >>> 24);
+            bytes[length++] = (byte) (value >>> 16);
+            bytes[length++] = (byte) (value >>> 8);
+            bytes[length++] = (byte) value;
+        }
+
+        void putString(String value) {
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            putVarLong(utf8.length);
+            putBytes(utf8, 0, utf8.length);
+        }
+
+        /**
+         * Writes a decimal exactly: zig-zag scale, then either 0 and the zig-zag unscaled long, or
+         * the length and bytes of a larger unscaled value.
+         */
+        void putDecimal(BigDecimal value) {
+            putZigZag(value.scale());
+            BigInteger unscaled = value.unscaledValue();
+            if (unscaled.bitLength() < Long.SIZE) {
+                putVarLong(0);
+                putZigZag(unscaled.longValue());
+            } else {
+                byte[] raw = unscaled.toByteArray();
+                putVarLong(raw.length);
+                putBytes(raw, 0, raw.length);
+            }
+        }
+
+        void putBytes(byte[] source, int offset, int count) {
+            ensure(count);
+            System.arraycopy(source, offset, bytes, length, count);
+            length += count;
+        }
+
+        byte[] array() {
+            return bytes;
+        }
+
+        int length() {
+            return length;
+        }
+
+        void reset() {
+            length = 0;
+        }
+
+        private void ensure(int extra) {
+            if (length + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + extra));
+            }
+        }
+    }
+
+    /**
+     * Per-row-group string dictionary. Ids start at 1; 0 encodes null.
+     */
+    static final class Dictionary {
+        private final Map<String, Integer> ids = new HashMap<>();
+        private final List<String> values = new ArrayList<>();
+
+        int idOf(String value) {
+            if (value == null) {
+                return 0;
+            }
+            Integer id = ids.get(value);
+            if (id == null) {
+                values.add(value);
+                id = values.size();
+                ids.put(value, id);
+            }
+            return id;
+        }
+
+        void writeTo(ColumnBuffer out) {
+            out.putVarLong(values.size());
+            for (String value : values) {
+                out.putString(value);
+            }
+        }
+
+        void reset() {
+            ids.clear();
+            values.clear();
+        }
+    }
+}
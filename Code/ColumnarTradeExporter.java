@@ -0,0 +1,125 @@
+import com.lmax.disruptor.EventHandler;
+import com.lmax.disruptor.LifeCycleAware;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+
+/**
+ * Runs alongside {@link PersistEventHandler} and writes every trade to hourly columnar files,
+ * so end-of-day analytics can read compressed columns instead of pulling rows back out of
+ * QuestDB over JDBC.
+ *
+ * Files are named trades-yyyyMMdd-HH.pvsc after the UTC hour of the trade timestamp. A new file
+ * is started when a trade from a later hour arrives; late trades from an earlier hour stay in
+ * the current file. An hour that already has a file (e.g. after a restart) gets a numbered
+ * suffix rather than overwriting it. See {@link ColumnarTradeWriter} for the format and
+ * {@link ColumnarFileReader} to read it back.
+ */
+public class ColumnarTradeExporter implements EventHandler<TradeEvent>, LifeCycleAware {
+
+    private static final DateTimeFormatter HOUR_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd-HH").withZone(ZoneOffset.UTC);
+
+    private final Path directory;
+    private final int rowGroupSize;
+    private final PersistRow row = new PersistRow();
+    private ColumnarTradeWriter writer;
+    private long currentHour = Long.MIN_VALUE;
+    private long filesWritten;
+
+    /**
+     * @param directory    export directory, created if missing
+     * @param rowGroupSize rows per row group
+     * @throws IOException if the directory cannot be created
+     */
+    public ColumnarTradeExporter(Path directory, int rowGroupSize) throws IOException {
+        this.directory = directory;
+        this.rowGroupSize = rowGroupSize;
+        Files.createDirectories(directory);
+    }
+
+    /**
+     * Called by the Disruptor for each TradeEvent.
+     *
+     * @param event      The trade event.
+     * @param sequence   The sequence number of the event in the ring buffer.
+     * @param endOfBatch Indicates if this is the last event in the batch.
+     */
+    @Override
+    public void onEvent(TradeEvent event, long sequence, boolean endOfBatch) throws Exception {
+        if (event.getBulkMerge() != null) {
+            // A control event for the aggregation handlers, not a trade.
+            return;
+        }
+        row.copyFrom(event, sequence);
+        Instant timestamp = row.getTradeTimestamp();
+        long hour = timestamp != null ? Math.floorDiv(timestamp.getEpochSecond(), 3600) : currentHour;
+        if (writer == null || hour > currentHour) {
+            roll(hour != Long.MIN_VALUE ? hour : Math.floorDiv(Instant.now().getEpochSecond(), 3600));
+        }
+        writer.append(row);
+    }
+
+    private void roll(long hour) throws IOException {
+        closeWriter();
+        currentHour = hour;
+        String base = "trades-" + HOUR_FORMAT.format(Instant.ofEpochSecond(hour * 3600));
+        Path file = directory.resolve(base + ".pvsc");
+        for (int suffix = 1; Files.exists(file); suffix++) {
+            file = directory.resolve(base + "-" + suffix + ".pvsc");
+        }
+        writer = new ColumnarTradeWriter(file, rowGroupSize);
+        filesWritten++;
+    }
+
+    private void closeWriter() throws IOException {
+        if (writer != null) {
+            writer.close();
+            System.out.println("Exported " + writer.getRowCount() + " trades to " + writer.getFile());
+            writer = null;
+        }
+    }
+
+    /**
+     * Writes each aggregation map to aggregation-&lt;name&gt;.pvsc in the export directory, one
+     * file per group or group shard.
+     *
+     * @param handlers the aggregation handlers whose final maps are dumped
+     * @throws IOException if a file cannot be written
+     */
+    public void exportAggregates(AggregationEventHandler... handlers) throws IOException {
+        for (AggregationEventHandler handler : handlers) {
+            Map<AggregationKey, AggregationStats> state = handler.getAggregationMap();
+            Path file = directory.resolve("aggregation-" + handler.getName() + ".pvsc");
+            long rows = ColumnarAggregationWriter.write(state, file, rowGroupSize);
+            System.out.println("Exported " + rows + " " + handler.getName() + " aggregates to " + file);
+        }
+    }
+
+    public long getFilesWritten() {
+        return filesWritten;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    @Override
+    public void onStart() {
+        System.out.println("ColumnarTradeExporter started, writing to " + directory + ".");
+    }
+
+    @Override
+    public void onShutdown() {
+        System.out.println("ColumnarTradeExporter shutting down.");
+        try {
+            closeWriter();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
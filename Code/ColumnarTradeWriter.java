@@ -0,0 +1,206 @@
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.zip.Deflater;
+
+/**
+ * Writes trades to a compressed columnar file, one row group at a time.
+ *
+ * Columns, in order (see {@link ColumnarFormat} for the encodings):
+ *
+ *     0 trade sequence   delta
+ *     1 trade timestamp  delta of epoch microseconds
+ *     2 folder           dictionary
+ *     3 instrument       dictionary
+ *     4 counterparty     dictionary
+ *     5 book             dictionary
+ *     6 side             dictionary
+ *     7 price            delta of a fixed-point long with {@link #PRICE_SCALE} decimals
+ *     8 quantity         zig-zag
+ *     9 exact price      decimal, only for rows whose price column holds {@link #EXACT_PRICE}
+ *
+ * Timestamps keep microsecond precision, like the QuestDB column they mirror. Prices are never
+ * rounded: one with more than {@link #PRICE_SCALE} decimals, or too large for a fixed-point long,
+ * is stored exactly in the exact price column instead.
+ */
+public class ColumnarTradeWriter implements Closeable {
+
+    /** Decimal places kept for fixed-point prices. */
+    public static final int PRICE_SCALE = 8;
+
+    /** Price column value that sends the reader to the exact price column. */
+    static final long EXACT_PRICE = ColumnarFormat.NULL_LONG + 1;
+
+    // More integer digits than this cannot fit a fixed-point long with PRICE_SCALE decimals.
+    private static final int MAX_INTEGER_DIGITS = 19 - PRICE_SCALE;
+
+    /** Default rows per row group. */
+    public static final int DEFAULT_ROW_GROUP_SIZE = 64 * 1024;
+
+    static final int COLUMN_COUNT = 10;
+
+    private final Path file;
+    private final int rowGroupSize;
+    private final DataOutputStream out;
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private final ColumnarFormat.ColumnBuffer[] columns = new ColumnarFormat.ColumnBuffer[COLUMN_COUNT];
+    private final ColumnarFormat.Dictionary[] dictionaries = new ColumnarFormat.Dictionary[5];
+    private final ColumnarFormat.ColumnBuffer[] dictionaryIds = new ColumnarFormat.ColumnBuffer[5];
+    private final ColumnarFormat.ColumnBuffer scratch = new ColumnarFormat.ColumnBuffer(1024);
+    private int rowsInGroup;
+    private long rowCount;
+    private long previousSequence;
+    private long previousMicros;
+    private long previousPrice;
+
+    /**
+     * Creates the file and writes its header.
+     *
+     * @param file         the file to create; it must not exist
+     * @param rowGroupSize rows per row group
+     * @throws IOException if the file cannot be created
+     */
+    public ColumnarTradeWriter(Path file, int rowGroupSize) throws IOException {
+        if (rowGroupSize <= 0) {
+            throw new IllegalArgumentException("Row group size must be positive: " + rowGroupSize);
+        }
+        this.file = file;
+        this.rowGroupSize = rowGroupSize;
+        for (int i = 0; i < COLUMN_COUNT; i++) {
+            columns[i] = new ColumnarFormat.ColumnBuffer(1024);
+        }
+        for (int i = 0; i < dictionaries.length; i++) {
+            dictionaries[i] = new ColumnarFormat.Dictionary();
+            dictionaryIds[i] = new ColumnarFormat.ColumnBuffer(1024);
+        }
+        this.out = new DataOutputStream(new BufferedOutputStream(
+                Files.newOutputStream(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE), 64 * 1024));
+        ColumnarFormat.writeHeader(out, ColumnarFormat.KIND_TRADES);
+    }
+
+    /**
+     * Appends a row, writing out the row group once it is full.
+     *
+     * @param row the trade row
+     * @throws IOException if a full row group cannot be written
+     */
+    public void append(PersistRow row) throws IOException {
+        long sequence = row.getTradeSequence();
+        columns[0].putZigZag(sequence - previousSequence);
+        previousSequence = sequence;
+
+        Instant timestamp = row.getTradeTimestamp();
+        long micros = timestamp != null
+                ? Math.addExact(Math.multiplyExact(timestamp.getEpochSecond(), 1_000_000L), timestamp.getNano() / 1_000)
+                : ColumnarFormat.NULL_LONG;
+        columns[1].putZigZag(micros - previousMicros);
+        previousMicros = micros;
+
+        putDictionary(0, row.getFolder());
+        putDictionary(1, row.getInstrument());
+        putDictionary(2, row.getCounterparty());
+        putDictionary(3, row.getBook());
+        putDictionary(4, row.getSide());
+
+        long price = toFixedPoint(row.getPrice());
+        columns[7].putZigZag(price - previousPrice);
+        previousPrice = price;
+        if (price == EXACT_PRICE) {
+            columns[9].putDecimal(row.getPrice());
+        }
+
+        columns[8].putZigZag(row.getQuantity());
+
+        rowCount++;
+        if (++rowsInGroup == rowGroupSize) {
+            flushRowGroup();
+        }
+    }
+
+    /**
+     * Writes the buffered rows as a row group, if there are any.
+     *
+     * @throws IOException if the row group cannot be written
+     */
+    public void flushRowGroup() throws IOException {
+        if (rowsInGroup == 0) {
+            return;
+        }
+        for (int i = 0; i < dictionaries.length; i++) {
+            ColumnarFormat.ColumnBuffer column = columns[2 + i];
+            column.reset();
+            dictionaries[i].writeTo(column);
+            column.putBytes(dictionaryIds[i].array(), 0, dictionaryIds[i].length());
+        }
+        ColumnarFormat.writeRowGroup(out, rowsInGroup, columns, scratch, deflater);
+        for (ColumnarFormat.ColumnBuffer column : columns) {
+            column.reset();
+        }
+        for (int i = 0; i < dictionaries.length; i++) {
+            dictionaries[i].reset();
+            dictionaryIds[i].reset();
+        }
+        // Deltas restart in every row group so groups decode independently.
+        rowsInGroup = 0;
+        previousSequence = 0;
+        previousMicros = 0;
+        previousPrice = 0;
+    }
+
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    private void putDictionary(int index, String value) {
+        dictionaryIds[index].putVarLong(dictionaries[index].idOf(value));
+    }
+
+    /**
+     * Returns the price as a fixed-point long with {@link #PRICE_SCALE} decimals, or
+     * {@link #EXACT_PRICE} if that would lose digits or overflow. Never throws: it runs on the
+     * export handler's thread, where an exception would stop the export.
+     */
+    static long toFixedPoint(BigDecimal price) {
+        if (price == null) {
+            return ColumnarFormat.NULL_LONG;
+        }
+        if (price.scale() > PRICE_SCALE) {
+            price = price.stripTrailingZeros();
+            if (price.scale() > PRICE_SCALE) {
+                return EXACT_PRICE;
+            }
+        }
+        if (price.precision() - price.scale() > MAX_INTEGER_DIGITS) {
+            return EXACT_PRICE;
+        }
+        // Only adds zeros, so no rounding.
+        BigInteger unscaled = price.setScale(PRICE_SCALE).unscaledValue();
+        if (unscaled.bitLength() >= Long.SIZE) {
+            return EXACT_PRICE;
+        }
+        long value = unscaled.longValue();
+        // The two sentinels cannot be stored as prices themselves.
+        return value == ColumnarFormat.NULL_LONG ? EXACT_PRICE : value;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flushRowGroup();
+            out.close();
+        } finally {
+            deflater.end();
+        }
+    }
+}
@@ -0,0 +1,137 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+public class ColumnarTradeWriterTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testTradesRoundTripAcrossRowGroups() throws Exception {
+        Path file = tempDir.resolve("trades.pvsc");
+        String[] instruments = {"AAPL", "MSFT", "\u00c9DF"};
+        Instant start = Instant.parse("2026-10-19T13:00:00.000001Z");
+        List<String> expected = new ArrayList<>();
+        PersistRow row = new PersistRow();
+        try (ColumnarTradeWriter writer = new ColumnarTradeWriter(file, 100)) {
+            for (int i = 0; i < 250; i++) {
+                row.set(1000 + i, start.plusNanos(i * 1_500_000L), "F", instruments[i % 3], "CP" + (i % 7), "B" + (i % 2),
+                        i % 4 == 0 ? "SELL" : "BUY", new BigDecimal("100.25").add(BigDecimal.valueOf(i, 2)), 10L * i - 500);
+                writer.append(row);
+                expected.add(describe(row));
+            }
+            row.set(2000, null, null, null, null, null, null, null, 0);
+            writer.append(row);
+            expected.add(describe(row));
+        }
+
+        List<String> actual = new ArrayList<>();
+        long rows = ColumnarFileReader.readTrades(file, r -> actual.add(describe(r)));
+        assertEquals(251, rows);
+        assertEquals(expected, actual, "Trades should decode to the same values in the same order");
+        assertTrue(Files.size(file) < 251 * 20, "Dictionary and delta encoding should keep rows small: " + Files.size(file));
+    }
+
+    @Test
+    public void testPricesAreFixedPointWhenTheyFit() throws Exception {
+        Path file = tempDir.resolve("prices.pvsc");
+        PersistRow row = new PersistRow();
+        try (ColumnarTradeWriter writer = new ColumnarTradeWriter(file, 10)) {
+            row.set(1, Instant.EPOCH, "F", "I", "C", "B", "BUY", new BigDecimal("1.12345678"), 1);
+            writer.append(row);
+            row.set(2, Instant.EPOCH, "F", "I", "C", "B", "BUY", new BigDecimal("2.50000000000"), 1);
+            writer.append(row);
+        }
+        List<BigDecimal> prices = new ArrayList<>();
+        ColumnarFileReader.readTrades(file, r -> prices.add(r.getPrice()));
+        assertEquals(List.of(new BigDecimal("1.12345678"), new BigDecimal("2.50000000")), prices);
+        assertEquals(250_000_000L, ColumnarTradeWriter.toFixedPoint(new BigDecimal("2.5")));
+    }
+
+    @Test
+    public void testPricesThatDoNotFitAreStoredExactly() throws Exception {
+        List<BigDecimal> written = List.of(
+                new BigDecimal("1.123456789"),             // more than PRICE_SCALE decimals
+                new BigDecimal("100.5"),
+                new BigDecimal("92233720368.54775808"),    // one unit past Long.MAX_VALUE
+                new BigDecimal("-92233720368.54775808"),   // Long.MIN_VALUE, the null marker
+                new BigDecimal("-92233720368.54775807"),   // the exact price marker
+                new BigDecimal("1E+30"),
+                new BigDecimal("0.1"));
+        for (BigDecimal price : written.subList(2, 6)) {
+            assertEquals(ColumnarTradeWriter.EXACT_PRICE, ColumnarTradeWriter.toFixedPoint(price), price.toString());
+        }
+        Path file = tempDir.resolve("exact.pvsc");
+        PersistRow row = new PersistRow();
+        try (ColumnarTradeWriter writer = new ColumnarTradeWriter(file, 4)) {
+            for (int i = 0; i < written.size(); i++) {
+                row.set(i, Instant.EPOCH, "F", "I", "C", "B", "BUY", written.get(i), 1);
+                writer.append(row);
+            }
+        }
+        List<BigDecimal> prices = new ArrayList<>();
+        ColumnarFileReader.readTrades(file, r -> prices.add(r.getPrice()));
+        assertEquals(written.size(), prices.size());
+        for (int i = 0; i < written.size(); i++) {
+            assertEquals(0, written.get(i).compareTo(prices.get(i)), "Price should not be rounded: " + written.get(i));
+        }
+    }
+
+    @Test
+    public void testAggregationDumpRoundTrip() throws Exception {
+        Map<AggregationKey, AggregationStats> state = new LinkedHashMap<>();
+        for (int i = 0; i < 5; i++) {
+            AggregationStats stats = new AggregationStats();
+            stats.addBuyTrade(100 + i, new BigDecimal("10.5"));
+            stats.addSellTrade(40, new BigDecimal("99999999999999999999.125"));
+            state.put(new AggregationKey("B" + (i % 2), "I" + i, i == 0 ? null : "CP"), stats);
+        }
+        Path file = tempDir.resolve("aggregation-BOOK.pvsc");
+        assertEquals(5, ColumnarAggregationWriter.write(state, file, 2));
+
+        List<AggregationUpdateRecord> records = ColumnarFileReader.readAggregates(file);
+        assertEquals(5, records.size());
+        int i = 0;
+        for (Map.Entry<AggregationKey, AggregationStats> entry : state.entrySet()) {
+            AggregationUpdateRecord record = records.get(i++);
+            AggregationStats stats = entry.getValue();
+            assertEquals(entry.getKey(), record.getKey());
+            assertEquals(stats.getTotalBuyQty(), record.getTotalBuyQty());
+            assertEquals(stats.getTotalBuyNotional(), record.getTotalBuyNotional());
+            assertEquals(stats.getAvgBuyPrice(), record.getAvgBuyPrice());
+            assertEquals(stats.getTotalSellQty(), record.getTotalSellQty());
+            assertEquals(stats.getTotalSellNotional(), record.getTotalSellNotional(), "Large notionals should be stored exactly");
+            assertEquals(stats.getAvgSellPrice(), record.getAvgSellPrice());
+            assertEquals(stats.getLastUpdated(), record.getLastUpdated());
+        }
+    }
+
+    @Test
+    public void testReaderRejectsWrongKind() throws Exception {
+        Path file = tempDir.resolve("aggregates.pvsc");
+        ColumnarAggregationWriter.write(new LinkedHashMap<>(), file, 10);
+        assertThrows(IOException.class, () -> ColumnarFileReader.readTrades(file, r -> { }));
+        assertTrue(ColumnarFileReader.readAggregates(file).isEmpty());
+    }
+
+    private static String describe(PersistRow row) {
+        return row.getTradeSequence() + "|" + row.getTradeTimestamp() + "|" + row.getFolder() + "|" + row.getInstrument() + "|" +
+               row.getCounterparty() + "|" + row.getBook() + "|" + row.getSide() + "|" +
+               (row.getPrice() != null ? row.getPrice().stripTrailingZeros().toPlainString() : null) + "|" + row.getQuantity();
+    }
+}
@@ -0,0 +1,102 @@
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Outcome of {@link PipelineTopology#shutdown(long, TimeUnit)}: the ring cursors the pipeline
+ * had to reach, how long draining took and anything that did not drain before the timeout.
+ *
+ * A clean report means every trade published before ingress stopped went through every handler,
+ * every aggregation update reached the sink and every batched sink was flushed and closed.
+ */
+public class DrainReport {
+
+    private long tradeCursor = -1;
+    private long updateCursor = -1;
+    private long persistedSequence = -1;
+    private long elapsedNanos;
+    private final List<String> undrained = new ArrayList<>();
+
+    void setTradeCursor(long tradeCursor) {
+        this.tradeCursor = tradeCursor;
+    }
+
+    void setUpdateCursor(long updateCursor) {
+        this.updateCursor = updateCursor;
+    }
+
+    void setPersistedSequence(long persistedSequence) {
+        this.persistedSequence = persistedSequence;
+    }
+
+    void setElapsedNanos(long elapsedNanos) {
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * Records a component that did not finish draining.
+     */
+    void undrained(String detail) {
+        undrained.add(detail);
+    }
+
+    /**
+     * Returns true if nothing was left behind.
+     */
+    public boolean isClean() {
+        return undrained.isEmpty();
+    }
+
+    /**
+     * Returns the last trade sequence published before the trade handlers were stopped, or -1 if none.
+     */
+    public long getTradeCursor() {
+        return tradeCursor;
+    }
+
+    /**
+     * Returns the last update sequence published, or -1 if there is no update ring.
+     */
+    public long getUpdateCursor() {
+        return updateCursor;
+    }
+
+    /**
+     * Returns the asynchronous persistence watermark at shutdown, or -1 if not persisting asynchronously.
+     */
+    public long getPersistedSequence() {
+        return persistedSequence;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * Returns a description of each component left undrained, empty for a clean drain.
+     */
+    public List<String> getUndrained() {
+        return Collections.unmodifiableList(undrained);
+    }
+
+    /**
+     * Prints the report.
+     *
+     * @param out where to print
+     */
+    public void print(PrintStream out) {
+        out.println(this);
+        for (String detail : undrained) {
+            out.println("  undrained: " + detail);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Drain " + (isClean() ? "complete" : "INCOMPLETE") + " in " + TimeUnit.NANOSECONDS.toMillis(elapsedNanos) +
+               " ms: tradeCursor=" + tradeCursor + ", updateCursor=" + updateCursor +
+               ", persistedSequence=" + persistedSequence + ", undrained=" + undrained.size();
+    }
+}
@@ -0,0 +1,18 @@
+/**
+ * Which threads run the I/O-bound stages of the pipeline.
+ *
+ * The Disruptor handlers that do CPU work (deserialization, aggregation) always get a dedicated
+ * platform thread each; the mode only decides what the blocking sinks run on.
+ */
+public enum ExecutionMode {
+    /**
+     * Every stage runs on platform threads. Blocking JDBC and transport calls hold their thread.
+     */
+    PLATFORM,
+    /**
+     * JDBC writers and transport writes run on virtual threads, one per connection or in-flight
+     * batch, so blocking I/O does not tie up a platform thread. Falls back to platform threads on
+     * a JVM without virtual threads.
+     */
+    VIRTUAL
+}
@@ -0,0 +1,92 @@
+import com.lmax.disruptor.AlertException;
+import com.lmax.disruptor.Sequence;
+import com.lmax.disruptor.SequenceBarrier;
+import com.lmax.disruptor.TimeoutException;
+import com.lmax.disruptor.WaitStrategy;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The SLEEPING, YIELDING and BUSY_SPIN wait strategies with an idle timeout. When nothing new has
+ * been published for the timeout, waitFor throws TimeoutException; the BatchEventProcessor then
+ * calls onTimeout on a handler that implements TimeoutHandler and goes back to waiting.
+ *
+ * Disruptor's own spinning strategies never time out. For BLOCKING, Disruptor's
+ * TimeoutBlockingWaitStrategy does the same job.
+ */
+public final class IdleTimeoutWaitStrategy implements WaitStrategy {
+
+    // Spinning reads the clock only every this many tries (a power of two).
+    private static final int CLOCK_CHECK_INTERVAL = 1024;
+    // The idle steps of Disruptor's YieldingWaitStrategy and SleepingWaitStrategy.
+    private static final int SPIN_TRIES = 100;
+    private static final int YIELD_TRIES = 100;
+    private static final long SLEEP_NANOS = 100;
+
+    private final String idleMode;
+    private final long timeoutNanos;
+
+    /**
+     * @param idleMode SLEEPING, YIELDING or BUSY_SPIN
+     * @param timeout  how long waitFor waits for a new event before timing out
+     * @param unit     unit of the timeout
+     */
+    public IdleTimeoutWaitStrategy(String idleMode, long timeout, TimeUnit unit) {
+        switch (idleMode) {
+            case "SLEEPING":
+            case "YIELDING":
+            case "BUSY_SPIN":
+                break;
+            default:
+                throw new IllegalArgumentException("Not a spinning wait strategy: " + idleMode);
+        }
+        if (timeout <= 0) {
+            throw new IllegalArgumentException("Timeout must be positive: " + timeout);
+        }
+        this.idleMode = idleMode;
+        this.timeoutNanos = unit.toNanos(timeout);
+    }
+
+    @Override
+    public long waitFor(long sequence, Sequence cursor, Sequence dependentSequence, SequenceBarrier barrier)
+            throws AlertException, InterruptedException, TimeoutException {
+        long available;
+        long deadline = 0;
+        int tries = 0;
+        while ((available = dependentSequence.get()) < sequence) {
+            barrier.checkAlert();
+            if (tries == 0) {
+                // Only read the clock once there is actually something to wait for.
+                deadline = System.nanoTime() + timeoutNanos;
+            } else if ((sleeping(tries) || (tries & (CLOCK_CHECK_INTERVAL - 1)) == 0)
+                       && System.nanoTime() - deadline >= 0) {
+                throw TimeoutException.INSTANCE;
+            }
+            idle(tries);
+            if (tries < Integer.MAX_VALUE) {
+                tries++;
+            }
+        }
+        return available;
+    }
+
+    private boolean sleeping(int tries) {
+        return "SLEEPING".equals(idleMode) && tries >= SPIN_TRIES + YIELD_TRIES;
+    }
+
+    private void idle(int tries) {
+        if ("BUSY_SPIN".equals(idleMode) || tries < SPIN_TRIES) {
+            Thread.onSpinWait();
+        } else if ("YIELDING".equals(idleMode) || tries < SPIN_TRIES + YIELD_TRIES) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(SLEEP_NANOS);
+        }
+    }
+
+    @Override
+    public void signalAllWhenBlocking() {
+        // Nothing blocks.
+    }
+}
@@ -0,0 +1,98 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import com.lmax.disruptor.AlertException;
+import com.lmax.disruptor.Sequence;
+import com.lmax.disruptor.SequenceBarrier;
+import com.lmax.disruptor.TimeoutException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+public class IdleTimeoutWaitStrategyTest {
+
+    @Test
+    public void testReturnsAvailableSequenceWithoutWaiting() throws Exception {
+        Sequence published = new Sequence();
+        published.set(41);
+        IdleTimeoutWaitStrategy strategy = new IdleTimeoutWaitStrategy("BUSY_SPIN", 1, TimeUnit.HOURS);
+
+        assertEquals(41, strategy.waitFor(40, published, published, new TestBarrier()));
+    }
+
+    @Test
+    public void testTimesOutWhenNothingArrives() {
+        for (String mode : new String[] {"SLEEPING", "YIELDING", "BUSY_SPIN"}) {
+            IdleTimeoutWaitStrategy strategy = new IdleTimeoutWaitStrategy(mode, 20, TimeUnit.MILLISECONDS);
+            Sequence published = new Sequence();
+            long start = System.nanoTime();
+
+            assertThrows(TimeoutException.class, () -> strategy.waitFor(0, published, published, new TestBarrier()), mode);
+
+            assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(20), mode);
+        }
+    }
+
+    @Test
+    public void testReturnsOncePublishedAndStopsOnAlert() throws Exception {
+        IdleTimeoutWaitStrategy strategy = new IdleTimeoutWaitStrategy("SLEEPING", 10, TimeUnit.SECONDS);
+        Sequence published = new Sequence();
+        Thread publisher = new Thread(() -> {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(20));
+            published.set(0);
+        });
+        publisher.start();
+
+        assertEquals(0, strategy.waitFor(0, published, published, new TestBarrier()));
+        publisher.join();
+
+        TestBarrier alerted = new TestBarrier();
+        alerted.alert();
+        assertThrows(AlertException.class, () -> strategy.waitFor(1, published, published, alerted));
+    }
+
+    @Test
+    public void testRejectsBlockingAndNonPositiveTimeout() {
+        assertThrows(IllegalArgumentException.class, () -> new IdleTimeoutWaitStrategy("BLOCKING", 1, TimeUnit.SECONDS));
+        assertThrows(IllegalArgumentException.class, () -> new IdleTimeoutWaitStrategy("YIELDING", 0, TimeUnit.SECONDS));
+    }
+
+    private static final class TestBarrier implements SequenceBarrier {
+        private volatile boolean alerted;
+
+        @Override
+        public long waitFor(long sequence) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public long getCursor() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean isAlerted() {
+            return alerted;
+        }
+
+        @Override
+        public void alert() {
+            alerted = true;
+        }
+
+        @Override
+        public void clearAlert() {
+            alerted = false;
+        }
+
+        @Override
+        public void checkAlert() throws AlertException {
+            if (alerted) {
+                throw AlertException.INSTANCE;
+            }
+        }
+    }
+}
@@ -0,0 +1,60 @@
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Local stand-in consumer for tests: keeps every batch it receives in memory and decodes
+ * them on demand.
+ */
+public class InMemoryUpdateTransport implements UpdateTransport {
+
+    private ByteBuffer received = ByteBuffer.allocate(4096);
+    private int batchCount;
+    private boolean closed;
+
+    @Override
+    public synchronized void write(ByteBuffer batch) {
+        if (closed) {
+            throw new IllegalStateException("Transport is closed.");
+        }
+        if (received.remaining() < batch.remaining()) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(received.capacity() * 2, received.position() + batch.remaining()));
+            received.flip();
+            larger.put(received);
+            received = larger;
+        }
+        received.put(batch);
+        batchCount++;
+    }
+
+    /**
+     * Decodes every update received so far, in order.
+     *
+     * @return the decoded updates
+     */
+    public synchronized List<AggregationUpdateRecord> decodeAll() {
+        ByteBuffer view = received.duplicate();
+        view.flip();
+        List<AggregationUpdateRecord> records = new ArrayList<>();
+        while (view.hasRemaining()) {
+            records.add(AggregationUpdateCodec.decode(view, new AggregationUpdateRecord()));
+        }
+        return records;
+    }
+
+    /**
+     * Returns the number of write calls, i.e. batches, received.
+     */
+    public synchronized int getBatchCount() {
+        return batchCount;
+    }
+
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+    }
+}
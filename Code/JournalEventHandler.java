@@ -0,0 +1,80 @@
+import com.lmax.disruptor.EventHandler;
+import com.lmax.disruptor.LifeCycleAware;
+
+import java.io.IOException;
+
+/**
+ * Appends each TradeEvent's raw proto bytes to the {@link TradeJournal} and group-commits the
+ * journal once per Disruptor batch.
+ *
+ * Nothing after this handler in the chain sees a trade before it has been journaled, so a
+ * trade acknowledged upstream can always be recovered by replaying the journal.
+ */
+public class JournalEventHandler implements EventHandler<TradeEvent>, LifeCycleAware {
+
+    private final TradeJournal journal;
+    private long lastJournalSequence = -1;
+    // Trades without proto bytes; read by the persist checkpoint from the persist threads.
+    private volatile long skipped;
+
+    public JournalEventHandler(TradeJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Called by the Disruptor for each TradeEvent.
+     *
+     * @param event      The trade event.
+     * @param sequence   The sequence number of the event in the ring buffer.
+     * @param endOfBatch Indicates if this is the last event in the batch; triggers the fsync.
+     */
+    @Override
+    public void onEvent(TradeEvent event, long sequence, boolean endOfBatch) throws Exception {
+        byte[] protoBytes = event.getProtoBytes();
+        if (protoBytes != null && protoBytes.length > 0) {
+            lastJournalSequence = journal.append(protoBytes);
+        } else {
+            skipped++;
+        }
+        if (endOfBatch) {
+            journal.commit();
+        }
+    }
+
+    /**
+     * Returns the journal sequence of the last trade appended, or -1 if none.
+     */
+    public long getLastJournalSequence() {
+        return lastJournalSequence;
+    }
+
+    /**
+     * Returns the number of trades passed on without a journal record because they carried no
+     * proto bytes.
+     */
+    public long getSkippedCount() {
+        return skipped;
+    }
+
+    /**
+     * Returns the journal sequence the next appended trade will receive.
+     */
+    public long getNextJournalSequence() {
+        return journal.getNextSequence();
+    }
+
+    @Override
+    public void onStart() {
+        System.out.println("JournalEventHandler started at journal sequence " + journal.getNextSequence() + ".");
+    }
+
+    @Override
+    public void onShutdown() {
+        System.out.println("JournalEventHandler shutting down.");
+        try {
+            journal.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,29 @@
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * TradeSource over the records of a {@link TradeJournal}.
+ */
+public class JournalTradeSource implements TradeSource {
+
+    private final TradeJournalReader reader;
+
+    /**
+     * @param journalDirectory the journal to read
+     * @param fromSequence     first journal sequence to return
+     * @throws IOException if the journal cannot be opened
+     */
+    public JournalTradeSource(Path journalDirectory, long fromSequence) throws IOException {
+        this.reader = new TradeJournalReader(journalDirectory, fromSequence);
+    }
+
+    @Override
+    public byte[] next() throws IOException {
+        return reader.next() ? reader.copyPayload() : null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
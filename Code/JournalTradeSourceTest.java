@@ -0,0 +1,61 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+public class JournalTradeSourceTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testReturnsEveryPayloadThenNull() throws Exception {
+        journal(5);
+
+        try (JournalTradeSource source = new JournalTradeSource(tempDir, 0)) {
+            for (int i = 0; i < 5; i++) {
+                assertEquals("trade_proto_" + i, new String(source.next(), StandardCharsets.UTF_8));
+            }
+            assertNull(source.next());
+            assertNull(source.next(), "An exhausted source stays exhausted");
+        }
+    }
+
+    @Test
+    public void testStartsFromTheGivenSequenceAcrossSegments() throws Exception {
+        journal(100);
+
+        try (JournalTradeSource source = new JournalTradeSource(tempDir, 60)) {
+            for (int i = 60; i < 100; i++) {
+                assertEquals("trade_proto_" + i, new String(source.next(), StandardCharsets.UTF_8));
+            }
+            assertNull(source.next());
+        }
+    }
+
+    @Test
+    public void testPayloadsAreCopies() throws Exception {
+        journal(2);
+
+        try (JournalTradeSource source = new JournalTradeSource(tempDir, 0)) {
+            byte[] first = source.next();
+            source.next();
+            assertEquals("trade_proto_0", new String(first, StandardCharsets.UTF_8), "Reading on must not change a returned payload");
+        }
+    }
+
+    private void journal(int count) throws Exception {
+        try (TradeJournal journal = new TradeJournal(tempDir, 256)) {
+            for (int i = 0; i < count; i++) {
+                journal.append(("trade_proto_" + i).getBytes(StandardCharsets.UTF_8));
+            }
+            journal.commit();
+        }
+    }
+}
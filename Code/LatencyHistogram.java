@@ -0,0 +1,106 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Log-linear latency histogram with 16 sub-buckets per power of two, so any recorded value is
+ * reported to within 1/16 (about 6%) of its true value, from nanoseconds up to centuries.
+ *
+ * One thread records; any thread may take a {@link #snapshot()} at any time. Recording is an
+ * index computation and an ordered store, with no locks or CAS. Interval figures are the
+ * difference of two snapshots.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    /**
+     * Records one value. Must only be called from a single thread.
+     *
+     * @param nanos the latency; negative values count as 0
+     */
+    public void record(long nanos) {
+        int index = indexOf(Math.max(0, nanos));
+        counts.lazySet(index, counts.get(index) + 1);
+    }
+
+    /**
+     * Returns a copy of the bucket counts.
+     */
+    public long[] snapshot() {
+        long[] copy = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+        }
+        return copy;
+    }
+
+    static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * Returns the largest value that falls into the given bucket.
+     */
+    static long upperBoundOf(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long subBucket = index % SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        return ((SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS)) + width - 1;
+    }
+
+    /**
+     * Returns the number of values in a snapshot.
+     */
+    public static long total(long[] snapshot) {
+        long total = 0;
+        for (long count : snapshot) {
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * Returns the value at the given fraction of a snapshot, as the upper bound of its bucket.
+     *
+     * @param snapshot bucket counts from {@link #snapshot()} or {@link #minus}
+     * @param fraction e.g. 0.99 for the 99th percentile, 1.0 for the maximum
+     * @return the latency in the unit recorded, or 0 if the snapshot is empty
+     */
+    public static long percentile(long[] snapshot, double fraction) {
+        long total = total(snapshot);
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(total * fraction));
+        long seen = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return upperBoundOf(i);
+            }
+        }
+        return upperBoundOf(snapshot.length - 1);
+    }
+
+    /**
+     * Returns the counts recorded between two snapshots.
+     */
+    public static long[] minus(long[] later, long[] earlier) {
+        long[] difference = new long[later.length];
+        for (int i = 0; i < later.length; i++) {
+            difference[i] = later[i] - earlier[i];
+        }
+        return difference;
+    }
+}
@@ -0,0 +1,42 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+public class LatencyHistogramTest {
+
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+        long[] snapshot = histogram.snapshot();
+
+        assertEquals(1000, LatencyHistogram.total(snapshot));
+        assertWithinBucket(500_000, LatencyHistogram.percentile(snapshot, 0.50));
+        assertWithinBucket(990_000, LatencyHistogram.percentile(snapshot, 0.99));
+        assertWithinBucket(1_000_000, LatencyHistogram.percentile(snapshot, 1.0));
+
+        histogram.record(5);
+        long[] interval = LatencyHistogram.minus(histogram.snapshot(), snapshot);
+        assertEquals(1, LatencyHistogram.total(interval));
+        assertEquals(5, LatencyHistogram.percentile(interval, 1.0));
+        assertEquals(0, LatencyHistogram.percentile(new long[snapshot.length], 0.5));
+    }
+
+    @Test
+    public void testBucketsCoverEveryValue() {
+        for (long value : new long[] {0, 15, 16, 17, 1023, 1024, 123_456_789, Long.MAX_VALUE}) {
+            int index = LatencyHistogram.indexOf(value);
+            assertTrue(LatencyHistogram.upperBoundOf(index) >= value, "value " + value);
+            assertTrue(index == 0 || LatencyHistogram.upperBoundOf(index - 1) < value, "value " + value);
+        }
+    }
+
+    private static void assertWithinBucket(long expected, long actual) {
+        assertTrue(actual >= expected && actual <= expected + expected / 16, "expected ~" + expected + " but was " + actual);
+    }
+}
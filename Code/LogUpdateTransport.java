@@ -0,0 +1,33 @@
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+
+/**
+ * UpdateTransport that decodes each frame and prints it, one line per update, as the original
+ * update publisher did. Meant for development and for the default configuration, where no
+ * downstream consumer is set up; every update costs a decode and a println.
+ */
+public class LogUpdateTransport implements UpdateTransport {
+
+    private final PrintStream out;
+    private final AggregationUpdateRecord record = new AggregationUpdateRecord();
+
+    /**
+     * @param out where updates are printed; not closed by this transport
+     */
+    public LogUpdateTransport(PrintStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public void write(ByteBuffer batch) {
+        while (batch.hasRemaining()) {
+            AggregationUpdateCodec.decode(batch, record);
+            out.println("Publishing aggregation update: " + record);
+        }
+    }
+
+    @Override
+    public void close() {
+        out.flush();
+    }
+}
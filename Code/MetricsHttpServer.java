@@ -0,0 +1,73 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Serves a {@link MetricsRegistry} on GET /metrics in the Prometheus text format, using the
+ * JDK's built-in HTTP server. Requests are handled on the server's own dispatcher thread, which
+ * is not a daemon thread: once started, the server keeps the JVM alive until {@link #close()}.
+ *
+ * The server binds to the loopback address only; put a scraper or reverse proxy on the same
+ * host to reach it from elsewhere.
+ */
+public class MetricsHttpServer implements Closeable {
+
+    private final MetricsRegistry registry;
+    private final HttpServer server;
+
+    /**
+     * Binds the server; call {@link #start()} to begin serving.
+     *
+     * @param registry the metrics to serve
+     * @param port     loopback port to listen on, or 0 for any free port
+     * @throws IOException if the port cannot be bound
+     */
+    public MetricsHttpServer(MetricsRegistry registry, int port) throws IOException {
+        this.registry = registry;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext("/metrics", this::handle);
+        server.setExecutor(null);
+    }
+
+    public void start() {
+        server.start();
+        System.out.println("Metrics available at http://" + server.getAddress().getHostString() + ":" + getPort() + "/metrics");
+    }
+
+    /**
+     * Returns the port the server is bound to.
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            StringBuilder body = new StringBuilder(4096);
+            registry.writePrometheus(body);
+            byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+}
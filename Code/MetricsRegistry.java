@@ -0,0 +1,111 @@
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Named pipeline metrics, read on demand by {@link MetricsHttpServer} and {@link MetricsReporter}.
+ *
+ * Nothing is recorded through the registry on the event path. Handlers keep their own
+ * {@link LongAdder}s, updated per batch or per exceptional event, and the registry only holds
+ * suppliers that read them, the Disruptor sequences and the map sizes when a snapshot is taken.
+ * Per-stage throughput and lag therefore cost the handlers nothing: they come from the sequence
+ * each handler already publishes.
+ *
+ * Counters only ever increase, so rates can be derived from two snapshots; gauges go up and down.
+ * Values read from handler state on another thread are approximate.
+ */
+public class MetricsRegistry {
+
+    /** Whether a metric is monotonic (counter) or a point-in-time value (gauge). */
+    public enum Type {
+        COUNTER, GAUGE
+    }
+
+    private final ConcurrentMap<String, Metric> metrics = new ConcurrentHashMap<>();
+
+    /**
+     * Registers a counter read from elsewhere, e.g. a handler's {@link LongAdder} or a Disruptor sequence.
+     *
+     * @param name     the metric name
+     * @param supplier reads the current, never decreasing value
+     */
+    public void counter(String name, LongSupplier supplier) {
+        register(name, new Metric(Type.COUNTER, supplier));
+    }
+
+    /**
+     * Registers a gauge.
+     *
+     * @param name     the metric name
+     * @param supplier reads the current value
+     */
+    public void gauge(String name, LongSupplier supplier) {
+        register(name, new Metric(Type.GAUGE, supplier));
+    }
+
+    private void register(String name, Metric metric) {
+        if (metrics.putIfAbsent(name, metric) != null) {
+            throw new IllegalArgumentException("Metric " + name + " is already registered");
+        }
+    }
+
+    /**
+     * Returns the type of the named metric, or null if there is none.
+     */
+    public Type typeOf(String name) {
+        Metric metric = metrics.get(name);
+        return metric != null ? metric.type : null;
+    }
+
+    /**
+     * Reads every metric.
+     *
+     * @return metric name to current value, sorted by name
+     */
+    public SortedMap<String, Long> snapshot() {
+        SortedMap<String, Long> snapshot = new TreeMap<>();
+        for (Map.Entry<String, Metric> entry : metrics.entrySet()) {
+            snapshot.put(entry.getKey(), entry.getValue().supplier.getAsLong());
+        }
+        return snapshot;
+    }
+
+    /**
+     * Appends every metric in the Prometheus text exposition format. Names get a pvs_ prefix and
+     * characters other than letters, digits and underscores become underscores, so
+     * trade.persist.lag is exported as pvs_trade_persist_lag.
+     *
+     * @param out where to append
+     */
+    public void writePrometheus(StringBuilder out) {
+        for (Map.Entry<String, Long> entry : snapshot().entrySet()) {
+            String name = prometheusName(entry.getKey());
+            out.append("# TYPE ").append(name).append(' ')
+               .append(typeOf(entry.getKey()) == Type.COUNTER ? "counter" : "gauge").append('\n');
+            out.append(name).append(' ').append(entry.getValue()).append('\n');
+        }
+    }
+
+    static String prometheusName(String name) {
+        StringBuilder sb = new StringBuilder("pvs_");
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            sb.append((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') ? c : '_');
+        }
+        return sb.toString();
+    }
+
+    private static final class Metric {
+        final Type type;
+        final LongSupplier supplier;
+
+        Metric(Type type, LongSupplier supplier) {
+            this.type = type;
+            this.supplier = supplier;
+        }
+    }
+}
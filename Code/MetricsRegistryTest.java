@@ -0,0 +1,98 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+public class MetricsRegistryTest {
+
+    @Test
+    public void testCountersAndGaugesAreReadOnSnapshot() {
+        MetricsRegistry registry = new MetricsRegistry();
+        LongAdder rows = new LongAdder();
+        registry.counter("persist.rows.written", rows::sum);
+        AtomicLong lag = new AtomicLong(7);
+        registry.gauge("trade.persist.lag", lag::get);
+
+        rows.add(1000);
+        lag.set(3);
+
+        SortedMap<String, Long> snapshot = registry.snapshot();
+        assertEquals(Long.valueOf(1000), snapshot.get("persist.rows.written"));
+        assertEquals(Long.valueOf(3), snapshot.get("trade.persist.lag"));
+        assertEquals(MetricsRegistry.Type.COUNTER, registry.typeOf("persist.rows.written"));
+        assertEquals(MetricsRegistry.Type.GAUGE, registry.typeOf("trade.persist.lag"));
+    }
+
+    @Test
+    public void testDuplicateNamesAreRejected() {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.gauge("update.lag", () -> 0);
+
+        assertThrows(IllegalArgumentException.class, () -> registry.gauge("update.lag", () -> 1));
+        assertThrows(IllegalArgumentException.class, () -> registry.counter("update.lag", () -> 1));
+    }
+
+    @Test
+    public void testPrometheusFormat() {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.counter("trade.aggregation:BOOK.processed", () -> 42);
+        registry.gauge("aggregation.BOOK-0of2.keys", () -> 5);
+
+        StringBuilder out = new StringBuilder();
+        registry.writePrometheus(out);
+
+        assertEquals("# TYPE pvs_aggregation_BOOK_0of2_keys gauge\n" +
+                     "pvs_aggregation_BOOK_0of2_keys 5\n" +
+                     "# TYPE pvs_trade_aggregation_BOOK_processed counter\n" +
+                     "pvs_trade_aggregation_BOOK_processed 42\n", out.toString());
+    }
+
+    @Test
+    public void testReporterPrintsRatesForCounters() {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.counter("trade.published", () -> 0);
+        registry.gauge("trade.ring.remainingCapacity", () -> 0);
+        MetricsReporter reporter = new MetricsReporter(registry, new PrintStream(new ByteArrayOutputStream()));
+
+        SortedMap<String, Long> before = new TreeMap<>();
+        before.put("trade.published", 1000L);
+        before.put("trade.ring.remainingCapacity", 1024L);
+        SortedMap<String, Long> after = new TreeMap<>();
+        after.put("trade.published", 3000L);
+        after.put("trade.ring.remainingCapacity", 512L);
+
+        assertEquals("Metrics: trade.published=3000(+1000/s) trade.ring.remainingCapacity=512",
+                     reporter.format(after, before, TimeUnit.SECONDS.toNanos(2)));
+        reporter.close();
+    }
+
+    @Test
+    public void testHttpEndpointServesMetrics() throws Exception {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.counter("trade.published", () -> 12);
+        try (MetricsHttpServer server = new MetricsHttpServer(registry, 0)) {
+            server.start();
+            HttpURLConnection connection =
+                    (HttpURLConnection) new URL("http://127.0.0.1:" + server.getPort() + "/metrics").openConnection();
+            assertEquals(200, connection.getResponseCode());
+            try (InputStream in = connection.getInputStream()) {
+                String body = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+                assertTrue(body.contains("pvs_trade_published 12\n"), body);
+            }
+        }
+    }
+}
@@ -0,0 +1,77 @@
+import java.io.PrintStream;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Prints one line with every metric at a fixed interval. Counters are followed by their rate
+ * since the previous line, e.g. trade.persist.processed=120000(+12000/s).
+ */
+public class MetricsReporter implements AutoCloseable {
+
+    private final MetricsRegistry registry;
+    private final PrintStream out;
+    private final ScheduledExecutorService scheduler;
+    private SortedMap<String, Long> previous;
+    private long previousNanos;
+
+    /**
+     * @param registry the metrics to print
+     * @param out      where to print
+     */
+    public MetricsReporter(MetricsRegistry registry, PrintStream out) {
+        this.registry = registry;
+        this.out = out;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "pvs-metrics");
+            // Never keep the JVM alive just to print metrics.
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts printing.
+     *
+     * @param interval time between lines
+     * @param unit     the unit of interval
+     */
+    public void start(long interval, TimeUnit unit) {
+        previous = registry.snapshot();
+        previousNanos = System.nanoTime();
+        scheduler.scheduleAtFixedRate(this::report, interval, interval, unit);
+    }
+
+    /**
+     * Prints a line now.
+     */
+    public synchronized void report() {
+        SortedMap<String, Long> current = registry.snapshot();
+        long now = System.nanoTime();
+        out.println(format(current, previous, now - previousNanos));
+        previous = current;
+        previousNanos = now;
+    }
+
+    /**
+     * Formats one metrics line. Counters that also appear in the previous snapshot get a rate.
+     */
+    String format(SortedMap<String, Long> current, SortedMap<String, Long> previous, long elapsedNanos) {
+        StringBuilder line = new StringBuilder("Metrics:");
+        for (Map.Entry<String, Long> entry : current.entrySet()) {
+            line.append(' ').append(entry.getKey()).append('=').append(entry.getValue());
+            Long before = previous != null ? previous.get(entry.getKey()) : null;
+            if (before != null && elapsedNanos > 0 && registry.typeOf(entry.getKey()) == MetricsRegistry.Type.COUNTER) {
+                line.append("(+").append(Math.round((entry.getValue() - before) * 1e9 / elapsedNanos)).append("/s)");
+            }
+        }
+        return line.toString();
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+}
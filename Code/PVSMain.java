@@ -1,77 +1,97 @@
 import com.lmax.disruptor.*;
-import com.lmax.disruptor.dsl.Disruptor;
-import com.lmax.disruptor.dsl.ProducerType;
 
-import java.math.BigDecimal;
-import java.sql.Connection;
-import java.sql.DriverManager;
-import java.sql.PreparedStatement;
-import java.sql.SQLException;
-import java.time.Instant;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
 
 // Main application class
 public class TradeProcessingApplication {
 
     public static void main(String[] args) throws Exception {
-        // Create an executor for the disruptors.
-        ExecutorService executor = Executors.newCachedThreadPool();
+        List<String> argList = Arrays.asList(args);
 
-        // --- Set up the secondary disruptor for publishing aggregation updates ---
-        int updateBufferSize = 256;
-        Disruptor<AggregationUpdateEvent> updateDisruptor =
-                new Disruptor<>(AggregationUpdateEvent::new, updateBufferSize, executor, ProducerType.SINGLE, new BlockingWaitStrategy());
-        AggregationUpdatePublishHandler updatePublishHandler = new AggregationUpdatePublishHandler();
-        updateDisruptor.handleEventsWith(updatePublishHandler);
-        updateDisruptor.start();
-
-        // --- Set up the main disruptor for processing trade events ---
-        int bufferSize = 1024;
-        Disruptor<TradeEvent> disruptor =
-                new Disruptor<>(TradeEvent::new, bufferSize, executor, ProducerType.SINGLE, new BlockingWaitStrategy());
+        // "--backfill journal|questdb <path> [output-dir] [--bulk]" rebuilds aggregation state offline and exits.
+        // --bulk aggregates columnar batches on one thread instead of running the trade ring.
+        if (args.length >= 3 && "--backfill".equals(args[0])) {
+            TradeSource source = "questdb".equals(args[1])
+                    ? new QuestDbExportTradeSource(Paths.get(args[2]))
+                    : new JournalTradeSource(Paths.get(args[2]), 0);
+            String output = args.length > 3 && !args[3].startsWith("--") ? args[3] : "backfill";
+            BackfillRunner backfill = new BackfillRunner(64 * 1024, 4096, Paths.get(output));
+            if (argList.contains("--bulk")) {
+                backfill.runBulk(source);
+            } else {
+                backfill.run(source);
+            }
+            return;
+        }
 
-        // Create event handlers.
-        DeserializationHandler deserializationHandler = new DeserializationHandler();
-        PersistEventHandler persistHandler = new PersistEventHandler("jdbc:postgresql://localhost:8812/qdb", "user", "password");
-        // Create three aggregation event handlers for different aggregation groups.
-        AggregationEventHandler handlerBook = new AggregationEventHandler(AggregationGroup.BOOK, updateDisruptor.getRingBuffer());
-        AggregationEventHandler handlerBookInstrument = new AggregationEventHandler(AggregationGroup.BOOK_INSTRUMENT, updateDisruptor.getRingBuffer());
-        AggregationEventHandler handlerBookInstrumentCounterparty = new AggregationEventHandler(AggregationGroup.BOOK_INSTRUMENT_COUNTERPARTY, updateDisruptor.getRingBuffer());
-        AckHandler ackHandler = new AckHandler();
+        // "--config <file>" reads pipeline settings (see PipelineConfig); pvs.properties is used if present.
+        int configIndex = argList.indexOf("--config");
+        Path configFile = configIndex >= 0 && configIndex + 1 < args.length ? Paths.get(args[configIndex + 1])
+                : Files.exists(Paths.get("pvs.properties")) ? Paths.get("pvs.properties") : null;
+        Properties properties = PipelineConfig.loadProperties(configFile);
+        // "--replay" feeds the journal back through the pipeline instead of taking live input, rebuilding
+        // aggregation state without persisting, exporting or acknowledging the trades again.
+        boolean replay = argList.contains("--replay");
+        // "--recover" instead feeds the journal from the persist checkpoint through the persist stage
+        // alone, writing trades that were journaled but never reached QuestDB.
+        boolean recover = argList.contains("--recover");
+        // "--async-persist" moves JDBC writes to a writer pool and acks from the persisted watermark.
+        if (argList.contains("--async-persist")) {
+            properties.setProperty("persist.mode", PersistMode.ASYNC.name());
+        }
+        // "--virtual-threads" runs the I/O-bound sinks on virtual threads; it implies async persistence
+        // so that JDBC calls leave the trade ring for the writer pool.
+        if (argList.contains("--virtual-threads")) {
+            properties.setProperty("execution.mode", ExecutionMode.VIRTUAL.name());
+            properties.setProperty("persist.mode", PersistMode.ASYNC.name());
+        }
+        PipelineConfig config = new PipelineConfig(properties);
 
-        // Set up the handler chain:
-        // First, deserialization; then in parallel persist and aggregation handlers; then ack.
-        disruptor.handleEventsWith(deserializationHandler)
-                 .then(persistHandler, handlerBook, handlerBookInstrument, handlerBookInstrumentCounterparty)
-                 .then(ackHandler);
+        // Assemble the Disruptors and handlers the configuration describes.
+        PipelineTopology topology = new PipelineTopologyBuilder(config).replay(replay).recover(recover).build();
+        topology.printSummary(System.out);
+        topology.start();
+        // On SIGTERM, drain the pipeline before the JVM exits; a no-op if main already shut it down.
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                topology.shutdown();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }, "pvs-shutdown"));
 
-        disruptor.start();
+        if (replay || recover) {
+            long replayed = topology.replayJournal();
+            System.out.println((recover ? "Recovered " : "Replayed ") + replayed + " journaled trades.");
+        }
 
         // Simulate receiving Trade proto bytes from Solace.
-        RingBuffer<TradeEvent> ringBuffer = disruptor.getRingBuffer();
-        // For this simulation, publish 10 trade events.
-        for (int i = 0; i < 10; i++) {
+        RingBuffer<TradeEvent> ringBuffer = topology.getTradeRingBuffer();
+        // For this simulation, publish 10 valid synthetic trades (SoakHarness drives sustained load).
+        SyntheticTradeSource source = new SyntheticTradeSource(4, 8, 8, 1.0, 0.5, System.nanoTime(), 10);
+        byte[] protoBytes;
+        while (!replay && !recover && topology.isAcceptingTrades() && (protoBytes = source.next()) != null) {
             long sequence = ringBuffer.next();
             try {
                 TradeEvent event = ringBuffer.get(sequence);
-                // Simulate proto bytes. In real use, these would come from Solace.
-                event.setProtoBytes(("trade_proto_" + i).getBytes());
+                // Events are recycled; drop whatever the previous lap left behind.
+                event.clear();
+                // In real use, these would come from Solace.
+                event.setProtoBytes(protoBytes);
             } finally {
                 ringBuffer.publish(sequence);
             }
         }
 
-        // Allow some time for processing.
-        Thread.sleep(2000);
-
-        // Shutdown the disruptors and executor.
-        disruptor.shutdown();
-        updateDisruptor.shutdown();
-        executor.shutdown();
-
-        // Clean up resources in persist handler.
-        persistHandler.shutdown();
+        // Drain everything published so far, dump aggregation state and release resources.
+        DrainReport report = topology.shutdown();
+        report.print(System.out);
+        if (!report.isClean()) {
+            System.exit(1);
+        }
     }
\ No newline at end of file
@@ -0,0 +1,139 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.LongSupplier;
+
+/**
+ * Persisted-position checkpoint in the trade journal: the first journal sequence not known to be
+ * stored in QuestDB. Journal replay in recovery mode starts here, with persistence enabled, so
+ * trades that were journaled but never written are recovered from the journal.
+ *
+ * It is a {@link PersistedSequenceListener} next to the ack stage. Persisted positions arrive as
+ * trade ring sequences and are mapped to journal sequences from the journal sequence of ring
+ * sequence 0, less the trades the journal stage skipped. The skipped count is read when a
+ * position arrives and may include trades after it, so the mapping can only fall short, never
+ * run ahead.
+ *
+ * The checkpoint only advances from where this run's journal starts. If an earlier run left a
+ * gap of journaled but unpersisted trades, it is held at the start of the gap, with a warning,
+ * until a recovery run has written them.
+ *
+ * Layout (little-endian): int magic, int unused, long next journal sequence. Updates go to the
+ * page cache and are forced on close; a checkpoint lost to a power failure is older, never newer,
+ * so recovery writes some trades twice, which at-least-once delivery allows anyway.
+ */
+public class PersistCheckpoint implements PersistedSequenceListener, Closeable {
+
+    /** Checkpoint file name inside the journal directory. */
+    public static final String FILE_NAME = "persisted.checkpoint";
+    private static final int MAGIC = 0x50434b31; // "PCK1"
+    private static final int BYTES = 16;
+    private static final int MAGIC_OFFSET = 0;
+    private static final int SEQUENCE_OFFSET = 8;
+
+    private final Path file;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    // True if the file was created by this instance rather than left by an earlier run.
+    private final boolean created;
+    private long nextSequence;
+    private long base = -1;
+    private LongSupplier skipped = () -> 0;
+
+    /**
+     * Opens or creates the checkpoint. A new checkpoint starts at journal sequence 0.
+     *
+     * @param file the checkpoint file; its parent directory is created if missing
+     * @throws IOException if the file cannot be mapped or holds something other than a checkpoint
+     */
+    public PersistCheckpoint(Path file) throws IOException {
+        this.file = file;
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, BYTES);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            int magic = buffer.getInt(MAGIC_OFFSET);
+            created = magic == 0;
+            if (created) {
+                buffer.putInt(MAGIC_OFFSET, MAGIC);
+            } else if (magic != MAGIC) {
+                throw new IOException("Not a persist checkpoint: " + file);
+            }
+            nextSequence = buffer.getLong(SEQUENCE_OFFSET);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Starts mapping persisted trade ring sequences to journal sequences.
+     *
+     * A new checkpoint is moved to the given sequence, since trades journaled before it existed
+     * cannot be told apart. An existing one behind it is held where it is and reported.
+     *
+     * @param journalSequence journal sequence of trade ring sequence 0
+     * @param skipped         number of trades the journal stage has skipped so far; () -&gt; 0 when
+     *                        every trade on the ring is a journal record, as in a replay
+     */
+    public synchronized void startAt(long journalSequence, LongSupplier skipped) {
+        if (created || nextSequence > journalSequence) {
+            store(journalSequence);
+        } else if (nextSequence < journalSequence) {
+            System.err.println("Journal sequences " + nextSequence + " to " + (journalSequence - 1) + " in " +
+                               file.getParent() + " were never persisted; run with --recover to write them. " +
+                               "Holding the persist checkpoint at " + nextSequence + ".");
+        }
+        this.base = journalSequence;
+        this.skipped = skipped;
+    }
+
+    @Override
+    public synchronized void onPersisted(long tradeSequence) {
+        // Held at an earlier gap, or not started.
+        if (base < 0 || nextSequence < base) {
+            return;
+        }
+        long next = base + tradeSequence + 1 - skipped.getAsLong();
+        if (next > nextSequence) {
+            store(next);
+        }
+    }
+
+    /**
+     * Returns the first journal sequence not known to be persisted.
+     */
+    public synchronized long getNextSequence() {
+        return nextSequence;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    private void store(long sequence) {
+        nextSequence = sequence;
+        buffer.putLong(SEQUENCE_OFFSET, sequence);
+    }
+
+    /**
+     * Forces the checkpoint to storage and closes it. Positions reported afterwards are ignored.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel.isOpen()) {
+            buffer.force();
+            channel.close();
+            base = -1;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+public class PersistCheckpointTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testMapsRingSequencesFromTheJournalStartAndSurvivesRestart() throws Exception {
+        Path file = tempDir.resolve(PersistCheckpoint.FILE_NAME);
+        try (PersistCheckpoint checkpoint = new PersistCheckpoint(file)) {
+            assertEquals(0, checkpoint.getNextSequence());
+            checkpoint.startAt(100, () -> 0);
+            assertEquals(100, checkpoint.getNextSequence(), "A new checkpoint starts where the journal does");
+            checkpoint.onPersisted(4);
+            checkpoint.onPersisted(2);
+            assertEquals(105, checkpoint.getNextSequence(), "An older position must not move it back");
+        }
+        try (PersistCheckpoint checkpoint = new PersistCheckpoint(file)) {
+            assertEquals(105, checkpoint.getNextSequence());
+            checkpoint.startAt(105, () -> 0);
+            checkpoint.onPersisted(0);
+            assertEquals(106, checkpoint.getNextSequence());
+        }
+    }
+
+    @Test
+    public void testHoldsAtAGapLeftByAnEarlierRun() throws Exception {
+        Path file = tempDir.resolve(PersistCheckpoint.FILE_NAME);
+        try (PersistCheckpoint checkpoint = new PersistCheckpoint(file)) {
+            checkpoint.startAt(0, () -> 0);
+            checkpoint.onPersisted(9);
+        }
+        try (PersistCheckpoint checkpoint = new PersistCheckpoint(file)) {
+            // Journal sequences 10 to 19 were journaled but never persisted.
+            checkpoint.startAt(20, () -> 0);
+            checkpoint.onPersisted(50);
+            assertEquals(10, checkpoint.getNextSequence(), "The checkpoint must not skip the unpersisted trades");
+        }
+    }
+
+    @Test
+    public void testSkippedTradesNeverMoveItAhead() throws Exception {
+        try (PersistCheckpoint checkpoint = new PersistCheckpoint(tempDir.resolve(PersistCheckpoint.FILE_NAME))) {
+            // Two trades on the ring had no journal record, so ring sequence 9 is journal sequence 7 at most.
+            checkpoint.startAt(0, () -> 2);
+            checkpoint.onPersisted(9);
+            assertEquals(8, checkpoint.getNextSequence());
+        }
+    }
+
+    @Test
+    public void testRejectsAForeignFile() throws Exception {
+        Path file = tempDir.resolve("other.bin");
+        Files.write(file, new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16});
+        assertThrows(IOException.class, () -> new PersistCheckpoint(file));
+    }
+}
@@ -1,33 +1,60 @@
 import com.lmax.disruptor.EventHandler;
 import com.lmax.disruptor.LifeCycleAware;
 
-import java.math.BigDecimal;
-import java.sql.Connection;
-import java.sql.DriverManager;
-import java.sql.PreparedStatement;
-import java.sql.SQLException;
-import java.time.Instant;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+/**
+ * Persists every trade to QuestDB through a {@link ResilientTradeWriter}.
+ *
+ * Rows are batched per Disruptor batch. While the database is unreachable they are spilled to a
+ * local file and written once the connection is back, so a QuestDB restart never stalls the
+ * trade ring.
+ *
+ * After each flush the listener is told the trade sequence up to which every row is in QuestDB
+ * or forced to the spill file. Rows dropped on a full spill file are not, so the position stops
+ * below the first of them and the ack stage never acknowledges a trade that was lost.
+ */
 public class PersistEventHandler implements EventHandler<TradeEvent>, LifeCycleAware {
 
-    private final Connection connection;
-    private final PreparedStatement preparedStatement;
+    /** Default spill file for the synchronous handler. */
+    public static final Path DEFAULT_SPILL_FILE = Paths.get("spill", "persist-spill.dat");
+
+    /** Default spill capacity: 256 MiB. */
+    public static final int DEFAULT_SPILL_BYTES = 256 * 1024 * 1024;
+
+    /** Rows after which a JDBC batch is executed even in the middle of a Disruptor batch. */
+    public static final int DEFAULT_MAX_BATCH_SIZE = 1000;
+
+    private final ResilientTradeWriter writer;
+    private final PersistRow row = new PersistRow();
+    private final PersistedSequenceListener listener;
+    private final AtomicBoolean shutdown = new AtomicBoolean();
 
     /**
-     * Constructor creates a JDBC connection to QuestDB and prepares the SQL statement.
+     * Constructor creates the writer with the default spill file and connects to QuestDB.
      *
      * @param jdbcUrl  The JDBC URL for QuestDB (e.g., "jdbc:postgresql://localhost:8812/qdb")
      * @param user     The username for QuestDB.
      * @param password The password for QuestDB.
-     * @throws SQLException if there is an error establishing the connection or preparing the statement.
+     * @throws IOException if the spill file cannot be opened.
      */
-    public PersistEventHandler(String jdbcUrl, String user, String password) throws SQLException {
-        // Establish a connection to QuestDB.
-        this.connection = DriverManager.getConnection(jdbcUrl, user, password);
-        // Prepare the SQL insert statement.
-        String sql = "INSERT INTO trades (trade_ts, folder, instrument, counterparty, book, side, price, quantity) " +
-                     "VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
-        this.preparedStatement = connection.prepareStatement(sql);
+    public PersistEventHandler(String jdbcUrl, String user, String password) throws IOException {
+        this(jdbcUrl, user, password, DEFAULT_SPILL_FILE, DEFAULT_SPILL_BYTES, tradeSequence -> { });
+    }
+
+    /**
+     * @param spillFile  where rows are buffered while QuestDB is unavailable
+     * @param spillBytes maximum size of the spill file
+     * @param listener   notified after each flush of the trade sequence persisted along with every earlier one
+     * @see #PersistEventHandler(String, String, String)
+     */
+    public PersistEventHandler(String jdbcUrl, String user, String password, Path spillFile, int spillBytes,
+                               PersistedSequenceListener listener) throws IOException {
+        this.listener = listener;
+        this.writer = new ResilientTradeWriter(jdbcUrl, user, password, spillFile, spillBytes, DEFAULT_MAX_BATCH_SIZE);
     }
 
     /**
@@ -39,31 +66,24 @@ public class PersistEventHandler implements EventHandler<TradeEvent>, LifeCycleA
      */
     @Override
     public void onEvent(TradeEvent event, long sequence, boolean endOfBatch) throws Exception {
-        persistTrade(event);
-        // Clear the event for recycling.
-        event.clear();
+        // A bulk merge is a control event for the aggregation handlers, not a trade.
+        if (event.getBulkMerge() == null) {
+            row.copyFrom(event, sequence);
+            writer.add(row);
+        }
+        if (endOfBatch) {
+            writer.flush();
+            long persisted = writer.persistedLimit(sequence);
+            if (persisted >= 0) {
+                listener.onPersisted(persisted);
+            }
+        }
+        // The event is not cleared here: peer handlers may still be reading it, and the
+        // producer clears each slot before reusing it.
     }
 
-    /**
-     * Persists a single TradeEvent to QuestDB.
-     *
-     * @param event The trade event.
-     * @throws SQLException if there is an error during the insert.
-     */
-    private void persistTrade(TradeEvent event) throws SQLException {
-        // Set the timestamp (QuestDB accepts timestamps via JDBC).
-        preparedStatement.setObject(1, event.getTradeTimestamp());
-        // Set other fields.
-        preparedStatement.setString(2, event.getFolder());
-        preparedStatement.setString(3, event.getInstrument());
-        preparedStatement.setString(4, event.getCounterparty());
-        preparedStatement.setString(5, event.getBook());
-        preparedStatement.setString(6, event.getSide()); // e.g., "BUY" or "SELL"
-        preparedStatement.setBigDecimal(7, event.getPrice());
-        preparedStatement.setLong(8, event.getQuantity());
-
-        // Execute the insert.
-        preparedStatement.executeUpdate();
+    public ResilientTradeWriter getWriter() {
+        return writer;
     }
 
     /**
@@ -86,19 +106,19 @@ public class PersistEventHandler implements EventHandler<TradeEvent>, LifeCycleA
     }
 
     /**
-     * Closes JDBC resources.
+     * Flushes pending rows and closes JDBC resources and the spill file. Only the first call
+     * does anything.
      */
     public void shutdown() {
+        if (!shutdown.compareAndSet(false, true)) {
+            return;
+        }
         try {
-            if (preparedStatement != null) {
-                preparedStatement.close();
-            }
-            if (connection != null) {
-                connection.close();
-            }
-            System.out.println("JDBC resources closed.");
-        } catch (SQLException e) {
+            writer.close();
+            System.out.println("JDBC resources closed after " + writer.getRowsWritten() + " rows written, " +
+                               writer.getRowsSpilled() + " spilled, " + writer.getRowsDropped() + " dropped.");
+        } catch (IOException e) {
             e.printStackTrace();
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,9 @@
+/**
+ * How the persist stage writes trades to QuestDB.
+ */
+public enum PersistMode {
+    /** {@link PersistEventHandler} writes on its own Disruptor thread; acks follow its flushed position. */
+    SYNC,
+    /** {@link AsyncPersistEventHandler} hands rows to a writer pool; acks follow the persisted watermark. */
+    ASYNC
+}
@@ -0,0 +1,196 @@
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+
+/**
+ * One row of the QuestDB trades table, copied out of a TradeEvent.
+ *
+ * Rows are preallocated slots of the persistence hand-off ring, so copying a trade into one
+ * allocates nothing and lets the TradeEvent be recycled while the row is still being written.
+ * Rows also have a compact binary form ({@link #writeTo(ByteBuffer)}) used by the spill file
+ * while the database is unreachable.
+ */
+public class PersistRow {
+
+    /** Insert statement matching {@link #bind(PreparedStatement)}. */
+    public static final String INSERT_SQL =
+            "INSERT INTO trades (trade_ts, folder, instrument, counterparty, book, side, price, quantity) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private long tradeSequence = -1;
+    private Instant tradeTimestamp;
+    private String folder;
+    private String instrument;
+    private String counterparty;
+    private String book;
+    private String side;
+    private BigDecimal price;
+    private long quantity;
+
+    /**
+     * Copies the persisted fields of a trade event into this row.
+     *
+     * @param event         the trade event
+     * @param tradeSequence the event's sequence in the trade ring buffer
+     */
+    public void copyFrom(TradeEvent event, long tradeSequence) {
+        this.tradeSequence = tradeSequence;
+        this.tradeTimestamp = event.getTradeTimestamp();
+        this.folder = event.getFolder();
+        this.instrument = event.getInstrument();
+        this.counterparty = event.getCounterparty();
+        this.book = event.getBook();
+        this.side = event.getSide();
+        this.price = event.getPrice();
+        this.quantity = event.getQuantity();
+    }
+
+    /**
+     * Binds this row to a statement prepared from {@link #INSERT_SQL}.
+     *
+     * @param statement the insert statement
+     * @throws SQLException if a parameter cannot be set
+     */
+    public void bind(PreparedStatement statement) throws SQLException {
+        statement.setTimestamp(1, tradeTimestamp != null ? Timestamp.from(tradeTimestamp) : null);
+        statement.setString(2, folder);
+        statement.setString(3, instrument);
+        statement.setString(4, counterparty);
+        statement.setString(5, book);
+        statement.setString(6, side); // e.g., "BUY" or "SELL"
+        statement.setBigDecimal(7, price);
+        statement.setLong(8, quantity);
+    }
+
+    /**
+     * Sets every field of this row.
+     */
+    public void set(long tradeSequence, Instant tradeTimestamp, String folder, String instrument, String counterparty,
+                    String book, String side, BigDecimal price, long quantity) {
+        this.tradeSequence = tradeSequence;
+        this.tradeTimestamp = tradeTimestamp;
+        this.folder = folder;
+        this.instrument = instrument;
+        this.counterparty = counterparty;
+        this.book = book;
+        this.side = side;
+        this.price = price;
+        this.quantity = quantity;
+    }
+
+    /**
+     * Copies every field of another row into this one.
+     *
+     * @param other the row to copy
+     */
+    public void copyFrom(PersistRow other) {
+        this.tradeSequence = other.tradeSequence;
+        this.tradeTimestamp = other.tradeTimestamp;
+        this.folder = other.folder;
+        this.instrument = other.instrument;
+        this.counterparty = other.counterparty;
+        this.book = other.book;
+        this.side = other.side;
+        this.price = other.price;
+        this.quantity = other.quantity;
+    }
+
+    /**
+     * Writes this row into the buffer at its current position and advances the position.
+     * Strings use the {@link AggregationKeyCodec} field encoding and the price the
+     * {@link AggregationUpdateCodec} decimal encoding.
+     *
+     * @param buffer the destination buffer
+     * @throws java.nio.BufferOverflowException if the row does not fit; the position is then undefined
+     */
+    public void writeTo(ByteBuffer buffer) {
+        buffer.putLong(tradeSequence);
+        if (tradeTimestamp != null) {
+            buffer.putLong(tradeTimestamp.getEpochSecond());
+            buffer.putInt(tradeTimestamp.getNano());
+        } else {
+            buffer.putLong(0);
+            buffer.putInt(-1);
+        }
+        AggregationKeyCodec.writeField(folder, buffer);
+        AggregationKeyCodec.writeField(instrument, buffer);
+        AggregationKeyCodec.writeField(counterparty, buffer);
+        AggregationKeyCodec.writeField(book, buffer);
+        AggregationKeyCodec.writeField(side, buffer);
+        buffer.put((byte) (price != null ? 1 : 0));
+        if (price != null) {
+            AggregationUpdateCodec.writeDecimal(price, buffer);
+        }
+        buffer.putLong(quantity);
+    }
+
+    /**
+     * Replaces the contents of this row with one read from the buffer at its current position.
+     *
+     * @param buffer the source buffer, positioned at a row written by {@link #writeTo(ByteBuffer)}
+     */
+    public void readFrom(ByteBuffer buffer) {
+        tradeSequence = buffer.getLong();
+        long epochSecond = buffer.getLong();
+        int nano = buffer.getInt();
+        tradeTimestamp = nano >= 0 ? Instant.ofEpochSecond(epochSecond, nano) : null;
+        folder = AggregationKeyCodec.readField(buffer);
+        instrument = AggregationKeyCodec.readField(buffer);
+        counterparty = AggregationKeyCodec.readField(buffer);
+        book = AggregationKeyCodec.readField(buffer);
+        side = AggregationKeyCodec.readField(buffer);
+        price = buffer.get() != 0 ? AggregationUpdateCodec.readDecimal(buffer) : null;
+        quantity = buffer.getLong();
+    }
+
+    public void clear() {
+        tradeSequence = -1;
+        tradeTimestamp = null;
+        folder = null;
+        instrument = null;
+        counterparty = null;
+        book = null;
+        side = null;
+        price = null;
+        quantity = 0;
+    }
+
+    public long getTradeSequence() {
+        return tradeSequence;
+    }
+
+    public Instant getTradeTimestamp() {
+        return tradeTimestamp;
+    }
+
+    public String getFolder() {
+        return folder;
+    }
+
+    public String getInstrument() {
+        return instrument;
+    }
+
+    public String getCounterparty() {
+        return counterparty;
+    }
+
+    public String getBook() {
+        return book;
+    }
+
+    public String getSide() {
+        return side;
+    }
+
+    public BigDecimal getPrice() {
+        return price;
+    }
+
+    public long getQuantity() {
+        return quantity;
+    }
+}
@@ -0,0 +1,246 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Bounded, memory-mapped spill file for {@link PersistRow}s that could not be written to the
+ * database.
+ *
+ * Rows are appended after a small header and read back in the same order. The record area is a
+ * ring: a row that does not fit before the end of the file wraps to the start, into space
+ * already drained, so a partial drain frees room for new rows at once. Reads are tentative until
+ * {@link #commitRead()}, so a drain that fails half way can {@link #rewind()} and try again
+ * later; space is only reused once its rows are committed as read.
+ *
+ * Layout (little-endian):
+ *
+ *     header (64 bytes): int magic, int unused, long read position, long write position, long row count
+ *     records:           int length, byte row[length]
+ *
+ * A length of -1, or fewer than four bytes left before the end of the file, marks where the
+ * records wrap. The write position is behind the read position while they do, and never
+ * catches up with it, so equal positions always mean an empty file. The read and write
+ * positions are kept in the header so spilled rows survive a restart. Instances are not
+ * thread-safe; a spill file has a single owner.
+ */
+public class PersistSpillFile implements Closeable {
+
+    static final int HEADER_BYTES = 64;
+    private static final int MAGIC = 0x50535031; // "PSP1"
+    private static final int MAGIC_OFFSET = 0;
+    private static final int READ_POSITION_OFFSET = 8;
+    private static final int WRITE_POSITION_OFFSET = 16;
+    private static final int ROW_COUNT_OFFSET = 24;
+    private static final int WRAP_MARKER = -1;
+
+    private final Path file;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private int readPosition;
+    private int readCursor;
+    private int writePosition;
+    private long rowCount;
+    private long uncommittedReads;
+    // Rows appended since the last commit.
+    private boolean unforcedRows;
+
+    /**
+     * Opens or creates the spill file, keeping any rows left by a previous run.
+     *
+     * @param file     the spill file; its parent directory is created if missing
+     * @param capacity file size in bytes, header included
+     * @throws IOException if the file cannot be mapped or holds something other than a spill
+     */
+    public PersistSpillFile(Path file, int capacity) throws IOException {
+        if (capacity <= HEADER_BYTES) {
+            throw new IllegalArgumentException("Spill capacity must exceed " + HEADER_BYTES + " bytes: " + capacity);
+        }
+        this.file = file;
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            if (channel.size() > capacity) {
+                throw new IOException("Spill file " + file + " is larger than the configured capacity " + capacity);
+            }
+            this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            int magic = buffer.getInt(MAGIC_OFFSET);
+            if (magic == 0) {
+                buffer.putInt(MAGIC_OFFSET, MAGIC);
+                reset();
+            } else if (magic != MAGIC) {
+                throw new IOException("Not a spill file: " + file);
+            } else {
+                readPosition = (int) buffer.getLong(READ_POSITION_OFFSET);
+                writePosition = (int) buffer.getLong(WRITE_POSITION_OFFSET);
+                rowCount = buffer.getLong(ROW_COUNT_OFFSET);
+                if (readPosition < HEADER_BYTES || writePosition < HEADER_BYTES ||
+                    readPosition > capacity || writePosition > capacity) {
+                    throw new IOException("Corrupt spill header in " + file + ": read=" + readPosition +
+                                          " write=" + writePosition);
+                }
+                readCursor = readPosition;
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Appends a row, wrapping to the start of the file if it does not fit before the end.
+     *
+     * @param row the row to spill
+     * @return false if the spill file is full and the row was not stored
+     */
+    public boolean append(PersistRow row) {
+        int start = writePosition;
+        if (start < readPosition) {
+            // Already wrapped: stop short of the oldest row still held.
+            if (!writeRecord(start, readPosition - 1, row)) {
+                return false;
+            }
+        } else if (!writeRecord(start, buffer.capacity(), row)) {
+            if (!writeRecord(HEADER_BYTES, readPosition - 1, row)) {
+                return false;
+            }
+            if (buffer.capacity() - start >= Integer.BYTES) {
+                buffer.putInt(start, WRAP_MARKER);
+            }
+        }
+        rowCount++;
+        storeHeader();
+        unforcedRows = true;
+        return true;
+    }
+
+    private boolean writeRecord(int start, int limit, PersistRow row) {
+        if (limit - start <= Integer.BYTES) {
+            return false;
+        }
+        buffer.limit(limit);
+        buffer.position(start + Integer.BYTES);
+        try {
+            row.writeTo(buffer);
+        } catch (BufferOverflowException e) {
+            return false;
+        } finally {
+            buffer.limit(buffer.capacity());
+        }
+        int end = buffer.position();
+        buffer.putInt(start, end - start - Integer.BYTES);
+        writePosition = end;
+        return true;
+    }
+
+    /**
+     * Reads the next unread row into the given instance. The read is not final until
+     * {@link #commitRead()}.
+     *
+     * @param into receives the row
+     * @return false if there are no more rows
+     */
+    public boolean read(PersistRow into) {
+        if (readCursor == writePosition) {
+            return false;
+        }
+        if (buffer.capacity() - readCursor < Integer.BYTES || buffer.getInt(readCursor) == WRAP_MARKER) {
+            readCursor = HEADER_BYTES;
+        }
+        int length = buffer.getInt(readCursor);
+        buffer.limit(readCursor + Integer.BYTES + length);
+        buffer.position(readCursor + Integer.BYTES);
+        into.readFrom(buffer);
+        buffer.limit(buffer.capacity());
+        readCursor += Integer.BYTES + length;
+        uncommittedReads++;
+        return true;
+    }
+
+    /**
+     * Marks every row read since the last commit or rewind as consumed.
+     */
+    public void commitRead() {
+        readPosition = readCursor;
+        rowCount -= uncommittedReads;
+        uncommittedReads = 0;
+        if (readPosition == writePosition) {
+            reset();
+        } else {
+            storeHeader();
+        }
+    }
+
+    /**
+     * Moves the read cursor back to the last committed read position.
+     */
+    public void rewind() {
+        readCursor = readPosition;
+        uncommittedReads = 0;
+    }
+
+    public boolean isEmpty() {
+        return readPosition == writePosition;
+    }
+
+    /**
+     * Returns the number of rows spilled and not yet committed as read.
+     */
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    /**
+     * Returns true if rows were appended since the last {@link #commit()}.
+     */
+    boolean hasUnforcedRows() {
+        return unforcedRows;
+    }
+
+    /**
+     * Forces the file to storage if rows were appended since the last commit. Read progress
+     * alone is not forced: after a crash, rows drained since the last forced append may be
+     * written to the database again, which at-least-once delivery allows anyway.
+     */
+    public void commit() {
+        if (unforcedRows) {
+            buffer.force();
+            unforcedRows = false;
+        }
+    }
+
+    private void reset() {
+        readPosition = HEADER_BYTES;
+        readCursor = HEADER_BYTES;
+        writePosition = HEADER_BYTES;
+        rowCount = 0;
+        storeHeader();
+    }
+
+    private void storeHeader() {
+        buffer.putLong(READ_POSITION_OFFSET, readPosition);
+        buffer.putLong(WRITE_POSITION_OFFSET, writePosition);
+        buffer.putLong(ROW_COUNT_OFFSET, rowCount);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel.isOpen()) {
+            commit();
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,106 @@
+import com.lmax.disruptor.EventHandler;
+import com.lmax.disruptor.LifeCycleAware;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One writer of the asynchronous persistence pool, consuming the hand-off ring on its own
+ * thread over its own {@link ResilientTradeWriter}.
+ *
+ * Writers shard rows by hand-off sequence (writer i takes rows where sequence % count == i),
+ * batch them and execute the batch on endOfBatch or when it reaches the maximum batch size.
+ * After each executed batch the writer reports its position to the watermark, but only while
+ * nothing it owns is waiting in its spill file: spilled rows are not persisted yet, so the
+ * watermark (and with it acknowledgement) holds still during a database outage.
+ */
+public class PersistWriter implements EventHandler<PersistRow>, LifeCycleAware {
+
+    private final int index;
+    private final int count;
+    private final int maxBatchSize;
+    private final PersistedSequenceWatermark watermark;
+    private final ResilientTradeWriter writer;
+    private final CountDownLatch closed = new CountDownLatch(1);
+    private int batchedRows;
+
+    /**
+     * @param index        this writer's shard index
+     * @param count        number of writers in the pool
+     * @param maxBatchSize rows after which a batch is executed even mid Disruptor batch
+     * @param watermark    receives this writer's committed position
+     * @param jdbcUrl      The JDBC URL for QuestDB.
+     * @param user         The username for QuestDB.
+     * @param password     The password for QuestDB.
+     * @param spillFile    this writer's spill file
+     * @param spillBytes   maximum size of the spill file
+     * @throws IOException if the spill file cannot be opened
+     */
+    public PersistWriter(int index, int count, int maxBatchSize, PersistedSequenceWatermark watermark,
+                         String jdbcUrl, String user, String password, Path spillFile, int spillBytes) throws IOException {
+        this.index = index;
+        this.count = count;
+        this.maxBatchSize = maxBatchSize;
+        this.watermark = watermark;
+        this.writer = new ResilientTradeWriter(jdbcUrl, user, password, spillFile, spillBytes, maxBatchSize);
+    }
+
+    @Override
+    public void onEvent(PersistRow row, long sequence, boolean endOfBatch) throws Exception {
+        if (sequence % count == index) {
+            writer.add(row);
+            batchedRows++;
+        }
+        if (endOfBatch || batchedRows >= maxBatchSize) {
+            batchedRows = 0;
+            writer.flush();
+            if (writer.isCaughtUp()) {
+                // Everything this writer owns up to and including this row is now committed, except
+                // rows dropped on a full spill file: the watermark must never pass those.
+                watermark.onCommitted(index, writer.persistedLimit(row.getTradeSequence()));
+            }
+        }
+    }
+
+    public long getRowsWritten() {
+        return writer.getRowsWritten();
+    }
+
+    public long getBatchesWritten() {
+        return writer.getBatchesWritten();
+    }
+
+    public ResilientTradeWriter getWriter() {
+        return writer;
+    }
+
+    /**
+     * Waits until this writer has flushed and closed its connection and spill file.
+     *
+     * @return true if the writer closed within the timeout
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean awaitClosed(long timeout, TimeUnit unit) throws InterruptedException {
+        return closed.await(timeout, unit);
+    }
+
+    @Override
+    public void onStart() {
+        System.out.println("PersistWriter " + index + "/" + count + " started.");
+    }
+
+    @Override
+    public void onShutdown() {
+        try {
+            writer.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        System.out.println("PersistWriter " + index + "/" + count + " shutting down after " + writer.getRowsWritten() +
+                           " rows in " + writer.getBatchesWritten() + " batches, " + writer.getRowsSpilled() + " spilled, " +
+                           writer.getRowsDropped() + " dropped.");
+        closed.countDown();
+    }
+}
@@ -0,0 +1,165 @@
+import com.lmax.disruptor.EventHandler;
+import com.lmax.disruptor.LifeCycleAware;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Ack stage behind a persist stage: acknowledges each trade upstream only once the persisted
+ * position has reached it, without holding its trade ring slot meanwhile.
+ *
+ * It sits where the plain ack stage would, at the end of the trade chain, and is the
+ * {@link PersistedSequenceListener} of the {@link AsyncPersistEventHandler} or
+ * {@link PersistEventHandler}. On the ring it only records the trade's ack token (a copy of the
+ * event) by sequence and returns; the slot is free again at once, so QuestDB latency or an outage
+ * never shows up as trade ring occupancy. Acks are sent from {@link #onPersisted}, on whichever
+ * thread moved the position, one call at a time and in sequence order. The position never passes
+ * a row dropped on a full spill file, so a lost trade is never acknowledged.
+ *
+ * Tokens wait in an unbounded queue. During an outage it grows by one small object per trade;
+ * its length is the pending-ack gauge, and the upstream redelivery window bounds it in practice.
+ */
+public class PersistedAckHandler implements EventHandler<TradeEvent>, LifeCycleAware, PersistedSequenceListener {
+
+    private final EventHandler<TradeEvent> ackHandler;
+    private final AtomicLong persistedSequence = new AtomicLong(-1);
+    private final Queue<PendingAck> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    // Serialises calls into the ack handler; writers that find it taken leave the acking to its holder.
+    private final ReentrantLock ackLock = new ReentrantLock();
+    private volatile boolean closed;
+    private volatile long ackedSequence = -1;
+
+    /**
+     * @param ackHandler acknowledges a trade upstream; called on a persist or ack thread, never
+     *                   concurrently with itself
+     */
+    public PersistedAckHandler(EventHandler<TradeEvent> ackHandler) {
+        this.ackHandler = ackHandler;
+    }
+
+    /**
+     * Records a persisted position advance and acks every recorded trade it covers. Called from
+     * the persist threads.
+     */
+    @Override
+    public void onPersisted(long tradeSequence) {
+        // Writers notify concurrently, so an older value can arrive after a newer one.
+        persistedSequence.accumulateAndGet(tradeSequence, Math::max);
+        ackPersisted();
+    }
+
+    @Override
+    public void onEvent(TradeEvent event, long sequence, boolean endOfBatch) {
+        if (event.getBulkMerge() != null) {
+            // A control event, not a trade: nothing to acknowledge.
+            return;
+        }
+        // The slot is reused once this returns, so keep what the ack needs, not the slot.
+        TradeEvent token = new TradeEvent();
+        token.setTrade(event.getTrade());
+        token.setProtoBytes(event.getProtoBytes());
+        pending.add(new PendingAck(sequence, token));
+        pendingCount.incrementAndGet();
+        // The watermark may already be past this trade if the writers overtook the ring.
+        if (sequence <= persistedSequence.get()) {
+            ackPersisted();
+        }
+    }
+
+    private void ackPersisted() {
+        while (!closed && hasPersistedAck() && ackLock.tryLock()) {
+            try {
+                long persisted = persistedSequence.get();
+                PendingAck ack;
+                while (!closed && (ack = pending.peek()) != null && ack.sequence <= persisted) {
+                    pending.poll();
+                    pendingCount.decrementAndGet();
+                    PendingAck next = pending.peek();
+                    boolean endOfBatch = next == null || next.sequence > persisted;
+                    try {
+                        ackHandler.onEvent(ack.token, ack.sequence, endOfBatch);
+                    } catch (Exception e) {
+                        // Not acknowledged, so the trade is redelivered upstream; keep acking the rest.
+                        System.err.println("PersistedAckHandler failed to ack trade sequence " + ack.sequence + ": " + e);
+                    }
+                    ackedSequence = ack.sequence;
+                }
+            } finally {
+                ackLock.unlock();
+            }
+            // Loop: a token recorded or a watermark raised while the lock was held found it taken.
+        }
+    }
+
+    private boolean hasPersistedAck() {
+        PendingAck head = pending.peek();
+        return head != null && head.sequence <= persistedSequence.get();
+    }
+
+    /**
+     * Stops acking; trades the watermark has not reached stay unacknowledged and are redelivered
+     * upstream. Called by shutdown once persistence has stopped, after its last position advance.
+     */
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        // Wait out an ack already in progress before shutting the ack handler down.
+        ackLock.lock();
+        ackLock.unlock();
+        int unacknowledged = pendingCount.get();
+        System.out.println("PersistedAckHandler acknowledged up to trade sequence " + ackedSequence +
+                           (unacknowledged > 0 ? "; " + unacknowledged + " unpersisted trades left unacknowledged." : "."));
+        if (ackHandler instanceof LifeCycleAware) {
+            ((LifeCycleAware) ackHandler).onShutdown();
+        }
+    }
+
+    /**
+     * Returns the highest trade sequence the watermark has reported.
+     */
+    public long getPersistedSequence() {
+        return persistedSequence.get();
+    }
+
+    /**
+     * Returns the last trade sequence passed to the ack handler, or -1 if none.
+     */
+    public long getAckedSequence() {
+        return ackedSequence;
+    }
+
+    /**
+     * Returns the number of trades recorded but not yet acknowledged.
+     */
+    public int getPendingAckCount() {
+        return pendingCount.get();
+    }
+
+    @Override
+    public void onStart() {
+        if (ackHandler instanceof LifeCycleAware) {
+            ((LifeCycleAware) ackHandler).onStart();
+        }
+    }
+
+    @Override
+    public void onShutdown() {
+        // The writers may still ack after the trade ring stops; the ack handler is shut down by close().
+    }
+
+    private static final class PendingAck {
+        final long sequence;
+        final TradeEvent token;
+
+        PendingAck(long sequence, TradeEvent token) {
+            this.sequence = sequence;
+            this.token = token;
+        }
+    }
+}
@@ -0,0 +1,154 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+public class PersistedAckHandlerTest {
+
+    @Test
+    public void testAcksFollowTheWatermark() throws Exception {
+        List<Long> acked = Collections.synchronizedList(new ArrayList<>());
+        PersistedAckHandler handler = new PersistedAckHandler((event, sequence, endOfBatch) -> acked.add(sequence));
+        PersistedSequenceWatermark watermark = new PersistedSequenceWatermark(2, handler);
+        record(handler, 0, 4);
+
+        assertTrue(acked.isEmpty(), "Nothing may be acked before it is persisted");
+        assertEquals(4, handler.getPendingAckCount());
+
+        watermark.onCommitted(0, 3);
+        watermark.onCommitted(1, 1);
+        assertEquals(List.of(0L, 1L), acked, "Acks must stop at the watermark, not at the fastest writer");
+
+        watermark.onCommitted(1, 5);
+        assertEquals(List.of(0L, 1L, 2L, 3L), acked);
+        assertEquals(0, handler.getPendingAckCount());
+
+        watermark.onCommitted(0, 5);
+        assertEquals(5, handler.getPersistedSequence());
+        assertEquals(3, handler.getAckedSequence());
+    }
+
+    @Test
+    public void testRingStageNeverWaitsForTheWatermark() {
+        List<Long> acked = Collections.synchronizedList(new ArrayList<>());
+        PersistedAckHandler handler = new PersistedAckHandler((event, sequence, endOfBatch) -> acked.add(sequence));
+
+        // QuestDB is down: every trade is recorded and its slot released at once.
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> record(handler, 0, 100_000));
+
+        assertTrue(acked.isEmpty());
+        assertEquals(100_000, handler.getPendingAckCount());
+        handler.onPersisted(99_999);
+        assertEquals(100_000, acked.size());
+        assertEquals(0, handler.getPendingAckCount());
+    }
+
+    @Test
+    public void testTradesPersistedBeforeTheyReachTheStageAreAckedOnArrival() throws Exception {
+        List<Long> acked = Collections.synchronizedList(new ArrayList<>());
+        PersistedAckHandler handler = new PersistedAckHandler((event, sequence, endOfBatch) -> acked.add(sequence));
+        handler.onPersisted(4);
+        handler.onPersisted(2);
+
+        record(handler, 0, 6);
+
+        assertEquals(List.of(0L, 1L, 2L, 3L, 4L), acked, "An older notification must not move acks back");
+        assertEquals(4, handler.getAckedSequence());
+        assertEquals(1, handler.getPendingAckCount());
+    }
+
+    @Test
+    public void testAckSeesTheTradeAfterItsSlotIsReused() throws Exception {
+        List<String> books = Collections.synchronizedList(new ArrayList<>());
+        PersistedAckHandler handler = new PersistedAckHandler((event, sequence, endOfBatch) -> books.add(event.getTrade().getBook()));
+        TradeEvent slot = new TradeEvent();
+        slot.setTrade(Trade.newBuilder().setBook("B1").build());
+        handler.onEvent(slot, 0, true);
+
+        slot.clear();
+        slot.setTrade(Trade.newBuilder().setBook("B2").build());
+        handler.onPersisted(0);
+
+        assertEquals(List.of("B1"), books);
+    }
+
+    @Test
+    public void testCloseLeavesUnpersistedTradesUnacknowledged() throws Exception {
+        List<Long> acked = Collections.synchronizedList(new ArrayList<>());
+        PersistedAckHandler handler = new PersistedAckHandler((event, sequence, endOfBatch) -> acked.add(sequence));
+        record(handler, 0, 3);
+        handler.onPersisted(0);
+
+        handler.close();
+        handler.onPersisted(2);
+
+        assertEquals(List.of(0L), acked, "Nothing is acked after close");
+        assertEquals(0, handler.getAckedSequence());
+        assertEquals(2, handler.getPendingAckCount());
+    }
+
+    @Test
+    public void testConcurrentWritersAckEachTradeOnceInOrder() throws Exception {
+        int trades = 20_000;
+        List<Long> acked = Collections.synchronizedList(new ArrayList<>());
+        PersistedAckHandler handler = new PersistedAckHandler((event, sequence, endOfBatch) -> acked.add(sequence));
+        List<Thread> writers = new ArrayList<>();
+        for (int w = 0; w < 4; w++) {
+            int writer = w;
+            writers.add(new Thread(() -> {
+                for (long sequence = writer; sequence < trades; sequence += 4) {
+                    handler.onPersisted(sequence);
+                }
+            }));
+        }
+        writers.forEach(Thread::start);
+        record(handler, 0, trades);
+        for (Thread writer : writers) {
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+        }
+        handler.onPersisted(trades - 1);
+
+        assertEquals(trades, acked.size());
+        for (int i = 0; i < trades; i++) {
+            assertEquals(i, acked.get(i).longValue());
+        }
+    }
+
+    @Test
+    public void testWatermarkNotifiesOutsideItsLock() throws Exception {
+        AtomicBoolean readWhileNotifying = new AtomicBoolean();
+        PersistedSequenceWatermark[] holder = new PersistedSequenceWatermark[1];
+        holder[0] = new PersistedSequenceWatermark(1, tradeSequence -> {
+            // Another writer thread must be able to use the watermark while the listener runs.
+            Thread other = new Thread(() -> readWhileNotifying.set(holder[0].get() == tradeSequence));
+            other.start();
+            try {
+                other.join(TimeUnit.SECONDS.toMillis(2));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        holder[0].onCommitted(0, 7);
+        assertTrue(readWhileNotifying.get(), "The listener must not be called while the watermark is locked");
+    }
+
+    /**
+     * Feeds trade sequences first..first+count-1 to the handler, as its Disruptor would.
+     */
+    private static void record(PersistedAckHandler handler, long first, int count) throws Exception {
+        TradeEvent slot = new TradeEvent();
+        for (long sequence = first; sequence < first + count; sequence++) {
+            handler.onEvent(slot, sequence, sequence == first + count - 1);
+        }
+    }
+}
@@ -0,0 +1,27 @@
+/**
+ * Notified when every trade up to and including a trade ring sequence has been persisted.
+ *
+ * Used to acknowledge trades upstream from the persistence watermark rather than from
+ * synchronous completion in the trade pipeline.
+ */
+@FunctionalInterface
+public interface PersistedSequenceListener {
+
+    /**
+     * Called from the persist writer threads, possibly concurrently, so a lower sequence may
+     * arrive after a higher one; implementations keep the maximum.
+     *
+     * @param tradeSequence highest trade ring sequence such that it and all earlier trades are persisted
+     */
+    void onPersisted(long tradeSequence);
+
+    /**
+     * Returns a listener that notifies this one and then the next.
+     */
+    default PersistedSequenceListener andThen(PersistedSequenceListener next) {
+        return tradeSequence -> {
+            onPersisted(tradeSequence);
+            next.onPersisted(tradeSequence);
+        };
+    }
+}
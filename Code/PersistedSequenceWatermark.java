@@ -0,0 +1,62 @@
+import java.util.Arrays;
+
+/**
+ * Tracks the contiguous persisted position across a pool of writers.
+ *
+ * Each writer reports the trade sequence up to which its own share of rows is committed. Since
+ * every writer sees every row in order, the minimum over all writers is a sequence at and
+ * below which every trade has been persisted.
+ */
+public class PersistedSequenceWatermark {
+
+    private final long[] committed;
+    private final PersistedSequenceListener listener;
+    private long watermark = -1;
+
+    /**
+     * @param writerCount number of writers feeding the watermark
+     * @param listener    notified each time the watermark advances
+     */
+    public PersistedSequenceWatermark(int writerCount, PersistedSequenceListener listener) {
+        this.committed = new long[writerCount];
+        Arrays.fill(committed, -1L);
+        this.listener = listener;
+    }
+
+    /**
+     * Records that a writer has committed everything up to the trade sequence and notifies the
+     * listener if the watermark moved. Called by writer threads once per committed batch.
+     *
+     * The listener is called after the lock is released, so a slow listener never holds up the
+     * other writers.
+     *
+     * @param writerIndex   the reporting writer
+     * @param tradeSequence trade sequence up to which the writer's rows are committed
+     */
+    public void onCommitted(int writerIndex, long tradeSequence) {
+        long advancedTo;
+        synchronized (this) {
+            if (tradeSequence <= committed[writerIndex]) {
+                return;
+            }
+            committed[writerIndex] = tradeSequence;
+            long min = Long.MAX_VALUE;
+            for (long sequence : committed) {
+                min = Math.min(min, sequence);
+            }
+            if (min <= watermark) {
+                return;
+            }
+            watermark = min;
+            advancedTo = min;
+        }
+        listener.onPersisted(advancedTo);
+    }
+
+    /**
+     * Returns the highest trade sequence known to be persisted along with all earlier ones.
+     */
+    public synchronized long get() {
+        return watermark;
+    }
+}
@@ -0,0 +1,51 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+public class PersistedSequenceWatermarkTest {
+
+    @Test
+    public void testWatermarkIsMinimumAcrossWriters() {
+        List<Long> notified = new ArrayList<>();
+        PersistedSequenceWatermark watermark = new PersistedSequenceWatermark(3, notified::add);
+
+        watermark.onCommitted(0, 10);
+        watermark.onCommitted(1, 12);
+        assertEquals(-1, watermark.get(), "Watermark must not move until every writer has committed");
+        assertTrue(notified.isEmpty());
+
+        watermark.onCommitted(2, 8);
+        assertEquals(8, watermark.get(), "Watermark should be the slowest writer's position");
+        watermark.onCommitted(2, 15);
+        assertEquals(10, watermark.get());
+        assertEquals(List.of(8L, 10L), notified, "Listener should be told each time the watermark advances");
+    }
+
+    @Test
+    public void testNoNotificationWithoutAdvance() {
+        List<Long> notified = new ArrayList<>();
+        PersistedSequenceWatermark watermark = new PersistedSequenceWatermark(2, notified::add);
+
+        watermark.onCommitted(0, 5);
+        watermark.onCommitted(1, 5);
+        watermark.onCommitted(1, 9);
+        watermark.onCommitted(1, 7);
+        assertEquals(5, watermark.get(), "A faster writer alone must not move the watermark");
+        assertEquals(List.of(5L), notified, "Listener must only hear about real advances");
+    }
+
+    @Test
+    public void testSingleWriter() {
+        List<Long> notified = new ArrayList<>();
+        PersistedSequenceWatermark watermark = new PersistedSequenceWatermark(1, notified::add);
+        watermark.onCommitted(0, 0);
+        watermark.onCommitted(0, 3);
+        assertEquals(List.of(0L, 3L), notified);
+    }
+}
@@ -0,0 +1,551 @@
+import com.lmax.disruptor.BlockingWaitStrategy;
+import com.lmax.disruptor.BusySpinWaitStrategy;
+import com.lmax.disruptor.SleepingWaitStrategy;
+import com.lmax.disruptor.TimeoutBlockingWaitStrategy;
+import com.lmax.disruptor.WaitStrategy;
+import com.lmax.disruptor.YieldingWaitStrategy;
+import com.lmax.disruptor.dsl.ProducerType;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pipeline settings read from a .properties file. Every key is optional; the defaults
+ * reproduce the previously hard-coded pipeline: deserialize, then persist alongside the three
+ * aggregation groups, then ack, with updates printed to standard output and a blocking update
+ * ring. Journal, export and the other sinks are opt-in.
+ *
+ *     pipeline.stages               deserialize, persist+aggregation, ack
+ *     execution.mode                PLATFORM | VIRTUAL
+ *     trade.ringSize                1024 (power of two)
+ *     trade.producerType            SINGLE | MULTI
+ *     trade.waitStrategy            BLOCKING | SLEEPING | YIELDING | BUSY_SPIN
+ *     update.ringSize               256 (power of two)
+ *     update.waitStrategy           BLOCKING
+ *     update.overloadPolicy         BLOCK | CONFLATE | DROP_TO_LATEST
+ *     update.conflationFlushMillis  10 (CONFLATE: how often an idle aggregation handler retries conflated keys)
+ *     update.sink                   LOG | SHARED_MEMORY | TCP | FILE | NONE
+ *     update.sink.path              /dev/shm/pvs-aggregation-updates.ring (SHARED_MEMORY, FILE)
+ *     update.sink.capacity          64M (SHARED_MEMORY, power of two)
+ *     update.sink.address           host:port (TCP)
+ *     update.batchBytes             64K
+ *     aggregation.groups            BOOK, BOOK_INSTRUMENT, BOOK_INSTRUMENT_COUNTERPARTY
+ *     aggregation.shards            1 (handlers per group, keys split by hash)
+ *     persist.mode                  SYNC | ASYNC
+ *     jdbc.url / jdbc.user / jdbc.password
+ *     persist.writers               4 (ASYNC)
+ *     persist.handOffSize           16K (ASYNC, power of two)
+ *     persist.batchSize             1000
+ *     persist.spillDirectory        spill
+ *     persist.spillBytes            256M
+ *     journal.directory             journal
+ *     journal.segmentBytes          64M
+ *     export.directory              export
+ *     export.rowGroupSize           64K
+ *     metrics.http.port             -1 (serve /metrics on this loopback port; 0 picks a free port, -1 disables)
+ *     metrics.logIntervalSeconds    10 (print a metrics line this often; 0 disables)
+ *     shutdown.timeoutMillis        30000 (how long shutdown waits for the pipeline to drain)
+ *     estimate.tradeBytes           512 (average heap per trade slot, for the memory estimate)
+ *
+ * pipeline.stages lists the handler stages in order, separated by commas; handlers joined with
+ * '+' run in parallel within a stage. Known handlers are journal, deserialize, persist, export,
+ * aggregation and ack. Leaving a handler out disables it. Sizes accept K, M and G suffixes
+ * (powers of 1024), optionally followed by B.
+ */
+public class PipelineConfig {
+
+    public static final String JOURNAL = "journal";
+    public static final String DESERIALIZE = "deserialize";
+    public static final String PERSIST = "persist";
+    public static final String EXPORT = "export";
+    public static final String AGGREGATION = "aggregation";
+    public static final String ACK = "ack";
+
+    private static final Set<String> HANDLERS =
+            new HashSet<>(Arrays.asList(JOURNAL, DESERIALIZE, PERSIST, EXPORT, AGGREGATION, ACK));
+    private static final String DEFAULT_STAGES = "deserialize, persist+aggregation, ack";
+
+    private final List<List<String>> stages;
+    private final ExecutionMode executionMode;
+    private final int tradeRingSize;
+    private final ProducerType tradeProducerType;
+    private final String tradeWaitStrategy;
+    private final int updateRingSize;
+    private final String updateWaitStrategy;
+    private final UpdateOverloadPolicy overloadPolicy;
+    private final int conflationFlushMillis;
+    private final UpdateSinkType updateSink;
+    private final Path updateSinkPath;
+    private final int updateSinkCapacity;
+    private final String updateSinkAddress;
+    private final int updateBatchBytes;
+    private final List<AggregationGroup> aggregationGroups;
+    private final int aggregationShards;
+    private final PersistMode persistMode;
+    private final String jdbcUrl;
+    private final String jdbcUser;
+    private final String jdbcPassword;
+    private final int persistWriters;
+    private final int persistHandOffSize;
+    private final int persistBatchSize;
+    private final Path spillDirectory;
+    private final int spillBytes;
+    private final Path journalDirectory;
+    private final int journalSegmentBytes;
+    private final Path exportDirectory;
+    private final int exportRowGroupSize;
+    private final int metricsHttpPort;
+    private final int metricsLogIntervalSeconds;
+    private final int shutdownTimeoutMillis;
+    private final int estimatedTradeBytes;
+
+    /**
+     * Parses and validates the settings.
+     *
+     * @param properties the settings; missing keys take their defaults
+     * @throws IllegalArgumentException naming the offending key if a value is invalid
+     */
+    public PipelineConfig(Properties properties) {
+        this.stages = parseStages(properties.getProperty("pipeline.stages", DEFAULT_STAGES));
+        this.executionMode = parseEnum(properties, "execution.mode", ExecutionMode.class, ExecutionMode.PLATFORM);
+        this.tradeRingSize = powerOfTwo("trade.ringSize", size(properties, "trade.ringSize", 1024));
+        this.tradeProducerType = parseEnum(properties, "trade.producerType", ProducerType.class, ProducerType.SINGLE);
+        this.tradeWaitStrategy = waitStrategyName(properties, "trade.waitStrategy");
+        this.updateRingSize = powerOfTwo("update.ringSize", size(properties, "update.ringSize", 256));
+        this.updateWaitStrategy = waitStrategyName(properties, "update.waitStrategy");
+        this.overloadPolicy = parseEnum(properties, "update.overloadPolicy", UpdateOverloadPolicy.class, UpdateOverloadPolicy.BLOCK);
+        this.conflationFlushMillis = positive("update.conflationFlushMillis", size(properties, "update.conflationFlushMillis", 10));
+        this.updateSink = parseEnum(properties, "update.sink", UpdateSinkType.class, UpdateSinkType.LOG);
+        this.updateSinkPath = Paths.get(properties.getProperty("update.sink.path", "/dev/shm/pvs-aggregation-updates.ring"));
+        this.updateSinkCapacity = size(properties, "update.sink.capacity", 64 * 1024 * 1024);
+        this.updateSinkAddress = properties.getProperty("update.sink.address", "localhost:9400");
+        this.updateBatchBytes = positive("update.batchBytes", size(properties, "update.batchBytes", 64 * 1024));
+        this.aggregationGroups = parseGroups(properties.getProperty("aggregation.groups",
+                                                                    "BOOK, BOOK_INSTRUMENT, BOOK_INSTRUMENT_COUNTERPARTY"));
+        this.aggregationShards = positive("aggregation.shards", count(properties, "aggregation.shards", 1));
+        this.persistMode = parseEnum(properties, "persist.mode", PersistMode.class, PersistMode.SYNC);
+        this.jdbcUrl = properties.getProperty("jdbc.url", "jdbc:postgresql://localhost:8812/qdb");
+        this.jdbcUser = properties.getProperty("jdbc.user", "user");
+        this.jdbcPassword = properties.getProperty("jdbc.password", "password");
+        this.persistWriters = positive("persist.writers", size(properties, "persist.writers", 4));
+        this.persistHandOffSize = powerOfTwo("persist.handOffSize", size(properties, "persist.handOffSize", 16 * 1024));
+        this.persistBatchSize = positive("persist.batchSize", size(properties, "persist.batchSize", 1000));
+        this.spillDirectory = Paths.get(properties.getProperty("persist.spillDirectory", "spill"));
+        this.spillBytes = size(properties, "persist.spillBytes", PersistEventHandler.DEFAULT_SPILL_BYTES);
+        this.journalDirectory = Paths.get(properties.getProperty("journal.directory", "journal"));
+        this.journalSegmentBytes = size(properties, "journal.segmentBytes", TradeJournal.DEFAULT_SEGMENT_BYTES);
+        this.exportDirectory = Paths.get(properties.getProperty("export.directory", "export"));
+        this.exportRowGroupSize = positive("export.rowGroupSize",
+                                           size(properties, "export.rowGroupSize", ColumnarTradeWriter.DEFAULT_ROW_GROUP_SIZE));
+        this.metricsHttpPort = size(properties, "metrics.http.port", -1);
+        this.metricsLogIntervalSeconds = nonNegative("metrics.logIntervalSeconds", size(properties, "metrics.logIntervalSeconds", 10));
+        this.shutdownTimeoutMillis = positive("shutdown.timeoutMillis", size(properties, "shutdown.timeoutMillis", 30_000));
+        this.estimatedTradeBytes = positive("estimate.tradeBytes", size(properties, "estimate.tradeBytes", 512));
+        validate();
+    }
+
+    /**
+     * Reads a properties file.
+     *
+     * @param file the file, or null for an empty set (all defaults)
+     * @return the properties
+     * @throws IOException if the file cannot be read
+     */
+    public static Properties loadProperties(Path file) throws IOException {
+        Properties properties = new Properties();
+        if (file != null) {
+            try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                properties.load(reader);
+            }
+        }
+        return properties;
+    }
+
+    /**
+     * Creates a new instance of the named wait strategy.
+     *
+     * @param name BLOCKING, SLEEPING, YIELDING or BUSY_SPIN
+     * @return the wait strategy
+     */
+    public static WaitStrategy newWaitStrategy(String name) {
+        switch (name) {
+            case "BLOCKING":
+                return new BlockingWaitStrategy();
+            case "SLEEPING":
+                return new SleepingWaitStrategy();
+            case "YIELDING":
+                return new YieldingWaitStrategy();
+            case "BUSY_SPIN":
+                return new BusySpinWaitStrategy();
+            default:
+                throw new IllegalArgumentException("Unknown wait strategy: " + name);
+        }
+    }
+
+    /**
+     * Creates the trade ring's wait strategy. Under CONFLATE the aggregation handlers need to
+     * hear when the trade ring goes idle, or keys conflated during a burst would wait for the
+     * next trade; the strategy then times out every update.conflationFlushMillis, which calls
+     * the handlers' onTimeout.
+     *
+     * @return the wait strategy
+     */
+    public WaitStrategy newTradeWaitStrategy() {
+        if (overloadPolicy != UpdateOverloadPolicy.CONFLATE || !hasHandler(AGGREGATION)) {
+            return newWaitStrategy(tradeWaitStrategy);
+        }
+        if ("BLOCKING".equals(tradeWaitStrategy)) {
+            return new TimeoutBlockingWaitStrategy(conflationFlushMillis, TimeUnit.MILLISECONDS);
+        }
+        return new IdleTimeoutWaitStrategy(tradeWaitStrategy, conflationFlushMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Returns true if a stage includes the named handler.
+     */
+    public boolean hasHandler(String handler) {
+        for (List<String> stage : stages) {
+            if (stage.contains(handler)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void validate() {
+        int deserializeStage = stageOf(DESERIALIZE);
+        if (deserializeStage < 0) {
+            throw new IllegalArgumentException("pipeline.stages must include " + DESERIALIZE);
+        }
+        for (String handler : Arrays.asList(PERSIST, EXPORT, AGGREGATION, ACK)) {
+            int stage = stageOf(handler);
+            if (stage >= 0 && stage <= deserializeStage) {
+                throw new IllegalArgumentException("pipeline.stages: " + handler + " must come after " + DESERIALIZE);
+            }
+        }
+        int ackStage = stageOf(ACK);
+        if (ackStage >= 0) {
+            for (String handler : Arrays.asList(PERSIST, EXPORT, AGGREGATION, JOURNAL)) {
+                if (stageOf(handler) >= ackStage) {
+                    throw new IllegalArgumentException("pipeline.stages: " + ACK + " must come after " + handler);
+                }
+            }
+        }
+        if (updateSink == UpdateSinkType.SHARED_MEMORY) {
+            powerOfTwo("update.sink.capacity", updateSinkCapacity);
+        }
+        if (updateSink == UpdateSinkType.TCP) {
+            int colon = updateSinkAddress.lastIndexOf(':');
+            if (colon <= 0) {
+                throw new IllegalArgumentException("update.sink.address must be host:port: " + updateSinkAddress);
+            }
+            Integer.parseInt(updateSinkAddress.substring(colon + 1));
+        }
+        if (metricsHttpPort < -1 || metricsHttpPort > 65535) {
+            throw new IllegalArgumentException("metrics.http.port must be a port, 0 or -1: " + metricsHttpPort);
+        }
+        if (hasHandler(AGGREGATION) && aggregationGroups.isEmpty()) {
+            throw new IllegalArgumentException("aggregation.groups must not be empty when the aggregation stage is enabled");
+        }
+    }
+
+    private int stageOf(String handler) {
+        for (int i = 0; i < stages.size(); i++) {
+            if (stages.get(i).contains(handler)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static List<List<String>> parseStages(String value) {
+        List<List<String>> stages = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        for (String stageText : value.split(",")) {
+            List<String> stage = new ArrayList<>();
+            for (String handlerText : stageText.split("\\+")) {
+                String handler = handlerText.trim().toLowerCase(Locale.ROOT);
+                if (handler.isEmpty()) {
+                    continue;
+                }
+                if (!HANDLERS.contains(handler)) {
+                    throw new IllegalArgumentException("pipeline.stages: unknown handler '" + handler + "', expected one of " + HANDLERS);
+                }
+                if (!seen.add(handler)) {
+                    throw new IllegalArgumentException("pipeline.stages: handler '" + handler + "' appears more than once");
+                }
+                stage.add(handler);
+            }
+            if (!stage.isEmpty()) {
+                stages.add(Collections.unmodifiableList(stage));
+            }
+        }
+        return Collections.unmodifiableList(stages);
+    }
+
+    private static List<AggregationGroup> parseGroups(String value) {
+        List<AggregationGroup> groups = new ArrayList<>();
+        for (String name : value.split(",")) {
+            String trimmed = name.trim().toUpperCase(Locale.ROOT);
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            AggregationGroup group;
+            try {
+                group = AggregationGroup.valueOf(trimmed);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("aggregation.groups: unknown group '" + trimmed + "', expected one of " +
+                                                   Arrays.toString(AggregationGroup.values()));
+            }
+            if (groups.contains(group)) {
+                throw new IllegalArgumentException("aggregation.groups: " + group + " appears more than once");
+            }
+            groups.add(group);
+        }
+        return Collections.unmodifiableList(groups);
+    }
+
+    private static String waitStrategyName(Properties properties, String key) {
+        String name = properties.getProperty(key, "BLOCKING").trim().toUpperCase(Locale.ROOT);
+        try {
+            newWaitStrategy(name);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(key + ": " + e.getMessage());
+        }
+        return name;
+    }
+
+    private static <E extends Enum<E>> E parseEnum(Properties properties, String key, Class<E> type, E defaultValue) {
+        String value = properties.getProperty(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Enum.valueOf(type, value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(key + ": unknown value '" + value + "', expected one of " +
+                                               Arrays.toString(type.getEnumConstants()));
+        }
+    }
+
+    /**
+     * Parses an int with an optional K, M or G suffix (powers of 1024).
+     */
+    static int size(Properties properties, String key, int defaultValue) {
+        String value = properties.getProperty(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        String text = value.trim().toUpperCase(Locale.ROOT);
+        if (text.endsWith("B")) {
+            text = text.substring(0, text.length() - 1);
+        }
+        long multiplier = 1;
+        if (text.endsWith("K")) {
+            multiplier = 1024;
+        } else if (text.endsWith("M")) {
+            multiplier = 1024 * 1024;
+        } else if (text.endsWith("G")) {
+            multiplier = 1024 * 1024 * 1024;
+        }
+        if (multiplier != 1) {
+            text = text.substring(0, text.length() - 1).trim();
+        }
+        try {
+            long bytes = Long.parseLong(text.replace("_", "")) * multiplier;
+            if (bytes > Integer.MAX_VALUE || bytes < Integer.MIN_VALUE) {
+                throw new IllegalArgumentException(key + ": value out of range: " + value);
+            }
+            return (int) bytes;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(key + ": not a number: " + value);
+        }
+    }
+
+    /**
+     * Parses a plain int, for counts where a size suffix would make no sense.
+     */
+    static int count(Properties properties, String key, int defaultValue) {
+        String value = properties.getProperty(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(key + ": not a number: " + value);
+        }
+    }
+
+    private static int positive(String key, int value) {
+        if (value <= 0) {
+            throw new IllegalArgumentException(key + " must be positive: " + value);
+        }
+        return value;
+    }
+
+    private static int nonNegative(String key, int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException(key + " must not be negative: " + value);
+        }
+        return value;
+    }
+
+    private static int powerOfTwo(String key, int value) {
+        if (value <= 0 || Integer.bitCount(value) != 1) {
+            throw new IllegalArgumentException(key + " must be a power of two: " + value);
+        }
+        return value;
+    }
+
+    public List<List<String>> getStages() {
+        return stages;
+    }
+
+    public ExecutionMode getExecutionMode() {
+        return executionMode;
+    }
+
+    public int getTradeRingSize() {
+        return tradeRingSize;
+    }
+
+    public ProducerType getTradeProducerType() {
+        return tradeProducerType;
+    }
+
+    public String getTradeWaitStrategy() {
+        return tradeWaitStrategy;
+    }
+
+    public int getUpdateRingSize() {
+        return updateRingSize;
+    }
+
+    public String getUpdateWaitStrategy() {
+        return updateWaitStrategy;
+    }
+
+    public UpdateOverloadPolicy getOverloadPolicy() {
+        return overloadPolicy;
+    }
+
+    public int getConflationFlushMillis() {
+        return conflationFlushMillis;
+    }
+
+    public UpdateSinkType getUpdateSink() {
+        return updateSink;
+    }
+
+    public Path getUpdateSinkPath() {
+        return updateSinkPath;
+    }
+
+    public int getUpdateSinkCapacity() {
+        return updateSinkCapacity;
+    }
+
+    public String getUpdateSinkAddress() {
+        return updateSinkAddress;
+    }
+
+    public int getUpdateBatchBytes() {
+        return updateBatchBytes;
+    }
+
+    public List<AggregationGroup> getAggregationGroups() {
+        return aggregationGroups;
+    }
+
+    public int getAggregationShards() {
+        return aggregationShards;
+    }
+
+    public PersistMode getPersistMode() {
+        return persistMode;
+    }
+
+    public String getJdbcUrl() {
+        return jdbcUrl;
+    }
+
+    public String getJdbcUser() {
+        return jdbcUser;
+    }
+
+    public String getJdbcPassword() {
+        return jdbcPassword;
+    }
+
+    public int getPersistWriters() {
+        return persistWriters;
+    }
+
+    public int getPersistHandOffSize() {
+        return persistHandOffSize;
+    }
+
+    public int getPersistBatchSize() {
+        return persistBatchSize;
+    }
+
+    public Path getSpillDirectory() {
+        return spillDirectory;
+    }
+
+    public int getSpillBytes() {
+        return spillBytes;
+    }
+
+    public Path getJournalDirectory() {
+        return journalDirectory;
+    }
+
+    public int getJournalSegmentBytes() {
+        return journalSegmentBytes;
+    }
+
+    public Path getExportDirectory() {
+        return exportDirectory;
+    }
+
+    public int getExportRowGroupSize() {
+        return exportRowGroupSize;
+    }
+
+    /**
+     * Returns the loopback port for the metrics endpoint, 0 for any free port or -1 if disabled.
+     */
+    public int getMetricsHttpPort() {
+        return metricsHttpPort;
+    }
+
+    /**
+     * Returns the seconds between metrics log lines, or 0 if disabled.
+     */
+    public int getMetricsLogIntervalSeconds() {
+        return metricsLogIntervalSeconds;
+    }
+
+    public int getShutdownTimeoutMillis() {
+        return shutdownTimeoutMillis;
+    }
+
+    public int getEstimatedTradeBytes() {
+        return estimatedTradeBytes;
+    }
+}
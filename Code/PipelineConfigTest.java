@@ -0,0 +1,185 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Properties;
+
+import com.lmax.disruptor.BlockingWaitStrategy;
+import com.lmax.disruptor.BusySpinWaitStrategy;
+import com.lmax.disruptor.TimeoutBlockingWaitStrategy;
+import com.lmax.disruptor.dsl.ProducerType;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+public class PipelineConfigTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testDefaultsReproduceHardCodedPipeline() {
+        PipelineConfig config = new PipelineConfig(new Properties());
+
+        assertEquals(Arrays.asList(Arrays.asList("deserialize"),
+                                   Arrays.asList("persist", "aggregation"),
+                                   Arrays.asList("ack")), config.getStages());
+        assertFalse(config.hasHandler(PipelineConfig.JOURNAL), "The journal is opt-in");
+        assertFalse(config.hasHandler(PipelineConfig.EXPORT), "The export is opt-in");
+        assertEquals(1024, config.getTradeRingSize());
+        assertEquals(ProducerType.SINGLE, config.getTradeProducerType());
+        assertEquals(256, config.getUpdateRingSize());
+        assertEquals(UpdateSinkType.LOG, config.getUpdateSink());
+        assertEquals(UpdateOverloadPolicy.BLOCK, config.getOverloadPolicy());
+        assertEquals(64 * 1024 * 1024, config.getUpdateSinkCapacity());
+        assertEquals(PersistMode.SYNC, config.getPersistMode());
+        assertEquals(ExecutionMode.PLATFORM, config.getExecutionMode());
+        assertEquals(3, config.getAggregationGroups().size());
+        assertEquals(1, config.getAggregationShards());
+        assertEquals(30_000, config.getShutdownTimeoutMillis());
+        assertEquals(-1, config.getMetricsHttpPort());
+        assertEquals(10, config.getMetricsLogIntervalSeconds());
+    }
+
+    @Test
+    public void testLoadPropertiesFromFile() throws Exception {
+        Path file = tempDir.resolve("pvs.properties");
+        Files.write(file, Arrays.asList("pipeline.stages = deserialize, aggregation",
+                                        "trade.ringSize = 4K",
+                                        "trade.producerType = multi",
+                                        "update.sink = none",
+                                        "aggregation.groups = BOOK",
+                                        "aggregation.shards = 2"));
+
+        PipelineConfig config = new PipelineConfig(PipelineConfig.loadProperties(file));
+
+        assertEquals(2, config.getStages().size());
+        assertFalse(config.hasHandler(PipelineConfig.PERSIST));
+        assertTrue(config.hasHandler(PipelineConfig.AGGREGATION));
+        assertEquals(4096, config.getTradeRingSize());
+        assertEquals(ProducerType.MULTI, config.getTradeProducerType());
+        assertEquals(UpdateSinkType.NONE, config.getUpdateSink());
+        assertEquals(Arrays.asList(AggregationGroup.BOOK), config.getAggregationGroups());
+        assertEquals(2, config.getAggregationShards());
+    }
+
+    @Test
+    public void testSizeSuffixes() {
+        Properties properties = new Properties();
+        properties.setProperty("a", "64K");
+        properties.setProperty("b", "2 MB");
+        properties.setProperty("c", "1g");
+        properties.setProperty("d", "1_000");
+
+        assertEquals(64 * 1024, PipelineConfig.size(properties, "a", 0));
+        assertEquals(2 * 1024 * 1024, PipelineConfig.size(properties, "b", 0));
+        assertEquals(1024 * 1024 * 1024, PipelineConfig.size(properties, "c", 0));
+        assertEquals(1000, PipelineConfig.size(properties, "d", 0));
+        assertEquals(7, PipelineConfig.size(properties, "missing", 7));
+    }
+
+    @Test
+    public void testShardsArePlainPositiveCounts() {
+        Properties properties = new Properties();
+        properties.setProperty("aggregation.shards", " 3 ");
+        assertEquals(3, new PipelineConfig(properties).getAggregationShards());
+
+        properties.setProperty("aggregation.shards", "1K");
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> new PipelineConfig(properties));
+        assertTrue(e.getMessage().contains("aggregation.shards"));
+
+        properties.setProperty("aggregation.shards", "0");
+        assertThrows(IllegalArgumentException.class, () -> new PipelineConfig(properties));
+    }
+
+    @Test
+    public void testRejectsNonPowerOfTwoRingSize() {
+        Properties properties = new Properties();
+        properties.setProperty("trade.ringSize", "1000");
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> new PipelineConfig(properties));
+        assertTrue(e.getMessage().contains("trade.ringSize"));
+    }
+
+    @Test
+    public void testRejectsOversizedValue() {
+        Properties properties = new Properties();
+        properties.setProperty("persist.spillBytes", "4G");
+
+        assertThrows(IllegalArgumentException.class, () -> new PipelineConfig(properties));
+    }
+
+    @Test
+    public void testRejectsInvalidStageOrder() {
+        assertStagesRejected("persist, aggregation");
+        assertStagesRejected("deserialize+persist, ack");
+        assertStagesRejected("journal+deserialize, ack, persist");
+        assertStagesRejected("deserialize, persist, persist");
+        assertStagesRejected("deserialize, enrich");
+    }
+
+    @Test
+    public void testRejectsUnknownEnumAndAddress() {
+        Properties properties = new Properties();
+        properties.setProperty("update.sink", "TCP");
+        properties.setProperty("update.sink.address", "localhost");
+        assertThrows(IllegalArgumentException.class, () -> new PipelineConfig(properties));
+
+        properties.setProperty("update.sink", "KAFKA");
+        assertThrows(IllegalArgumentException.class, () -> new PipelineConfig(properties));
+
+        properties.setProperty("update.sink", "NONE");
+        properties.setProperty("metrics.http.port", "70000");
+        assertThrows(IllegalArgumentException.class, () -> new PipelineConfig(properties));
+    }
+
+    @Test
+    public void testTradeWaitStrategyTimesOutOnlyWhenConflating() {
+        Properties properties = new Properties();
+        assertTrue(new PipelineConfig(properties).newTradeWaitStrategy() instanceof BlockingWaitStrategy,
+                   "The default BLOCK policy needs no idle timeout");
+
+        properties.setProperty("update.overloadPolicy", "CONFLATE");
+        assertTrue(new PipelineConfig(properties).newTradeWaitStrategy() instanceof TimeoutBlockingWaitStrategy);
+
+        properties.setProperty("trade.waitStrategy", "busy_spin");
+        assertTrue(new PipelineConfig(properties).newTradeWaitStrategy() instanceof IdleTimeoutWaitStrategy);
+
+        properties.setProperty("update.overloadPolicy", "DROP_TO_LATEST");
+        assertTrue(new PipelineConfig(properties).newTradeWaitStrategy() instanceof BusySpinWaitStrategy);
+
+        properties.setProperty("update.overloadPolicy", "CONFLATE");
+        properties.setProperty("trade.waitStrategy", "BLOCKING");
+        properties.setProperty("pipeline.stages", "deserialize, persist");
+        assertTrue(new PipelineConfig(properties).newTradeWaitStrategy() instanceof BlockingWaitStrategy);
+
+        properties.setProperty("update.conflationFlushMillis", "0");
+        assertThrows(IllegalArgumentException.class, () -> new PipelineConfig(properties));
+    }
+
+    @Test
+    public void testMemoryEstimateFollowsConfiguredStages() {
+        Properties properties = new Properties();
+        properties.setProperty("pipeline.stages", "deserialize, aggregation");
+        properties.setProperty("update.sink", "FILE");
+        properties.setProperty("estimate.tradeBytes", "100");
+        PipelineConfig config = new PipelineConfig(properties);
+
+        Map<String, Long> estimate = PipelineTopologyBuilder.estimateMemory(config, false);
+
+        assertEquals(Long.valueOf(1024L * (Long.BYTES + 100)), estimate.values().iterator().next());
+        assertTrue(estimate.keySet().stream().anyMatch(key -> key.startsWith("update ring")));
+        assertFalse(estimate.keySet().stream().anyMatch(key -> key.contains("mapped")));
+        assertFalse(estimate.keySet().stream().anyMatch(key -> key.startsWith("persist")));
+    }
+
+    private static void assertStagesRejected(String stages) {
+        Properties properties = new Properties();
+        properties.setProperty("pipeline.stages", stages);
+        assertThrows(IllegalArgumentException.class, () -> new PipelineConfig(properties), stages);
+    }
+}
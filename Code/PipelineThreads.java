@@ -0,0 +1,104 @@
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread factories for the pipeline stages.
+ *
+ * Virtual threads are looked up reflectively (Thread.ofVirtual()), so the code still builds
+ * and runs on a JVM that predates them; there every factory hands out platform threads.
+ */
+public final class PipelineThreads {
+
+    private static final Method OF_VIRTUAL = resolveOfVirtual();
+    private static volatile boolean fallbackReported;
+
+    private PipelineThreads() {
+    }
+
+    /**
+     * Returns true if this JVM supports virtual threads.
+     */
+    public static boolean isVirtualThreadSupported() {
+        return OF_VIRTUAL != null;
+    }
+
+    /**
+     * Returns a factory for named platform threads, e.g. prefix-0, prefix-1.
+     *
+     * @param prefix thread name prefix
+     * @return the factory
+     */
+    public static ThreadFactory platformThreads(String prefix) {
+        AtomicLong counter = new AtomicLong();
+        return runnable -> new Thread(runnable, prefix + counter.getAndIncrement());
+    }
+
+    /**
+     * Returns a factory for named virtual threads.
+     *
+     * @param prefix thread name prefix
+     * @return the factory
+     * @throws UnsupportedOperationException if the JVM has no virtual threads
+     */
+    public static ThreadFactory virtualThreads(String prefix) {
+        if (OF_VIRTUAL == null) {
+            throw new UnsupportedOperationException("Virtual threads need Java 21 or later; running " +
+                                                    System.getProperty("java.version"));
+        }
+        try {
+            // Builders are mutable, so each factory gets its own.
+            Object builder = OF_VIRTUAL.invoke(null);
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            Object named = builderType.getMethod("name", String.class, long.class).invoke(builder, prefix, 0L);
+            return (ThreadFactory) builderType.getMethod("factory").invoke(named);
+        } catch (ReflectiveOperationException e) {
+            throw new UnsupportedOperationException("Cannot create virtual thread factory", e);
+        }
+    }
+
+    /**
+     * Returns the factory for I/O-bound work in the given mode: virtual threads in
+     * {@link ExecutionMode#VIRTUAL} when available, platform threads otherwise.
+     *
+     * @param mode   the execution mode
+     * @param prefix thread name prefix
+     * @return the factory
+     */
+    public static ThreadFactory ioThreads(ExecutionMode mode, String prefix) {
+        if (mode == ExecutionMode.VIRTUAL) {
+            if (isVirtualThreadSupported()) {
+                return virtualThreads(prefix);
+            }
+            if (!fallbackReported) {
+                fallbackReported = true;
+                System.err.println("Virtual threads are not available on Java " + System.getProperty("java.version") +
+                                   "; I/O stages use platform threads.");
+            }
+        }
+        return platformThreads(prefix);
+    }
+
+    /**
+     * Returns an executor that starts a new thread from the factory for every task. With a
+     * virtual-thread factory this is the intended way to run blocking tasks.
+     *
+     * @param factory creates the task threads
+     * @return the executor
+     */
+    public static Executor threadPerTask(ThreadFactory factory) {
+        return task -> factory.newThread(task).start();
+    }
+
+    private static Method resolveOfVirtual() {
+        try {
+            Method ofVirtual = Thread.class.getMethod("ofVirtual");
+            ofVirtual.invoke(null);
+            return ofVirtual;
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            // Pre-Java 21, or virtual threads disabled (preview not enabled on 19/20).
+            return null;
+        }
+    }
+}
@@ -0,0 +1,497 @@
+import com.lmax.disruptor.EventHandler;
+import com.lmax.disruptor.RingBuffer;
+import com.lmax.disruptor.dsl.Disruptor;
+import com.lmax.disruptor.dsl.ProducerType;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.ToLongFunction;
+
+/**
+ * An assembled pipeline: the trade Disruptor, the optional update Disruptor and the handlers
+ * wired into them. Created by {@link PipelineTopologyBuilder}.
+ *
+ * Shutdown drains rather than discards: ingress stops, every handler is given until the timeout
+ * to reach the last published sequence, batched sinks flush as their handlers stop and each
+ * resource is closed once, by the handler that owns it. The {@link DrainReport} lists anything
+ * that did not make it.
+ */
+public class PipelineTopology {
+
+    /** Up to this much of the shutdown timeout is kept back from the persist writers' drain for halting them. */
+    private static final long HALT_MARGIN_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final PipelineConfig config;
+    private final ExecutorService tradeExecutor;
+    private final ExecutorService updateExecutor;
+    private final Disruptor<TradeEvent> tradeDisruptor;
+    private final Disruptor<AggregationUpdateEvent> updateDisruptor;
+    private final ProducerType updateProducerType;
+    private final Map<String, EventHandler<TradeEvent>> tradeHandlers;
+    private final AggregationUpdatePublishHandler publishHandler;
+    private final PersistEventHandler persistHandler;
+    private final AsyncPersistEventHandler asyncPersistHandler;
+    private final PersistedAckHandler persistedAckHandler;
+    private final PersistCheckpoint checkpoint;
+    private final ColumnarTradeExporter exportHandler;
+    private final List<AggregationEventHandler> aggregationHandlers;
+    private final List<String> stageDescriptions;
+    private final Map<String, Long> memoryEstimate;
+    private final MetricsRegistry metrics = new MetricsRegistry();
+    private MetricsHttpServer metricsServer;
+    private MetricsReporter metricsReporter;
+    private volatile boolean acceptingTrades = true;
+    private DrainReport drainReport;
+
+    PipelineTopology(PipelineConfig config, ExecutorService tradeExecutor, ExecutorService updateExecutor,
+                     Disruptor<TradeEvent> tradeDisruptor, Disruptor<AggregationUpdateEvent> updateDisruptor,
+                     ProducerType updateProducerType, Map<String, EventHandler<TradeEvent>> tradeHandlers, AggregationUpdatePublishHandler publishHandler,
+                     PersistEventHandler persistHandler, AsyncPersistEventHandler asyncPersistHandler,
+                     PersistedAckHandler persistedAckHandler, PersistCheckpoint checkpoint,
+                     ColumnarTradeExporter exportHandler, List<AggregationEventHandler> aggregationHandlers,
+                     List<String> stageDescriptions, Map<String, Long> memoryEstimate) {
+        this.config = config;
+        this.tradeExecutor = tradeExecutor;
+        this.updateExecutor = updateExecutor;
+        this.tradeDisruptor = tradeDisruptor;
+        this.updateDisruptor = updateDisruptor;
+        this.updateProducerType = updateProducerType;
+        this.tradeHandlers = Collections.unmodifiableMap(tradeHandlers);
+        this.publishHandler = publishHandler;
+        this.persistHandler = persistHandler;
+        this.asyncPersistHandler = asyncPersistHandler;
+        this.persistedAckHandler = persistedAckHandler;
+        this.checkpoint = checkpoint;
+        this.exportHandler = exportHandler;
+        this.aggregationHandlers = Collections.unmodifiableList(aggregationHandlers);
+        this.stageDescriptions = Collections.unmodifiableList(stageDescriptions);
+        this.memoryEstimate = Collections.unmodifiableMap(memoryEstimate);
+        registerMetrics();
+    }
+
+    /**
+     * Registers the pipeline's metrics. Per-stage throughput and lag are read from the Disruptor
+     * sequences, everything else from counters the handlers already keep.
+     */
+    private void registerMetrics() {
+        RingBuffer<TradeEvent> tradeRing = tradeDisruptor.getRingBuffer();
+        metrics.counter("trade.published", () -> published(tradeRing));
+        metrics.gauge("trade.ring.remainingCapacity", tradeRing::remainingCapacity);
+        for (Map.Entry<String, EventHandler<TradeEvent>> entry : tradeHandlers.entrySet()) {
+            EventHandler<TradeEvent> handler = entry.getValue();
+            metrics.counter("trade." + entry.getKey() + ".processed", () -> tradeDisruptor.getSequenceValueFor(handler) + 1);
+            metrics.gauge("trade." + entry.getKey() + ".lag",
+                          () -> Math.max(0, tradeRing.getCursor() - tradeDisruptor.getSequenceValueFor(handler)));
+        }
+        for (AggregationEventHandler handler : aggregationHandlers) {
+            String prefix = "aggregation." + handler.getName();
+            UpdateOverloadMetrics overload = handler.getOverloadMetrics();
+            metrics.gauge(prefix + ".keys", () -> handler.getAggregationMap().size());
+            metrics.gauge(prefix + ".pendingKeys", handler::getPendingKeyCount);
+            metrics.counter(prefix + ".updates.published", overload::getPublished);
+            metrics.counter(prefix + ".updates.conflated", overload::getConflated);
+            metrics.counter(prefix + ".updates.dropped", overload::getDropped);
+            metrics.counter(prefix + ".updates.blocked", overload::getBlocked);
+        }
+        if (updateDisruptor != null) {
+            RingBuffer<AggregationUpdateEvent> updateRing = updateDisruptor.getRingBuffer();
+            metrics.counter("update.published", () -> published(updateRing));
+            metrics.gauge("update.ring.remainingCapacity", updateRing::remainingCapacity);
+            metrics.counter("update.sent", () -> updateDisruptor.getSequenceValueFor(publishHandler) + 1);
+            metrics.gauge("update.lag", () -> Math.max(0, updateRing.getCursor() - updateDisruptor.getSequenceValueFor(publishHandler)));
+            metrics.counter("update.batches", publishHandler::getBatchCount);
+        }
+        List<ResilientTradeWriter> writers = persistWriters();
+        if (asyncPersistHandler != null) {
+            metrics.gauge("persist.watermark", asyncPersistHandler::getPersistedSequence);
+        }
+        if (persistedAckHandler != null) {
+            metrics.gauge("ack.sequence", persistedAckHandler::getAckedSequence);
+            metrics.gauge("ack.pending", persistedAckHandler::getPendingAckCount);
+        }
+        if (checkpoint != null) {
+            metrics.gauge("persist.checkpoint", checkpoint::getNextSequence);
+        }
+        if (!writers.isEmpty()) {
+            // Average JDBC batch size is persist.rows.written / persist.batches.
+            metrics.counter("persist.rows.written", () -> sum(writers, ResilientTradeWriter::getRowsWritten));
+            metrics.counter("persist.batches", () -> sum(writers, ResilientTradeWriter::getBatchesWritten));
+            metrics.counter("persist.rows.spilled", () -> sum(writers, ResilientTradeWriter::getRowsSpilled));
+            metrics.counter("persist.rows.dropped", () -> sum(writers, ResilientTradeWriter::getRowsDropped));
+            metrics.counter("persist.reconnects", () -> sum(writers, ResilientTradeWriter::getReconnectCount));
+            metrics.gauge("persist.spill.rows", () -> sum(writers, ResilientTradeWriter::getSpilledRowCount));
+        }
+    }
+
+    /**
+     * Returns the number of slots published so far. A MULTI producer's cursor also covers slots
+     * that are claimed but not yet published, so the count stops at the first such slot after the
+     * slowest consumer.
+     */
+    private static long published(RingBuffer<?> ring) {
+        long cursor = ring.getCursor();
+        return ring.getHighestPublishedSequence(ring.getMinimumGatingSequence() + 1, cursor) + 1;
+    }
+
+    private List<ResilientTradeWriter> persistWriters() {
+        List<ResilientTradeWriter> writers = new ArrayList<>();
+        if (persistHandler != null) {
+            writers.add(persistHandler.getWriter());
+        }
+        if (asyncPersistHandler != null) {
+            writers.addAll(asyncPersistHandler.getWriters());
+        }
+        return writers;
+    }
+
+    private static long sum(List<ResilientTradeWriter> writers, ToLongFunction<ResilientTradeWriter> counter) {
+        long total = 0;
+        for (ResilientTradeWriter writer : writers) {
+            total += counter.applyAsLong(writer);
+        }
+        return total;
+    }
+
+    /**
+     * Starts the update Disruptor, then the trade Disruptor, then the metrics endpoint and log
+     * line if configured.
+     *
+     * @return the trade ring buffer to publish into
+     * @throws IOException if the metrics port cannot be bound
+     */
+    public RingBuffer<TradeEvent> start() throws IOException {
+        if (updateDisruptor != null) {
+            updateDisruptor.start();
+        }
+        RingBuffer<TradeEvent> ringBuffer = tradeDisruptor.start();
+        if (config.getMetricsHttpPort() >= 0) {
+            metricsServer = new MetricsHttpServer(metrics, config.getMetricsHttpPort());
+            metricsServer.start();
+        }
+        if (config.getMetricsLogIntervalSeconds() > 0) {
+            metricsReporter = new MetricsReporter(metrics, System.out);
+            metricsReporter.start(config.getMetricsLogIntervalSeconds(), TimeUnit.SECONDS);
+        }
+        return ringBuffer;
+    }
+
+    /**
+     * Feeds journaled trades back through the pipeline. A topology built in replay mode, which
+     * leaves out the journal, persist, export and ack stages, gets every journaled trade, to
+     * rebuild in-memory state. One built in recovery mode, which keeps only persistence, gets the
+     * trades from the {@link PersistCheckpoint} on, to write what never reached QuestDB.
+     *
+     * @return the number of trades replayed
+     * @throws IOException if the journal cannot be read
+     * @throws IllegalStateException if the topology was built in neither mode
+     */
+    public long replayJournal() throws IOException {
+        boolean persisting = persistHandler != null || asyncPersistHandler != null;
+        if (tradeHandlers.containsKey(PipelineConfig.JOURNAL) || exportHandler != null || (persisting && checkpoint == null)) {
+            throw new IllegalStateException("Journal replay needs a topology built with replay(true) or recover(true); " +
+                                            "this one would journal, persist or export trades again");
+        }
+        long from = persisting ? checkpoint.getNextSequence() : 0;
+        return new TradeJournalReplayer(config.getJournalDirectory(), config.getTradeRingSize() / 4)
+                .replay(tradeDisruptor.getRingBuffer(), from);
+    }
+
+    /**
+     * Publishes a {@link BulkMerge} of the batches on the trade ring. Each aggregation handler
+     * merges its share into its live map on its own thread, between the trades published before
+     * and after it. Like any producer, the caller must be the only publisher unless the trade
+     * ring is multi-producer.
+     *
+     * @param batches the bulk-aggregated trades; not to be reused until the merge has been applied
+     * @return the merge, to wait for
+     * @throws IllegalStateException if the pipeline has no aggregation stage
+     */
+    public BulkMerge mergeBulk(List<TradeBatch> batches) {
+        if (aggregationHandlers.isEmpty()) {
+            throw new IllegalStateException("No aggregation stage to merge into");
+        }
+        BulkMerge merge = new BulkMerge(batches, aggregationHandlers.size());
+        RingBuffer<TradeEvent> ringBuffer = tradeDisruptor.getRingBuffer();
+        long sequence = ringBuffer.next();
+        try {
+            TradeEvent event = ringBuffer.get(sequence);
+            event.clear();
+            event.setBulkMerge(merge);
+        } finally {
+            ringBuffer.publish(sequence);
+        }
+        return merge;
+    }
+
+    /**
+     * Returns false once shutdown has begun. Producers check this before publishing; trades
+     * published after it turns false may not be processed.
+     */
+    public boolean isAcceptingTrades() {
+        return acceptingTrades;
+    }
+
+    /**
+     * Drains and shuts down the pipeline within the configured shutdown.timeoutMillis.
+     *
+     * @return what was drained and what was left behind
+     * @throws IOException if the aggregation dump fails
+     * @throws InterruptedException if interrupted while waiting for the pipeline to drain
+     * @see #shutdown(long, TimeUnit)
+     */
+    public DrainReport shutdown() throws IOException, InterruptedException {
+        return shutdown(config.getShutdownTimeoutMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Drains and shuts down the pipeline:
+     *
+     *   1. stops ingress and waits until every trade handler has processed the last published trade;
+     *   2. halts the trade Disruptor and waits for its handlers to stop, which flushes the JDBC
+     *      batch, the journal and the export file and publishes any conflated aggregation keys;
+     *   3. waits for the update publisher to send every update, then halts it, which flushes
+     *      its last batch and closes the transport;
+     *   4. waits for the asynchronous persist writers to flush and close; they are halted from the
+     *      trade handler thread once the timeout is up, and rows they had not written are reported;
+     *      then closes the watermark ack stage, leaving trades it has not reached unacknowledged,
+     *      and forces the persist checkpoint;
+     *   5. dumps the aggregation maps when exporting.
+     *
+     * All steps share one timeout. A step that runs out of time is reported and the remaining
+     * steps still run, so resources are released either way. Only the first call does anything;
+     * later calls wait for it and return the same report.
+     *
+     * @param timeout how long to wait for the pipeline to drain
+     * @param unit    the unit of timeout
+     * @return what was drained and what was left behind
+     * @throws IOException if the aggregation dump fails
+     * @throws InterruptedException if interrupted while waiting for the pipeline to drain
+     */
+    public synchronized DrainReport shutdown(long timeout, TimeUnit unit) throws IOException, InterruptedException {
+        if (drainReport != null) {
+            return drainReport;
+        }
+        long start = System.nanoTime();
+        long deadline = start + unit.toNanos(timeout);
+        DrainReport report = new DrainReport();
+        acceptingTrades = false;
+        if (asyncPersistHandler != null) {
+            // Its writers are drained from the trade handler thread; leave that thread time to halt
+            // them and stop before the deadline.
+            asyncPersistHandler.setDrainDeadline(deadline - Math.min(HALT_MARGIN_NANOS, (deadline - start) / 10));
+        }
+
+        report.setTradeCursor(awaitHandlers(tradeDisruptor, tradeHandlers, deadline, report));
+        tradeDisruptor.halt();
+        tradeExecutor.shutdown();
+        boolean tradeHandlersStopped = tradeExecutor.awaitTermination(remaining(deadline), TimeUnit.NANOSECONDS);
+        if (!tradeHandlersStopped) {
+            report.undrained("trade handlers still running after halt; sinks may not be flushed");
+        }
+        for (AggregationEventHandler handler : aggregationHandlers) {
+            if (tradeHandlersStopped && handler.getPendingKeyCount() > 0) {
+                report.undrained("aggregation:" + handler.getName() + " has " + handler.getPendingKeyCount() +
+                                 " conflated keys unpublished");
+            }
+        }
+
+        if (updateDisruptor != null) {
+            report.setUpdateCursor(awaitHandlers(updateDisruptor, Collections.singletonMap("update publisher", publishHandler),
+                                                 deadline, report));
+            updateDisruptor.halt();
+            updateExecutor.shutdown();
+            if (!updateExecutor.awaitTermination(remaining(deadline), TimeUnit.NANOSECONDS)) {
+                report.undrained("update publisher still running after halt; transport may not be closed");
+            }
+        } else {
+            updateExecutor.shutdown();
+        }
+
+        long spilledRows = 0;
+        if (asyncPersistHandler != null) {
+            if (tradeHandlersStopped && asyncPersistHandler.getUnwrittenRowCount() > 0) {
+                report.undrained("persist hand-off ring: " + asyncPersistHandler.getUnwrittenRowCount() +
+                                 " rows not written before the timeout");
+            }
+            if (!asyncPersistHandler.awaitWritersClosed(remaining(deadline), TimeUnit.NANOSECONDS)) {
+                report.undrained("persist writers still running; JDBC batches may not be flushed");
+            }
+            report.setPersistedSequence(asyncPersistHandler.getPersistedSequence());
+            spilledRows = asyncPersistHandler.getSpilledRowCount();
+        }
+        if (persistedAckHandler != null) {
+            // Persistence has made its last advance; what it has not reached stays unacknowledged.
+            persistedAckHandler.close();
+            if (persistedAckHandler.getPendingAckCount() > 0) {
+                report.undrained("ack: " + persistedAckHandler.getPendingAckCount() +
+                                 " trades not persisted, left unacknowledged for redelivery");
+            }
+        }
+        if (checkpoint != null) {
+            checkpoint.close();
+        }
+        if (persistHandler != null && tradeHandlersStopped) {
+            spilledRows += persistHandler.getWriter().getSpilledRowCount();
+        }
+        if (spilledRows > 0) {
+            report.undrained(spilledRows + " rows left in spill files, written to QuestDB on the next start");
+        }
+        for (ResilientTradeWriter writer : persistWriters()) {
+            if (writer.getRowsDropped() > 0) {
+                report.undrained(writer.getRowsDropped() + " rows dropped on a full spill file; trades from sequence " +
+                                 writer.getFirstDroppedSequence() + " on were not acknowledged");
+            }
+        }
+
+        if (exportHandler != null) {
+            if (tradeHandlersStopped) {
+                // Columnar dump of each group's final aggregation map.
+                exportHandler.exportAggregates(aggregationHandlers.toArray(new AggregationEventHandler[0]));
+            } else {
+                report.undrained("aggregation dump skipped: aggregation handlers still running");
+            }
+        }
+        if (metricsReporter != null) {
+            // Final figures, now that everything has drained.
+            metricsReporter.report();
+            metricsReporter.close();
+        }
+        if (metricsServer != null) {
+            metricsServer.close();
+        }
+        report.setElapsedNanos(System.nanoTime() - start);
+        drainReport = report;
+        return report;
+    }
+
+    /**
+     * Waits until every handler has processed everything published to the ring, re-reading the
+     * cursor so trades published while waiting are included. Handlers still behind at the
+     * deadline are added to the report.
+     *
+     * @return the cursor the handlers were measured against
+     */
+    private static <T> long awaitHandlers(Disruptor<T> disruptor, Map<String, EventHandler<T>> handlers, long deadline,
+                                          DrainReport report) {
+        RingBuffer<T> ringBuffer = disruptor.getRingBuffer();
+        while (true) {
+            long cursor = ringBuffer.getCursor();
+            boolean drained = true;
+            for (EventHandler<T> handler : handlers.values()) {
+                if (disruptor.getSequenceValueFor(handler) < cursor) {
+                    drained = false;
+                    break;
+                }
+            }
+            if (drained && cursor == ringBuffer.getCursor()) {
+                return cursor;
+            }
+            if (System.nanoTime() - deadline >= 0) {
+                for (Map.Entry<String, EventHandler<T>> entry : handlers.entrySet()) {
+                    long sequence = disruptor.getSequenceValueFor(entry.getValue());
+                    if (sequence < cursor) {
+                        report.undrained(entry.getKey() + " reached sequence " + sequence + " of " + cursor +
+                                         " (" + (cursor - sequence) + " events behind)");
+                    }
+                }
+                return cursor;
+            }
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+    }
+
+    private static long remaining(long deadline) {
+        return Math.max(0, deadline - System.nanoTime());
+    }
+
+    /**
+     * Prints the stages and the estimated memory footprint.
+     *
+     * @param out where to print
+     */
+    public void printSummary(PrintStream out) {
+        out.println("Pipeline (" + config.getExecutionMode() + " I/O threads):");
+        for (int i = 0; i < stageDescriptions.size(); i++) {
+            out.println("  stage " + (i + 1) + ": " + stageDescriptions.get(i));
+        }
+        if (updateDisruptor != null) {
+            out.println("  updates: " + updateProducerType + " producer ring to " + config.getUpdateSink());
+        }
+        PipelineTopologyBuilder.printMemoryEstimate(memoryEstimate, out);
+    }
+
+    public RingBuffer<TradeEvent> getTradeRingBuffer() {
+        return tradeDisruptor.getRingBuffer();
+    }
+
+    public Disruptor<TradeEvent> getTradeDisruptor() {
+        return tradeDisruptor;
+    }
+
+    /**
+     * Returns the update Disruptor, or null if updates are not published.
+     */
+    public Disruptor<AggregationUpdateEvent> getUpdateDisruptor() {
+        return updateDisruptor;
+    }
+
+    /**
+     * Returns MULTI when more than one aggregation handler publishes updates, SINGLE when one
+     * does, or null if updates are not published.
+     */
+    public ProducerType getUpdateProducerType() {
+        return updateProducerType;
+    }
+
+    public PersistEventHandler getPersistHandler() {
+        return persistHandler;
+    }
+
+    public AsyncPersistEventHandler getAsyncPersistHandler() {
+        return asyncPersistHandler;
+    }
+
+    /**
+     * Returns the persisted-position checkpoint, or null without both a journal and a persist stage.
+     */
+    public PersistCheckpoint getCheckpoint() {
+        return checkpoint;
+    }
+
+    /**
+     * Returns the persisted-position ack stage, or null without both a persist and an ack stage.
+     */
+    public PersistedAckHandler getPersistedAckHandler() {
+        return persistedAckHandler;
+    }
+
+    public ColumnarTradeExporter getExportHandler() {
+        return exportHandler;
+    }
+
+    public List<AggregationEventHandler> getAggregationHandlers() {
+        return aggregationHandlers;
+    }
+
+    /**
+     * Returns the estimated footprint per component in bytes.
+     */
+    public Map<String, Long> getMemoryEstimate() {
+        return memoryEstimate;
+    }
+
+    public MetricsRegistry getMetrics() {
+        return metrics;
+    }
+
+    public PipelineConfig getConfig() {
+        return config;
+    }
+}
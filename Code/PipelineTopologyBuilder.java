@@ -0,0 +1,331 @@
+import com.lmax.disruptor.EventHandler;
+import com.lmax.disruptor.dsl.Disruptor;
+import com.lmax.disruptor.dsl.EventHandlerGroup;
+import com.lmax.disruptor.dsl.ProducerType;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Assembles a {@link PipelineTopology} from a {@link PipelineConfig}: creates the handlers the
+ * configured stages name, wires them into the trade Disruptor in stage order and sets up the
+ * update Disruptor and its sink.
+ *
+ * The update ring is created multi-producer whenever more than one aggregation handler
+ * publishes into it (several groups or shards). With a persist stage the ack stage is a
+ * {@link PersistedAckHandler}, which records each trade and acks it once the persisted position
+ * has reached it: the writers' watermark in ASYNC mode, the persist handler's flushed position in
+ * SYNC mode. The trade ring never waits for QuestDB, and no trade dropped on a full spill file
+ * is ever acknowledged. With a journal stage as well, the same position is kept as a
+ * {@link PersistCheckpoint} in the journal, from which a recovery replay writes what never
+ * reached QuestDB.
+ */
+public class PipelineTopologyBuilder {
+
+    /** Rough heap cost of one update ring slot: the event plus its ring buffer reference. */
+    static final long UPDATE_SLOT_BYTES = 40;
+    /** Rough heap cost of one {@link PersistRow}, excluding the strings it shares with the trade. */
+    static final long PERSIST_ROW_BYTES = 96;
+    /** Rough heap cost of one buffered export row across all columns. */
+    static final long EXPORT_ROW_BYTES = 48;
+    /** Rough heap cost of one aggregation map entry: key, stats and HashMap node. */
+    static final long AGGREGATION_ENTRY_BYTES = 320;
+
+    private static final String AGGREGATION_PREFIX = "aggregation:";
+    /** Stages whose side effects already happened when the trades were first processed. */
+    private static final List<String> REPLAY_SKIPPED =
+            Arrays.asList(PipelineConfig.JOURNAL, PipelineConfig.PERSIST, PipelineConfig.EXPORT, PipelineConfig.ACK);
+    /** Everything but persistence, which is what a recovery replay is for. */
+    private static final List<String> RECOVER_SKIPPED =
+            Arrays.asList(PipelineConfig.JOURNAL, PipelineConfig.EXPORT, PipelineConfig.AGGREGATION, PipelineConfig.ACK);
+
+    private final PipelineConfig config;
+    private final Map<String, EventHandler<TradeEvent>> finalStages = new LinkedHashMap<>();
+    private boolean replay;
+    private boolean recover;
+
+    public PipelineTopologyBuilder(PipelineConfig config) {
+        this.config = config;
+    }
+
+    /**
+     * In replay mode only the stages that rebuild in-memory state run. The journal, persist,
+     * export and ack stages are left out, since replayed trades are already journaled, stored
+     * in QuestDB, exported and acknowledged.
+     */
+    public PipelineTopologyBuilder replay(boolean replay) {
+        this.replay = replay;
+        return this;
+    }
+
+    /**
+     * In recovery mode only the persist stage runs, fed from the journal starting at the
+     * {@link PersistCheckpoint}, so that trades journaled but never written to QuestDB are
+     * written now. Aggregation, export and ack are left out: the in-memory state is rebuilt by
+     * {@link #replay(boolean)}, and unacknowledged trades are redelivered upstream anyway.
+     */
+    public PipelineTopologyBuilder recover(boolean recover) {
+        this.recover = recover;
+        return this;
+    }
+
+    /**
+     * Appends a handler as its own stage after the configured stages, e.g. a latency probe that
+     * must see each trade only once the whole pipeline is done with it.
+     *
+     * @param name    the stage name used in the summary and metrics
+     * @param handler the handler
+     */
+    public PipelineTopologyBuilder appendStage(String name, EventHandler<TradeEvent> handler) {
+        finalStages.put(name, handler);
+        return this;
+    }
+
+    /**
+     * Creates the handlers and Disruptors. Nothing is started.
+     *
+     * @return the assembled topology
+     * @throws IOException if a journal, spill, export or transport resource cannot be opened
+     */
+    public PipelineTopology build() throws IOException {
+        if (replay && recover) {
+            throw new IllegalStateException("replay and recover are separate modes");
+        }
+        List<String> skipped = replay ? REPLAY_SKIPPED : recover ? RECOVER_SKIPPED : Collections.<String>emptyList();
+        // Every Disruptor handler keeps its own platform thread. Each Disruptor gets its own pool so
+        // that shutdown can wait for one side's handlers to finish before stopping the other.
+        ExecutorService tradeExecutor = Executors.newCachedThreadPool(PipelineThreads.platformThreads("pvs-trade-"));
+        ExecutorService updateExecutor = Executors.newCachedThreadPool(PipelineThreads.platformThreads("pvs-update-"));
+        // Blocking sinks (JDBC writers, update transport writes) get threads from here instead.
+        Executor ioExecutor = PipelineThreads.threadPerTask(PipelineThreads.ioThreads(config.getExecutionMode(), "pvs-io-"));
+
+        // --- Update side: one publisher per aggregation handler ---
+        boolean aggregate = config.hasHandler(PipelineConfig.AGGREGATION) && !skipped.contains(PipelineConfig.AGGREGATION);
+        int publishers = aggregate ? config.getAggregationGroups().size() * config.getAggregationShards() : 0;
+        Disruptor<AggregationUpdateEvent> updateDisruptor = null;
+        ProducerType updateProducerType = null;
+        AggregationUpdatePublishHandler publishHandler = null;
+        if (publishers > 0 && config.getUpdateSink() != UpdateSinkType.NONE) {
+            updateProducerType = publishers > 1 ? ProducerType.MULTI : ProducerType.SINGLE;
+            updateDisruptor = new Disruptor<>(AggregationUpdateEvent::new, config.getUpdateRingSize(), updateExecutor,
+                                              updateProducerType,
+                                              PipelineConfig.newWaitStrategy(config.getUpdateWaitStrategy()));
+            UpdateTransport transport = openUpdateTransport();
+            if (config.getExecutionMode() == ExecutionMode.VIRTUAL &&
+                (config.getUpdateSink() == UpdateSinkType.FILE || config.getUpdateSink() == UpdateSinkType.TCP)) {
+                // One batch in flight on its own virtual thread while the next one is encoded. Not for
+                // SHARED_MEMORY: its write is a memcpy, so a hand-off would only add a copy.
+                transport = new AsyncUpdateTransport(transport, ioExecutor, config.getUpdateBatchBytes());
+            }
+            publishHandler = new AggregationUpdatePublishHandler(transport, config.getUpdateBatchBytes());
+            updateDisruptor.handleEventsWith(publishHandler);
+        }
+
+        // --- Trade side ---
+        Disruptor<TradeEvent> tradeDisruptor = new Disruptor<>(TradeEvent::new, config.getTradeRingSize(), tradeExecutor,
+                                                               config.getTradeProducerType(),
+                                                               config.newTradeWaitStrategy());
+        PersistEventHandler persistHandler = null;
+        AsyncPersistEventHandler asyncPersistHandler = null;
+        ColumnarTradeExporter exportHandler = null;
+        List<AggregationEventHandler> aggregationHandlers = new ArrayList<>();
+        Map<String, EventHandler<TradeEvent>> tradeHandlers = new LinkedHashMap<>();
+        List<String> stageDescriptions = new ArrayList<>();
+        EventHandlerGroup<TradeEvent> previous = null;
+        boolean persist = config.hasHandler(PipelineConfig.PERSIST) && !skipped.contains(PipelineConfig.PERSIST);
+        // With a persist stage the ack stage follows the persisted position.
+        PersistedAckHandler persistedAckHandler =
+                persist && config.hasHandler(PipelineConfig.ACK) && !skipped.contains(PipelineConfig.ACK)
+                        ? new PersistedAckHandler(new AckHandler()) : null;
+        // With a journal to replay from, the persisted position is also checkpointed in it.
+        PersistCheckpoint checkpoint = persist && config.hasHandler(PipelineConfig.JOURNAL)
+                ? new PersistCheckpoint(config.getJournalDirectory().resolve(PersistCheckpoint.FILE_NAME)) : null;
+        if (checkpoint != null && recover) {
+            // The replay starts at the checkpoint and every ring slot is a journal record.
+            checkpoint.startAt(checkpoint.getNextSequence(), () -> 0);
+        }
+        PersistedSequenceListener persistedListener = tradeSequence -> { };
+        if (checkpoint != null) {
+            persistedListener = checkpoint;
+        }
+        if (persistedAckHandler != null) {
+            persistedListener = persistedListener.andThen(persistedAckHandler);
+        }
+
+        for (List<String> stage : config.getStages()) {
+            List<EventHandler<TradeEvent>> handlers = new ArrayList<>();
+            List<String> names = new ArrayList<>();
+            for (String name : stage) {
+                if (skipped.contains(name)) {
+                    continue;
+                }
+                switch (name) {
+                    case PipelineConfig.JOURNAL:
+                        JournalEventHandler journalHandler = new JournalEventHandler(
+                                new TradeJournal(config.getJournalDirectory(), config.getJournalSegmentBytes()));
+                        if (checkpoint != null) {
+                            checkpoint.startAt(journalHandler.getNextJournalSequence(), journalHandler::getSkippedCount);
+                        }
+                        handlers.add(journalHandler);
+                        break;
+                    case PipelineConfig.DESERIALIZE:
+                        handlers.add(new DeserializationHandler());
+                        break;
+                    case PipelineConfig.PERSIST:
+                        if (config.getPersistMode() == PersistMode.ASYNC) {
+                            asyncPersistHandler = new AsyncPersistEventHandler(
+                                    config.getJdbcUrl(), config.getJdbcUser(), config.getJdbcPassword(),
+                                    config.getPersistWriters(), config.getPersistHandOffSize(), config.getPersistBatchSize(),
+                                    config.getSpillDirectory(), config.getSpillBytes(), ioExecutor,
+                                    persistedListener);
+                            handlers.add(asyncPersistHandler);
+                        } else {
+                            persistHandler = new PersistEventHandler(config.getJdbcUrl(), config.getJdbcUser(),
+                                                                     config.getJdbcPassword(),
+                                                                     config.getSpillDirectory().resolve("persist-spill.dat"),
+                                                                     config.getSpillBytes(), persistedListener);
+                            handlers.add(persistHandler);
+                        }
+                        break;
+                    case PipelineConfig.EXPORT:
+                        exportHandler = new ColumnarTradeExporter(config.getExportDirectory(), config.getExportRowGroupSize());
+                        handlers.add(exportHandler);
+                        break;
+                    case PipelineConfig.AGGREGATION:
+                        for (AggregationGroup group : config.getAggregationGroups()) {
+                            for (int shard = 0; shard < config.getAggregationShards(); shard++) {
+                                AggregationEventHandler handler = new AggregationEventHandler(
+                                        group, updateDisruptor != null ? updateDisruptor.getRingBuffer() : null,
+                                        config.getOverloadPolicy(), shard, config.getAggregationShards());
+                                aggregationHandlers.add(handler);
+                                handlers.add(handler);
+                                names.add(AGGREGATION_PREFIX + handler.getName());
+                            }
+                        }
+                        continue;
+                    case PipelineConfig.ACK:
+                        handlers.add(persistedAckHandler != null ? persistedAckHandler : new AckHandler());
+                        break;
+                    default:
+                        throw new IllegalStateException("Unhandled stage handler " + name);
+                }
+                names.add(name);
+            }
+            if (handlers.isEmpty()) {
+                continue;
+            }
+            for (int i = 0; i < handlers.size(); i++) {
+                tradeHandlers.put(names.get(i), handlers.get(i));
+            }
+            @SuppressWarnings("unchecked")
+            EventHandler<TradeEvent>[] array = handlers.toArray(new EventHandler[0]);
+            previous = previous == null ? tradeDisruptor.handleEventsWith(array) : previous.then(array);
+            stageDescriptions.add(String.join(" + ", names));
+        }
+        for (Map.Entry<String, EventHandler<TradeEvent>> entry : finalStages.entrySet()) {
+            previous = previous == null ? tradeDisruptor.handleEventsWith(entry.getValue()) : previous.then(entry.getValue());
+            tradeHandlers.put(entry.getKey(), entry.getValue());
+            stageDescriptions.add(entry.getKey());
+        }
+
+        return new PipelineTopology(config, tradeExecutor, updateExecutor, tradeDisruptor, updateDisruptor, updateProducerType,
+                                    tradeHandlers, publishHandler, persistHandler, asyncPersistHandler, persistedAckHandler,
+                                    checkpoint, exportHandler, aggregationHandlers, stageDescriptions,
+                                    estimateMemory(config, skipped));
+    }
+
+    private UpdateTransport openUpdateTransport() throws IOException {
+        switch (config.getUpdateSink()) {
+            case SHARED_MEMORY:
+                // Local consumers (risk, P&L, UI gateway) follow this file with SharedMemoryUpdateReader.
+                return SharedMemoryUpdateRing.create(config.getUpdateSinkPath(), config.getUpdateSinkCapacity());
+            case FILE:
+                return ChannelUpdateTransport.openFile(config.getUpdateSinkPath());
+            case LOG:
+                return new LogUpdateTransport(System.out);
+            case TCP:
+                String address = config.getUpdateSinkAddress();
+                int colon = address.lastIndexOf(':');
+                return ChannelUpdateTransport.connect(
+                        new InetSocketAddress(address.substring(0, colon), Integer.parseInt(address.substring(colon + 1))));
+            default:
+                throw new IllegalStateException("No transport for sink " + config.getUpdateSink());
+        }
+    }
+
+    /**
+     * Estimates the memory the configured pipeline reserves up front, per component, in bytes.
+     * Memory-mapped files are listed separately from heap and direct buffers. Aggregation maps
+     * grow with key cardinality and are not included.
+     *
+     * @param config the pipeline settings
+     * @param replay whether the journal, persist and export stages are skipped
+     * @return component description to estimated bytes, in pipeline order
+     */
+    public static Map<String, Long> estimateMemory(PipelineConfig config, boolean replay) {
+        return estimateMemory(config, replay ? REPLAY_SKIPPED : Collections.<String>emptyList());
+    }
+
+    static Map<String, Long> estimateMemory(PipelineConfig config, List<String> skipped) {
+        Map<String, Long> estimate = new LinkedHashMap<>();
+        long tradeSlots = config.getTradeRingSize();
+        estimate.put("trade ring (" + tradeSlots + " slots x " + config.getEstimatedTradeBytes() + " B)",
+                     tradeSlots * (Long.BYTES + config.getEstimatedTradeBytes()));
+        boolean aggregate = config.hasHandler(PipelineConfig.AGGREGATION) && !skipped.contains(PipelineConfig.AGGREGATION);
+        if (aggregate && config.getUpdateSink() != UpdateSinkType.NONE) {
+            estimate.put("update ring (" + config.getUpdateRingSize() + " slots)", config.getUpdateRingSize() * UPDATE_SLOT_BYTES);
+            int buffers = config.getExecutionMode() == ExecutionMode.VIRTUAL ? 2 : 1;
+            estimate.put("update batch buffers (direct)", (long) buffers * config.getUpdateBatchBytes());
+            if (config.getUpdateSink() == UpdateSinkType.SHARED_MEMORY) {
+                estimate.put("update ring file (mapped)", (long) config.getUpdateSinkCapacity() + SharedMemoryUpdateRing.HEADER_BYTES);
+            }
+        }
+        if (config.hasHandler(PipelineConfig.PERSIST) && !skipped.contains(PipelineConfig.PERSIST)) {
+            boolean async = config.getPersistMode() == PersistMode.ASYNC;
+            int writers = async ? config.getPersistWriters() : 1;
+            int batchSize = async ? config.getPersistBatchSize() : PersistEventHandler.DEFAULT_MAX_BATCH_SIZE;
+            if (async) {
+                estimate.put("persist hand-off ring (" + config.getPersistHandOffSize() + " slots)",
+                             config.getPersistHandOffSize() * (Long.BYTES + PERSIST_ROW_BYTES));
+            }
+            estimate.put("persist batches (" + writers + " x " + batchSize + " rows)", (long) writers * batchSize * PERSIST_ROW_BYTES);
+            estimate.put("spill files (mapped, " + writers + ")", (long) writers * config.getSpillBytes());
+        }
+        if (config.hasHandler(PipelineConfig.JOURNAL) && !skipped.contains(PipelineConfig.JOURNAL)) {
+            estimate.put("journal segment (mapped)", (long) config.getJournalSegmentBytes());
+        }
+        if (config.hasHandler(PipelineConfig.EXPORT) && !skipped.contains(PipelineConfig.EXPORT)) {
+            estimate.put("export row group (" + config.getExportRowGroupSize() + " rows)",
+                         config.getExportRowGroupSize() * EXPORT_ROW_BYTES);
+        }
+        return estimate;
+    }
+
+    /**
+     * Prints an estimate with heap/direct and mapped totals.
+     */
+    static void printMemoryEstimate(Map<String, Long> estimate, PrintStream out) {
+        long heap = 0;
+        long mapped = 0;
+        for (Map.Entry<String, Long> entry : estimate.entrySet()) {
+            out.printf("  %-48s %10.1f MiB%n", entry.getKey(), entry.getValue() / (1024.0 * 1024.0));
+            if (entry.getKey().contains("(mapped")) {
+                mapped += entry.getValue();
+            } else {
+                heap += entry.getValue();
+            }
+        }
+        out.printf("Estimated footprint: %.1f MiB heap/direct, %.1f MiB mapped files; aggregation maps add ~%d B per key.%n",
+                   heap / (1024.0 * 1024.0), mapped / (1024.0 * 1024.0), AGGREGATION_ENTRY_BYTES);
+    }
+}
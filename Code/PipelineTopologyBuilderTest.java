@@ -0,0 +1,145 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import com.lmax.disruptor.dsl.ProducerType;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+public class PipelineTopologyBuilderTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testStagesAreWiredInConfiguredOrder() throws Exception {
+        PipelineTopology topology = new PipelineTopologyBuilder(config("journal+deserialize, aggregation",
+                                                                       "aggregation.groups", "BOOK, BOOK_INSTRUMENT"))
+                .appendStage("probe", (event, sequence, endOfBatch) -> { })
+                .build();
+
+        String summary = summary(topology);
+        assertTrue(summary.contains("  stage 1: journal + deserialize\n"), summary);
+        assertTrue(summary.contains("  stage 2: aggregation:BOOK + aggregation:BOOK_INSTRUMENT\n"), summary);
+        assertTrue(summary.contains("  stage 3: probe\n"), summary);
+        assertFalse(summary.contains("stage 4"), summary);
+        assertEquals(2, topology.getAggregationHandlers().size());
+        assertNull(topology.getPersistHandler());
+        assertNull(topology.getExportHandler());
+        startAndDrain(topology);
+    }
+
+    @Test
+    public void testOnePublisherGetsASingleProducerUpdateRing() throws Exception {
+        PipelineTopology topology = new PipelineTopologyBuilder(config("deserialize, aggregation")).build();
+
+        assertEquals(ProducerType.SINGLE, topology.getUpdateProducerType());
+        assertTrue(summary(topology).contains("  updates: SINGLE producer ring to FILE\n"));
+        startAndDrain(topology);
+    }
+
+    @Test
+    public void testSeveralPublishersGetAMultiProducerUpdateRing() throws Exception {
+        PipelineTopology groups = new PipelineTopologyBuilder(config("deserialize, aggregation",
+                                                                     "aggregation.groups", "BOOK, BOOK_INSTRUMENT"))
+                .build();
+        assertEquals(ProducerType.MULTI, groups.getUpdateProducerType());
+        startAndDrain(groups);
+
+        PipelineTopology shards = new PipelineTopologyBuilder(config("deserialize, aggregation",
+                                                                     "aggregation.shards", "2",
+                                                                     "update.sink.path", tempDir.resolve("shards.bin").toString()))
+                .build();
+        assertEquals(ProducerType.MULTI, shards.getUpdateProducerType());
+        assertEquals(2, shards.getAggregationHandlers().size());
+        startAndDrain(shards);
+    }
+
+    @Test
+    public void testNoUpdateRingWithoutASink() throws Exception {
+        PipelineTopology topology = new PipelineTopologyBuilder(config("deserialize, aggregation",
+                                                                       "update.sink", "NONE"))
+                .build();
+
+        assertNull(topology.getUpdateDisruptor());
+        assertNull(topology.getUpdateProducerType());
+        assertFalse(summary(topology).contains("updates:"));
+        startAndDrain(topology);
+    }
+
+    @Test
+    public void testReplaySkipsStagesWithSideEffects() throws Exception {
+        PipelineTopology topology = new PipelineTopologyBuilder(config("journal+deserialize, persist+export+aggregation, ack"))
+                .replay(true)
+                .build();
+
+        String summary = summary(topology);
+        assertTrue(summary.contains("  stage 1: deserialize\n"), summary);
+        assertTrue(summary.contains("  stage 2: aggregation:BOOK\n"), summary);
+        assertFalse(summary.contains("stage 3"), summary);
+        assertNull(topology.getPersistHandler());
+        assertNull(topology.getAsyncPersistHandler());
+        assertNull(topology.getExportHandler());
+        assertNull(topology.getPersistedAckHandler());
+        assertFalse(topology.getMetrics().snapshot().containsKey("trade.ack.processed"));
+        startAndDrain(topology);
+    }
+
+    @Test
+    public void testBothPersistModesAckFromThePersistedPosition() throws Exception {
+        PipelineTopology async = new PipelineTopologyBuilder(config("deserialize, persist, ack",
+                                                                    "persist.mode", "ASYNC",
+                                                                    "update.sink", "NONE"))
+                .build();
+        assertNotNull(async.getAsyncPersistHandler());
+        assertNotNull(async.getPersistedAckHandler());
+        assertTrue(summary(async).contains("  stage 3: ack\n"));
+
+        PipelineTopology sync = new PipelineTopologyBuilder(config("deserialize, persist, ack",
+                                                                   "update.sink", "NONE"))
+                .build();
+        assertNotNull(sync.getPersistHandler());
+        assertNotNull(sync.getPersistedAckHandler());
+
+        PipelineTopology ackOnly = new PipelineTopologyBuilder(config("deserialize, ack",
+                                                                      "update.sink", "NONE"))
+                .build();
+        assertNull(ackOnly.getPersistedAckHandler());
+    }
+
+    private PipelineConfig config(String stages, String... settings) {
+        Properties properties = new Properties();
+        properties.setProperty("pipeline.stages", stages);
+        properties.setProperty("update.sink", "FILE");
+        properties.setProperty("update.sink.path", tempDir.resolve("updates.bin").toString());
+        properties.setProperty("aggregation.groups", "BOOK");
+        properties.setProperty("metrics.logIntervalSeconds", "0");
+        properties.setProperty("journal.directory", tempDir.resolve("journal").toString());
+        properties.setProperty("export.directory", tempDir.resolve("export").toString());
+        properties.setProperty("persist.spillDirectory", tempDir.toString());
+        for (int i = 0; i < settings.length; i += 2) {
+            properties.setProperty(settings[i], settings[i + 1]);
+        }
+        return new PipelineConfig(properties);
+    }
+
+    private static void startAndDrain(PipelineTopology topology) throws Exception {
+        topology.start();
+        DrainReport report = topology.shutdown(5, TimeUnit.SECONDS);
+        assertTrue(report.isClean(), report.getUndrained().toString());
+    }
+
+    private static String summary(PipelineTopology topology) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        topology.printSummary(new PrintStream(bytes, true));
+        return new String(bytes.toByteArray(), StandardCharsets.UTF_8).replace(System.lineSeparator(), "\n");
+    }
+}
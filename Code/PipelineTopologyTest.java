@@ -0,0 +1,347 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import com.lmax.disruptor.EventHandler;
+import com.lmax.disruptor.LifeCycleAware;
+import com.lmax.disruptor.RingBuffer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+public class PipelineTopologyTest {
+
+    private static final String URL = "jdbc:hangingquestdb:test";
+
+    @TempDir
+    Path tempDir;
+
+    private HangingDatabase database;
+
+    @BeforeEach
+    public void setUp() throws SQLException {
+        database = new HangingDatabase();
+        DriverManager.registerDriver(database);
+    }
+
+    @AfterEach
+    public void tearDown() throws SQLException {
+        database.release.countDown();
+        DriverManager.deregisterDriver(database);
+    }
+
+    @Test
+    public void testCleanDrainReachesEveryHandler() throws Exception {
+        CountingHandler probe = new CountingHandler(null);
+        PipelineTopology topology = new PipelineTopologyBuilder(config("deserialize, aggregation"))
+                .appendStage("probe", probe)
+                .build();
+        publish(topology.start(), 0, 100);
+
+        DrainReport report = topology.shutdown(10, TimeUnit.SECONDS);
+
+        assertTrue(report.isClean(), report.getUndrained().toString());
+        assertEquals(99, report.getTradeCursor());
+        assertEquals(-1, report.getUpdateCursor());
+        assertEquals(100, probe.events);
+        assertEquals(1, probe.shutdowns);
+        assertEquals(3, topology.getAggregationHandlers().get(0).getAggregationMap().size());
+        assertFalse(topology.isAcceptingTrades());
+    }
+
+    @Test
+    public void testHandlerPastTheTimeoutIsReportedUndrained() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        PipelineTopology topology = new PipelineTopologyBuilder(config("deserialize"))
+                .appendStage("stuck", new CountingHandler(release))
+                .build();
+        publish(topology.start(), 0, 10);
+        try {
+            DrainReport report = topology.shutdown(200, TimeUnit.MILLISECONDS);
+
+            assertFalse(report.isClean());
+            assertEquals(9, report.getTradeCursor());
+            List<String> undrained = report.getUndrained();
+            // Where it stopped depends on batching; it cannot have passed sequence 4.
+            assertTrue(undrained.stream().anyMatch(detail -> detail.startsWith("stuck reached sequence ") && detail.contains(" of 9 (")),
+                       undrained.toString());
+            assertTrue(undrained.stream().anyMatch(detail -> detail.startsWith("trade handlers still running")), undrained.toString());
+            assertTrue(report.getElapsedNanos() < TimeUnit.SECONDS.toNanos(5), "Shutdown must respect its timeout");
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    public void testSecondShutdownReturnsTheFirstReport() throws Exception {
+        CountingHandler probe = new CountingHandler(null);
+        PipelineTopology topology = new PipelineTopologyBuilder(config("deserialize"))
+                .appendStage("probe", probe)
+                .build();
+        publish(topology.start(), 0, 5);
+
+        DrainReport first = topology.shutdown(10, TimeUnit.SECONDS);
+        DrainReport second = topology.shutdown();
+
+        assertSame(first, second);
+        assertTrue(first.isClean(), first.getUndrained().toString());
+        assertEquals(1, probe.shutdowns, "Handlers are stopped once");
+    }
+
+    @Test
+    public void testPersistWriterStuckInJdbcIsHaltedAtTheTimeout() throws Exception {
+        PipelineTopology topology = new PipelineTopologyBuilder(config("deserialize, persist",
+                                                                       "persist.mode", "ASYNC",
+                                                                       "persist.writers", "1",
+                                                                       "jdbc.url", URL))
+                .build();
+        RingBuffer<TradeEvent> ring = topology.start();
+        publish(ring, 0, 1);
+        assertTrue(database.executing.await(10, TimeUnit.SECONDS), "The writer should reach executeBatch");
+        publish(ring, 1, 9);
+
+        DrainReport report = topology.shutdown(300, TimeUnit.MILLISECONDS);
+
+        assertFalse(report.isClean());
+        assertEquals(9, report.getTradeCursor());
+        List<String> undrained = report.getUndrained();
+        // The first row is stuck in executeBatch, so it is not written either.
+        assertTrue(undrained.contains("persist hand-off ring: 10 rows not written before the timeout"), undrained.toString());
+        assertTrue(undrained.stream().anyMatch(detail -> detail.startsWith("persist writers still running")), undrained.toString());
+        assertEquals(10, topology.getAsyncPersistHandler().getUnwrittenRowCount());
+        assertTrue(report.getElapsedNanos() < TimeUnit.SECONDS.toNanos(5), "A hung writer must not hold up shutdown");
+    }
+
+    @Test
+    public void testPublishedCountExcludesClaimedSlots() throws Exception {
+        CountingHandler probe = new CountingHandler(null);
+        PipelineTopology topology = new PipelineTopologyBuilder(config("deserialize", "trade.producerType", "MULTI"))
+                .appendStage("probe", probe)
+                .build();
+        RingBuffer<TradeEvent> ring = topology.start();
+        publish(ring, 0, 5);
+
+        // A producer that has claimed a slot but not yet published it.
+        long claimed = ring.next();
+        assertEquals(Long.valueOf(5), topology.getMetrics().snapshot().get("trade.published"));
+        ring.get(claimed).setTrade(Trade.newBuilder().setBook("B0").setSide("BUY").setPrice(BigDecimal.ONE).setQuantity(1).build());
+        ring.publish(claimed);
+        assertEquals(Long.valueOf(6), topology.getMetrics().snapshot().get("trade.published"));
+
+        assertTrue(topology.shutdown(10, TimeUnit.SECONDS).isClean());
+        assertEquals(6, probe.events);
+    }
+
+    @Test
+    public void testBulkMergeReachesEveryShardBetweenTrades() throws Exception {
+        PipelineTopology topology = new PipelineTopologyBuilder(config("deserialize, persist+aggregation, ack",
+                                                                       "aggregation.shards", "2",
+                                                                       "jdbc.url", "jdbc:nosuchdb:test"))
+                .build();
+        RingBuffer<TradeEvent> ring = topology.start();
+        publish(ring, 0, 6);
+        TradeBatch batch = new TradeBatch(AggregationGroup.BOOK, 16);
+        for (int i = 0; i < 3; i++) {
+            batch.add(Trade.newBuilder().setBook("B" + i).setInstrument("I1").setCounterparty("CP1")
+                              .setSide("BUY").setPrice(BigDecimal.TEN).setQuantity(100).build());
+        }
+        BulkMerge merge = topology.mergeBulk(List.of(batch));
+        assertTrue(merge.await(5, TimeUnit.SECONDS));
+        publish(ring, 6, 3);
+        topology.shutdown(10, TimeUnit.SECONDS);
+
+        long total = 0;
+        for (AggregationEventHandler handler : topology.getAggregationHandlers()) {
+            for (AggregationStats stats : handler.getAggregationMap().values()) {
+                total += stats.getTotalBuyQty();
+            }
+        }
+        // Trades i = 0..8 have quantity i + 1.
+        assertEquals(45 + 300, total);
+        assertEquals(9, topology.getPersistHandler().getWriter().getRowsSpilled(), "The control event is not a row");
+    }
+
+    @Test
+    public void testRecoveryWritesTradesPastThePersistCheckpoint() throws Exception {
+        // No driver takes this URL, so every row goes to a spill file that holds only a few.
+        PipelineTopology live = new PipelineTopologyBuilder(config("journal+deserialize, persist, ack",
+                                                                   "jdbc.url", "jdbc:nosuchdb:test",
+                                                                   "journal.directory", tempDir.resolve("journal").toString(),
+                                                                   "persist.spillDirectory", tempDir.resolve("live").toString(),
+                                                                   "persist.spillBytes", String.valueOf(PersistSpillFile.HEADER_BYTES + 300)))
+                .build();
+        publishBytes(live.start(), 20);
+        live.shutdown(10, TimeUnit.SECONDS);
+        long firstDropped = live.getPersistHandler().getWriter().getFirstDroppedSequence();
+        assertTrue(firstDropped > 0 && firstDropped < 20, "Some rows should be spilled and the rest dropped");
+        assertEquals(firstDropped, live.getCheckpoint().getNextSequence(), "The checkpoint stops at the first dropped trade");
+        assertEquals(firstDropped - 1, live.getPersistedAckHandler().getAckedSequence());
+
+        PipelineTopology recovery = new PipelineTopologyBuilder(config("journal+deserialize, persist, ack",
+                                                                       "jdbc.url", "jdbc:nosuchdb:test",
+                                                                       "journal.directory", tempDir.resolve("journal").toString(),
+                                                                       "persist.spillDirectory", tempDir.resolve("recovery").toString()))
+                .recover(true)
+                .build();
+        assertNull(recovery.getPersistedAckHandler());
+        recovery.start();
+        assertEquals(20 - firstDropped, recovery.replayJournal());
+        recovery.shutdown(10, TimeUnit.SECONDS);
+        assertEquals(20 - firstDropped, recovery.getPersistHandler().getWriter().getRowsSpilled());
+        assertEquals(20, recovery.getCheckpoint().getNextSequence());
+    }
+
+    private PipelineConfig config(String stages, String... settings) {
+        Properties properties = new Properties();
+        properties.setProperty("pipeline.stages", stages);
+        properties.setProperty("update.sink", "NONE");
+        properties.setProperty("aggregation.groups", "BOOK");
+        properties.setProperty("metrics.logIntervalSeconds", "0");
+        properties.setProperty("persist.spillDirectory", tempDir.toString());
+        for (int i = 0; i < settings.length; i += 2) {
+            properties.setProperty(settings[i], settings[i + 1]);
+        }
+        return new PipelineConfig(properties);
+    }
+
+    private static void publish(RingBuffer<TradeEvent> ring, int first, int count) {
+        for (int i = first; i < first + count; i++) {
+            long sequence = ring.next();
+            try {
+                ring.get(sequence).setTrade(Trade.newBuilder()
+                        .setBook("B" + (i % 3))
+                        .setInstrument("I1")
+                        .setCounterparty("CP1")
+                        .setSide("BUY")
+                        .setPrice(BigDecimal.TEN)
+                        .setQuantity(i + 1)
+                        .build());
+            } finally {
+                ring.publish(sequence);
+            }
+        }
+    }
+
+    private static void publishBytes(RingBuffer<TradeEvent> ring, int count) {
+        for (int i = 0; i < count; i++) {
+            long sequence = ring.next();
+            try {
+                ring.get(sequence).setProtoBytes(Trade.newBuilder()
+                        .setBook("B" + (i % 3))
+                        .setInstrument("I1")
+                        .setCounterparty("CP1")
+                        .setSide("BUY")
+                        .setPrice(BigDecimal.TEN)
+                        .setQuantity(i + 1)
+                        .build()
+                        .toByteArray());
+            } finally {
+                ring.publish(sequence);
+            }
+        }
+    }
+
+    /**
+     * Counts events; with a latch, waits on it at sequence 5 like a handler stuck in I/O.
+     */
+    private static final class CountingHandler implements EventHandler<TradeEvent>, LifeCycleAware {
+        private final CountDownLatch release;
+        volatile int events;
+        volatile int shutdowns;
+
+        CountingHandler(CountDownLatch release) {
+            this.release = release;
+        }
+
+        @Override
+        public void onEvent(TradeEvent event, long sequence, boolean endOfBatch) throws Exception {
+            if (release != null && sequence == 5) {
+                release.await();
+            }
+            events++;
+        }
+
+        @Override
+        public void onStart() {
+        }
+
+        @Override
+        public void onShutdown() {
+            shutdowns++;
+        }
+    }
+
+    /**
+     * A database whose batches never complete until released.
+     */
+    private static final class HangingDatabase implements Driver {
+        final CountDownLatch executing = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+
+        @Override
+        public Connection connect(String url, Properties info) {
+            if (!acceptsURL(url)) {
+                return null;
+            }
+            PreparedStatement statement = (PreparedStatement) Proxy.newProxyInstance(
+                    getClass().getClassLoader(), new Class<?>[]{PreparedStatement.class}, (proxy, method, args) -> {
+                        if (method.getName().equals("executeBatch")) {
+                            executing.countDown();
+                            release.await();
+                            return new int[0];
+                        }
+                        return null;
+                    });
+            return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Connection.class},
+                    (proxy, method, args) -> method.getName().equals("prepareStatement") ? statement : null);
+        }
+
+        @Override
+        public boolean acceptsURL(String url) {
+            return URL.equals(url);
+        }
+
+        @Override
+        public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+            return new DriverPropertyInfo[0];
+        }
+
+        @Override
+        public int getMajorVersion() {
+            return 1;
+        }
+
+        @Override
+        public int getMinorVersion() {
+            return 0;
+        }
+
+        @Override
+        public boolean jdbcCompliant() {
+            return false;
+        }
+
+        @Override
+        public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+            throw new SQLFeatureNotSupportedException();
+        }
+    }
+}
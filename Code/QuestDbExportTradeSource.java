@@ -0,0 +1,141 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * TradeSource over a CSV export of the QuestDB trades table (for example from the /exp
+ * endpoint or COPY), re-encoding each row as a Trade proto.
+ *
+ * The first line must be a header naming at least the book, instrument, counterparty, side,
+ * price and quantity columns; other columns (trade_ts, folder) are ignored, as aggregation
+ * does not use them. Values may be double-quoted, in which case they may contain commas, line
+ * breaks and "" for a quote; a row whose quote is never closed is rejected.
+ */
+public class QuestDbExportTradeSource implements TradeSource {
+
+    private final BufferedReader reader;
+    private final int bookColumn;
+    private final int instrumentColumn;
+    private final int counterpartyColumn;
+    private final int sideColumn;
+    private final int priceColumn;
+    private final int quantityColumn;
+    private final List<String> fields = new ArrayList<>();
+    private long lineNumber = 1;
+
+    /**
+     * @param csvFile the exported file
+     * @throws IOException if the file cannot be read or the header is missing a column
+     */
+    public QuestDbExportTradeSource(Path csvFile) throws IOException {
+        this.reader = Files.newBufferedReader(csvFile, StandardCharsets.UTF_8);
+        String header = reader.readLine();
+        if (header == null) {
+            reader.close();
+            throw new IOException("Empty export file: " + csvFile);
+        }
+        List<String> columns = new ArrayList<>();
+        try {
+            if (!split(header, columns)) {
+                throw new IOException("Unterminated quoted field in export header: " + header);
+            }
+            this.bookColumn = column(columns, "book");
+            this.instrumentColumn = column(columns, "instrument");
+            this.counterpartyColumn = column(columns, "counterparty");
+            this.sideColumn = column(columns, "side");
+            this.priceColumn = column(columns, "price");
+            this.quantityColumn = column(columns, "quantity");
+        } catch (IOException e) {
+            reader.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public byte[] next() throws IOException {
+        String line;
+        do {
+            line = reader.readLine();
+            lineNumber++;
+            if (line == null) {
+                return null;
+            }
+        } while (line.isEmpty());
+        long rowLineNumber = lineNumber;
+        // A quoted field may span lines; keep reading until its quote closes.
+        while (!split(line, fields)) {
+            String continuation = reader.readLine();
+            lineNumber++;
+            if (continuation == null) {
+                throw new IOException("Unterminated quoted field in export row at line " + rowLineNumber + ": " + line);
+            }
+            line = line + "\n" + continuation;
+        }
+        try {
+            Trade trade = Trade.newBuilder()
+                    .setBook(fields.get(bookColumn))
+                    .setInstrument(fields.get(instrumentColumn))
+                    .setCounterparty(fields.get(counterpartyColumn))
+                    .setSide(fields.get(sideColumn))
+                    .setPrice(new BigDecimal(fields.get(priceColumn)))
+                    .setQuantity(Long.parseLong(fields.get(quantityColumn)))
+                    .build();
+            return trade.toByteArray();
+        } catch (RuntimeException e) {
+            throw new IOException("Malformed export row at line " + rowLineNumber + ": " + line, e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    private static int column(List<String> columns, String name) throws IOException {
+        int index = columns.indexOf(name);
+        if (index < 0) {
+            throw new IOException("Export is missing column '" + name + "', found " + columns);
+        }
+        return index;
+    }
+
+    /**
+     * Splits a CSV row into fields, honouring double quotes and "" escapes.
+     *
+     * @return false if the row ends inside a quoted field, i.e. the field continues on the next line
+     */
+    static boolean split(String line, List<String> out) {
+        out.clear();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0, n = line.length(); i < n; i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"') {
+                    if (i + 1 < n && line.charAt(i + 1) == '"') {
+                        field.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                out.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        out.add(field.toString());
+        return !quoted;
+    }
+}
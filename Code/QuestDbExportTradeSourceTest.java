@@ -0,0 +1,137 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+public class QuestDbExportTradeSourceTest {
+
+    private static final String HEADER = "\"trade_ts\",\"book\",\"instrument\",\"counterparty\",\"side\",\"price\",\"quantity\",\"folder\"\n";
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testReadsRowsByHeaderName() throws Exception {
+        Path csv = write("quantity,price,side,counterparty,instrument,book\n" +
+                         "100,10.5,BUY,CP1,I1,B1\n" +
+                         "\n" +
+                         "7,99.125,SELL,CP2,I2,B2\n");
+
+        List<Trade> trades = readAll(csv);
+
+        assertEquals(2, trades.size(), "Blank lines are skipped");
+        assertEquals("B1", trades.get(0).getBook());
+        assertEquals("I1", trades.get(0).getInstrument());
+        assertEquals("CP1", trades.get(0).getCounterparty());
+        assertEquals("BUY", trades.get(0).getSide());
+        assertEquals(0, new BigDecimal("10.5").compareTo(trades.get(0).getPrice()));
+        assertEquals(100, trades.get(0).getQuantity());
+        assertEquals("SELL", trades.get(1).getSide());
+        assertEquals(7, trades.get(1).getQuantity());
+    }
+
+    @Test
+    public void testQuotedFieldsKeepCommasAndQuotes() throws Exception {
+        Path csv = write(HEADER +
+                         "\"2024-01-02T10:00:00.000000Z\",\"B1\",\"I1\",\"Smith, Jones & Co\",\"BUY\",10.5,100,\"/a,b\"\n" +
+                         "\"2024-01-02T10:00:01.000000Z\",\"B1\",\"I1\",\"The \"\"Best\"\" Bank\",\"SELL\",11,5,\"\"\n");
+
+        List<Trade> trades = readAll(csv);
+
+        assertEquals(2, trades.size());
+        assertEquals("Smith, Jones & Co", trades.get(0).getCounterparty());
+        assertEquals("BUY", trades.get(0).getSide(), "A comma inside quotes must not shift later columns");
+        assertEquals(100, trades.get(0).getQuantity());
+        assertEquals("The \"Best\" Bank", trades.get(1).getCounterparty());
+        assertEquals(5, trades.get(1).getQuantity());
+    }
+
+    @Test
+    public void testQuotedFieldMaySpanLines() throws Exception {
+        Path csv = write(HEADER +
+                         "\"2024-01-02T10:00:00.000000Z\",\"B1\",\"I1\",\"Line one\nline two\",\"BUY\",10,3,\"\"\n" +
+                         "\"2024-01-02T10:00:01.000000Z\",\"B2\",\"I1\",\"CP\",\"SELL\",10,4,\"\"\n");
+
+        List<Trade> trades = readAll(csv);
+
+        assertEquals(2, trades.size());
+        assertEquals("Line one\nline two", trades.get(0).getCounterparty());
+        assertEquals(3, trades.get(0).getQuantity());
+        assertEquals("B2", trades.get(1).getBook());
+    }
+
+    @Test
+    public void testUnterminatedQuoteIsRejected() throws Exception {
+        Path csv = write(HEADER +
+                         "\"2024-01-02T10:00:00.000000Z\",\"B1\",\"I1\",\"CP1\",\"BUY\",10,3,\"\"\n" +
+                         "\"2024-01-02T10:00:01.000000Z\",\"B1\",\"I1\",\"Smith, Jones,\"BUY\",10,3,\"\"\n");
+
+        try (QuestDbExportTradeSource source = new QuestDbExportTradeSource(csv)) {
+            assertNotNull(source.next());
+            IOException e = assertThrows(IOException.class, source::next);
+            assertTrue(e.getMessage().contains("line 3"), e.getMessage());
+        }
+    }
+
+    @Test
+    public void testMalformedRowReportsItsLine() throws Exception {
+        Path csv = write("book,instrument,counterparty,side,price,quantity\n" +
+                         "B1,I1,CP1,BUY,10,1\n" +
+                         "B1,I1,CP1,BUY,ten,1\n");
+
+        try (QuestDbExportTradeSource source = new QuestDbExportTradeSource(csv)) {
+            assertNotNull(source.next());
+            IOException e = assertThrows(IOException.class, source::next);
+            assertTrue(e.getMessage().contains("line 3"), e.getMessage());
+        }
+    }
+
+    @Test
+    public void testHeaderMustNameEveryColumn() throws Exception {
+        Path missing = write("book,instrument,side,price,quantity\nB1,I1,BUY,10,1\n");
+        IOException e = assertThrows(IOException.class, () -> new QuestDbExportTradeSource(missing));
+        assertTrue(e.getMessage().contains("counterparty"), e.getMessage());
+
+        Path empty = write("");
+        assertThrows(IOException.class, () -> new QuestDbExportTradeSource(empty));
+    }
+
+    @Test
+    public void testSplit() {
+        List<String> fields = new ArrayList<>();
+
+        assertTrue(QuestDbExportTradeSource.split("a,\"b,c\",,\"d\"\"e\"", fields));
+        assertEquals(Arrays.asList("a", "b,c", "", "d\"e"), fields);
+
+        assertFalse(QuestDbExportTradeSource.split("a,\"b,c", fields), "The quote is still open");
+    }
+
+    private Path write(String content) throws IOException {
+        Path file = tempDir.resolve("trades-" + System.nanoTime() + ".csv");
+        Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static List<Trade> readAll(Path csv) throws IOException {
+        List<Trade> trades = new ArrayList<>();
+        try (QuestDbExportTradeSource source = new QuestDbExportTradeSource(csv)) {
+            byte[] protoBytes;
+            while ((protoBytes = source.next()) != null) {
+                trades.add(Trade.parseFrom(protoBytes));
+            }
+        }
+        return trades;
+    }
+}
@@ -0,0 +1,411 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Batched JDBC writer for {@link PersistRow}s that keeps accepting rows while QuestDB is down.
+ *
+ * Rows are bound and added to a JDBC batch, which is executed on {@link #flush()} or when it
+ * reaches the maximum batch size. If the connection fails, the rows of the failed batch and every
+ * row after it go to a {@link PersistSpillFile} instead, the connection is dropped, and
+ * reconnection is attempted with exponential back-off. Reconnect attempts run on a background
+ * thread, since DriverManager.getConnection can block for the whole connect timeout; the
+ * consumer thread only picks up the result in {@link #flush()}. After a reconnect the spill file
+ * is drained at most {@link #DRAIN_BATCHES_PER_FLUSH} batches per flush, and new rows keep going
+ * to the spill file until it is empty, so rows reach the database in order and no single flush
+ * stalls the trade ring for the whole backlog. Each drained batch frees its space in the spill
+ * file at once, so a spill that filled up during a long outage takes new rows again as soon as
+ * draining starts. Nothing on the trade pipeline ever sees an SQLException.
+ *
+ * A batch that fails part way through may already be partly stored, so delivery across an outage
+ * is at-least-once. When the spill file is full, rows are dropped and counted, and the lowest
+ * dropped trade sequence is kept: callers never report anything from it on as persisted, so those
+ * trades stay unacknowledged and are redelivered upstream.
+ *
+ * Instances are not thread-safe; each writer is used from a single consumer thread. The counters
+ * may be read from any thread. The spill file is forced to disk on flush only when rows were
+ * spilled since the last flush.
+ */
+public class ResilientTradeWriter implements Closeable {
+
+    public static final long DEFAULT_INITIAL_BACKOFF_MILLIS = 100;
+    public static final long DEFAULT_MAX_BACKOFF_MILLIS = 30_000;
+    /** Spilled batches written per flush while catching up; more than one so the backlog shrinks under load. */
+    public static final int DRAIN_BATCHES_PER_FLUSH = 4;
+
+    private final String jdbcUrl;
+    private final String user;
+    private final String password;
+    private final PersistSpillFile spill;
+    private final int maxBatchSize;
+    private final long initialBackoffNanos;
+    private final long maxBackoffNanos;
+    private final PersistRow[] batch;
+    private final PersistRow drainRow = new PersistRow();
+    private final Executor reconnectExecutor;
+    private Connection connection;
+    private PreparedStatement preparedStatement;
+    // The reconnect attempt in flight, if any; only touched by the consumer thread.
+    private CompletableFuture<Session> reconnect;
+    private int batchedRows;
+    private long backoffNanos;
+    private long nextAttemptNanos;
+    private boolean closed;
+    private final LongAdder rowsWritten = new LongAdder();
+    private final LongAdder batchesWritten = new LongAdder();
+    private final LongAdder rowsSpilled = new LongAdder();
+    private final LongAdder rowsDropped = new LongAdder();
+    private final LongAdder reconnects = new LongAdder();
+    private volatile long firstDroppedSequence = Long.MAX_VALUE;
+
+    /**
+     * Creates the writer with the default back-off and tries to connect. A failed first
+     * connection is not an error: rows are spilled until the database becomes reachable.
+     *
+     * @param jdbcUrl      The JDBC URL for QuestDB.
+     * @param user         The username for QuestDB.
+     * @param password     The password for QuestDB.
+     * @param spillFile    where rows are buffered while the database is unavailable
+     * @param spillBytes   maximum size of the spill file
+     * @param maxBatchSize rows after which a batch is executed without waiting for a flush
+     * @throws IOException if the spill file cannot be opened
+     */
+    public ResilientTradeWriter(String jdbcUrl, String user, String password, Path spillFile, int spillBytes,
+                                int maxBatchSize) throws IOException {
+        this(jdbcUrl, user, password, spillFile, spillBytes, maxBatchSize,
+             DEFAULT_INITIAL_BACKOFF_MILLIS, DEFAULT_MAX_BACKOFF_MILLIS);
+    }
+
+    /**
+     * @param initialBackoffMillis delay before the first reconnect attempt after a failure
+     * @param maxBackoffMillis     upper bound for the doubling reconnect delay
+     * @see #ResilientTradeWriter(String, String, String, Path, int, int)
+     */
+    public ResilientTradeWriter(String jdbcUrl, String user, String password, Path spillFile, int spillBytes,
+                                int maxBatchSize, long initialBackoffMillis, long maxBackoffMillis) throws IOException {
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive: " + maxBatchSize);
+        }
+        this.jdbcUrl = jdbcUrl;
+        this.user = user;
+        this.password = password;
+        this.maxBatchSize = maxBatchSize;
+        this.initialBackoffNanos = TimeUnit.MILLISECONDS.toNanos(initialBackoffMillis);
+        this.maxBackoffNanos = TimeUnit.MILLISECONDS.toNanos(maxBackoffMillis);
+        this.batch = new PersistRow[maxBatchSize];
+        for (int i = 0; i < maxBatchSize; i++) {
+            batch[i] = new PersistRow();
+        }
+        this.spill = new PersistSpillFile(spillFile, spillBytes);
+        if (!spill.isEmpty()) {
+            System.out.println("Found " + spill.getRowCount() + " spilled rows in " + spillFile + " from a previous run.");
+        }
+        String threadName = "pvs-reconnect-" + spillFile.getFileName();
+        this.reconnectExecutor = PipelineThreads.threadPerTask(runnable -> {
+            Thread thread = new Thread(runnable, threadName);
+            // A connect hanging in the driver must not keep the JVM alive.
+            thread.setDaemon(true);
+            return thread;
+        });
+        // The first attempt is made here, at startup, before any trade flows.
+        try {
+            onConnected(openSession());
+        } catch (SQLException e) {
+            onFailure(e);
+        }
+    }
+
+    /**
+     * Adds a row to the current batch, or to the spill file while the database is unavailable
+     * or older spilled rows are still waiting.
+     *
+     * @param row the row; it is copied, so the caller may reuse it afterwards
+     */
+    public void add(PersistRow row) {
+        if (preparedStatement == null || !spill.isEmpty()) {
+            spillRow(row);
+            return;
+        }
+        // Keep a copy so the row can be spilled if the batch later fails.
+        batch[batchedRows++].copyFrom(row);
+        try {
+            row.bind(preparedStatement);
+            preparedStatement.addBatch();
+            if (batchedRows >= maxBatchSize) {
+                executeBatch();
+            }
+        } catch (SQLException e) {
+            onFailure(e);
+        }
+    }
+
+    /**
+     * Executes the pending batch and drains part of the spill file, or, while disconnected,
+     * starts a background reconnect once the back-off has elapsed and takes over its connection
+     * when it has succeeded. Never waits for a connection. Newly spilled rows are forced to disk.
+     */
+    public void flush() {
+        if (preparedStatement == null) {
+            pollReconnect();
+        }
+        if (preparedStatement != null) {
+            try {
+                executeBatch();
+                drainSpill(DRAIN_BATCHES_PER_FLUSH);
+            } catch (SQLException e) {
+                onFailure(e);
+            }
+        }
+        spill.commit();
+    }
+
+    /**
+     * Returns true if every row added so far has been executed against the database, i.e. the
+     * writer is connected with no open batch and an empty spill file.
+     */
+    public boolean isCaughtUp() {
+        return preparedStatement != null && batchedRows == 0 && spill.isEmpty();
+    }
+
+    public boolean isConnected() {
+        return preparedStatement != null;
+    }
+
+    public long getRowsWritten() {
+        return rowsWritten.sum();
+    }
+
+    /**
+     * Returns the number of JDBC batches executed, including batches drained from the spill file.
+     */
+    public long getBatchesWritten() {
+        return batchesWritten.sum();
+    }
+
+    public long getRowsSpilled() {
+        return rowsSpilled.sum();
+    }
+
+    public long getRowsDropped() {
+        return rowsDropped.sum();
+    }
+
+    /**
+     * Returns the lowest trade sequence of a row dropped because the spill file was full, or
+     * Long.MAX_VALUE if none was. Nothing at or after it may be reported as persisted.
+     */
+    public long getFirstDroppedSequence() {
+        return firstDroppedSequence;
+    }
+
+    /**
+     * Returns the given trade sequence, or the one before the first dropped row if that is lower:
+     * the highest sequence that may be reported as persisted once everything up to the given one
+     * has been handled.
+     */
+    public long persistedLimit(long tradeSequence) {
+        return Math.min(tradeSequence, firstDroppedSequence - 1);
+    }
+
+    public long getReconnectCount() {
+        return reconnects.sum();
+    }
+
+    /**
+     * Returns the number of rows currently waiting in the spill file.
+     */
+    public long getSpilledRowCount() {
+        return spill.getRowCount();
+    }
+
+    private void executeBatch() throws SQLException {
+        if (batchedRows == 0) {
+            return;
+        }
+        preparedStatement.executeBatch();
+        rowsWritten.add(batchedRows);
+        batchesWritten.increment();
+        batchedRows = 0;
+    }
+
+    /**
+     * Starts a reconnect attempt if none is running and the back-off has elapsed, or installs the
+     * result of a finished one.
+     */
+    private void pollReconnect() {
+        if (reconnect == null) {
+            if (!closed && System.nanoTime() - nextAttemptNanos >= 0) {
+                reconnect = CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return openSession();
+                    } catch (SQLException e) {
+                        throw new CompletionException(e);
+                    }
+                }, reconnectExecutor);
+            }
+            return;
+        }
+        if (!reconnect.isDone()) {
+            return;
+        }
+        CompletableFuture<Session> attempt = reconnect;
+        reconnect = null;
+        try {
+            onConnected(attempt.join());
+        } catch (CompletionException e) {
+            onFailure(e.getCause() instanceof SQLException ? (SQLException) e.getCause() : new SQLException(e.getCause()));
+        }
+    }
+
+    /**
+     * Opens a connection and prepares the insert; runs on the reconnect thread except for the
+     * first attempt.
+     */
+    private Session openSession() throws SQLException {
+        Connection opened = DriverManager.getConnection(jdbcUrl, user, password);
+        try {
+            return new Session(opened, opened.prepareStatement(PersistRow.INSERT_SQL));
+        } catch (SQLException e) {
+            opened.close();
+            throw e;
+        }
+    }
+
+    private void onConnected(Session session) {
+        connection = session.connection;
+        preparedStatement = session.statement;
+        if (backoffNanos != 0) {
+            reconnects.increment();
+            System.out.println("Reconnected to " + jdbcUrl + "; draining " + spill.getRowCount() + " spilled rows.");
+        }
+        if (spill.isEmpty()) {
+            backoffNanos = 0;
+        }
+    }
+
+    /**
+     * Writes up to the given number of batches of spilled rows. A row counts as drained only
+     * once its batch has executed.
+     */
+    private void drainSpill(int maxBatches) throws SQLException {
+        for (int batches = 0; batches < maxBatches && !spill.isEmpty(); batches++) {
+            int rows = 0;
+            try {
+                while (rows < maxBatchSize && spill.read(drainRow)) {
+                    drainRow.bind(preparedStatement);
+                    preparedStatement.addBatch();
+                    rows++;
+                }
+                preparedStatement.executeBatch();
+            } catch (SQLException e) {
+                spill.rewind();
+                throw e;
+            }
+            spill.commitRead();
+            rowsWritten.add(rows);
+            batchesWritten.increment();
+        }
+        if (spill.isEmpty()) {
+            // Fully caught up: the next outage starts from the initial back-off again.
+            backoffNanos = 0;
+        }
+    }
+
+    private void onFailure(SQLException e) {
+        if (preparedStatement != null || backoffNanos == 0) {
+            System.err.println("Database unavailable, spilling rows to " + spill.getFile() + ": " + e.getMessage());
+        }
+        closeConnection();
+        for (int i = 0; i < batchedRows; i++) {
+            spillRow(batch[i]);
+        }
+        batchedRows = 0;
+        backoffNanos = backoffNanos == 0 ? initialBackoffNanos : Math.min(backoffNanos * 2, maxBackoffNanos);
+        nextAttemptNanos = System.nanoTime() + backoffNanos;
+    }
+
+    private void spillRow(PersistRow row) {
+        if (spill.append(row)) {
+            rowsSpilled.increment();
+        } else {
+            if (rowsDropped.sum() == 0) {
+                System.err.println("Spill file " + spill.getFile() + " is full; dropping rows from trade sequence " +
+                                   row.getTradeSequence() + " and holding acks below it.");
+            }
+            rowsDropped.increment();
+            if (row.getTradeSequence() < firstDroppedSequence) {
+                firstDroppedSequence = row.getTradeSequence();
+            }
+        }
+    }
+
+    private void closeConnection() {
+        try {
+            if (preparedStatement != null) {
+                preparedStatement.close();
+            }
+            if (connection != null) {
+                connection.close();
+            }
+        } catch (SQLException e) {
+            // The connection is being abandoned anyway.
+        }
+        preparedStatement = null;
+        connection = null;
+    }
+
+    /**
+     * Flushes pending rows, closes the connection and the spill file. Rows still spilled stay in
+     * the file and are drained by the next writer that opens it. A reconnect still in flight is
+     * abandoned and its connection closed once it completes. Safe to call more than once.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        // No new reconnect attempt from here on; a finished one is still taken over by flush.
+        closed = true;
+        flush();
+        if (reconnect != null) {
+            reconnect.thenAccept(Session::close);
+            reconnect = null;
+        }
+        closeConnection();
+        spill.close();
+        if (rowsDropped.sum() > 0) {
+            System.err.println("Dropped " + rowsDropped.sum() + " rows because " + spill.getFile() + " was full.");
+        }
+    }
+
+    /**
+     * A connection with its prepared insert, as opened by a reconnect attempt.
+     */
+    private static final class Session {
+        final Connection connection;
+        final PreparedStatement statement;
+
+        Session(Connection connection, PreparedStatement statement) {
+            this.connection = connection;
+            this.statement = statement;
+        }
+
+        void close() {
+            try {
+                statement.close();
+                connection.close();
+            } catch (SQLException e) {
+                // Abandoned anyway.
+            }
+        }
+    }
+}
@@ -0,0 +1,412 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+public class ResilientTradeWriterTest {
+
+    private static final String URL = "jdbc:fakequestdb:test";
+
+    @TempDir
+    Path tempDir;
+
+    private FakeDatabase database;
+
+    @BeforeEach
+    public void setUp() throws SQLException {
+        database = new FakeDatabase();
+        DriverManager.registerDriver(database);
+    }
+
+    @AfterEach
+    public void tearDown() throws SQLException {
+        DriverManager.deregisterDriver(database);
+    }
+
+    @Test
+    public void testSpillsDuringOutageAndDrainsInOrderOnRecovery() throws Exception {
+        PersistRow row = new PersistRow();
+        try (ResilientTradeWriter writer = newWriter(1 << 20)) {
+            for (long i = 0; i < 3; i++) {
+                writer.add(row(row, i));
+            }
+            writer.flush();
+            assertEquals(List.of(0L, 1L, 2L), database.stored);
+
+            database.available = false;
+            for (long i = 3; i < 10; i++) {
+                writer.add(row(row, i));
+            }
+            writer.flush();
+            assertFalse(writer.isConnected(), "Writer should drop the connection when a batch fails");
+            assertFalse(writer.isCaughtUp());
+            assertEquals(7, writer.getSpilledRowCount(), "The failed batch should be spilled");
+
+            // Still down: new rows go straight to the spill file.
+            Thread.sleep(5);
+            writer.add(row(row, 10));
+            writer.flush();
+            assertEquals(8, writer.getSpilledRowCount());
+
+            database.available = true;
+            Thread.sleep(5);
+            writer.add(row(row, 11));
+            awaitCaughtUp(writer);
+            assertEquals(1, writer.getReconnectCount());
+            writer.add(row(row, 12));
+            writer.flush();
+        }
+        List<Long> expected = new ArrayList<>();
+        for (long i = 0; i <= 12; i++) {
+            expected.add(i);
+        }
+        assertEquals(expected, database.stored, "Every row should reach the database exactly once and in order");
+    }
+
+    @Test
+    public void testStartsWithDatabaseDownAndKeepsSpillAcrossRestart() throws Exception {
+        database.available = false;
+        PersistRow row = new PersistRow();
+        try (ResilientTradeWriter writer = newWriter(1 << 20)) {
+            assertFalse(writer.isConnected());
+            writer.add(row(row, 0));
+            writer.add(row(row, 1));
+            writer.flush();
+        }
+        assertTrue(database.stored.isEmpty());
+
+        database.available = true;
+        try (ResilientTradeWriter writer = newWriter(1 << 20)) {
+            assertTrue(writer.isConnected());
+            awaitCaughtUp(writer);
+        }
+        assertEquals(List.of(0L, 1L), database.stored);
+    }
+
+    @Test
+    public void testFlushDoesNotWaitForReconnect() throws Exception {
+        database.available = false;
+        PersistRow row = new PersistRow();
+        try (ResilientTradeWriter writer = newWriter(1 << 20)) {
+            writer.add(row(row, 0));
+            writer.flush();
+
+            // The database comes back but takes its time accepting connections.
+            database.connectGate = new CountDownLatch(1);
+            database.available = true;
+            Thread.sleep(5);
+            long start = System.nanoTime();
+            for (int i = 0; i < 10; i++) {
+                writer.add(row(row, i + 1));
+                writer.flush();
+            }
+            assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1), "flush must not block on the connect");
+            assertFalse(writer.isConnected());
+            assertEquals(11, writer.getSpilledRowCount());
+
+            database.connectGate.countDown();
+            awaitCaughtUp(writer);
+            assertEquals(1, writer.getReconnectCount());
+        }
+        assertEquals(11, database.stored.size());
+    }
+
+    @Test
+    public void testDrainsSpillInBoundedSlices() throws Exception {
+        database.available = false;
+        PersistRow row = new PersistRow();
+        try (ResilientTradeWriter writer = newWriter(1 << 20)) {
+            for (long i = 0; i < 100; i++) {
+                writer.add(row(row, i));
+            }
+            writer.flush();
+            database.available = true;
+            Thread.sleep(5);
+            while (!writer.isConnected()) {
+                writer.flush();
+                Thread.sleep(1);
+            }
+
+            int drained = database.stored.size();
+            writer.flush();
+            // Batches of 4 rows.
+            assertEquals(4 * ResilientTradeWriter.DRAIN_BATCHES_PER_FLUSH, database.stored.size() - drained,
+                         "One flush should drain a bounded slice of the spill");
+            awaitCaughtUp(writer);
+        }
+        assertEquals(100, database.stored.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(Long.valueOf(i), database.stored.get(i));
+        }
+    }
+
+    @Test
+    public void testSpillReusesDrainedSpaceAcrossRestart() throws Exception {
+        PersistRow row = new PersistRow();
+        Path file = tempDir.resolve("ring.dat");
+        long appended = 0;
+        try (PersistSpillFile spill = new PersistSpillFile(file, PersistSpillFile.HEADER_BYTES + 400)) {
+            while (spill.append(row(row, appended))) {
+                appended++;
+            }
+            assertTrue(appended > 2);
+
+            // Draining two rows makes room for new ones without emptying the file.
+            assertTrue(spill.read(row));
+            assertTrue(spill.read(row));
+            spill.commitRead();
+            assertTrue(spill.append(row(row, appended++)), "Drained space should be reused");
+            assertFalse(spill.isEmpty());
+        }
+        try (PersistSpillFile spill = new PersistSpillFile(file, PersistSpillFile.HEADER_BYTES + 400)) {
+            assertEquals(appended - 2, spill.getRowCount());
+            for (long i = 2; i < appended; i++) {
+                assertTrue(spill.read(row));
+                assertEquals(i, row.getTradeSequence(), "Rows should come back in order across the wrap");
+            }
+            assertFalse(spill.read(row));
+            spill.commitRead();
+            assertTrue(spill.isEmpty());
+        }
+    }
+
+    @Test
+    public void testFullSpillTakesRowsAgainOnceDrainingStarts() throws Exception {
+        database.available = false;
+        PersistRow row = new PersistRow();
+        try (ResilientTradeWriter writer = newWriter(PersistSpillFile.HEADER_BYTES + 2_000)) {
+            long sequence = 0;
+            while (writer.getRowsDropped() == 0) {
+                writer.add(row(row, sequence++));
+            }
+            long spilled = writer.getSpilledRowCount();
+            assertTrue(spilled > ResilientTradeWriter.DRAIN_BATCHES_PER_FLUSH * 4, "The spill should outlast one flush");
+
+            database.available = true;
+            Thread.sleep(5);
+            awaitConnected(writer);
+            assertTrue(writer.getSpilledRowCount() < spilled, "The flush should have drained part of the spill");
+            assertFalse(writer.isCaughtUp());
+            long dropped = writer.getRowsDropped();
+            writer.add(row(row, sequence));
+            assertEquals(dropped, writer.getRowsDropped(), "A partly drained spill should take new rows");
+        }
+    }
+
+    @Test
+    public void testSpillForcedOnlyAfterAppends() throws Exception {
+        PersistRow row = new PersistRow();
+        try (PersistSpillFile spill = new PersistSpillFile(tempDir.resolve("force.dat"), 4096)) {
+            assertFalse(spill.hasUnforcedRows());
+            spill.append(row(row, 1));
+            assertTrue(spill.hasUnforcedRows());
+            spill.commit();
+            assertFalse(spill.hasUnforcedRows());
+
+            assertTrue(spill.read(row));
+            spill.commitRead();
+            assertFalse(spill.hasUnforcedRows(), "Draining alone should not force the file");
+        }
+    }
+
+    @Test
+    public void testFullSpillDropsAndCountsRows() throws Exception {
+        database.available = false;
+        PersistRow row = new PersistRow();
+        try (ResilientTradeWriter writer = newWriter(PersistSpillFile.HEADER_BYTES + 200)) {
+            for (long i = 0; i < 10; i++) {
+                writer.add(row(row, i));
+            }
+            assertTrue(writer.getRowsSpilled() > 0);
+            assertEquals(10, writer.getRowsSpilled() + writer.getRowsDropped(), "Every row is either spilled or dropped");
+            assertTrue(writer.getRowsDropped() > 0, "A full spill file should drop rows instead of blocking");
+            long firstDropped = writer.getRowsSpilled();
+            assertEquals(firstDropped, writer.getFirstDroppedSequence());
+            assertEquals(firstDropped - 1, writer.persistedLimit(9));
+
+            database.available = true;
+            Thread.sleep(5);
+            writer.add(row(row, 10));
+            awaitCaughtUp(writer);
+            assertEquals(firstDropped - 1, writer.persistedLimit(10), "Catching up must not move past a dropped row");
+        }
+    }
+
+    @Test
+    public void testSpilledRowRoundTrip() throws Exception {
+        PersistRow original = new PersistRow();
+        original.set(42, Instant.ofEpochSecond(1_700_000_000L, 123_456_789), "F1", "AAPL", "CP\u00e9", "B1", "SELL",
+                     new BigDecimal("187.125"), 300);
+        PersistRow empty = new PersistRow();
+        empty.set(43, null, null, null, null, null, null, null, 0);
+        try (PersistSpillFile spill = new PersistSpillFile(tempDir.resolve("roundtrip.dat"), 4096)) {
+            assertTrue(spill.append(original));
+            assertTrue(spill.append(empty));
+
+            PersistRow read = new PersistRow();
+            assertTrue(spill.read(read));
+            assertEquals(42, read.getTradeSequence());
+            assertEquals(original.getTradeTimestamp(), read.getTradeTimestamp());
+            assertEquals("CP\u00e9", read.getCounterparty());
+            assertEquals(new BigDecimal("187.125"), read.getPrice());
+            assertEquals(300, read.getQuantity());
+
+            spill.rewind();
+            assertTrue(spill.read(read));
+            assertTrue(spill.read(read));
+            assertNull(read.getTradeTimestamp(), "Null fields should survive the spill");
+            assertNull(read.getPrice());
+            assertFalse(spill.read(read));
+            spill.commitRead();
+            assertTrue(spill.isEmpty());
+            assertEquals(0, spill.getRowCount());
+        }
+    }
+
+    private ResilientTradeWriter newWriter(int spillBytes) throws Exception {
+        return new ResilientTradeWriter(URL, "user", "password", tempDir.resolve("spill.dat"), spillBytes, 4, 1, 1);
+    }
+
+    private static void awaitCaughtUp(ResilientTradeWriter writer) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!writer.isCaughtUp()) {
+            assertTrue(System.nanoTime() < deadline, "Writer did not catch up");
+            writer.flush();
+            Thread.sleep(1);
+        }
+    }
+
+    private static void awaitConnected(ResilientTradeWriter writer) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!writer.isConnected()) {
+            assertTrue(System.nanoTime() < deadline, "Writer did not reconnect");
+            writer.flush();
+            Thread.sleep(1);
+        }
+    }
+
+    private static PersistRow row(PersistRow row, long sequence) {
+        // The quantity doubles as the row id seen by the fake database.
+        row.set(sequence, Instant.ofEpochSecond(1_700_000_000L + sequence), "F", "INST", "CP", "BOOK", "BUY",
+                new BigDecimal("100.5"), sequence);
+        return row;
+    }
+
+    /**
+     * Minimal JDBC driver that stores the quantity of every executed row and can be switched off
+     * to simulate an outage.
+     */
+    private static class FakeDatabase implements Driver {
+
+        volatile boolean available = true;
+        // When set, connect waits for it, like a database slow to accept connections.
+        volatile CountDownLatch connectGate;
+        final List<Long> stored = Collections.synchronizedList(new ArrayList<>());
+
+        @Override
+        public Connection connect(String url, Properties info) throws SQLException {
+            if (!acceptsURL(url)) {
+                return null;
+            }
+            if (!available) {
+                throw new SQLException("Connection refused");
+            }
+            CountDownLatch gate = connectGate;
+            if (gate != null) {
+                try {
+                    gate.await();
+                } catch (InterruptedException e) {
+                    throw new SQLException(e);
+                }
+            }
+            return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Connection.class},
+                    (proxy, method, args) -> {
+                        if (method.getName().equals("prepareStatement")) {
+                            return newStatement();
+                        }
+                        return null;
+                    });
+        }
+
+        private PreparedStatement newStatement() {
+            List<Long> batch = new ArrayList<>();
+            long[] current = new long[1];
+            return (PreparedStatement) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{PreparedStatement.class},
+                    (proxy, method, args) -> {
+                        switch (method.getName()) {
+                            case "setLong":
+                                current[0] = (Long) args[1];
+                                return null;
+                            case "addBatch":
+                                batch.add(current[0]);
+                                return null;
+                            case "executeBatch":
+                                if (!available) {
+                                    batch.clear();
+                                    throw new SQLException("Connection reset");
+                                }
+                                stored.addAll(batch);
+                                int[] counts = new int[batch.size()];
+                                batch.clear();
+                                return counts;
+                            default:
+                                return null;
+                        }
+                    });
+        }
+
+        @Override
+        public boolean acceptsURL(String url) {
+            return URL.equals(url);
+        }
+
+        @Override
+        public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+            return new DriverPropertyInfo[0];
+        }
+
+        @Override
+        public int getMajorVersion() {
+            return 1;
+        }
+
+        @Override
+        public int getMinorVersion() {
+            return 0;
+        }
+
+        @Override
+        public boolean jdbcCompliant() {
+            return false;
+        }
+
+        @Override
+        public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+            throw new SQLFeatureNotSupportedException();
+        }
+    }
+}
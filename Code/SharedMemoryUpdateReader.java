@@ -0,0 +1,222 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+
+/**
+ * Follows a {@link SharedMemoryUpdateRing} from this or another JVM on the same host.
+ *
+ * Each reader keeps its own cursor and polls the mapped file directly, so there are no
+ * system calls on the read path. The writer never waits for readers: if a reader falls a
+ * whole ring behind it is lapped, skips to the newest data and {@link #getLappedCount()} is
+ * incremented. A reader is not thread-safe; give each consuming thread its own instance.
+ *
+ * Each poll checks the ring's epoch. A writer that restarted and took the ring over continues
+ * from its old tail, so the reader keeps its cursor and counts the restart in
+ * {@link #getWriterRestartCount()}; updates after it may come from rebuilt state. A ring that
+ * was replaced by a new file is retired, and poll throws until the path is reopened.
+ */
+public class SharedMemoryUpdateReader implements Closeable {
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final ByteBuffer readView;
+    private final ByteBuffer scratch;
+    private final AggregationUpdateRecord record = new AggregationUpdateRecord();
+    private final int capacity;
+    private final int mask;
+    private final Path path;
+    private long epoch;
+    private long cursor;
+    private long lappedCount;
+    private long writerRestartCount;
+
+    private SharedMemoryUpdateReader(Path path, FileChannel channel, MappedByteBuffer buffer, int capacity,
+                                     boolean fromEarliest) {
+        this.path = path;
+        this.channel = channel;
+        this.buffer = buffer;
+        this.readView = buffer.duplicate();
+        this.scratch = ByteBuffer.allocate(capacity / 2);
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.epoch = epoch();
+        long tail = tail();
+        // Only the first lap is guaranteed to start on a record boundary at position 0.
+        this.cursor = fromEarliest && tailIntent() <= capacity ? 0 : tail;
+    }
+
+    /**
+     * Maps an existing ring file for reading.
+     *
+     * @param path         the ring file created by the writer
+     * @param fromEarliest start from the oldest record still in the ring if the writer has not
+     *                     wrapped yet; otherwise (or if false) start from the current tail
+     * @return the reader
+     * @throws IOException if the file cannot be opened or is not a ring file
+     */
+    public static SharedMemoryUpdateReader open(Path path, boolean fromEarliest) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, SharedMemoryUpdateRing.HEADER_BYTES);
+            header.order(ByteOrder.nativeOrder());
+            if (header.getInt(SharedMemoryUpdateRing.MAGIC_OFFSET) != SharedMemoryUpdateRing.MAGIC) {
+                throw new IOException("Not an initialised update ring: " + path);
+            }
+            if (header.getInt(SharedMemoryUpdateRing.VERSION_OFFSET) != SharedMemoryUpdateRing.VERSION) {
+                throw new IOException("Unsupported update ring version in " + path);
+            }
+            int capacity = header.getInt(SharedMemoryUpdateRing.CAPACITY_OFFSET);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                                                  SharedMemoryUpdateRing.HEADER_BYTES + (long) capacity);
+            buffer.order(ByteOrder.nativeOrder());
+            SharedMemoryUpdateReader reader = new SharedMemoryUpdateReader(path, channel, buffer, capacity, fromEarliest);
+            if (reader.epoch == SharedMemoryUpdateRing.RETIRED) {
+                throw new IOException("Update ring " + path + " was replaced while opening it; open it again");
+            }
+            return reader;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Decodes up to {@code limit} available updates and passes each to the consumer.
+     *
+     * The record passed to the consumer is reused for the next update.
+     *
+     * @param consumer receives each decoded update
+     * @param limit    maximum number of updates to deliver in this call
+     * @return the number of updates delivered; 0 if none were available
+     * @throws IllegalStateException if the ring file was replaced; open the path again
+     */
+    public int poll(Consumer<AggregationUpdateRecord> consumer, int limit) {
+        long current = epoch();
+        if (current != epoch) {
+            if (current == SharedMemoryUpdateRing.RETIRED) {
+                throw new IllegalStateException("Update ring " + path + " was replaced by a new writer; open it again");
+            }
+            epoch = current;
+            writerRestartCount++;
+        }
+        int delivered = 0;
+        while (delivered < limit) {
+            long tail = tail();
+            if (cursor >= tail) {
+                break;
+            }
+            int index = (int) (cursor & mask);
+            int offset = SharedMemoryUpdateRing.HEADER_BYTES + index;
+            int recordLength = buffer.getInt(offset);
+            int type = buffer.getInt(offset + 4);
+            int alignedLength = SharedMemoryUpdateRing.align(recordLength);
+            boolean plausible = recordLength >= SharedMemoryUpdateRing.RECORD_HEADER_BYTES
+                                && alignedLength <= capacity - index
+                                && recordLength - SharedMemoryUpdateRing.RECORD_HEADER_BYTES <= scratch.capacity();
+            if (plausible && type == SharedMemoryUpdateRing.TYPE_DATA) {
+                scratch.clear();
+                readView.limit(offset + recordLength);
+                readView.position(offset + SharedMemoryUpdateRing.RECORD_HEADER_BYTES);
+                scratch.put(readView);
+                readView.limit(readView.capacity());
+                scratch.flip();
+            }
+            // Whatever we copied is only trustworthy if the writer had not started overwriting it.
+            VarHandle.loadLoadFence();
+            if (tailIntent() - capacity > cursor) {
+                lappedCount++;
+                cursor = tail();
+                continue;
+            }
+            if (!plausible) {
+                throw new IllegalStateException("Corrupt update ring record at position " + cursor);
+            }
+            cursor += alignedLength;
+            if (type == SharedMemoryUpdateRing.TYPE_DATA) {
+                consumer.accept(AggregationUpdateCodec.decode(scratch, record));
+                delivered++;
+            }
+        }
+        return delivered;
+    }
+
+    /**
+     * Returns how many times this reader was lapped by the writer and lost updates.
+     */
+    public long getLappedCount() {
+        return lappedCount;
+    }
+
+    /**
+     * Returns how many times a restarted writer took over the ring while this reader followed it.
+     */
+    public long getWriterRestartCount() {
+        return writerRestartCount;
+    }
+
+    /**
+     * Returns this reader's position in the stream.
+     */
+    public long getPosition() {
+        return cursor;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    private long tail() {
+        return (long) SharedMemoryUpdateRing.LONG_VIEW.getAcquire(buffer, SharedMemoryUpdateRing.TAIL_OFFSET);
+    }
+
+    private long epoch() {
+        return (long) SharedMemoryUpdateRing.LONG_VIEW.getVolatile(buffer, SharedMemoryUpdateRing.EPOCH_OFFSET);
+    }
+
+    private long tailIntent() {
+        return (long) SharedMemoryUpdateRing.LONG_VIEW.getVolatile(buffer, SharedMemoryUpdateRing.TAIL_INTENT_OFFSET);
+    }
+
+    /**
+     * Tails a ring file from the command line.
+     *
+     * Usage: SharedMemoryUpdateReader &lt;ring-file&gt; [expected-count]
+     *
+     * Without an expected count every update is printed. With one, the reader prints READY once
+     * mapped, consumes that many updates and prints a one-line summary before exiting.
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: SharedMemoryUpdateReader <ring-file> [expected-count]");
+            System.exit(2);
+        }
+        Path path = Paths.get(args[0]);
+        long expected = args.length > 1 ? Long.parseLong(args[1]) : -1;
+        try (SharedMemoryUpdateReader reader = open(path, true)) {
+            System.out.println("READY");
+            System.out.flush();
+            long[] totals = new long[2];
+            Consumer<AggregationUpdateRecord> consumer = expected < 0
+                    ? r -> System.out.println(r)
+                    : r -> {
+                        totals[0]++;
+                        totals[1] += r.getTotalBuyQty();
+                    };
+            while (expected < 0 || totals[0] < expected) {
+                if (reader.poll(consumer, 256) == 0) {
+                    Thread.onSpinWait();
+                }
+            }
+            System.out.println("RECEIVED count=" + totals[0] + " buyQty=" + totals[1] + " lapped=" + reader.getLappedCount());
+        }
+    }
+}
@@ -0,0 +1,254 @@
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Single-writer, multi-reader broadcast ring in a memory-mapped file.
+ *
+ * The writer (normally the update disruptor's AggregationUpdatePublishHandler) appends each
+ * encoded update frame as a record and never waits for readers. Readers in this or other
+ * JVMs on the same host map the same file and follow the stream with their own cursors
+ * (see {@link SharedMemoryUpdateReader}); a reader that falls more than one ring behind is
+ * lapped and skips ahead rather than slowing the writer down.
+ *
+ * File layout (all header fields in native byte order):
+ *
+ *     0    int  magic
+ *     4    int  version
+ *     8    int  capacity (data bytes, power of two)
+ *     16   long epoch          (writer generation; {@link #RETIRED} once the file is replaced)
+ *     64   long tail intent   (position the writer is about to write up to)
+ *     128  long tail          (position up to which records are complete)
+ *     192  data[capacity]
+ *
+ * Positions only ever increase; a position maps to data offset (position & (capacity - 1)).
+ * Each record is an int record length (header plus payload, unaligned), an int record type
+ * and the payload, and starts on an 8-byte boundary. A padding record fills the space at the
+ * end of the data region when the next record would not fit before wrapping.
+ *
+ * A restarted writer never truncates or resets a file that readers may still have mapped. If
+ * the existing file is a ring of the same version and capacity, the writer takes it over: it
+ * continues from the old tail and increments the epoch, so readers keep their cursors and can
+ * see the restart. Otherwise a new file is built next to it and renamed over it. The old file's
+ * epoch is then set to {@link #RETIRED}, which tells its readers to reopen the path.
+ */
+public class SharedMemoryUpdateRing implements UpdateTransport {
+
+    static final int MAGIC = 0x50565352; // "PVSR"
+    static final int VERSION = 2;
+    static final int MAGIC_OFFSET = 0;
+    static final int VERSION_OFFSET = 4;
+    static final int CAPACITY_OFFSET = 8;
+    static final int EPOCH_OFFSET = 16;
+    /** Epoch of a ring file that has been replaced by a new one at the same path. */
+    static final long RETIRED = -1;
+    // Intent and tail sit on their own cache lines, away from the read-mostly fields.
+    static final int TAIL_INTENT_OFFSET = 64;
+    static final int TAIL_OFFSET = 128;
+    static final int HEADER_BYTES = 192;
+
+    static final int RECORD_HEADER_BYTES = 8;
+    static final int RECORD_ALIGNMENT = 8;
+    static final int TYPE_DATA = 1;
+    static final int TYPE_PADDING = 2;
+
+    static final VarHandle LONG_VIEW = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final ByteBuffer writeView;
+    private final int capacity;
+    private final int mask;
+    private final long epoch;
+    private long tail;
+
+    private SharedMemoryUpdateRing(FileChannel channel, MappedByteBuffer buffer, int capacity) {
+        this.channel = channel;
+        this.buffer = buffer;
+        this.writeView = buffer.duplicate();
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.tail = (long) LONG_VIEW.getVolatile(buffer, TAIL_OFFSET);
+        this.epoch = (long) LONG_VIEW.getVolatile(buffer, EPOCH_OFFSET);
+    }
+
+    /**
+     * Maps a ring file for writing: takes over the existing ring at the path under a new epoch
+     * if it has this version and capacity, and otherwise replaces the file with a new ring.
+     *
+     * @param path     the ring file, typically on a tmpfs such as /dev/shm
+     * @param capacity data capacity in bytes; must be a power of two
+     * @return the writer
+     * @throws IOException if the file cannot be created or mapped
+     */
+    public static SharedMemoryUpdateRing create(Path path, int capacity) throws IOException {
+        if (capacity < RECORD_ALIGNMENT || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Ring capacity must be a power of two: " + capacity);
+        }
+        long size = HEADER_BYTES + (long) capacity;
+        if (Files.exists(path)) {
+            FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            try {
+                if (channel.size() == size) {
+                    MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+                    buffer.order(ByteOrder.nativeOrder());
+                    if (buffer.getInt(MAGIC_OFFSET) == MAGIC && buffer.getInt(VERSION_OFFSET) == VERSION &&
+                        buffer.getInt(CAPACITY_OFFSET) == capacity &&
+                        (long) LONG_VIEW.getVolatile(buffer, EPOCH_OFFSET) != RETIRED) {
+                        return takeOver(channel, buffer, capacity);
+                    }
+                }
+                channel.close();
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+            return replace(path, capacity);
+        }
+        return initialise(path, capacity);
+    }
+
+    /**
+     * Continues an existing ring from its tail under the next epoch. Records a dead writer left
+     * half-written past the tail were never published, so they are simply overwritten.
+     */
+    private static SharedMemoryUpdateRing takeOver(FileChannel channel, MappedByteBuffer buffer, int capacity) {
+        long tail = (long) LONG_VIEW.getVolatile(buffer, TAIL_OFFSET);
+        LONG_VIEW.setVolatile(buffer, TAIL_INTENT_OFFSET, tail);
+        long epoch = (long) LONG_VIEW.getVolatile(buffer, EPOCH_OFFSET) + 1;
+        LONG_VIEW.setVolatile(buffer, EPOCH_OFFSET, epoch);
+        System.out.println("Update ring taken over at position " + tail + ", epoch " + epoch + ".");
+        return new SharedMemoryUpdateRing(channel, buffer, capacity);
+    }
+
+    /**
+     * Builds a new ring next to the old file, renames it over the path and retires the old
+     * file, whose readers keep a valid mapping of it until they reopen.
+     */
+    private static SharedMemoryUpdateRing replace(Path path, int capacity) throws IOException {
+        Path next = path.resolveSibling(path.getFileName() + ".new");
+        Files.deleteIfExists(next);
+        SharedMemoryUpdateRing ring = initialise(next, capacity);
+        try (FileChannel old = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            Files.move(next, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            if (old.size() >= HEADER_BYTES) {
+                MappedByteBuffer header = old.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+                header.order(ByteOrder.nativeOrder());
+                if (header.getInt(MAGIC_OFFSET) == MAGIC) {
+                    LONG_VIEW.setVolatile(header, EPOCH_OFFSET, RETIRED);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            ring.close();
+            Files.deleteIfExists(next);
+            throw e;
+        }
+        System.out.println("Update ring " + path + " replaced with a new ring of " + capacity + " bytes.");
+        return ring;
+    }
+
+    private static SharedMemoryUpdateRing initialise(Path path, int capacity) throws IOException {
+        FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES + (long) capacity);
+            buffer.order(ByteOrder.nativeOrder());
+            buffer.putInt(CAPACITY_OFFSET, capacity);
+            buffer.putInt(VERSION_OFFSET, VERSION);
+            LONG_VIEW.setVolatile(buffer, EPOCH_OFFSET, 1L);
+            LONG_VIEW.setVolatile(buffer, TAIL_INTENT_OFFSET, 0L);
+            LONG_VIEW.setVolatile(buffer, TAIL_OFFSET, 0L);
+            // Magic last: readers treat the file as ready once they see it.
+            buffer.putInt(MAGIC_OFFSET, MAGIC);
+            VarHandle.fullFence();
+            return new SharedMemoryUpdateRing(channel, buffer, capacity);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Largest encoded update frame the ring can carry.
+     */
+    public int maxFrameLength() {
+        return capacity / 2 - RECORD_HEADER_BYTES;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Appends every frame in the batch and then publishes them to readers with a single
+     * release store of the tail.
+     */
+    @Override
+    public void write(ByteBuffer batch) {
+        long position = tail;
+        while (batch.hasRemaining()) {
+            int frameLength = AggregationUpdateCodec.FRAME_HEADER_BYTES + batch.getInt(batch.position());
+            if (frameLength > maxFrameLength() || frameLength > batch.remaining()) {
+                throw new IllegalArgumentException("Invalid or oversized update frame of " + frameLength + " bytes");
+            }
+            int recordLength = RECORD_HEADER_BYTES + frameLength;
+            int alignedLength = align(recordLength);
+            int index = (int) (position & mask);
+            int toEnd = capacity - index;
+            int padding = alignedLength > toEnd ? toEnd : 0;
+
+            // Announce the overwrite before touching the data so readers can detect it.
+            LONG_VIEW.setRelease(buffer, TAIL_INTENT_OFFSET, position + padding + alignedLength);
+            VarHandle.storeStoreFence();
+
+            if (padding > 0) {
+                buffer.putInt(HEADER_BYTES + index, padding);
+                buffer.putInt(HEADER_BYTES + index + 4, TYPE_PADDING);
+                position += padding;
+                index = 0;
+            }
+            int recordOffset = HEADER_BYTES + index;
+            buffer.putInt(recordOffset, recordLength);
+            buffer.putInt(recordOffset + 4, TYPE_DATA);
+            int batchLimit = batch.limit();
+            batch.limit(batch.position() + frameLength);
+            writeView.position(recordOffset + RECORD_HEADER_BYTES);
+            writeView.put(batch);
+            batch.limit(batchLimit);
+            position += alignedLength;
+        }
+        tail = position;
+        LONG_VIEW.setRelease(buffer, TAIL_OFFSET, position);
+    }
+
+    /**
+     * Returns the position up to which records have been published.
+     */
+    public long getTail() {
+        return tail;
+    }
+
+    /**
+     * Returns this writer's epoch: 1 for a new ring, one more for each writer that took it over.
+     */
+    public long getEpoch() {
+        return epoch;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    static int align(int length) {
+        return (length + RECORD_ALIGNMENT - 1) & -RECORD_ALIGNMENT;
+    }
+}
@@ -0,0 +1,192 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+public class SharedMemoryUpdateRingTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static ByteBuffer batchOf(int first, int count) {
+        ByteBuffer batch = ByteBuffer.allocate(256 * count);
+        for (int i = first; i < first + count; i++) {
+            AggregationStats stats = new AggregationStats();
+            stats.addBuyTrade(i, BigDecimal.ONE);
+            AggregationUpdateCodec.encode(new AggregationKey("Book" + i, null, null), stats, batch);
+        }
+        batch.flip();
+        return batch;
+    }
+
+    @Test
+    public void testReaderSeesBatchesInOrder() throws Exception {
+        Path file = tempDir.resolve("updates.ring");
+        try (SharedMemoryUpdateRing ring = SharedMemoryUpdateRing.create(file, 64 * 1024);
+             SharedMemoryUpdateReader reader = SharedMemoryUpdateReader.open(file, true)) {
+            List<String> books = new ArrayList<>();
+            assertEquals(0, reader.poll(r -> books.add(r.getKey().getBook()), 100), "Empty ring should deliver nothing");
+
+            ring.write(batchOf(0, 3));
+            ring.write(batchOf(3, 2));
+            assertEquals(5, reader.poll(r -> books.add(r.getKey().getBook()), 100));
+            assertEquals(List.of("Book0", "Book1", "Book2", "Book3", "Book4"), books);
+            assertEquals(ring.getTail(), reader.getPosition(), "Reader should have caught up with the writer");
+        }
+    }
+
+    @Test
+    public void testWrapAroundWithPadding() throws Exception {
+        Path file = tempDir.resolve("updates.ring");
+        // Small ring so that records regularly straddle the end and need padding.
+        try (SharedMemoryUpdateRing ring = SharedMemoryUpdateRing.create(file, 1024);
+             SharedMemoryUpdateReader reader = SharedMemoryUpdateReader.open(file, true)) {
+            long[] next = {0};
+            for (int i = 0; i < 200; i++) {
+                ring.write(batchOf(i, 1));
+                reader.poll(r -> {
+                    assertEquals(next[0], r.getTotalBuyQty(), "Updates must arrive in order across wraps");
+                    next[0]++;
+                }, 10);
+            }
+            assertEquals(200, next[0]);
+            assertEquals(0, reader.getLappedCount(), "A reader that keeps up must never be lapped");
+        }
+    }
+
+    @Test
+    public void testSlowReaderIsLappedNotBlocking() throws Exception {
+        Path file = tempDir.resolve("updates.ring");
+        try (SharedMemoryUpdateRing ring = SharedMemoryUpdateRing.create(file, 1024);
+             SharedMemoryUpdateReader reader = SharedMemoryUpdateReader.open(file, true)) {
+            for (int i = 0; i < 100; i++) {
+                ring.write(batchOf(i, 1));
+            }
+            List<Long> received = new ArrayList<>();
+            reader.poll(r -> received.add(r.getTotalBuyQty()), 1000);
+            assertTrue(reader.getLappedCount() > 0, "A reader a whole ring behind should be reported as lapped");
+            assertEquals(ring.getTail(), reader.getPosition(), "A lapped reader should skip to the newest data");
+
+            ring.write(batchOf(100, 1));
+            received.clear();
+            assertEquals(1, reader.poll(r -> received.add(r.getTotalBuyQty()), 10));
+            assertEquals(List.of(100L), received, "A lapped reader should resume with new updates");
+        }
+    }
+
+    @Test
+    public void testRestartedWriterTakesOverWithoutResettingReaders() throws Exception {
+        Path file = tempDir.resolve("updates.ring");
+        List<String> books = new ArrayList<>();
+        try (SharedMemoryUpdateReader reader = openAfterWriting(file, 1024, books)) {
+            long tail;
+            try (SharedMemoryUpdateRing restarted = SharedMemoryUpdateRing.create(file, 1024)) {
+                assertEquals(2, restarted.getEpoch());
+                assertEquals(reader.getPosition(), restarted.getTail(), "The restarted writer continues from the old tail");
+                restarted.write(batchOf(3, 2));
+                tail = restarted.getTail();
+            }
+            assertEquals(2, reader.poll(r -> books.add(r.getKey().getBook()), 100));
+            assertEquals(List.of("Book0", "Book1", "Book2", "Book3", "Book4"), books);
+            assertEquals(1, reader.getWriterRestartCount());
+            assertEquals(tail, reader.getPosition());
+        }
+    }
+
+    @Test
+    public void testRingOfAnotherCapacityIsReplacedAndRetired() throws Exception {
+        Path file = tempDir.resolve("updates.ring");
+        try (SharedMemoryUpdateReader stale = openAfterWriting(file, 1024, new ArrayList<>());
+             SharedMemoryUpdateRing ring = SharedMemoryUpdateRing.create(file, 4096)) {
+            assertEquals(1, ring.getEpoch());
+            assertThrows(IllegalStateException.class, () -> stale.poll(r -> { }, 100),
+                         "Readers of the old file are told to reopen");
+            ring.write(batchOf(7, 1));
+            try (SharedMemoryUpdateReader reader = SharedMemoryUpdateReader.open(file, true)) {
+                List<String> books = new ArrayList<>();
+                assertEquals(1, reader.poll(r -> books.add(r.getKey().getBook()), 100));
+                assertEquals(List.of("Book7"), books);
+            }
+            assertEquals(List.of(file), listFiles(), "No replacement file is left behind");
+        }
+    }
+
+    /**
+     * Creates a ring, writes updates 0 to 2, closes the writer and returns a reader that has
+     * polled them into books.
+     */
+    private SharedMemoryUpdateReader openAfterWriting(Path file, int capacity, List<String> books) throws Exception {
+        SharedMemoryUpdateReader reader;
+        try (SharedMemoryUpdateRing ring = SharedMemoryUpdateRing.create(file, capacity)) {
+            reader = SharedMemoryUpdateReader.open(file, true);
+            ring.write(batchOf(0, 3));
+        }
+        assertEquals(3, reader.poll(r -> books.add(r.getKey().getBook()), 100));
+        return reader;
+    }
+
+    private List<Path> listFiles() throws Exception {
+        try (Stream<Path> files = Files.list(tempDir)) {
+            return files.collect(Collectors.toList());
+        }
+    }
+
+    @Test
+    public void testRejectsNonPowerOfTwoCapacity() {
+        assertThrows(IllegalArgumentException.class, () -> SharedMemoryUpdateRing.create(tempDir.resolve("bad.ring"), 1000));
+    }
+
+    @Test
+    public void testMultipleReaderProcesses() throws Exception {
+        Path file = tempDir.resolve("updates.ring");
+        int updates = 5000;
+        try (SharedMemoryUpdateRing ring = SharedMemoryUpdateRing.create(file, 1 << 20)) {
+            List<Process> readers = new ArrayList<>();
+            List<BufferedReader> outputs = new ArrayList<>();
+            String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+            for (int i = 0; i < 2; i++) {
+                Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                                                     "SharedMemoryUpdateReader", file.toString(), String.valueOf(updates))
+                        .redirectError(ProcessBuilder.Redirect.INHERIT)
+                        .start();
+                readers.add(process);
+                BufferedReader output = new BufferedReader(new InputStreamReader(process.getInputStream()));
+                outputs.add(output);
+            }
+            for (BufferedReader output : outputs) {
+                assertEquals("READY", output.readLine(), "Reader process should map the ring before we write");
+            }
+
+            long expectedBuyQty = 0;
+            for (int i = 0; i < updates; i += 50) {
+                ring.write(batchOf(i, 50));
+                for (int j = i; j < i + 50; j++) {
+                    expectedBuyQty += j;
+                }
+            }
+
+            for (int i = 0; i < readers.size(); i++) {
+                assertTrue(readers.get(i).waitFor(30, TimeUnit.SECONDS), "Reader process should finish");
+                assertEquals("RECEIVED count=" + updates + " buyQty=" + expectedBuyQty + " lapped=0",
+                             outputs.get(i).readLine(), "Every reader process should see every update exactly once");
+            }
+        }
+    }
+}
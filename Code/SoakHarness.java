@@ -0,0 +1,275 @@
+import com.lmax.disruptor.EventHandler;
+import com.lmax.disruptor.RingBuffer;
+import com.sun.management.GarbageCollectionNotificationInfo;
+
+import javax.management.NotificationEmitter;
+import javax.management.openmbean.CompositeData;
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives the full pipeline with synthetic trades from {@link SyntheticTradeSource} for as long as
+ * required and reports, at every interval and at the end: sustained throughput, end-to-end
+ * latency percentiles, GC activity, heap use and aggregation map growth.
+ *
+ * Usage: SoakHarness [--config pvs.properties] [key=value ...]
+ *
+ * The pipeline is built from the same settings as TradeProcessingApplication (see
+ * {@link PipelineConfig}); key=value arguments override the file. The load is set with:
+ *
+ *     load.rate                    50000 trades/s (0 = as fast as the pipeline accepts)
+ *     load.durationSeconds         3600
+ *     load.books                   50
+ *     load.instruments             2000
+ *     load.counterparties          500
+ *     load.zipfExponent            1.0 (0 = uniform)
+ *     load.buyRatio                0.5
+ *     load.seed                    42
+ *     load.reportIntervalSeconds   10
+ *
+ * Latency runs from the moment a trade was due to be published to the moment a probe stage
+ * appended after every configured stage sees it. Measuring from the scheduled rather than the
+ * actual publish time means a stalled pipeline shows up as latency instead of silently lowering
+ * the offered load. With load.rate=0 there is no schedule and latency runs from the publish.
+ */
+public final class SoakHarness {
+
+    private SoakHarness() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Properties properties = new Properties();
+        for (int i = 0; i < args.length; i++) {
+            if ("--config".equals(args[i]) && i + 1 < args.length) {
+                properties.putAll(PipelineConfig.loadProperties(Paths.get(args[++i])));
+            } else if (args[i].contains("=")) {
+                int equals = args[i].indexOf('=');
+                properties.setProperty(args[i].substring(0, equals).trim(), args[i].substring(equals + 1).trim());
+            } else {
+                throw new IllegalArgumentException("Unexpected argument " + args[i] + "; usage: SoakHarness [--config file] [key=value ...]");
+            }
+        }
+        // Interval lines below replace the topology's own metrics line unless asked for explicitly.
+        properties.putIfAbsent("metrics.logIntervalSeconds", "0");
+        PipelineConfig config = new PipelineConfig(properties);
+
+        long rate = PipelineConfig.size(properties, "load.rate", 50_000);
+        long durationNanos = TimeUnit.SECONDS.toNanos(PipelineConfig.size(properties, "load.durationSeconds", 3600));
+        int reportSeconds = PipelineConfig.size(properties, "load.reportIntervalSeconds", 10);
+        SyntheticTradeSource source = new SyntheticTradeSource(
+                PipelineConfig.size(properties, "load.books", 50),
+                PipelineConfig.size(properties, "load.instruments", 2000),
+                PipelineConfig.size(properties, "load.counterparties", 500),
+                Double.parseDouble(properties.getProperty("load.zipfExponent", "1.0")),
+                Double.parseDouble(properties.getProperty("load.buyRatio", "0.5")),
+                Long.parseLong(properties.getProperty("load.seed", "42")), -1);
+
+        // Publish (or scheduled) time per ring slot. A slot is reused only after the probe, the
+        // last stage, has read it.
+        int mask = config.getTradeRingSize() - 1;
+        long[] sendNanos = new long[config.getTradeRingSize()];
+        LatencyHistogram latency = new LatencyHistogram();
+        EventHandler<TradeEvent> probe = (event, sequence, endOfBatch) ->
+                latency.record(System.nanoTime() - sendNanos[(int) sequence & mask]);
+
+        PipelineTopology topology = new PipelineTopologyBuilder(config).appendStage("latency-probe", probe).build();
+        topology.printSummary(System.out);
+        System.out.println("Load: " + (rate > 0 ? rate + " trades/s" : "unthrottled") + " for " +
+                           TimeUnit.NANOSECONDS.toSeconds(durationNanos) + "s over " + source.getKeySpace() + " possible keys");
+        RingBuffer<TradeEvent> ringBuffer = topology.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                topology.shutdown();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }, "pvs-shutdown"));
+
+        Report report = new Report(topology, latency);
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "pvs-soak-report");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reporter.scheduleAtFixedRate(report::printInterval, reportSeconds, reportSeconds, TimeUnit.SECONDS);
+
+        // Trade n is due at start + n / rate, computed per trade so that a period that is not a whole
+        // number of nanoseconds does not drift the offered rate.
+        boolean throttled = rate > 0;
+        double nanosPerTrade = throttled ? (double) TimeUnit.SECONDS.toNanos(1) / rate : 0;
+        long start = System.nanoTime();
+        long published = 0;
+        while (topology.isAcceptingTrades()) {
+            long now = System.nanoTime();
+            if (now - start >= durationNanos) {
+                break;
+            }
+            long due = start + (long) (published * nanosPerTrade);
+            if (throttled && due - now > 0) {
+                LockSupport.parkNanos(Math.min(due - now, 100_000));
+                continue;
+            }
+            byte[] protoBytes = source.next();
+            long sequence = ringBuffer.next();
+            try {
+                TradeEvent event = ringBuffer.get(sequence);
+                event.clear();
+                event.setProtoBytes(protoBytes);
+                sendNanos[(int) sequence & mask] = throttled ? due : System.nanoTime();
+            } finally {
+                ringBuffer.publish(sequence);
+            }
+            published++;
+        }
+        long elapsed = System.nanoTime() - start;
+        reporter.shutdownNow();
+
+        DrainReport drain = topology.shutdown();
+        report.printInterval();
+        report.printSummary(published, elapsed);
+        drain.print(System.out);
+    }
+
+    /**
+     * Interval and end-of-run figures. Interval lines are printed from the reporter thread, the
+     * summary from main once the pipeline has drained.
+     */
+    private static final class Report {
+        private final PipelineTopology topology;
+        private final LatencyHistogram latency;
+        private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        private final AtomicLong maxPauseMillis = new AtomicLong();
+        private final AtomicLong runMaxPauseMillis = new AtomicLong();
+        private final long startNanos = System.nanoTime();
+        private final long startGcCount;
+        private final long startGcMillis;
+        private long[] previousLatency;
+        private long previousProbed;
+        private long previousGcCount;
+        private long previousGcMillis;
+        private long previousKeys;
+        private long previousNanos = startNanos;
+
+        Report(PipelineTopology topology, LatencyHistogram latency) {
+            this.topology = topology;
+            this.latency = latency;
+            this.previousLatency = latency.snapshot();
+            this.startGcCount = gcCount();
+            this.startGcMillis = gcMillis();
+            this.previousGcCount = startGcCount;
+            this.previousGcMillis = startGcMillis;
+            // Per-collection durations, for the longest pause; the MXBean totals give count and time.
+            for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+                if (gc instanceof NotificationEmitter) {
+                    ((NotificationEmitter) gc).addNotificationListener((notification, handback) -> {
+                        if (GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION.equals(notification.getType())) {
+                            GarbageCollectionNotificationInfo info =
+                                    GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+                            if (isPause(info.getGcName(), info.getGcAction())) {
+                                long duration = info.getGcInfo().getDuration();
+                                maxPauseMillis.accumulateAndGet(duration, Math::max);
+                                runMaxPauseMillis.accumulateAndGet(duration, Math::max);
+                            }
+                        }
+                    }, null, null);
+                }
+            }
+        }
+
+        synchronized void printInterval() {
+            long now = System.nanoTime();
+            long[] current = latency.snapshot();
+            long[] interval = LatencyHistogram.minus(current, previousLatency);
+            long probed = LatencyHistogram.total(current);
+            long gcCount = gcCount();
+            long gcMillis = gcMillis();
+            long keys = aggregationKeys(null);
+            double seconds = (now - previousNanos) / 1e9;
+            System.out.printf("[%6ds] trades/s=%.0f total=%d latency p50=%s p99=%s p99.9=%s max=%s " +
+                              "gc=%d (%dms, max pause %dms) heap=%dMiB keys=%d (+%d)%n",
+                              TimeUnit.NANOSECONDS.toSeconds(now - startNanos), (probed - previousProbed) / seconds, probed,
+                              micros(LatencyHistogram.percentile(interval, 0.50)),
+                              micros(LatencyHistogram.percentile(interval, 0.99)),
+                              micros(LatencyHistogram.percentile(interval, 0.999)),
+                              micros(LatencyHistogram.percentile(interval, 1.0)),
+                              gcCount - previousGcCount, gcMillis - previousGcMillis, maxPauseMillis.getAndSet(0),
+                              memory.getHeapMemoryUsage().getUsed() >> 20, keys, keys - previousKeys);
+            previousLatency = current;
+            previousProbed = probed;
+            previousGcCount = gcCount;
+            previousGcMillis = gcMillis;
+            previousKeys = keys;
+            previousNanos = now;
+        }
+
+        synchronized void printSummary(long published, long elapsedNanos) {
+            long[] all = latency.snapshot();
+            System.out.printf("Soak summary: %d trades published in %ds, sustained %.0f trades/s%n",
+                              published, TimeUnit.NANOSECONDS.toSeconds(elapsedNanos), published * 1e9 / elapsedNanos);
+            System.out.printf("  latency p50=%s p90=%s p99=%s p99.9=%s p99.99=%s max=%s over %d trades%n",
+                              micros(LatencyHistogram.percentile(all, 0.50)), micros(LatencyHistogram.percentile(all, 0.90)),
+                              micros(LatencyHistogram.percentile(all, 0.99)), micros(LatencyHistogram.percentile(all, 0.999)),
+                              micros(LatencyHistogram.percentile(all, 0.9999)), micros(LatencyHistogram.percentile(all, 1.0)),
+                              LatencyHistogram.total(all));
+            System.out.printf("  gc: %d collections, %dms collecting, longest pause %dms%n",
+                              gcCount() - startGcCount, gcMillis() - startGcMillis, runMaxPauseMillis.get());
+            System.out.println("  aggregation keys: " + aggregationKeys(System.out));
+        }
+
+        /**
+         * Sums the aggregation map sizes, printing each one if out is not null.
+         */
+        private long aggregationKeys(PrintStream out) {
+            long keys = 0;
+            for (Map.Entry<String, Long> entry : topology.getMetrics().snapshot().entrySet()) {
+                if (entry.getKey().startsWith("aggregation.") && entry.getKey().endsWith(".keys")) {
+                    keys += entry.getValue();
+                    if (out != null) {
+                        out.println("  " + entry.getKey() + "=" + entry.getValue());
+                    }
+                }
+            }
+            return keys;
+        }
+
+        /**
+         * Tells stop-the-world collections from concurrent cycles, whose duration is mostly spent
+         * alongside the application: ZGC and Shenandoah report those from their "Cycles"
+         * collectors, and G1 (Java 20+) as "end of GC cycle". Their pauses come separately, from
+         * the "Pauses" collectors or as "end of concurrent GC pause".
+         */
+        private static boolean isPause(String gcName, String gcAction) {
+            return !gcName.endsWith(" Cycles") && !"end of GC cycle".equals(gcAction);
+        }
+
+        private static long gcCount() {
+            long count = 0;
+            for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+                count += Math.max(0, gc.getCollectionCount());
+            }
+            return count;
+        }
+
+        private static long gcMillis() {
+            long millis = 0;
+            for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+                millis += Math.max(0, gc.getCollectionTime());
+            }
+            return millis;
+        }
+
+        private static String micros(long nanos) {
+            return nanos >= 1_000_000 ? String.format("%.1fms", nanos / 1e6) : String.format("%.1fus", nanos / 1e3);
+        }
+    }
+}
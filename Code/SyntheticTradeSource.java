@@ -0,0 +1,110 @@
+import java.math.BigDecimal;
+import java.util.SplittableRandom;
+
+/**
+ * TradeSource that generates valid Trade protos with production-like skew, for load and soak
+ * testing.
+ *
+ * Books, instruments and counterparties are drawn independently from Zipf distributions over
+ * fixed pools (BOOK0000, INSTR00000, CPTY00000, ...), so a few keys are hot while the long
+ * tail keeps the aggregation maps growing towards the full cardinality. Each instrument has its
+ * own base price; trades are priced within 1% of it with two decimals. Quantities are lots of 100
+ * up to 10,000. The same seed always produces the same sequence of trades.
+ */
+public class SyntheticTradeSource implements TradeSource {
+
+    private final String[] books;
+    private final String[] instruments;
+    private final String[] counterparties;
+    private final long[] basePriceCents;
+    private final ZipfSampler bookSampler;
+    private final ZipfSampler instrumentSampler;
+    private final ZipfSampler counterpartySampler;
+    private final double buyRatio;
+    private final long limit;
+    private final SplittableRandom random;
+    private long generated;
+
+    /**
+     * @param books          number of distinct books
+     * @param instruments    number of distinct instruments
+     * @param counterparties number of distinct counterparties
+     * @param zipfExponent   skew of all three distributions; 0 is uniform
+     * @param buyRatio       fraction of trades that are BUY, the rest are SELL
+     * @param seed           random seed
+     * @param limit          number of trades before the source is exhausted, or -1 for no limit
+     */
+    public SyntheticTradeSource(int books, int instruments, int counterparties, double zipfExponent, double buyRatio,
+                                long seed, long limit) {
+        if (buyRatio < 0 || buyRatio > 1) {
+            throw new IllegalArgumentException("Buy ratio must be between 0 and 1: " + buyRatio);
+        }
+        this.books = names("BOOK", 4, books);
+        this.instruments = names("INSTR", 5, instruments);
+        this.counterparties = names("CPTY", 5, counterparties);
+        this.bookSampler = new ZipfSampler(books, zipfExponent);
+        this.instrumentSampler = new ZipfSampler(instruments, zipfExponent);
+        this.counterpartySampler = new ZipfSampler(counterparties, zipfExponent);
+        this.buyRatio = buyRatio;
+        this.limit = limit;
+        this.random = new SplittableRandom(seed);
+        this.basePriceCents = new long[instruments];
+        for (int i = 0; i < instruments; i++) {
+            // Between 1.00 and 1,000.00.
+            basePriceCents[i] = 100 + random.nextLong(99_900);
+        }
+    }
+
+    private static String[] names(String prefix, int digits, int count) {
+        String[] names = new String[count];
+        for (int i = 0; i < count; i++) {
+            names[i] = prefix + String.format("%0" + digits + "d", i);
+        }
+        return names;
+    }
+
+    @Override
+    public byte[] next() {
+        Trade trade = nextTrade();
+        return trade != null ? trade.toByteArray() : null;
+    }
+
+    /**
+     * Returns the next trade, or null once the limit is reached.
+     */
+    public Trade nextTrade() {
+        if (limit >= 0 && generated >= limit) {
+            return null;
+        }
+        generated++;
+        int instrument = instrumentSampler.sample(random);
+        long base = basePriceCents[instrument];
+        long priceCents = Math.max(1, base + random.nextLong(-base / 100, base / 100 + 1));
+        return Trade.newBuilder()
+                .setBook(books[bookSampler.sample(random)])
+                .setInstrument(instruments[instrument])
+                .setCounterparty(counterparties[counterpartySampler.sample(random)])
+                .setSide(random.nextDouble() < buyRatio ? "BUY" : "SELL")
+                .setPrice(BigDecimal.valueOf(priceCents, 2))
+                .setQuantity(100 * (1 + random.nextLong(100)))
+                .build();
+    }
+
+    /**
+     * Returns the number of trades generated so far.
+     */
+    public long getGenerated() {
+        return generated;
+    }
+
+    /**
+     * Returns the number of distinct book, instrument and counterparty combinations possible.
+     */
+    public long getKeySpace() {
+        return (long) books.length * instruments.length * counterparties.length;
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,43 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+public class SyntheticTradeSourceTest {
+
+    @Test
+    public void testTradesAreValidAndReproducible() {
+        SyntheticTradeSource first = new SyntheticTradeSource(5, 20, 10, 1.1, 0.7, 42, 10_000);
+        SyntheticTradeSource second = new SyntheticTradeSource(5, 20, 10, 1.1, 0.7, 42, 10_000);
+        Set<String> books = new HashSet<>();
+        Map<String, Integer> sides = new HashMap<>();
+
+        Trade trade;
+        while ((trade = first.nextTrade()) != null) {
+            Trade same = second.nextTrade();
+            assertEquals(trade.getBook() + trade.getInstrument() + trade.getCounterparty() + trade.getSide() +
+                         trade.getPrice() + trade.getQuantity(),
+                         same.getBook() + same.getInstrument() + same.getCounterparty() + same.getSide() +
+                         same.getPrice() + same.getQuantity(), "The same seed should give the same trades");
+            assertTrue(trade.getBook().matches("BOOK000[0-4]"), trade.getBook());
+            assertTrue(trade.getPrice().signum() > 0 && trade.getPrice().scale() == 2, trade.getPrice().toString());
+            assertTrue(trade.getQuantity() >= 100 && trade.getQuantity() <= 10_000 && trade.getQuantity() % 100 == 0);
+            books.add(trade.getBook());
+            sides.merge(trade.getSide(), 1, Integer::sum);
+        }
+
+        assertEquals(10_000, first.getGenerated());
+        assertNull(first.next(), "The source should be exhausted at its limit");
+        assertEquals(5, books.size());
+        assertEquals(2, sides.size());
+        assertEquals(0.7, sides.get("BUY") / 10_000.0, 0.02);
+        assertEquals(1000, first.getKeySpace());
+    }
+}
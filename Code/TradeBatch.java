@@ -0,0 +1,155 @@
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Columnar batch of trades for one {@link AggregationGroup}, for {@link BulkAggregator}.
+ *
+ * Each trade becomes one row of primitive columns: a dense key id (an index into the batch's
+ * key dictionary), the side, the quantity and the price as a fixed-point long with
+ * {@link #PRICE_SCALE} decimals plus the price's original scale, which the per-trade path
+ * carries into the notional and so has to be reproduced exactly. Prices that do not fit that
+ * fixed-point form (more than eight decimals or too large) are kept aside as BigDecimals and
+ * applied one at a time.
+ *
+ * A batch is reusable: {@link #clear()} keeps the arrays but starts a new key dictionary, so key
+ * ids stay dense within the batch and {@link BulkAggregator} works in proportion to the batch's
+ * keys, not to every key ever replayed.
+ */
+public class TradeBatch {
+
+    /** Decimals in the fixed-point price column. */
+    public static final int PRICE_SCALE = 8;
+
+    static final byte SIDE_OTHER = 0;
+    static final byte SIDE_BUY = 1;
+    static final byte SIDE_SELL = 2;
+
+    // Keeps the unscaled price below 10^18, within a long.
+    private static final int MAX_INTEGER_DIGITS = 18 - PRICE_SCALE;
+
+    private final AggregationGroup group;
+    private final int capacity;
+    private final List<AggregationKey> keys = new ArrayList<>();
+    private final Map<AggregationKey, Integer> keyIds = new HashMap<>();
+    final int[] keyId;
+    final byte[] side;
+    final long[] quantity;
+    final long[] price;
+    final byte[] priceScale;
+    // Rows whose price is not representable in the fixed-point column, applied per trade.
+    final List<ExactRow> exactRows = new ArrayList<>();
+    private int size;
+
+    /**
+     * @param group    the aggregation group whose keys the batch is built for
+     * @param capacity maximum number of trades
+     */
+    public TradeBatch(AggregationGroup group, int capacity) {
+        this.group = group;
+        this.capacity = capacity;
+        this.keyId = new int[capacity];
+        this.side = new byte[capacity];
+        this.quantity = new long[capacity];
+        this.price = new long[capacity];
+        this.priceScale = new byte[capacity];
+    }
+
+    /**
+     * Adds a trade.
+     *
+     * @param trade the trade
+     * @throws IllegalStateException if the batch is full
+     */
+    public void add(Trade trade) {
+        if (isFull()) {
+            throw new IllegalStateException("Trade batch is full at " + capacity + " trades");
+        }
+        AggregationKey key = AggregationKeyGenerator.generateKey(trade, group);
+        Integer id = keyIds.get(key);
+        if (id == null) {
+            id = keys.size();
+            keys.add(key);
+            keyIds.put(key, id);
+        }
+        // Same side test as AggregationEventHandler; other sides still create the key.
+        byte tradeSide = "BUY".equalsIgnoreCase(trade.getSide()) ? SIDE_BUY
+                : "SELL".equalsIgnoreCase(trade.getSide()) ? SIDE_SELL : SIDE_OTHER;
+        BigDecimal tradePrice = trade.getPrice();
+        if (tradeSide != SIDE_OTHER && !fitsFixedPoint(tradePrice)) {
+            exactRows.add(new ExactRow(id, tradeSide == SIDE_BUY, trade.getQuantity(), tradePrice));
+            tradeSide = SIDE_OTHER;
+        }
+        keyId[size] = id;
+        side[size] = tradeSide;
+        quantity[size] = trade.getQuantity();
+        if (tradeSide != SIDE_OTHER) {
+            price[size] = tradePrice.movePointRight(PRICE_SCALE).longValueExact();
+            priceScale[size] = (byte) tradePrice.scale();
+        } else {
+            price[size] = 0;
+            priceScale[size] = 0;
+        }
+        size++;
+    }
+
+    private static boolean fitsFixedPoint(BigDecimal price) {
+        return price != null && price.scale() <= PRICE_SCALE && price.scale() >= Byte.MIN_VALUE &&
+               price.precision() - price.scale() <= MAX_INTEGER_DIGITS;
+    }
+
+    /**
+     * Empties the batch for reuse, key dictionary included.
+     */
+    public void clear() {
+        size = 0;
+        exactRows.clear();
+        keys.clear();
+        keyIds.clear();
+    }
+
+    public AggregationGroup getGroup() {
+        return group;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isFull() {
+        return size == capacity;
+    }
+
+    /**
+     * Returns the number of distinct keys in the batch, at most its size.
+     */
+    public int getKeyCount() {
+        return keys.size();
+    }
+
+    /**
+     * Returns the key with the given id.
+     */
+    public AggregationKey getKey(int id) {
+        return keys.get(id);
+    }
+
+    /**
+     * A trade kept with its BigDecimal price.
+     */
+    static final class ExactRow {
+        final int keyId;
+        final boolean buy;
+        final long quantity;
+        final BigDecimal price;
+
+        ExactRow(int keyId, boolean buy, long quantity, BigDecimal price) {
+            this.keyId = keyId;
+            this.buy = buy;
+            this.quantity = quantity;
+            this.price = price;
+        }
+    }
+}
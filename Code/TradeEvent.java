@@ -1,6 +1,8 @@
     public static class TradeEvent {
         private byte[] protoBytes;
         private Trade trade;
+        // Set on control events only; such events carry no trade.
+        private BulkMerge bulkMerge;
 
         public byte[] getProtoBytes() {
             return protoBytes;
@@ -14,8 +16,18 @@
         public void setTrade(Trade trade) {
             this.trade = trade;
         }
+        /**
+         * Returns the bulk merge this control event carries, or null for a trade.
+         */
+        public BulkMerge getBulkMerge() {
+            return bulkMerge;
+        }
+        public void setBulkMerge(BulkMerge bulkMerge) {
+            this.bulkMerge = bulkMerge;
+        }
         public void clear() {
             protoBytes = null;
             trade = null;
+            bulkMerge = null;
         }
     }
\ No newline at end of file
@@ -0,0 +1,225 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only, memory-mapped, segmented journal of raw trade bytes.
+ *
+ * Every appended payload gets the next journal sequence number (starting at 0 and continuing
+ * across restarts). Records are written into fixed-size segment files named
+ * journal-&lt;first sequence&gt;.log; a new segment is started when the next record does not fit.
+ *
+ * Record layout (little-endian, 8-byte aligned):
+ *
+ *     int  payload length (0 marks the end of the written part of a segment)
+ *     int  CRC32C of the payload
+ *     long journal sequence
+ *     byte payload[length]
+ *
+ * Appends only write to the page cache. {@link #commit()} forces them to disk and is meant to
+ * be called once per Disruptor batch so the fsync cost is shared by every trade in the batch.
+ * On open, the last segment is scanned and any torn tail left by a crash is discarded.
+ *
+ * Instances are not thread-safe; a journal has a single writer.
+ */
+public class TradeJournal implements Closeable {
+
+    static final String SEGMENT_PREFIX = "journal-";
+    static final String SEGMENT_SUFFIX = ".log";
+    static final int RECORD_HEADER_BYTES = 16;
+    static final int RECORD_ALIGNMENT = 8;
+
+    /** Default segment size: 64 MiB. */
+    public static final int DEFAULT_SEGMENT_BYTES = 64 * 1024 * 1024;
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final CRC32C crc = new CRC32C();
+    private FileChannel channel;
+    private MappedByteBuffer segment;
+    private long nextSequence;
+    private boolean dirty;
+
+    /**
+     * Opens the journal in the given directory, recovering the append position from the
+     * newest existing segment.
+     *
+     * @param directory    journal directory, created if missing
+     * @param segmentBytes size of each segment file
+     * @throws IOException if the directory or segments cannot be accessed
+     */
+    public TradeJournal(Path directory, int segmentBytes) throws IOException {
+        if (segmentBytes <= RECORD_HEADER_BYTES || segmentBytes % RECORD_ALIGNMENT != 0) {
+            throw new IllegalArgumentException("Segment size must be a multiple of " + RECORD_ALIGNMENT +
+                                               " larger than " + RECORD_HEADER_BYTES + ": " + segmentBytes);
+        }
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        Files.createDirectories(directory);
+        List<Path> segments = listSegments(directory);
+        if (segments.isEmpty()) {
+            openSegment(0);
+        } else {
+            recover(segments.get(segments.size() - 1));
+        }
+    }
+
+    /**
+     * Appends a payload and returns its journal sequence.
+     *
+     * @param payload the raw trade bytes
+     * @return the journal sequence assigned to the payload
+     * @throws IOException if a new segment cannot be created
+     */
+    public long append(byte[] payload) throws IOException {
+        if (payload.length == 0) {
+            throw new IllegalArgumentException("Cannot journal an empty payload");
+        }
+        int recordLength = align(RECORD_HEADER_BYTES + payload.length);
+        if (recordLength > segmentBytes) {
+            throw new IllegalArgumentException("Payload of " + payload.length + " bytes exceeds journal segment size " + segmentBytes);
+        }
+        if (segment.remaining() < recordLength) {
+            rollSegment();
+        }
+        crc.reset();
+        crc.update(payload, 0, payload.length);
+        long sequence = nextSequence++;
+        int start = segment.position();
+        // Payload first, length last: a crash mid-append leaves either nothing or a checksum mismatch.
+        segment.putInt(start + 4, (int) crc.getValue());
+        segment.putLong(start + 8, sequence);
+        segment.position(start + RECORD_HEADER_BYTES);
+        segment.put(payload);
+        segment.putInt(start, payload.length);
+        segment.position(start + recordLength);
+        dirty = true;
+        return sequence;
+    }
+
+    /**
+     * Forces every record appended since the last commit to storage.
+     */
+    public void commit() {
+        if (dirty) {
+            segment.force();
+            dirty = false;
+        }
+    }
+
+    /**
+     * Returns the sequence that the next append will receive.
+     */
+    public long getNextSequence() {
+        return nextSequence;
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            commit();
+            channel.close();
+            channel = null;
+        }
+    }
+
+    private void rollSegment() throws IOException {
+        commit();
+        channel.close();
+        openSegment(nextSequence);
+    }
+
+    private void openSegment(long firstSequence) throws IOException {
+        Path path = directory.resolve(segmentName(firstSequence));
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        segment.order(ByteOrder.LITTLE_ENDIAN);
+        nextSequence = firstSequence;
+    }
+
+    private void recover(Path lastSegment) throws IOException {
+        openSegment(firstSequenceOf(lastSegment));
+        int position = 0;
+        while (true) {
+            int length = validRecordLength(segment, position, nextSequence, crc);
+            if (length < 0) {
+                break;
+            }
+            position += length;
+            nextSequence++;
+        }
+        // Wipe anything after the last valid record so a torn write can never be read back.
+        for (int i = position; i < segmentBytes; i += RECORD_ALIGNMENT) {
+            if (segment.getLong(i) != 0L) {
+                segment.putLong(i, 0L);
+            }
+        }
+        segment.position(position);
+        dirty = true;
+        commit();
+    }
+
+    /**
+     * Returns the aligned length of the valid record at the position, or -1 if there is none.
+     */
+    static int validRecordLength(ByteBuffer segment, int position, long expectedSequence, CRC32C crc) {
+        if (segment.limit() - position < RECORD_HEADER_BYTES) {
+            return -1;
+        }
+        int payloadLength = segment.getInt(position);
+        if (payloadLength <= 0 || payloadLength > segment.limit() - position - RECORD_HEADER_BYTES) {
+            return -1;
+        }
+        if (segment.getLong(position + 8) != expectedSequence) {
+            return -1;
+        }
+        ByteBuffer payload = segment.duplicate();
+        payload.limit(position + RECORD_HEADER_BYTES + payloadLength).position(position + RECORD_HEADER_BYTES);
+        crc.reset();
+        crc.update(payload);
+        if ((int) crc.getValue() != segment.getInt(position + 4)) {
+            return -1;
+        }
+        return align(RECORD_HEADER_BYTES + payloadLength);
+    }
+
+    static List<Path> listSegments(Path directory) throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path path : stream) {
+                segments.add(path);
+            }
+        }
+        // Zero-padded names sort in sequence order.
+        Collections.sort(segments);
+        return segments;
+    }
+
+    static String segmentName(long firstSequence) {
+        return String.format("%s%020d%s", SEGMENT_PREFIX, firstSequence, SEGMENT_SUFFIX);
+    }
+
+    static long firstSequenceOf(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    static int align(int length) {
+        return (length + RECORD_ALIGNMENT - 1) & -RECORD_ALIGNMENT;
+    }
+}
@@ -0,0 +1,129 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * Sequential reader over the segments written by {@link TradeJournal}.
+ *
+ * Reading stops at the first missing, torn or out-of-sequence record, so a journal that is
+ * still being appended to can be read up to its last complete record.
+ */
+public class TradeJournalReader implements Closeable {
+
+    private final List<Path> segments;
+    private final CRC32C crc = new CRC32C();
+    private int segmentIndex = -1;
+    private FileChannel channel;
+    private MappedByteBuffer segment;
+    private long nextSequence;
+    private long sequence = -1;
+    private int payloadOffset;
+    private int payloadLength;
+
+    /**
+     * Opens a reader positioned before the first record with sequence >= fromSequence.
+     *
+     * @param directory    the journal directory
+     * @param fromSequence first journal sequence to return
+     * @throws IOException if the directory cannot be listed
+     */
+    public TradeJournalReader(Path directory, long fromSequence) throws IOException {
+        this.segments = TradeJournal.listSegments(directory);
+        // Start in the last segment whose first sequence is <= fromSequence.
+        int start = 0;
+        for (int i = 0; i < segments.size(); i++) {
+            if (TradeJournal.firstSequenceOf(segments.get(i)) <= fromSequence) {
+                start = i;
+            }
+        }
+        segmentIndex = start - 1;
+        if (!openNextSegment()) {
+            return;
+        }
+        while (nextSequence < fromSequence && next()) {
+            // skip
+        }
+    }
+
+    /**
+     * Advances to the next record.
+     *
+     * @return true if a record is available via {@link #getSequence()} and {@link #copyPayload()}
+     * @throws IOException if a segment cannot be mapped
+     */
+    public boolean next() throws IOException {
+        while (segment != null) {
+            int position = segment.position();
+            int length = TradeJournal.validRecordLength(segment, position, nextSequence, crc);
+            if (length > 0) {
+                sequence = nextSequence++;
+                payloadLength = segment.getInt(position);
+                payloadOffset = position + TradeJournal.RECORD_HEADER_BYTES;
+                segment.position(position + length);
+                return true;
+            }
+            // End of this segment: continue only if the next one picks up exactly where we stopped.
+            if (segmentIndex + 1 >= segments.size()
+                || TradeJournal.firstSequenceOf(segments.get(segmentIndex + 1)) != nextSequence) {
+                return false;
+            }
+            openNextSegment();
+        }
+        return false;
+    }
+
+    /**
+     * Returns the journal sequence of the current record.
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Returns the payload length of the current record.
+     */
+    public int getPayloadLength() {
+        return payloadLength;
+    }
+
+    /**
+     * Copies the current record's payload into a new array.
+     */
+    public byte[] copyPayload() {
+        byte[] payload = new byte[payloadLength];
+        int position = segment.position();
+        segment.position(payloadOffset);
+        segment.get(payload);
+        segment.position(position);
+        return payload;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+        segment = null;
+    }
+
+    private boolean openNextSegment() throws IOException {
+        close();
+        segmentIndex++;
+        if (segmentIndex >= segments.size()) {
+            return false;
+        }
+        Path path = segments.get(segmentIndex);
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        segment.order(ByteOrder.LITTLE_ENDIAN);
+        nextSequence = TradeJournal.firstSequenceOf(path);
+        return true;
+    }
+}
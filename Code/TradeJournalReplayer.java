@@ -0,0 +1,84 @@
+import com.lmax.disruptor.RingBuffer;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Feeds journaled trade bytes (or any other {@link TradeSource}) back through the trade Disruptor.
+ *
+ * Records are read ahead in batches and published with a single multi-slot claim per batch,
+ * so replay runs as fast as the handler chain can consume. The pipeline being fed must not
+ * include a {@link JournalEventHandler} or the export stage, otherwise replayed trades would be
+ * journaled and exported again, and persists only when replaying from the
+ * {@link PersistCheckpoint}; see PipelineTopologyBuilder#replay and #recover.
+ */
+public class TradeJournalReplayer {
+
+    private final Path journalDirectory;
+    private final int batchSize;
+
+    /**
+     * @param journalDirectory the journal to replay
+     * @param batchSize        maximum records claimed per publish; must not exceed the ring size
+     */
+    public TradeJournalReplayer(Path journalDirectory, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+        }
+        this.journalDirectory = journalDirectory;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Publishes every journaled trade with sequence >= fromSequence into the ring buffer.
+     *
+     * @param ringBuffer   the trade ring buffer
+     * @param fromSequence first journal sequence to replay
+     * @return the number of trades published
+     * @throws IOException if the journal cannot be read
+     */
+    public long replay(RingBuffer<TradeEvent> ringBuffer, long fromSequence) throws IOException {
+        try (TradeSource source = new JournalTradeSource(journalDirectory, fromSequence)) {
+            return publishAll(source, ringBuffer, batchSize);
+        }
+    }
+
+    /**
+     * Publishes every trade from the source into the ring buffer, claiming up to batchSize
+     * slots at a time.
+     *
+     * @param source     the trades to publish; not closed by this method
+     * @param ringBuffer the trade ring buffer
+     * @param batchSize  maximum slots claimed per publish
+     * @return the number of trades published
+     * @throws IOException if the source cannot be read
+     */
+    public static long publishAll(TradeSource source, RingBuffer<TradeEvent> ringBuffer, int batchSize) throws IOException {
+        int claimSize = Math.min(batchSize, ringBuffer.getBufferSize());
+        byte[][] pending = new byte[claimSize][];
+        long published = 0;
+        while (true) {
+            int count = 0;
+            byte[] protoBytes;
+            while (count < claimSize && (protoBytes = source.next()) != null) {
+                pending[count++] = protoBytes;
+            }
+            if (count == 0) {
+                return published;
+            }
+            long hi = ringBuffer.next(count);
+            long lo = hi - count + 1;
+            try {
+                for (int i = 0; i < count; i++) {
+                    TradeEvent event = ringBuffer.get(lo + i);
+                    event.clear();
+                    event.setProtoBytes(pending[i]);
+                    pending[i] = null;
+                }
+            } finally {
+                ringBuffer.publish(lo, hi);
+            }
+            published += count;
+        }
+    }
+}
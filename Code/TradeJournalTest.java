@@ -0,0 +1,131 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+public class TradeJournalTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static byte[] payload(int i) {
+        return ("trade_proto_" + i).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static List<String> readAll(Path directory, long fromSequence) throws Exception {
+        List<String> payloads = new ArrayList<>();
+        try (TradeJournalReader reader = new TradeJournalReader(directory, fromSequence)) {
+            while (reader.next()) {
+                assertEquals(fromSequence + payloads.size(), reader.getSequence(), "Sequences must be contiguous");
+                payloads.add(new String(reader.copyPayload(), StandardCharsets.UTF_8));
+            }
+        }
+        return payloads;
+    }
+
+    @Test
+    public void testAppendAndReadBack() throws Exception {
+        try (TradeJournal journal = new TradeJournal(tempDir, 4096)) {
+            for (int i = 0; i < 10; i++) {
+                assertEquals(i, journal.append(payload(i)), "Sequences should start at 0 and increase by one");
+            }
+            journal.commit();
+        }
+        List<String> payloads = readAll(tempDir, 0);
+        assertEquals(10, payloads.size());
+        assertEquals("trade_proto_0", payloads.get(0));
+        assertEquals("trade_proto_9", payloads.get(9));
+    }
+
+    @Test
+    public void testRollsSegmentsAndReadsAcrossThem() throws Exception {
+        try (TradeJournal journal = new TradeJournal(tempDir, 256)) {
+            for (int i = 0; i < 100; i++) {
+                journal.append(payload(i));
+            }
+        }
+        assertTrue(TradeJournal.listSegments(tempDir).size() > 1, "A small segment size should force rollover");
+        List<String> payloads = readAll(tempDir, 0);
+        assertEquals(100, payloads.size(), "Reader must follow records across segments");
+        assertEquals("trade_proto_99", payloads.get(99));
+    }
+
+    @Test
+    public void testReadFromMiddle() throws Exception {
+        try (TradeJournal journal = new TradeJournal(tempDir, 256)) {
+            for (int i = 0; i < 100; i++) {
+                journal.append(payload(i));
+            }
+        }
+        List<String> payloads = readAll(tempDir, 42);
+        assertEquals(58, payloads.size());
+        assertEquals("trade_proto_42", payloads.get(0), "Reader should start at the requested sequence");
+    }
+
+    @Test
+    public void testReopenContinuesSequence() throws Exception {
+        try (TradeJournal journal = new TradeJournal(tempDir, 256)) {
+            for (int i = 0; i < 20; i++) {
+                journal.append(payload(i));
+            }
+        }
+        try (TradeJournal journal = new TradeJournal(tempDir, 256)) {
+            assertEquals(20, journal.getNextSequence(), "Recovery should resume after the last record");
+            assertEquals(20, journal.append(payload(20)));
+        }
+        assertEquals(21, readAll(tempDir, 0).size());
+    }
+
+    @Test
+    public void testRecoveryDiscardsTornRecord() throws Exception {
+        try (TradeJournal journal = new TradeJournal(tempDir, 4096)) {
+            for (int i = 0; i < 5; i++) {
+                journal.append(payload(i));
+            }
+        }
+        // Corrupt the payload of the last record, as a crash mid-write would.
+        Path segment = TradeJournal.listSegments(tempDir).get(0);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            int position = 0;
+            for (int i = 0; i < 4; i++) {
+                position += TradeJournal.align(TradeJournal.RECORD_HEADER_BYTES + buffer.getInt(position));
+            }
+            buffer.put(position + TradeJournal.RECORD_HEADER_BYTES, (byte) 'X');
+            buffer.force();
+        }
+        try (TradeJournal journal = new TradeJournal(tempDir, 4096)) {
+            assertEquals(4, journal.getNextSequence(), "The torn record should be dropped on recovery");
+            journal.append(payload(99));
+        }
+        List<String> payloads = readAll(tempDir, 0);
+        assertEquals(5, payloads.size());
+        assertEquals("trade_proto_99", payloads.get(4), "New appends should replace the torn record");
+    }
+
+    @Test
+    public void testRejectsEmptyPayload() throws Exception {
+        try (TradeJournal journal = new TradeJournal(tempDir, 4096)) {
+            assertThrows(IllegalArgumentException.class, () -> journal.append(new byte[0]));
+            assertEquals(0, journal.getNextSequence(), "A rejected append must not consume a sequence");
+        }
+    }
+
+    @Test
+    public void testEmptyDirectoryReadsNothing() throws Exception {
+        assertTrue(readAll(tempDir, 0).isEmpty());
+    }
+}
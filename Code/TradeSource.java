@@ -0,0 +1,16 @@
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * A finite stream of serialized Trade protos, used to drive the pipeline from something
+ * other than live input (the journal, a database export, a generator).
+ */
+public interface TradeSource extends Closeable {
+
+    /**
+     * Returns the next trade's proto bytes, or null once the source is exhausted.
+     *
+     * @throws IOException if the underlying input cannot be read
+     */
+    byte[] next() throws IOException;
+}
@@ -0,0 +1,70 @@
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters for how an AggregationEventHandler's update path coped with a full update ring.
+ *
+ * Written by the handler thread and safe to read from any thread.
+ */
+public class UpdateOverloadMetrics {
+    private final LongAdder published = new LongAdder();
+    private final LongAdder blocked = new LongAdder();
+    private final LongAdder conflated = new LongAdder();
+    private final LongAdder conflationFlushed = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    void onPublished() {
+        published.increment();
+    }
+
+    void onBlocked() {
+        blocked.increment();
+    }
+
+    void onConflated() {
+        conflated.increment();
+    }
+
+    void onConflationFlushed() {
+        conflationFlushed.increment();
+    }
+
+    void onDropped() {
+        dropped.increment();
+    }
+
+    /** Updates written to the update ring buffer, including conflated ones flushed later. */
+    public long getPublished() {
+        return published.sum();
+    }
+
+    /** Times the BLOCK policy found the ring full and had to wait. */
+    public long getBlocked() {
+        return blocked.sum();
+    }
+
+    /** Updates that could not be published immediately and were folded into a pending key. */
+    public long getConflated() {
+        return conflated.sum();
+    }
+
+    /** Pending keys published once the ring had room again. */
+    public long getConflationFlushed() {
+        return conflationFlushed.sum();
+    }
+
+    /** Updates discarded under DROP_TO_LATEST. */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "UpdateOverloadMetrics{" +
+               "published=" + getPublished() +
+               ", blocked=" + getBlocked() +
+               ", conflated=" + getConflated() +
+               ", conflationFlushed=" + getConflationFlushed() +
+               ", dropped=" + getDropped() +
+               '}';
+    }
+}
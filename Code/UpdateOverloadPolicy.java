@@ -0,0 +1,21 @@
+/**
+ * What an AggregationEventHandler does when the update ring buffer has no free slot.
+ */
+public enum UpdateOverloadPolicy {
+    /**
+     * Wait for a slot with RingBuffer.next(). A slow publisher then stalls the aggregation
+     * handler and, through it, the trade ring. Only for tests and diagnostics.
+     */
+    BLOCK,
+    /**
+     * Remember the key and publish its latest stats once a slot frees up: retried with the next
+     * trade, at the end of each batch and, while trades are idle, every
+     * update.conflationFlushMillis. Several updates to the same key while the ring is full
+     * collapse into one; no key's final state is lost.
+     */
+    CONFLATE,
+    /**
+     * Drop the update. Consumers see the key's latest stats with its next successful update.
+     */
+    DROP_TO_LATEST
+}
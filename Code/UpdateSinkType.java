@@ -0,0 +1,15 @@
+/**
+ * Where the aggregation update publisher writes its batches.
+ */
+public enum UpdateSinkType {
+    /** Memory-mapped broadcast ring for consumers on the same host ({@link SharedMemoryUpdateRing}). */
+    SHARED_MEMORY,
+    /** TCP connection to a remote consumer ({@link ChannelUpdateTransport#connect}). */
+    TCP,
+    /** Append to a local file ({@link ChannelUpdateTransport#openFile}). */
+    FILE,
+    /** Print each update to standard output ({@link LogUpdateTransport}), as the original publisher did. */
+    LOG,
+    /** No update publishing; aggregation handlers only maintain their maps. */
+    NONE
+}
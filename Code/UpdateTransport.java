@@ -0,0 +1,21 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Destination for batches of encoded aggregation update frames.
+ *
+ * Implementations receive a buffer holding one or more whole frames produced by
+ * {@link AggregationUpdateCodec} and must consume all of its remaining bytes before
+ * returning. The buffer is reused by the caller afterwards, so it must not be retained.
+ */
+public interface UpdateTransport extends Closeable {
+
+    /**
+     * Writes every remaining byte of the batch.
+     *
+     * @param batch buffer positioned at the first frame, limited after the last
+     * @throws IOException if the transport fails
+     */
+    void write(ByteBuffer batch) throws IOException;
+}
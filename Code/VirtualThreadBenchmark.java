@@ -0,0 +1,287 @@
+import com.lmax.disruptor.BlockingWaitStrategy;
+import com.lmax.disruptor.RingBuffer;
+import com.lmax.disruptor.dsl.Disruptor;
+import com.lmax.disruptor.dsl.ProducerType;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Proxy;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.PreparedStatement;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Compares platform and virtual threads for the pipeline's I/O-bound stages, with the I/O
+ * replaced by a fixed simulated latency so the numbers do not depend on a database or network.
+ *
+ * Two scenarios are measured:
+ *
+ *   publish: one publishing thread encodes update batches and writes them to a transport that
+ *            blocks for the I/O latency per write, once directly on the publishing thread and once
+ *            through {@link AsyncUpdateTransport}. Reported latency is how long each write call
+ *            held the publishing thread.
+ *   persist: the real persist path. Trades are published to a trade ring whose handlers are an
+ *            {@link AsyncPersistEventHandler} and a {@link PersistedAckHandler}, as in the default
+ *            pipeline. Its {@link PersistWriter} pool drains the hand-off ring into a simulated
+ *            JDBC driver whose executeBatch blocks for the I/O latency. The writers run on the
+ *            I/O threads of each {@link ExecutionMode}. Reported are trade ring throughput up to
+ *            the last ack, ack latency from publish to ack, and rows per JDBC batch.
+ *
+ * Usage: VirtualThreadBenchmark [batches] [ioMicros] [trades] [writers]
+ *
+ * Without virtual threads (before Java 21) only the platform variants run.
+ */
+public final class VirtualThreadBenchmark {
+
+    private VirtualThreadBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int batches = args.length > 0 ? Integer.parseInt(args[0]) : 20_000;
+        long ioMicros = args.length > 1 ? Long.parseLong(args[1]) : 200;
+        int trades = args.length > 2 ? Integer.parseInt(args[2]) : 1_000_000;
+        int writers = args.length > 3 ? Integer.parseInt(args[3]) : 4;
+        boolean virtual = PipelineThreads.isVirtualThreadSupported();
+        System.out.println("Java " + System.getProperty("java.version") + ", virtual threads " +
+                           (virtual ? "available" : "NOT available") + ", simulated I/O " + ioMicros + "us");
+
+        // Warm up both paths so the JIT is not part of the measurement.
+        runPublish("warm-up/direct", batches / 10, ioMicros, null);
+        runPublish("warm-up/async", batches / 10, ioMicros,
+                   PipelineThreads.threadPerTask(PipelineThreads.platformThreads("bench-io-")));
+
+        runPublish("publish/direct", batches, ioMicros, null);
+        runPublish("publish/async-platform", batches, ioMicros,
+                   PipelineThreads.threadPerTask(PipelineThreads.platformThreads("bench-io-")));
+        if (virtual) {
+            runPublish("publish/async-virtual", batches, ioMicros,
+                       PipelineThreads.threadPerTask(PipelineThreads.virtualThreads("bench-io-")));
+        }
+
+        SimulatedJdbcDriver driver = new SimulatedJdbcDriver(ioMicros);
+        DriverManager.registerDriver(driver);
+        Path spillDirectory = Files.createTempDirectory("pvs-bench-spill");
+        try {
+            runPersist("warm-up/persist", ExecutionMode.PLATFORM, trades / 10, writers, spillDirectory);
+            runPersist("persist/platform", ExecutionMode.PLATFORM, trades, writers, spillDirectory);
+            if (virtual) {
+                runPersist("persist/virtual", ExecutionMode.VIRTUAL, trades, writers, spillDirectory);
+            }
+        } finally {
+            DriverManager.deregisterDriver(driver);
+            try (Stream<Path> files = Files.walk(spillDirectory)) {
+                for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    private static void runPublish(String name, int batches, long ioMicros, Executor asyncExecutor) throws IOException {
+        UpdateTransport sink = new SimulatedIoTransport(ioMicros);
+        AsyncUpdateTransport async = asyncExecutor != null ? new AsyncUpdateTransport(sink, asyncExecutor, 64 * 1024) : null;
+        UpdateTransport transport = async != null ? async : sink;
+        ByteBuffer batch = ByteBuffer.allocateDirect(64 * 1024);
+        AggregationKey key = new AggregationKey("BOOK1", "INSTR1", "CPTY1");
+        AggregationStats stats = new AggregationStats();
+        stats.addBuyTrade(100, new BigDecimal("101.25"));
+        stats.addSellTrade(40, new BigDecimal("101.50"));
+        long[] writeNanos = new long[batches];
+        int updatesPerBatch = 64;
+
+        long start = System.nanoTime();
+        for (int b = 0; b < batches; b++) {
+            // The CPU side of publishing: encode a batch of updates.
+            batch.clear();
+            for (int u = 0; u < updatesPerBatch; u++) {
+                AggregationUpdateCodec.encode(key, stats, batch);
+            }
+            batch.flip();
+            long writeStart = System.nanoTime();
+            transport.write(batch);
+            writeNanos[b] = System.nanoTime() - writeStart;
+        }
+        transport.close();
+        long elapsed = System.nanoTime() - start;
+
+        Arrays.sort(writeNanos);
+        System.out.printf("%-24s %10.0f batches/s %12.0f updates/s  write p50=%6.1fus p99=%7.1fus p99.9=%7.1fus max=%8.1fus%n",
+                          name, batches * 1e9 / elapsed, (double) batches * updatesPerBatch * 1e9 / elapsed,
+                          percentile(writeNanos, 0.50) / 1e3, percentile(writeNanos, 0.99) / 1e3,
+                          percentile(writeNanos, 0.999) / 1e3, writeNanos[writeNanos.length - 1] / 1e3);
+    }
+
+    private static void runPersist(String name, ExecutionMode mode, int trades, int writers, Path spillDirectory)
+            throws Exception {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        threads.resetPeakThreadCount();
+        long[] publishNanos = new long[trades];
+        long[] ackNanos = new long[trades];
+        CountDownLatch allAcked = new CountDownLatch(1);
+        // Acks arrive one at a time and in sequence order, so the last trade's ack is the last ack.
+        PersistedAckHandler ackHandler = new PersistedAckHandler((event, sequence, endOfBatch) -> {
+            ackNanos[(int) sequence] = System.nanoTime() - publishNanos[(int) sequence];
+            if (sequence == trades - 1) {
+                allAcked.countDown();
+            }
+        });
+        // The writer pool is built as PipelineTopologyBuilder builds it for this mode.
+        Executor ioExecutor = PipelineThreads.threadPerTask(PipelineThreads.ioThreads(mode, "bench-io-"));
+        AsyncPersistEventHandler persistHandler = new AsyncPersistEventHandler(
+                SimulatedJdbcDriver.URL, "bench", "", writers, 4096, 256, spillDirectory.resolve(name.replace('/', '-')),
+                16 << 20, ioExecutor, ackHandler);
+        Disruptor<TradeEvent> disruptor =
+                new Disruptor<>(TradeEvent::new, 4096, PipelineThreads.threadPerTask(PipelineThreads.platformThreads("bench-trade-")),
+                                ProducerType.SINGLE, new BlockingWaitStrategy());
+        disruptor.handleEventsWith(persistHandler).then(ackHandler);
+        RingBuffer<TradeEvent> ring = disruptor.start();
+        Trade trade = Trade.newBuilder().setBook("BOOK1").setInstrument("INSTR1").setCounterparty("CPTY1")
+                .setSide("BUY").setPrice(new BigDecimal("101.25")).setQuantity(100).build();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < trades; i++) {
+            long sequence = ring.next();
+            TradeEvent event = ring.get(sequence);
+            event.clear();
+            event.setTrade(trade);
+            publishNanos[(int) sequence] = System.nanoTime();
+            ring.publish(sequence);
+        }
+        boolean complete = allAcked.await(5, TimeUnit.MINUTES);
+        long elapsed = System.nanoTime() - start;
+        disruptor.shutdown();
+        persistHandler.awaitWritersClosed(1, TimeUnit.MINUTES);
+        ackHandler.close();
+        if (!complete) {
+            System.out.printf("%-24s timed out with %d trades unacknowledged%n", name, ackHandler.getPendingAckCount());
+            return;
+        }
+
+        long rows = 0;
+        long batches = 0;
+        for (ResilientTradeWriter writer : persistHandler.getWriters()) {
+            rows += writer.getRowsWritten();
+            batches += writer.getBatchesWritten();
+        }
+        Arrays.sort(ackNanos);
+        System.out.printf("%-24s %10.0f trades/s  ack p50=%8.1fus p99=%8.1fus p99.9=%8.1fus max=%9.1fus  " +
+                          "%.0f rows/batch  peak platform threads=%d%n",
+                          name, trades * 1e9 / elapsed, percentile(ackNanos, 0.50) / 1e3,
+                          percentile(ackNanos, 0.99) / 1e3, percentile(ackNanos, 0.999) / 1e3,
+                          ackNanos[ackNanos.length - 1] / 1e3, batches > 0 ? (double) rows / batches : 0,
+                          threads.getPeakThreadCount());
+    }
+
+    private static long percentile(long[] sorted, double fraction) {
+        return sorted[Math.min(sorted.length - 1, (int) (sorted.length * fraction))];
+    }
+
+    /**
+     * Transport that blocks for a fixed time per write, standing in for a socket or database.
+     */
+    private static final class SimulatedIoTransport implements UpdateTransport {
+        private final long ioNanos;
+
+        SimulatedIoTransport(long ioMicros) {
+            this.ioNanos = TimeUnit.MICROSECONDS.toNanos(ioMicros);
+        }
+
+        @Override
+        public void write(ByteBuffer batch) {
+            LockSupport.parkNanos(ioNanos);
+            batch.position(batch.limit());
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    /**
+     * JDBC driver whose statements accept every batch after blocking for a fixed time per
+     * executeBatch, standing in for a QuestDB round trip. Connecting does not block.
+     */
+    private static final class SimulatedJdbcDriver implements Driver {
+        static final String URL = "jdbc:pvs-bench:questdb";
+        private final long ioNanos;
+
+        SimulatedJdbcDriver(long ioMicros) {
+            this.ioNanos = TimeUnit.MICROSECONDS.toNanos(ioMicros);
+        }
+
+        @Override
+        public Connection connect(String url, Properties info) {
+            if (!acceptsURL(url)) {
+                return null;
+            }
+            return (Connection) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{Connection.class},
+                    (proxy, method, args) -> method.getName().equals("prepareStatement") ? newStatement() : null);
+        }
+
+        private PreparedStatement newStatement() {
+            int[] batched = new int[1];
+            return (PreparedStatement) Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{PreparedStatement.class},
+                    (proxy, method, args) -> {
+                        switch (method.getName()) {
+                            case "addBatch":
+                                batched[0]++;
+                                return null;
+                            case "executeBatch":
+                                LockSupport.parkNanos(ioNanos);
+                                int[] counts = new int[batched[0]];
+                                batched[0] = 0;
+                                return counts;
+                            default:
+                                return null;
+                        }
+                    });
+        }
+
+        @Override
+        public boolean acceptsURL(String url) {
+            return URL.equals(url);
+        }
+
+        @Override
+        public DriverPropertyInfo[] getPropertyInfo(String url, Properties info) {
+            return new DriverPropertyInfo[0];
+        }
+
+        @Override
+        public int getMajorVersion() {
+            return 1;
+        }
+
+        @Override
+        public int getMinorVersion() {
+            return 0;
+        }
+
+        @Override
+        public boolean jdbcCompliant() {
+            return false;
+        }
+
+        @Override
+        public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+            throw new SQLFeatureNotSupportedException();
+        }
+    }
+}
@@ -0,0 +1,59 @@
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Draws ranks 0..n-1 with Zipf-distributed frequencies: rank k is chosen with probability
+ * proportional to 1 / (k + 1)^exponent. An exponent of 0 is uniform; around 1 a handful of ranks
+ * take most of the draws, like the busiest books and instruments in production flow.
+ *
+ * The cumulative distribution is precomputed, so a draw is one random double and a binary search.
+ */
+public final class ZipfSampler {
+
+    private final double[] cumulative;
+
+    /**
+     * @param n        number of ranks, at least 1
+     * @param exponent skew, 0 or more
+     */
+    public ZipfSampler(int n, double exponent) {
+        if (n < 1) {
+            throw new IllegalArgumentException("Zipf needs at least one rank: " + n);
+        }
+        if (exponent < 0 || Double.isNaN(exponent)) {
+            throw new IllegalArgumentException("Zipf exponent must not be negative: " + exponent);
+        }
+        cumulative = new double[n];
+        double total = 0;
+        for (int k = 0; k < n; k++) {
+            total += 1.0 / Math.pow(k + 1, exponent);
+            cumulative[k] = total;
+        }
+        for (int k = 0; k < n; k++) {
+            cumulative[k] /= total;
+        }
+        cumulative[n - 1] = 1.0;
+    }
+
+    /**
+     * Returns the next rank.
+     *
+     * @param random source of randomness
+     * @return a rank in [0, n)
+     */
+    public int sample(SplittableRandom random) {
+        int index = Arrays.binarySearch(cumulative, random.nextDouble());
+        return index >= 0 ? index : -index - 1;
+    }
+
+    /**
+     * Returns the probability of drawing the given rank.
+     */
+    public double probability(int rank) {
+        return rank == 0 ? cumulative[0] : cumulative[rank] - cumulative[rank - 1];
+    }
+
+    public int size() {
+        return cumulative.length;
+    }
+}
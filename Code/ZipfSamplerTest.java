@@ -0,0 +1,41 @@
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+public class ZipfSamplerTest {
+
+    @Test
+    public void testFavoursLowRanks() {
+        ZipfSampler zipf = new ZipfSampler(100, 1.0);
+        SplittableRandom random = new SplittableRandom(7);
+        int[] counts = new int[100];
+        for (int i = 0; i < 200_000; i++) {
+            counts[zipf.sample(random)]++;
+        }
+
+        assertTrue(counts[0] > counts[1] && counts[1] > counts[9] && counts[9] > counts[99]);
+        // Rank 0 has probability 1 / H(100), about 19%.
+        assertEquals(zipf.probability(0), counts[0] / 200_000.0, 0.01);
+        double total = 0;
+        for (int k = 0; k < zipf.size(); k++) {
+            total += zipf.probability(k);
+        }
+        assertEquals(1.0, total, 1e-9);
+    }
+
+    @Test
+    public void testZeroExponentIsUniform() {
+        ZipfSampler zipf = new ZipfSampler(4, 0);
+
+        for (int k = 0; k < 4; k++) {
+            assertEquals(0.25, zipf.probability(k), 1e-12);
+        }
+        assertThrows(IllegalArgumentException.class, () -> new ZipfSampler(0, 1.0));
+        assertThrows(IllegalArgumentException.class, () -> new ZipfSampler(10, -0.5));
+    }
+}